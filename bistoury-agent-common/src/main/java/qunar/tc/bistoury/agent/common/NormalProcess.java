@@ -39,17 +39,34 @@ public class NormalProcess extends ClosableProcess {
         super(delegate);
     }
 
+    /**
+     * 只读取available的数量，没有数据时直接返回，不阻塞调度线程
+     */
     @Override
     public byte[] read() throws Exception {
-        rateLimiter.acquire();
-        InputStream inputStream = getInputStream();
-        int count = inputStream.read(buffer);
-        if (count > 0) {
-            return Arrays.copyOfRange(buffer, 0, count);
-        } else if (count == 0) {
+        if (!rateLimiter.tryAcquire()) {
             return EMPTY_BYTES;
-        } else {
-            return null;
+        }
+
+        //先判断进程是否结束，进程结束后输出已经全部在流里，再读不到数据就是读完了
+        boolean alive = isProcessAlive();
+        InputStream inputStream = getInputStream();
+        int available = inputStream.available();
+        if (available > 0) {
+            int count = inputStream.read(buffer, 0, Math.min(buffer.length, available));
+            if (count > 0) {
+                return Arrays.copyOfRange(buffer, 0, count);
+            }
+        }
+        return alive ? EMPTY_BYTES : null;
+    }
+
+    private boolean isProcessAlive() {
+        try {
+            exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
         }
     }
 }
\ No newline at end of file
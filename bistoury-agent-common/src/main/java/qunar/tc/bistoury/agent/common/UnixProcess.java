@@ -78,7 +78,10 @@ public class UnixProcess extends ClosableProcess {
      */
     @Override
     public byte[] read() throws Exception {
-        rateLimiter.acquire();
+        //超过频率时不等待，当作本次没有数据，由job store延迟后再调度
+        if (!rateLimiter.tryAcquire()) {
+            return EMPTY_BYTES;
+        }
         InputStream inputStream = getInputStream();
         int count = readAvailableBytes(inputStream, buffer);
         if (count > 0) {
@@ -26,6 +26,29 @@ public class KvUtils {
 
     public static final String CPU_JSTACK_PREFIX = "cj-";
 
+    private static final String THREAD_MOMENT_CPU_TIME_TAG = "-cputime-";
+
+    private static final String THREAD_MINUTE_CPU_TIME_TAG = "-minuteCpuTime-";
+
+    private static final String TIME_SERIES_PREFIX = "cj.";
+
+    private static final String THREAD_MINUTE_CPU_TIME_SERIES_PREFIX = TIME_SERIES_PREFIX + "minuteCpuTime.";
+
+    /**
+     * 线程数和每分钟cpu时间存在时间序列数据库里，下面是序列名
+     */
+    public static final String THREAD_NUM_SERIES = TIME_SERIES_PREFIX + "threadNum";
+
+    public static final String TOTAL_MINUTE_CPU_TIME_SERIES = TIME_SERIES_PREFIX + "totalMinuteCpuTime";
+
+    /**
+     * 单个线程的cpu时间，每分钟会有几百个，和其它cpu jstack数据分开存
+     */
+    public static boolean isThreadStatKey(String key) {
+        return key.startsWith(CPU_JSTACK_PREFIX)
+                && (key.contains(THREAD_MOMENT_CPU_TIME_TAG) || key.contains(THREAD_MINUTE_CPU_TIME_TAG));
+    }
+
     public static String getThreadNumKey(String timestamp) {
         return CPU_JSTACK_PREFIX + timestamp + "-threadNum";
     }
@@ -38,10 +61,17 @@ public class KvUtils {
         if (Strings.isNullOrEmpty(threadId)) {
             return CPU_JSTACK_PREFIX + timestamp + "-totalCpuTime";
         } else {
-            return CPU_JSTACK_PREFIX + timestamp + "-cputime-" + threadId;
+            return CPU_JSTACK_PREFIX + timestamp + THREAD_MOMENT_CPU_TIME_TAG + threadId;
         }
     }
 
+    /**
+     * 某一分钟所有线程的瞬时cpu时间的key前缀，后面跟着线程id
+     */
+    public static String getThreadMomentCpuTimePrefix(String timestamp) {
+        return CPU_JSTACK_PREFIX + timestamp + THREAD_MOMENT_CPU_TIME_TAG;
+    }
+
     public static String getThreadMinuteCpuTimeKey(String timestamp) {
         return getThreadMinuteCpuTimeKey(timestamp, null);
     }
@@ -50,7 +80,15 @@ public class KvUtils {
         if (Strings.isNullOrEmpty(threadId)) {
             return CPU_JSTACK_PREFIX + timestamp + "-totalMinuteCpuTime";
         } else {
-            return CPU_JSTACK_PREFIX + timestamp + "-minuteCpuTime-" + threadId;
+            return CPU_JSTACK_PREFIX + timestamp + THREAD_MINUTE_CPU_TIME_TAG + threadId;
+        }
+    }
+
+    public static String getThreadMinuteCpuTimeSeries(String threadId) {
+        if (Strings.isNullOrEmpty(threadId)) {
+            return TOTAL_MINUTE_CPU_TIME_SERIES;
+        } else {
+            return THREAD_MINUTE_CPU_TIME_SERIES_PREFIX + threadId;
         }
     }
 
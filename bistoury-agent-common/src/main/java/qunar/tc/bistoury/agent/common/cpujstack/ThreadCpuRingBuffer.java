@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.common.cpujstack;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 秒级的线程cpu采样，固定slot数量的环形数组，每个slot最多记录maxThreads个线程，内存占用固定
+ * <p>
+ * cpu使用率和{@link KvUtils}里的分钟数据一样，乘以10000后取整，只记录使用率大于0的线程
+ */
+public class ThreadCpuRingBuffer {
+
+    private final int slots;
+
+    private final int maxThreads;
+
+    private final long[] timestamps;
+
+    private final long[] durations;
+
+    private final int[] counts;
+
+    private final int[] threadIds;
+
+    private final int[] usages;
+
+    private long written;
+
+    public ThreadCpuRingBuffer(int slots, int maxThreads) {
+        this.slots = slots;
+        this.maxThreads = maxThreads;
+        this.timestamps = new long[slots];
+        this.durations = new long[slots];
+        this.counts = new int[slots];
+        this.threadIds = new int[slots * maxThreads];
+        this.usages = new int[slots * maxThreads];
+    }
+
+    /**
+     * @param timestamp 采样结束时间
+     * @param duration  距离上一次采样的时间
+     * @param usages    线程id到cpu使用率，线程数超过maxThreads时只保留使用率最高的
+     */
+    public synchronized void record(long timestamp, long duration, Map<Integer, Integer> usages) {
+        int slot = (int) (written % slots);
+        int base = slot * maxThreads;
+        int count = 0;
+        for (Map.Entry<Integer, Integer> entry : sortIfOverflow(usages)) {
+            if (count == maxThreads) {
+                break;
+            }
+            int usage = entry.getValue();
+            if (usage > 0) {
+                this.threadIds[base + count] = entry.getKey();
+                this.usages[base + count] = usage;
+                count++;
+            }
+        }
+        timestamps[slot] = timestamp;
+        durations[slot] = duration;
+        counts[slot] = count;
+        written++;
+    }
+
+    private Iterable<Map.Entry<Integer, Integer>> sortIfOverflow(Map<Integer, Integer> usages) {
+        if (usages.size() <= maxThreads) {
+            return usages.entrySet();
+        }
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(usages.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Integer, Integer>>() {
+            @Override
+            public int compare(Map.Entry<Integer, Integer> o1, Map.Entry<Integer, Integer> o2) {
+                return Ints.compare(o2.getValue(), o1.getValue());
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * 最近一段时间内平均cpu使用率最高的n个线程，平均值按每次采样的时间加权
+     */
+    public synchronized List<ThreadCpuUsage> topN(long since, int n) {
+        Map<Integer, ThreadCpuUsage> threads = new HashMap<>();
+        long totalDuration = 0;
+        for (int slot : slotsSince(since)) {
+            long duration = durations[slot];
+            totalDuration += duration;
+            int base = slot * maxThreads;
+            for (int i = 0; i < counts[slot]; ++i) {
+                int threadId = threadIds[base + i];
+                ThreadCpuUsage usage = threads.get(threadId);
+                if (usage == null) {
+                    usage = new ThreadCpuUsage(threadId);
+                    threads.put(threadId, usage);
+                }
+                usage.add(usages[base + i], duration);
+            }
+        }
+        if (totalDuration == 0) {
+            return ImmutableList.of();
+        }
+
+        List<ThreadCpuUsage> result = new ArrayList<>(threads.values());
+        for (ThreadCpuUsage usage : result) {
+            usage.finish(totalDuration);
+        }
+        Collections.sort(result, new Comparator<ThreadCpuUsage>() {
+            @Override
+            public int compare(ThreadCpuUsage o1, ThreadCpuUsage o2) {
+                return Ints.compare(o2.getAvgUsage(), o1.getAvgUsage());
+            }
+        });
+        return result.size() > n ? result.subList(0, n) : result;
+    }
+
+    /**
+     * 线程在最近一段时间内每次采样的cpu使用率，按时间顺序，没有记录到的采样使用率为0
+     */
+    public synchronized List<CpuSample> history(int threadId, long since) {
+        List<CpuSample> result = new ArrayList<>();
+        for (int slot : slotsSince(since)) {
+            int base = slot * maxThreads;
+            int usage = 0;
+            for (int i = 0; i < counts[slot]; ++i) {
+                if (threadIds[base + i] == threadId) {
+                    usage = usages[base + i];
+                    break;
+                }
+            }
+            result.add(new CpuSample(timestamps[slot], usage));
+        }
+        return result;
+    }
+
+    private int[] slotsSince(long since) {
+        int size = (int) Math.min(written, slots);
+        int[] result = new int[size];
+        int count = 0;
+        for (long i = written - size; i < written; ++i) {
+            int slot = (int) (i % slots);
+            if (timestamps[slot] > since) {
+                result[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public static class ThreadCpuUsage {
+
+        private final int threadId;
+
+        private long weightedUsage;
+
+        private int avgUsage;
+
+        private int maxUsage;
+
+        private ThreadCpuUsage(int threadId) {
+            this.threadId = threadId;
+        }
+
+        private void add(int usage, long duration) {
+            weightedUsage += usage * duration;
+            maxUsage = Math.max(maxUsage, usage);
+        }
+
+        private void finish(long totalDuration) {
+            avgUsage = (int) (weightedUsage / totalDuration);
+        }
+
+        public int getThreadId() {
+            return threadId;
+        }
+
+        public int getAvgUsage() {
+            return avgUsage;
+        }
+
+        public int getMaxUsage() {
+            return maxUsage;
+        }
+    }
+
+    public static class CpuSample {
+
+        private final long timestamp;
+
+        private final int usage;
+
+        private CpuSample(long timestamp, int usage) {
+            this.timestamp = timestamp;
+            this.usage = usage;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getUsage() {
+            return usage;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.common.cpujstack;
+
+public class ThreadCpuRingBuffers {
+
+    private static final int intervalSeconds = Math.max(1, Integer.getInteger("bistoury.cpu.sample.interval.seconds", 5));
+
+    private static final int retentionSeconds = Math.max(intervalSeconds, Integer.getInteger("bistoury.cpu.sample.retention.seconds", 600));
+
+    private static final int maxThreads = Math.max(1, Integer.getInteger("bistoury.cpu.sample.max.threads", 512));
+
+    private static final ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(retentionSeconds / intervalSeconds, maxThreads);
+
+    public static ThreadCpuRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public static int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public static int getRetentionSeconds() {
+        return retentionSeconds;
+    }
+}
@@ -4,32 +4,55 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * job按就绪状态调度，不可写、暂停、credit用完、暂时没有数据时都会让出线程，
+ * 条件满足后再重新提交到job自己的executor上，每次调度最多执行{@link #MAX_RESPONSE_PER_SCHEDULE}次doResponse，
+ * 避免少数持续输出的job占满线程池
+ *
  * @author zhenyu.nie created on 2019 2019/10/16 19:29
  */
 public class DefaultResponseJobStore implements ResponseJobStore {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultResponseJobStore.class);
 
+    private static final long UNLIMITED_CREDIT = Long.MAX_VALUE;
+
+    private static final int MAX_RESPONSE_PER_SCHEDULE = 16;
+
+    //和process每秒16次read的限制保持一致
+    private static final long IDLE_DELAY_MS = 64;
+
     private final ConcurrentMap<String, PausedJob> jobs = Maps.newConcurrentMap();
 
     private final Set<String> pausedJobs = Sets.newConcurrentHashSet();
 
-    private volatile boolean writable = true;
+    private final Set<String> unwritableJobs = Sets.newConcurrentHashSet();
 
-    private volatile CountDownLatch latch = new CountDownLatch(0);
+    private final ScheduledExecutorService idleScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bistoury-job-idle-scheduler").build());
+
+    private volatile boolean writable = true;
 
     private boolean isClosed = false;
 
     @Override
     public void submit(ContinueResponseJob job) {
+        submit(job, UNLIMITED_CREDIT);
+    }
+
+    @Override
+    public void submit(ContinueResponseJob job, long creditWindow) {
         PausedJob old;
         PausedJob pausedJob;
 
@@ -39,7 +62,7 @@ public class DefaultResponseJobStore implements ResponseJobStore {
                 return;
             }
 
-            pausedJob = new PausedJob(job);
+            pausedJob = new PausedJob(job, creditWindow);
             old = jobs.putIfAbsent(pausedJob.getId(), pausedJob);
         }
 
@@ -67,6 +90,23 @@ public class DefaultResponseJobStore implements ResponseJobStore {
         }
     }
 
+    @Override
+    public void grant(String id, long credit) {
+        logger.debug("grant job {} credit {}", id, credit);
+        PausedJob pausedJob = jobs.get(id);
+        if (pausedJob != null) {
+            pausedJob.grant(credit);
+        }
+    }
+
+    @Override
+    public void consume(String id, long bytes) {
+        PausedJob pausedJob = jobs.get(id);
+        if (pausedJob != null) {
+            pausedJob.consume(bytes);
+        }
+    }
+
     @Override
     public void stop(String id) {
         logger.info("try stop job {}", id);
@@ -91,6 +131,7 @@ public class DefaultResponseJobStore implements ResponseJobStore {
         for (PausedJob pausedJob : jobs.values()) {
             pausedJob.stop();
         }
+        idleScheduler.shutdownNow();
     }
 
     @Override
@@ -102,10 +143,26 @@ public class DefaultResponseJobStore implements ResponseJobStore {
         logger.info("change writable to {}", writable);
         this.writable = writable;
         if (writable) {
-            latch.countDown();
-        } else {
-            latch = new CountDownLatch(1);
+            for (String id : unwritableJobs) {
+                PausedJob pausedJob = jobs.get(id);
+                if (unwritableJobs.remove(id) && pausedJob != null) {
+                    pausedJob.schedule();
+                }
+            }
+        }
+    }
+
+    /**
+     * 不可写时让出线程，返回false表示job已经登记，等可写后再调度
+     */
+    private boolean waitWritableIfNeed(PausedJob job) {
+        if (writable) {
+            return true;
         }
+
+        unwritableJobs.add(job.getId());
+        //登记之后再检查一次，防止和setWritable(true)交错导致job丢失
+        return writable && unwritableJobs.remove(job.getId());
     }
 
     private class PausedJob {
@@ -114,15 +171,21 @@ public class DefaultResponseJobStore implements ResponseJobStore {
 
         private final ListeningExecutorService executor;
 
+        private final IdleAwareJob idleAware;
+
         private boolean paused = false;
 
         private boolean stopped = false;
 
+        private long credit;
+
         private ListenableFuture<?> finishFuture;
 
-        private PausedJob(ContinueResponseJob job) {
+        private PausedJob(ContinueResponseJob job, long credit) {
             this.job = new WrappedJob(job);
             this.executor = job.getExecutor();
+            this.idleAware = job instanceof IdleAwareJob ? (IdleAwareJob) job : null;
+            this.credit = credit;
         }
 
         public String getId() {
@@ -133,7 +196,11 @@ public class DefaultResponseJobStore implements ResponseJobStore {
             job.init();
         }
 
-        public synchronized void start() {
+        public void start() {
+            schedule();
+        }
+
+        public synchronized void schedule() {
             if (stopped) {
                 return;
             }
@@ -141,6 +208,23 @@ public class DefaultResponseJobStore implements ResponseJobStore {
             this.finishFuture = executor.submit(new JobRunner(this));
         }
 
+        public void scheduleLater() {
+            try {
+                idleScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        schedule();
+                    }
+                }, IDLE_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                logger.debug("job store closed, ignore idle job {}", getId());
+            }
+        }
+
+        public boolean isIdle() {
+            return idleAware != null && idleAware.isIdle();
+        }
+
         public synchronized void paused() {
             if (!this.paused) {
                 logger.debug("paused job {}", getId());
@@ -158,10 +242,33 @@ public class DefaultResponseJobStore implements ResponseJobStore {
             }
 
             this.paused = false;
+            resumeIfRunnable();
+        }
+
+        public synchronized void grant(long credit) {
+            if (stopped || this.credit == UNLIMITED_CREDIT || credit <= 0) {
+                return;
+            }
+
+            this.credit = Math.min(UNLIMITED_CREDIT - 1, this.credit + credit);
+            resumeIfRunnable();
+        }
+
+        public synchronized void consume(long bytes) {
+            if (this.credit != UNLIMITED_CREDIT) {
+                this.credit -= bytes;
+            }
+        }
+
+        private void resumeIfRunnable() {
+            if (paused || credit <= 0) {
+                return;
+            }
+
             boolean removed = pausedJobs.remove(getId());
             logger.debug("resume job {}, {}", removed, getId());
             if (removed) {
-                this.finishFuture = executor.submit(new JobRunner(this));
+                schedule();
             }
         }
 
@@ -213,8 +320,8 @@ public class DefaultResponseJobStore implements ResponseJobStore {
                 return true;
             }
 
-            if (paused) {
-                logger.debug("do pause job {}", getId());
+            if (paused || credit <= 0) {
+                logger.debug("do pause job {}, paused {}, credit {}", getId(), paused, credit);
                 pausedJobs.add(getId());
                 finishFuture = null;
                 return true;
@@ -224,6 +331,7 @@ public class DefaultResponseJobStore implements ResponseJobStore {
 
         private void removeFromStore() {
             pausedJobs.remove(getId());
+            unwritableJobs.remove(getId());
             jobs.remove(getId());
         }
     }
@@ -252,8 +360,12 @@ public class DefaultResponseJobStore implements ResponseJobStore {
         }
 
         private void doRun() throws Exception {
-            while (true) {
-                latch.await();
+            for (int i = 0; i < MAX_RESPONSE_PER_SCHEDULE; ++i) {
+                if (!waitWritableIfNeed(job)) {
+                    logger.debug("wait writable job {}", job.getId());
+                    return;
+                }
+
                 if (job.isStopped() || job.doPausedIfNeed()) {
                     logger.debug("stop or paused job {}", job.getId());
                     return;
@@ -264,7 +376,13 @@ public class DefaultResponseJobStore implements ResponseJobStore {
                     job.finish();
                     return;
                 }
+
+                if (job.isIdle()) {
+                    job.scheduleLater();
+                    return;
+                }
             }
+            job.schedule();
         }
     }
 
@@ -334,8 +452,8 @@ public class DefaultResponseJobStore implements ResponseJobStore {
         return "DefaultResponseJobStore{" +
                 "jobs=" + jobs +
                 ", pausedJobs=" + pausedJobs +
+                ", unwritableJobs=" + unwritableJobs +
                 ", writable=" + writable +
-                ", latch=" + latch +
                 ", isClosed=" + isClosed +
                 '}';
     }
@@ -0,0 +1,12 @@
+package qunar.tc.bistoury.agent.common.job;
+
+/**
+ * 能够告知当前没有数据的job，job store会让出线程，延迟一段时间后再调度，而不是在线程上空转
+ */
+public interface IdleAwareJob {
+
+    /**
+     * @return 上一次{@link ContinueResponseJob#doResponse()}是否没有产生数据
+     */
+    boolean isIdle();
+}
@@ -9,6 +9,17 @@ public interface ResponseJobStore {
 
     void submit(ContinueResponseJob job);
 
+    /**
+     * 提交按credit控制输出的job，credit用完后job让出线程，直到{@link #grant(String, long)}补充credit
+     *
+     * @param creditWindow 初始credit，单位byte
+     */
+    void submit(ContinueResponseJob job, long creditWindow);
+
+    void grant(String id, long credit);
+
+    void consume(String id, long bytes);
+
     void pause(String id);
 
     void resume(String id);
@@ -17,16 +17,40 @@
 
 package qunar.tc.bistoury.agent.common.kv;
 
+import java.io.Closeable;
 import java.util.Map;
 
 /**
  * @author zhenyu.nie created on 2019 2019/1/8 17:20
  */
-public interface KvDb {
+public interface KvDb extends Closeable {
 
     String get(String key);
 
     void put(String key, String value);
 
     void putBatch(Map<String, String> data);
+
+    /**
+     * 按key的字典序遍历所有以prefix开头的数据，用完需要close
+     */
+    KvIterator scan(String prefix);
+
+    /**
+     * 按key的字典序遍历[from, to)之间的数据，用完需要close
+     * <p>
+     * from和to需要是同一类数据的key，比如都是qmonitor的key
+     */
+    KvIterator range(String from, String to);
+
+    /**
+     * 存储自身的统计信息，用于排查agent本地存储的问题
+     */
+    Map<String, String> getStats();
+
+    /**
+     * 释放底层的文件和native资源，agent运行期间不会调用，用于测试和benchmark
+     */
+    @Override
+    void close();
 }
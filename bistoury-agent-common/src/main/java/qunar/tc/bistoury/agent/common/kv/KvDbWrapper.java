@@ -58,4 +58,24 @@ public class KvDbWrapper implements KvDb {
     public void putBatch(Map<String, String> data) {
         kvdb.putBatch(data);
     }
+
+    @Override
+    public KvIterator scan(String prefix) {
+        return kvdb.scan(prefix);
+    }
+
+    @Override
+    public KvIterator range(String from, String to) {
+        return kvdb.range(from, to);
+    }
+
+    @Override
+    public Map<String, String> getStats() {
+        return kvdb.getStats();
+    }
+
+    @Override
+    public void close() {
+        kvdb.close();
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.kv;
+
+import com.google.common.collect.PeekingIterator;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static com.google.common.collect.Iterators.peekingIterator;
+
+public class KvIterators {
+
+    private KvIterators() {
+    }
+
+    /**
+     * @return 比所有以prefix开头的字符串都大的最小字符串，不存在时返回null
+     */
+    public static String prefixEnd(String prefix) {
+        StringBuilder end = new StringBuilder(prefix);
+        while (end.length() > 0) {
+            int last = end.length() - 1;
+            char c = end.charAt(last);
+            if (c != Character.MAX_VALUE) {
+                end.setCharAt(last, (char) (c + 1));
+                return end.toString();
+            }
+            end.setLength(last);
+        }
+        return null;
+    }
+
+    public static KvIterator of(final List<Map.Entry<String, String>> entries) {
+        final Iterator<Map.Entry<String, String>> iterator = entries.iterator();
+        return new KvIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * 合并两个有序的遍历，key相同时使用first中的数据
+     */
+    public static KvIterator merge(final KvIterator first, final KvIterator second) {
+        final PeekingIterator<Map.Entry<String, String>> left = peekingIterator(first);
+        final PeekingIterator<Map.Entry<String, String>> right = peekingIterator(second);
+        return new KvIterator() {
+            @Override
+            public boolean hasNext() {
+                return left.hasNext() || right.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (!right.hasNext()) {
+                    return left.next();
+                }
+                if (!left.hasNext()) {
+                    return right.next();
+                }
+
+                int compare = left.peek().getKey().compareTo(right.peek().getKey());
+                if (compare == 0) {
+                    right.next();
+                    return left.next();
+                }
+                return compare < 0 ? left.next() : right.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    first.close();
+                } finally {
+                    second.close();
+                }
+            }
+        };
+    }
+}
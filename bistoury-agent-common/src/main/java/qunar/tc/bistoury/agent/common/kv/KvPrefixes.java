@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.common.kv;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 写到kv存储里的各类数据的key前缀，rocksdb按前缀把数据分到不同的column family
+ */
+public class KvPrefixes {
+
+    public static final String QMONITOR_PREFIX = "qm-";
+
+    //timer的耗时直方图，和监控数据放在同一个column family
+    public static final String QMONITOR_HISTOGRAM_PREFIX = "qmh-";
+
+    //预聚合数据的耗时直方图，和时间序列里预聚合的点一样保留更久，单独放一个column family
+    public static final String QMONITOR_ROLLUP_HISTOGRAM_PREFIX = "qmhr-";
+
+    //和时间序列里保留最久的预聚合数据一致
+    public static final int QMONITOR_ROLLUP_TTL_SECONDS = Integer.getInteger("bistoury.store.qmonitor.rollup.ttl.seconds", (int) TimeUnit.DAYS.toSeconds(90));
+
+    public static final String HEAP_HISTO_PREFIX = "hh-";
+
+    private KvPrefixes() {
+    }
+}
@@ -17,15 +17,31 @@
 
 package qunar.tc.bistoury.agent.common.kv;
 
-import org.rocksdb.Options;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.UnsignedBytes;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
 import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
 import org.rocksdb.TtlDB;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.agent.common.cpujstack.KvUtils;
 import qunar.tc.bistoury.common.CharsetUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 
 /**
@@ -43,22 +59,96 @@ public class RocksDBStoreImpl implements KvDb {
         RocksDB.loadLibrary();
     }
 
+    /**
+     * 按数据类型分column family，各自有自己的ttl和compaction参数，key的前缀决定写到哪个column family
+     */
+    private enum Family {
+        //升级前的数据都在default里，读不到时会再查一次default，等ttl过期后就没有了
+        DEFAULT(new String(RocksDB.DEFAULT_COLUMN_FAMILY), 4, 4),
+        CPU_JSTACK("cpu_jstack", 4, 4),
+        //每分钟几百个线程的cpu时间一次性写入，memtable大一些，l0多攒一些文件再compact，减少write stall
+        THREAD_STATS("thread_stats", 8, 8),
+        //QMonitorStore
+        QMONITOR("qmonitor", 4, 4),
+        //QMonitorStore预聚合数据的直方图，保留时间比分钟数据长
+        QMONITOR_ROLLUP("qmonitor_rollup", 4, 4, KvPrefixes.QMONITOR_ROLLUP_TTL_SECONDS),
+        //HeapHistoStore
+        HEAP_HISTO("heap_histo", 4, 4);
+
+        private final String name;
+
+        private final int writeBufferMb;
+
+        private final int level0CompactionTrigger;
+
+        //小于等于0时使用整个db的ttl
+        private final int familyTtl;
+
+        Family(String name, int writeBufferMb, int level0CompactionTrigger) {
+            this(name, writeBufferMb, level0CompactionTrigger, 0);
+        }
+
+        Family(String name, int writeBufferMb, int level0CompactionTrigger, int familyTtl) {
+            this.name = name;
+            this.writeBufferMb = writeBufferMb;
+            this.level0CompactionTrigger = level0CompactionTrigger;
+            this.familyTtl = familyTtl;
+        }
+
+        private int ttl(int defaultTtl) {
+            return Integer.getInteger("bistoury.store.rocksdb." + name + ".ttl.seconds", familyTtl > 0 ? familyTtl : defaultTtl);
+        }
+
+        private static Family route(String key) {
+            if (key.startsWith(KvUtils.CPU_JSTACK_PREFIX)) {
+                return KvUtils.isThreadStatKey(key) ? THREAD_STATS : CPU_JSTACK;
+            } else if (key.startsWith(KvPrefixes.QMONITOR_ROLLUP_HISTOGRAM_PREFIX)) {
+                return QMONITOR_ROLLUP;
+            } else if (key.startsWith(KvPrefixes.QMONITOR_PREFIX) || key.startsWith(KvPrefixes.QMONITOR_HISTOGRAM_PREFIX)) {
+                return QMONITOR;
+            } else if (key.startsWith(KvPrefixes.HEAP_HISTO_PREFIX)) {
+                return HEAP_HISTO;
+            }
+            return DEFAULT;
+        }
+    }
+
     private final TtlDB rocksDB;
 
+    private final List<ColumnFamilyHandle> handles = new ArrayList<>();
+
+    private final DBOptions options = new DBOptions();
+
+    private final List<ColumnFamilyOptions> familyOptionsList = new ArrayList<>();
+
+    private final Statistics statistics = new Statistics();
+
+    private final WriteOptions writeOptions = new WriteOptions();
+
     RocksDBStoreImpl(String path, int ttl, int maxCompactions) {
         try {
             ensureDirectoryExists(path);
 
-            final Options options = new Options();
             options.setCreateIfMissing(true);
+            options.setCreateMissingColumnFamilies(true);
             options.setMaxBackgroundCompactions(maxCompactions);
             options.setMaxOpenFiles(2);//RocksDB 会将打开的 SST 文件句柄缓存这，这样下次访问的时候就可以直接使用，而不需要重新在打开。
-            options.setWriteBufferSize(4 * MB_BYTE);//4M, memtable 的最大 size
-            options.setMaxWriteBufferNumber(4);//最大 memtable 的个数
-            options.setLevel0FileNumCompactionTrigger(4);//当有4个未进行Compact的文件时，达到触发Compact的条件
+            options.setStatistics(statistics);
 
-            this.rocksDB = TtlDB.open(options, path, ttl, false);
-            LOG.info("open rocks db success, path:{}, ttl:{}", path, ttl);
+            List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+            List<Integer> ttls = new ArrayList<>();
+            for (Family family : Family.values()) {
+                final ColumnFamilyOptions familyOptions = new ColumnFamilyOptions();
+                familyOptionsList.add(familyOptions);
+                familyOptions.setWriteBufferSize(family.writeBufferMb * MB_BYTE);//memtable 的最大 size
+                familyOptions.setMaxWriteBufferNumber(4);//最大 memtable 的个数
+                familyOptions.setLevel0FileNumCompactionTrigger(family.level0CompactionTrigger);//未进行Compact的文件达到这个数时触发Compact
+                descriptors.add(new ColumnFamilyDescriptor(CharsetUtils.toUTF8Bytes(family.name), familyOptions));
+                ttls.add(family.ttl(ttl));
+            }
+
+            this.rocksDB = TtlDB.open(options, path, descriptors, handles, ttls, false);
+            LOG.info("open rocks db success, path:{}, ttl:{}", path, ttls);
 
         } catch (Exception e) {
             LOG.error("open rocks db error, path:{}, ttl:{}", path, ttl, e);
@@ -76,6 +166,10 @@ public class RocksDBStoreImpl implements KvDb {
         }
     }
 
+    private ColumnFamilyHandle handle(Family family) {
+        return handles.get(family.ordinal());
+    }
+
     @Override
     public void put(String key, String value) {
         try {
@@ -84,7 +178,7 @@ public class RocksDBStoreImpl implements KvDb {
             if (keyBytes == null || keyBytes.length == 0 || valueBytes == null || value.length() == 0) {
                 return;
             }
-            rocksDB.put(keyBytes, valueBytes);
+            rocksDB.put(handle(Family.route(key)), writeOptions, keyBytes, valueBytes);
         } catch (Exception e) {
             LOG.error("put rocks db error, key:{}, value:{}", key, value, e);
         }
@@ -97,7 +191,11 @@ public class RocksDBStoreImpl implements KvDb {
             if (keyBytes == null || keyBytes.length == 0) {
                 return null;
             }
-            final byte[] valueBytes = rocksDB.get(keyBytes);
+            final Family family = Family.route(key);
+            byte[] valueBytes = rocksDB.get(handle(family), keyBytes);
+            if (valueBytes == null && family != Family.DEFAULT) {
+                valueBytes = rocksDB.get(handle(Family.DEFAULT), keyBytes);
+            }
             final String value = CharsetUtils.toUTF8String(valueBytes);
             if (value.length() == 0) {
                 return null;
@@ -111,8 +209,149 @@ public class RocksDBStoreImpl implements KvDb {
 
     @Override
     public void putBatch(Map<String, String> data) {
-        for (Map.Entry<String, String> entry : data.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+        try (WriteBatch batch = new WriteBatch()) {
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                final byte[] keyBytes = CharsetUtils.toUTF8Bytes(entry.getKey());
+                final byte[] valueBytes = CharsetUtils.toUTF8Bytes(entry.getValue());
+                if (keyBytes == null || keyBytes.length == 0 || valueBytes == null || valueBytes.length == 0) {
+                    continue;
+                }
+                batch.put(handle(Family.route(entry.getKey())), keyBytes, valueBytes);
+            }
+            rocksDB.write(writeOptions, batch);
+        } catch (Exception e) {
+            LOG.error("batch put rocks db error, size:{}", data.size(), e);
+        }
+    }
+
+    @Override
+    public KvIterator scan(String prefix) {
+        return range(prefix, KvIterators.prefixEnd(prefix));
+    }
+
+    @Override
+    public KvIterator range(String from, String to) {
+        final Family family = Family.route(from);
+        final byte[] fromBytes = CharsetUtils.toUTF8Bytes(from);
+        final byte[] toBytes = to == null ? null : CharsetUtils.toUTF8Bytes(to);
+        KvIterator iterator = new RocksKvIterator(rocksDB.newIterator(handle(family)), fromBytes, toBytes);
+        if (family == Family.DEFAULT) {
+            return iterator;
+        }
+        return KvIterators.merge(iterator, new RocksKvIterator(rocksDB.newIterator(handle(Family.DEFAULT)), fromBytes, toBytes));
+    }
+
+    /**
+     * handle要在db之前关，options要在db之后关
+     */
+    @Override
+    public void close() {
+        for (ColumnFamilyHandle handle : handles) {
+            handle.close();
+        }
+        rocksDB.close();
+        for (ColumnFamilyOptions familyOptions : familyOptionsList) {
+            familyOptions.close();
+        }
+        options.close();
+        writeOptions.close();
+        statistics.close();
+    }
+
+    private static class RocksKvIterator implements KvIterator {
+
+        private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+        private final RocksIterator iterator;
+
+        private final byte[] to;
+
+        private Map.Entry<String, String> next;
+
+        private RocksKvIterator(RocksIterator iterator, byte[] from, byte[] to) {
+            this.iterator = iterator;
+            this.to = to;
+            iterator.seek(from);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (iterator.isValid()) {
+                byte[] key = iterator.key();
+                if (to != null && COMPARATOR.compare(key, to) >= 0) {
+                    return;
+                }
+                byte[] value = iterator.value();
+                iterator.next();
+                if (value != null && value.length > 0) {
+                    next = Maps.immutableEntry(CharsetUtils.toUTF8String(key), CharsetUtils.toUTF8String(value));
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> result = next;
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("type", "rocksdb");
+
+        long bytesWritten = statistics.getTickerCount(TickerType.BYTES_WRITTEN);
+        long flushBytes = statistics.getTickerCount(TickerType.FLUSH_WRITE_BYTES);
+        long compactBytes = statistics.getTickerCount(TickerType.COMPACT_WRITE_BYTES);
+        stats.put("bytesWritten", String.valueOf(bytesWritten));
+        stats.put("flushWriteBytes", String.valueOf(flushBytes));
+        stats.put("compactWriteBytes", String.valueOf(compactBytes));
+        stats.put("writeAmplification", ratio(flushBytes + compactBytes, bytesWritten));
+
+        long cacheHit = statistics.getTickerCount(TickerType.BLOCK_CACHE_HIT);
+        long cacheMiss = statistics.getTickerCount(TickerType.BLOCK_CACHE_MISS);
+        stats.put("blockCacheHit", String.valueOf(cacheHit));
+        stats.put("blockCacheMiss", String.valueOf(cacheMiss));
+        stats.put("blockCacheHitRate", ratio(cacheHit, cacheHit + cacheMiss));
+        stats.put("stallMicros", String.valueOf(statistics.getTickerCount(TickerType.STALL_MICROS)));
+
+        for (Family family : Family.values()) {
+            try {
+                stats.put(family.name + ".estimateKeys", String.valueOf(rocksDB.getLongProperty(handle(family), "rocksdb.estimate-num-keys")));
+                stats.put(family.name + ".sstBytes", String.valueOf(rocksDB.getLongProperty(handle(family), "rocksdb.total-sst-files-size")));
+            } catch (Exception e) {
+                LOG.warn("get rocks db property error, column family: {}", family.name, e);
+            }
+        }
+        return stats;
+    }
+
+    private static String ratio(long numerator, long denominator) {
+        if (denominator == 0) {
+            return "0";
         }
+        return String.format("%.3f", (double) numerator / denominator);
     }
 }
@@ -0,0 +1,48 @@
+package qunar.tc.bistoury.agent.common.kv;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * sqlite连接和它上面已经prepare过的语句，sql固定只有几条，缓存起来避免每次读写都重新编译
+ * <p>
+ * 非线程安全，同一时间只能由一个线程使用
+ */
+class SQLiteConnection {
+
+    private final Connection connection;
+
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    SQLiteConnection(String path, SQLiteConfig config) throws SQLException {
+        this.connection = config.createConnection("jdbc:sqlite:" + path);
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+        return statement;
+    }
+
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            DataSourceHelper.closeResource(statement);
+        }
+        statements.clear();
+        DataSourceHelper.closeResource(connection);
+    }
+}
@@ -1,6 +1,5 @@
 package qunar.tc.bistoury.agent.common.kv;
 
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
@@ -9,10 +8,8 @@ import qunar.tc.bistoury.clientside.common.meta.MetaStore;
 import qunar.tc.bistoury.clientside.common.meta.MetaStores;
 import qunar.tc.bistoury.common.NamedThreadFactory;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -24,8 +21,7 @@ public class SQLiteDeleteDataGentle {
     private static final Logger logger = LoggerFactory.getLogger(SQLiteDeleteDataGentle.class);
     private SQLiteStoreImpl sqLite;
 
-    //Time to execute cleanup task, used for the 24-hour clock.
-    private static final int EXECUTE_CLEAN_DATA_HOUR = 3;
+    private volatile ScheduledFuture<?> future;
 
     private static final ListeningScheduledExecutorService executorService = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("clean_sqlite_expire_data")));
 
@@ -35,22 +31,22 @@ public class SQLiteDeleteDataGentle {
         this.sqLite = sqLite;
     }
 
+    /**
+     * 每小时清理一次，每次只删除上一次之后过期的数据，不会在某个时间点攒下一整天的删除
+     */
     public void start() {
-        executorService.scheduleWithFixedDelay(new Runnable() {
+        future = executorService.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
-                Calendar calendar = new GregorianCalendar();
-                if (calendar.get(Calendar.HOUR_OF_DAY) == EXECUTE_CLEAN_DATA_HOUR) {
-                    long start = System.currentTimeMillis();
-                    int delete = deleteGentle();
-                    logger.info("finish delete expire data, count: {}, cost: {}", delete, System.currentTimeMillis() - start);
-                }
+                long start = System.currentTimeMillis();
+                int delete = deleteGentle();
+                logger.info("finish delete expire data, count: {}, cost: {}", delete, System.currentTimeMillis() - start);
             }
         }, 1, 1, TimeUnit.HOURS);
     }
 
     /**
-     * 削峰
+     * 削峰，每次删除 $slice 条，每次删除是一个短事务，中间sleep让出写锁
      *
      * @return
      */
@@ -59,48 +55,32 @@ public class SQLiteDeleteDataGentle {
         long expireTimestamp = System.currentTimeMillis();
         int count = 0;
 
-        while (true) {
-            int limit = META_STORE.getIntProperty("delete.each.query.limit", 10000);
-            int slice = META_STORE.getIntProperty("delete.slice.size", 100);
+        while (!Thread.currentThread().isInterrupted()) {
+            int slice = META_STORE.getIntProperty("delete.slice.size", 1000);
             long sleepTime = META_STORE.getLongProperty("delete.sleep.ms", 100);
 
-            //一次查询 $limit 条key
-            List<String> keySet = sqLite.expireKey(expireTimestamp, limit);
-
-            if (keySet.size() == 0) {
+            int delete = sqLite.deleteExpired(expireTimestamp, slice);
+            count += delete;
+            if (delete < slice) {
                 break;
             }
 
-            if (limit == slice) {
-                //如果分片数量和查询总数一样，就直接删除，跳过分组逻辑
-                count += doDelete(keySet);
-                try {
-                    Thread.sleep(sleepTime);
-                } catch (InterruptedException e) {
-                    break;
-                }
-            } else {
-                //将这个 $limit 条数据进行分组
-                List<List<String>> partition = Lists.partition(keySet, slice);
-                for (List<String> keys : partition) {
-                    count += doDelete(keys);
-                    try {
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException e) {
-                        break;
-                    }
-                }
-            }
-
-            if (keySet.size() < limit) {
+            try {
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
                 break;
             }
         }
         return count;
     }
 
-    private int doDelete(List<String> keys) {
-        return sqLite.delete(keys);
+    /**
+     * 只停止当前db的清理，清理线程是共用的
+     */
+    public void stop() {
+        if (future != null) {
+            future.cancel(true);
+        }
     }
 
     public void destroy() {
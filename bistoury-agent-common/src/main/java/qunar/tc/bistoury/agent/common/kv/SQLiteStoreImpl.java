@@ -2,13 +2,11 @@ package qunar.tc.bistoury.agent.common.kv;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sqlite.core.Codes;
+import org.sqlite.SQLiteConfig;
 import org.xerial.snappy.Snappy;
 import qunar.tc.bistoury.clientside.common.meta.MetaStore;
 import qunar.tc.bistoury.clientside.common.meta.MetaStores;
@@ -18,6 +16,8 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,19 +36,32 @@ public class SQLiteStoreImpl implements KvDb {
             ");";
     private static final String CREATE_INDEX_SQL = "CREATE INDEX idx_b_expire_time ON bistoury (b_expire_time);";
 
-    private static final String INSERT_SQL = "insert into bistoury values (?, ?, ?, ?)";
-    private static final String UPDATE_SQL = "update bistoury set b_value=?,b_expire_time=?,b_compress_way=? where b_key=?";
+    private static final String INSERT_SQL = "insert or replace into bistoury values (?, ?, ?, ?)";
     private static final String SELECT_SQL = "select b_value, b_compress_way from bistoury where b_key = ?";
-    private static final String QUERY_EXPIRE_KEY = "select b_key from bistoury where b_expire_time <= ? limit 0,?";
+    private static final String RANGE_SQL = "select b_key, b_value, b_compress_way from bistoury where b_key >= ? and b_key < ? order by b_key";
+    private static final String RANGE_FROM_SQL = "select b_key, b_value, b_compress_way from bistoury where b_key >= ? order by b_key";
+    //delete不一定编译了limit支持，用子查询限制每次删除的条数
+    private static final String DELETE_EXPIRE_SQL = "delete from bistoury where b_key in (select b_key from bistoury where b_expire_time <= ? limit ?)";
 
     private static final String db_file = "bistoury.db";
 
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
     private String path;
     private long ttl;
 
     private final MetaStore metaStore;
-    //private final DataSource dataSource;
-    private Connection connection;
+
+    /**
+     * wal模式下读写互不阻塞，写只有一个连接，读从连接池里拿
+     */
+    private SQLiteConnection writeConnection;
+
+    private BlockingQueue<SQLiteConnection> readConnections;
+
+    private SQLiteDeleteDataGentle sqLiteDeleteDataGentle;
+
+    private volatile boolean closed = false;
 
     /**
      * @param path
@@ -69,160 +82,142 @@ public class SQLiteStoreImpl implements KvDb {
         if (file.exists()) {
             isInit = true;
         }
+        final int readConnectionSize = Math.max(1, metaStore.getIntProperty("sqlite.read.connection.size", 2));
         try {
-            connection = DriverManager.getConnection("jdbc:sqlite:" + this.path);
+            writeConnection = new SQLiteConnection(this.path, createConfig(false));
             if (!isInit) {
-                try (Statement stmt = connection.createStatement()) {
+                try (Statement stmt = writeConnection.getConnection().createStatement()) {
                     stmt.executeUpdate(INIT_TABLE_SQL);
                     stmt.executeUpdate(CREATE_INDEX_SQL);
-                    stmt.execute("PRAGMA journal_mode=WAL;");
-                }
-            } else {
-                try (Statement stmt = connection.createStatement()) {
-                    stmt.execute("PRAGMA journal_mode=WAL;");
                 }
             }
-            logger.info("init sqlite db success, path: {}, ttl: {}", this.path, ttl);
+            readConnections = new ArrayBlockingQueue<>(readConnectionSize);
+            for (int i = 0; i < readConnectionSize; ++i) {
+                readConnections.add(new SQLiteConnection(this.path, createConfig(true)));
+            }
+            logger.info("init sqlite db success, path: {}, ttl: {}, read connections: {}", this.path, ttl, readConnectionSize);
         } catch (Exception e) {
             logger.error("init sqlite db error, path: {}, ttl: {}", this.path, ttl, e);
             throw new RuntimeException(e);
         }
 
-        final SQLiteDeleteDataGentle sqLiteDeleteDataGentle = new SQLiteDeleteDataGentle(this);
+        sqLiteDeleteDataGentle = new SQLiteDeleteDataGentle(this);
         sqLiteDeleteDataGentle.start();
 
         Runtime.getRuntime().addShutdownHook(new Thread("sqlite resource claen") {
             @Override
             public void run() {
-                try {
-                    connection.close();
-                } catch (Exception e) {
-                    logger.error("close connection fail", e);
-                }
                 sqLiteDeleteDataGentle.destroy();
+                close();
             }
         });
     }
 
+    private static SQLiteConfig createConfig(boolean readOnly) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        //wal模式下normal只在checkpoint时fsync，宕机最多丢最近的事务，不会损坏数据库
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        config.setReadOnly(readOnly);
+        return config;
+    }
+
+    private SQLiteConnection borrowReadConnection() throws InterruptedException {
+        return readConnections.take();
+    }
+
+    private void returnReadConnection(SQLiteConnection connection) {
+        readConnections.offer(connection);
+        //close时正在使用的连接不在池里，归还时再关掉
+        if (closed && readConnections.remove(connection)) {
+            connection.close();
+        }
+    }
+
     @Override
     public String get(String key) {
-        PreparedStatement pstmt = null;
         ResultSet resultSet = null;
-        synchronized (connection) {
-            try {
-                pstmt = connection.prepareStatement(SELECT_SQL);
-                pstmt.setString(1, key);
-                resultSet = pstmt.executeQuery();
-                while (resultSet.next()) {
-                    final byte[] value = resultSet.getBytes("b_value");
-                    final int way = resultSet.getInt("b_compress_way");
-                    if (value != null) {
-                        return unCompress(value, way);
-                    }
+        SQLiteConnection connection = null;
+        try {
+            connection = borrowReadConnection();
+            final PreparedStatement pstmt = connection.prepare(SELECT_SQL);
+            pstmt.setString(1, key);
+            resultSet = pstmt.executeQuery();
+            while (resultSet.next()) {
+                final byte[] value = resultSet.getBytes("b_value");
+                final int way = resultSet.getInt("b_compress_way");
+                if (value != null) {
+                    return unCompress(value, way);
                 }
-                return null;
-            } catch (Exception e) {
-                logger.error("get value fail, key: {}", key, e);
-                return null;
-            } finally {
-                DataSourceHelper.closeResource(resultSet, pstmt);
+            }
+            return null;
+        } catch (Exception e) {
+            logger.error("get value fail, key: {}", key, e);
+            return null;
+        } finally {
+            DataSourceHelper.closeResource(resultSet);
+            if (connection != null) {
+                returnReadConnection(connection);
             }
         }
     }
 
     @Override
     public void put(String key, String value) {
-        PreparedStatement pstmt = null;
         final CompressData compressData = compress(value);
-        final long expire_time = System.currentTimeMillis() + this.ttl;
-        synchronized (connection) {
+        final long expire_time = System.currentTimeMillis() + ttl(key);
+        synchronized (writeConnection) {
             try {
-                pstmt = connection.prepareStatement(INSERT_SQL);
+                final PreparedStatement pstmt = writeConnection.prepare(INSERT_SQL);
                 pstmt.setString(1, key);
                 pstmt.setBytes(2, compressData.getData());
                 pstmt.setLong(3, expire_time);
                 pstmt.setInt(4, compressData.getWay());
                 pstmt.executeUpdate();
-            } catch (SQLException sqe) {
-                if (sqe.getErrorCode() == Codes.SQLITE_CONSTRAINT) {
-                    update(key, value);
-                } else {
-                    logger.error("insert into sqlite fail, key: {}, value; {}", key, value, sqe);
-                }
             } catch (Exception e) {
                 logger.error("insert into sqlite fail, key: {}, value; {}", key, value, e);
-            } finally {
-                DataSourceHelper.closeResource(pstmt);
             }
         }
     }
 
-    public void update(String key, String value) {
-        PreparedStatement pstmt = null;
-        final CompressData compressData = compress(value);
-        final long expire_time = System.currentTimeMillis() + this.ttl;
-        synchronized (connection) {
-            try {
-                pstmt = connection.prepareStatement(UPDATE_SQL);
-                pstmt.setBytes(1, compressData.getData());
-                pstmt.setLong(2, expire_time);
-                pstmt.setInt(3, compressData.getWay());
-                pstmt.setString(4, key);
-                pstmt.executeUpdate();
-            } catch (Exception e) {
-                logger.error("insert into sqlite fail, key: {}, value; {}", key, value, e);
-            } finally {
-                DataSourceHelper.closeResource(pstmt);
-            }
+    /**
+     * 监控预聚合数据的直方图保留时间比其它数据长
+     */
+    private long ttl(String key) {
+        if (key.startsWith(KvPrefixes.QMONITOR_ROLLUP_HISTOGRAM_PREFIX)) {
+            return TimeUnit.SECONDS.toMillis(KvPrefixes.QMONITOR_ROLLUP_TTL_SECONDS);
         }
+        return ttl;
     }
 
+    /**
+     * 整批数据在一个事务里写入，wal模式下写事务不会阻塞读
+     */
     @Override
     public void putBatch(Map<String, String> data) {
-        try {
-            final int batchSize = metaStore.getIntProperty("sqlite.batch.save.size", 100);
-            final long batchSleep = metaStore.getLongProperty("sqlite.batch.save.sleep.ms", 100);
-            List<Map.Entry<String, String>> batch = new ArrayList<>(batchSize);
-
-            int count = 0;
-            for (Map.Entry<String, String> entry : data.entrySet()) {
-                batch.add(entry);
-                if (++count >= batchSize) {
-                    doPutBatch(batch);
-                    batch.clear();
-                    count = 0;
-                    try {
-                        Thread.sleep(batchSleep);
-                    } catch (InterruptedException e) {
-                        logger.error("batch save fail, data: {}", data, e);
-                        break;
-                    }
-                }
-            }
-            if (!batch.isEmpty()) {
-                doPutBatch(batch);
-            }
-        } catch (Exception e) {
-            logger.error("batch insert into sqlite fail, data: {}", data, e);
+        if (data.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        List<Map.Entry<String, CompressData>> compressed = new ArrayList<>(data.size());
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            compressed.add(Maps.immutableEntry(entry.getKey(), compress(entry.getValue())));
         }
-    }
 
-    private void doPutBatch(List<Map.Entry<String, String>> batch) {
-        PreparedStatement pstmt = null;
-        boolean autoCommit = true;
-        final long expire_time = System.currentTimeMillis() + this.ttl;
-        synchronized (connection) {
+        synchronized (writeConnection) {
+            final Connection connection = writeConnection.getConnection();
+            boolean autoCommit = true;
             try {
                 autoCommit = connection.getAutoCommit();
                 connection.setAutoCommit(false);
 
-                pstmt = connection.prepareStatement(INSERT_SQL);
-                for (Map.Entry<String, String> entry : batch) {
-                    final CompressData compressData = compress(entry.getValue());
-                    pstmt.clearParameters();
+                final PreparedStatement pstmt = writeConnection.prepare(INSERT_SQL);
+                for (Map.Entry<String, CompressData> entry : compressed) {
+                    final CompressData compressData = entry.getValue();
                     pstmt.setString(1, entry.getKey());
                     pstmt.setBytes(2, compressData.getData());
-                    pstmt.setLong(3, expire_time);
+                    pstmt.setLong(3, now + ttl(entry.getKey()));
                     pstmt.setInt(4, compressData.getWay());
                     pstmt.addBatch();
                 }
@@ -230,80 +225,103 @@ public class SQLiteStoreImpl implements KvDb {
 
                 connection.commit();
             } catch (Exception e) {
-                logger.error("batch insert into sqlite fail, data: {}", batch, e);
+                logger.error("batch insert into sqlite fail, size: {}", data.size(), e);
+                try {
+                    connection.rollback();
+                } catch (Exception re) {
+                    logger.error("rollback batch insert fail", re);
+                }
             } finally {
                 try {
                     connection.setAutoCommit(autoCommit);
                 } catch (Exception e) {
                     logger.error("set auto commit fail, {}", autoCommit, e);
                 }
-                DataSourceHelper.closeResource(pstmt);
             }
         }
     }
 
-    public int delete(List<String> keys) {
-        PreparedStatement pstmt = null;
+    @Override
+    public KvIterator scan(String prefix) {
+        return range(prefix, KvIterators.prefixEnd(prefix));
+    }
 
-        String deleteSql = getDeleteSql(keys);
-        if (Strings.isNullOrEmpty(deleteSql)) {
-            return 0;
+    /**
+     * b_key是主键，范围查询走索引；结果全部读出来后再归还连接，不会在遍历期间占住连接
+     */
+    @Override
+    public KvIterator range(String from, String to) {
+        List<Map.Entry<String, String>> result = new ArrayList<>();
+        ResultSet resultSet = null;
+        SQLiteConnection connection = null;
+        try {
+            connection = borrowReadConnection();
+            final PreparedStatement pstmt = connection.prepare(to == null ? RANGE_FROM_SQL : RANGE_SQL);
+            pstmt.setString(1, from);
+            if (to != null) {
+                pstmt.setString(2, to);
+            }
+            resultSet = pstmt.executeQuery();
+            while (resultSet.next()) {
+                final String value = unCompress(resultSet.getBytes("b_value"), resultSet.getInt("b_compress_way"));
+                if (!Strings.isNullOrEmpty(value)) {
+                    result.add(Maps.immutableEntry(resultSet.getString("b_key"), value));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("range query fail, from: {}, to: {}", from, to, e);
+        } finally {
+            DataSourceHelper.closeResource(resultSet);
+            if (connection != null) {
+                returnReadConnection(connection);
+            }
         }
-        synchronized (connection) {
-            try {
-                pstmt = connection.prepareStatement(deleteSql);
-                return pstmt.executeUpdate();
-            } catch (Exception e) {
-                logger.error("clean expire data fail", e);
-                return 0;
-            } finally {
-                DataSourceHelper.closeResource(pstmt);
+        return KvIterators.of(result);
+    }
+
+    @Override
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("type", "sqlite");
+        stats.put("fileBytes", String.valueOf(new File(path).length()));
+        stats.put("walBytes", String.valueOf(new File(path + "-wal").length()));
+        stats.put("idleReadConnections", String.valueOf(readConnections.size()));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeConnection) {
+            if (closed) {
+                return;
             }
+            closed = true;
+            sqLiteDeleteDataGentle.stop();
+            writeConnection.close();
+        }
+        SQLiteConnection connection;
+        while ((connection = readConnections.poll()) != null) {
+            connection.close();
         }
     }
 
-    public List<String> expireKey(long expireTimestamp, int limit) {
-        List<String> res = Lists.newArrayList();
-        PreparedStatement pstmt = null;
-        ResultSet resultSet = null;
-        synchronized (connection) {
+    /**
+     * 删除过期数据，每次最多删除limit条，每次删除是一个单独的短事务
+     *
+     * @return 实际删除的条数
+     */
+    public int deleteExpired(long expireTimestamp, int limit) {
+        synchronized (writeConnection) {
             try {
-                pstmt = connection.prepareStatement(QUERY_EXPIRE_KEY);
+                final PreparedStatement pstmt = writeConnection.prepare(DELETE_EXPIRE_SQL);
                 pstmt.setLong(1, expireTimestamp);
                 pstmt.setInt(2, limit);
-                resultSet = pstmt.executeQuery();
-                while (resultSet.next()) {
-                    res.add(resultSet.getString("b_key"));
-                }
-                return res;
+                return pstmt.executeUpdate();
             } catch (Exception e) {
-                logger.error("get expire key fail", e);
-                return res;
-            } finally {
-                DataSourceHelper.closeResource(resultSet, pstmt);
-            }
-        }
-    }
-
-    private static String getDeleteSql(List<String> keys) {
-        List<String> newKeys = Lists.transform(keys, new Function<String, String>() {
-            @Override
-            public String apply(String input) {
-                return "'" + input + "'";
+                logger.error("clean expire data fail", e);
+                return 0;
             }
-        });
-        StringBuilder sb = new StringBuilder("delete from bistoury where b_key in (");
-
-        Joiner joiner = Joiner.on(",").skipNulls();
-
-        HashSet<String> set = Sets.newHashSet(newKeys);
-        if (set.size() == 0) {
-            return null;
         }
-
-        joiner.appendTo(sb, set);
-        sb.append(")");
-        return sb.toString();
     }
 
     private CompressData compress(final String data) {
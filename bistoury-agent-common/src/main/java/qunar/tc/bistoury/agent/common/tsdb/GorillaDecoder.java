@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link GorillaEncoder}的逆过程，按顺序读出每个点
+ */
+class GorillaDecoder {
+
+    private final ByteBuffer buffer;
+
+    private final int offset;
+
+    private final long start;
+
+    private final int total;
+
+    private int bitPosition;
+
+    private int count;
+
+    private long timestamp;
+
+    private long delta;
+
+    private long value;
+
+    private int leading = -1;
+
+    private int trailing;
+
+    GorillaDecoder(ByteBuffer buffer, int offset, long start, int total) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.start = start;
+        this.total = total;
+    }
+
+    boolean hasNext() {
+        return count < total;
+    }
+
+    /**
+     * 读出下一个点，通过{@link #getTimestamp()}和{@link #getValue()}拿到结果
+     */
+    void next() {
+        if (count == 0) {
+            timestamp = start + readBits(32);
+            value = readBits(64);
+            delta = 0;
+        } else {
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            value ^= readXor();
+        }
+        count++;
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(7), 7);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(9), 9);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(12), 12);
+        }
+        return (int) readBits(32);
+    }
+
+    /**
+     * 和编码时的区间对应，例如7bit表示[-63, 64]
+     */
+    private static long signed(long bits, int n) {
+        long half = 1L << (n - 1);
+        return bits > half ? bits - (1L << n) : bits;
+    }
+
+    private long readXor() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return readBits(64 - leading - trailing) << trailing;
+        }
+        leading = (int) readBits(5);
+        int significant = (int) readBits(6) + 1;
+        trailing = 64 - leading - significant;
+        return readBits(significant) << trailing;
+    }
+
+    private long readBits(int n) {
+        long result = 0;
+        while (n > 0) {
+            int index = offset + (bitPosition >>> 3);
+            int used = bitPosition & 7;
+            int available = 8 - used;
+            int take = Math.min(available, n);
+            int bits = (buffer.get(index) >>> (available - take)) & ((1 << take) - 1);
+            result = (result << take) | bits;
+            n -= take;
+            bitPosition += take;
+        }
+        return result;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    double getValue() {
+        return Double.longBitsToDouble(value);
+    }
+
+    int getBitPosition() {
+        return bitPosition;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getDelta() {
+        return delta;
+    }
+
+    int getLeading() {
+        return leading;
+    }
+
+    int getTrailing() {
+        return trailing;
+    }
+}
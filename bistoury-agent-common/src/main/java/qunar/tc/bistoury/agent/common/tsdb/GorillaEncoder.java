@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * gorilla压缩：时间戳存delta of delta，值存和上一个值的异或
+ * <p>
+ * 每分钟一个点的数据，时间戳通常只要1bit，值不变时也只要1bit
+ */
+class GorillaEncoder {
+
+    /**
+     * 一个点最多占用的bit数：4 + 32 + 2 + 5 + 6 + 64
+     */
+    static final int MAX_POINT_BYTES = 15;
+
+    private ByteBuffer buffer;
+
+    private final int offset;
+
+    private final long start;
+
+    private int bitLength;
+
+    private int count;
+
+    private long prevTimestamp;
+
+    private long prevDelta;
+
+    private long prevValue;
+
+    private int prevLeading = -1;
+
+    private int prevTrailing;
+
+    GorillaEncoder(ByteBuffer buffer, int offset, long start) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.start = start;
+    }
+
+    /**
+     * 从已经写入的数据恢复状态，继续追加
+     */
+    GorillaEncoder(ByteBuffer buffer, int offset, long start, GorillaDecoder decoder) {
+        this(buffer, offset, start);
+        this.bitLength = decoder.getBitPosition();
+        this.count = decoder.getCount();
+        this.prevTimestamp = decoder.getTimestamp();
+        this.prevDelta = decoder.getDelta();
+        this.prevValue = Double.doubleToRawLongBits(decoder.getValue());
+        this.prevLeading = decoder.getLeading();
+        this.prevTrailing = decoder.getTrailing();
+    }
+
+    void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return 时间戳不大于上一个点时不写入，返回false
+     */
+    boolean append(long timestamp, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            writeBits(timestamp - start, 32);
+            writeBits(bits, 64);
+            prevDelta = 0;
+        } else {
+            if (timestamp <= prevTimestamp) {
+                return false;
+            }
+            long delta = timestamp - prevTimestamp;
+            writeDeltaOfDelta(delta - prevDelta);
+            writeValue(bits ^ prevValue);
+            prevDelta = delta;
+        }
+        prevTimestamp = timestamp;
+        prevValue = bits;
+        count++;
+        return true;
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            writeBits(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            writeBits(0x2, 2);
+            writeBits(dod & 0x7F, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            writeBits(0x6, 3);
+            writeBits(dod & 0x1FF, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            writeBits(0xE, 4);
+            writeBits(dod & 0xFFF, 12);
+        } else {
+            writeBits(0xF, 4);
+            writeBits(dod & 0xFFFFFFFFL, 32);
+        }
+    }
+
+    private void writeValue(long xor) {
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+            writeBits(0x2, 2);
+            writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+        } else {
+            int significant = 64 - leading - trailing;
+            writeBits(0x3, 2);
+            writeBits(leading, 5);
+            writeBits(significant - 1, 6);
+            writeBits(xor >>> trailing, significant);
+            prevLeading = leading;
+            prevTrailing = trailing;
+        }
+    }
+
+    private void writeBits(long value, int n) {
+        while (n > 0) {
+            int index = offset + (bitLength >>> 3);
+            int used = bitLength & 7;
+            int free = 8 - used;
+            int take = Math.min(free, n);
+            int bits = (int) ((value >>> (n - take)) & ((1 << take) - 1));
+            int current = used == 0 ? 0 : buffer.get(index) & (0xFF << free);
+            buffer.put(index, (byte) (current | (bits << (free - take))));
+            n -= take;
+            bitLength += take;
+        }
+    }
+
+    int getBitLength() {
+        return bitLength;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return 已经写入的数据占用的字节数
+     */
+    int getByteLength() {
+        return (bitLength + 7) >>> 3;
+    }
+}
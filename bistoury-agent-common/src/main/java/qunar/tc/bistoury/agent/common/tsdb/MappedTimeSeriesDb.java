@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.common.FileUtil;
+import qunar.tc.bistoury.common.NamedThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个序列一个目录，按时间窗口切分成segment文件，只有当前窗口的segment打开写入
+ * <p>
+ * 过期数据按整个segment文件删除，不需要compaction；可以按序列名前缀设置不同的保留时间
+ */
+public class MappedTimeSeriesDb implements TimeSeriesDb {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedTimeSeriesDb.class);
+
+    private static final int MAX_SERIES_NAME_BYTES = 1024;
+
+    private static final int MAX_DIR_NAME_LENGTH = 160;
+
+    private final File root;
+
+    private final long segmentMillis;
+
+    private final long retentionMillis;
+
+    /**
+     * 序列名前缀 -> 保留时间，按前缀从长到短排列，第一个匹配的生效，都不匹配时用retentionMillis
+     */
+    private final Map<String, Long> prefixRetentionMillis;
+
+    private final ConcurrentMap<String, Series> seriesMap = new ConcurrentHashMap<>();
+
+    /**
+     * 每个打开的segment占一个fd和一段mmap，按最近写入的顺序最多保留这么多个，其它的关掉，下次写入时再打开
+     */
+    private final int maxOpenSegments;
+
+    private final LinkedHashMap<Series, Boolean> openSeries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ScheduledExecutorService cleanExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("clean_time_series_expire_data"));
+
+    public MappedTimeSeriesDb(String path, long segmentMillis, long retentionMillis) {
+        this(path, segmentMillis, retentionMillis, Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * @param prefixRetentionMillis 序列名前缀 -> 保留时间，需要在创建时给出，后台清理从创建时就开始了
+     */
+    public MappedTimeSeriesDb(String path, long segmentMillis, long retentionMillis, Map<String, Long> prefixRetentionMillis) {
+        this(path, segmentMillis, retentionMillis, prefixRetentionMillis, Integer.getInteger("bistoury.store.tsdb.max.open.segments", 128));
+    }
+
+    MappedTimeSeriesDb(String path, long segmentMillis, long retentionMillis, int maxOpenSegments) {
+        this(path, segmentMillis, retentionMillis, Collections.<String, Long>emptyMap(), maxOpenSegments);
+    }
+
+    MappedTimeSeriesDb(String path, long segmentMillis, long retentionMillis, Map<String, Long> prefixRetentionMillis, int maxOpenSegments) {
+        Preconditions.checkArgument(segmentMillis > 0 && segmentMillis <= Integer.MAX_VALUE, "illegal segment millis %s", segmentMillis);
+        Preconditions.checkArgument(maxOpenSegments > 0, "illegal max open segments %s", maxOpenSegments);
+        this.maxOpenSegments = maxOpenSegments;
+        FileUtil.ensureDirectoryExists(path);
+        this.root = new File(path);
+        this.segmentMillis = segmentMillis;
+        this.retentionMillis = retentionMillis;
+        this.prefixRetentionMillis = sortByPrefixLength(prefixRetentionMillis);
+        load();
+
+        cleanExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteExpired(System.currentTimeMillis());
+                } catch (Throwable e) {
+                    logger.error("delete expired time series error", e);
+                }
+            }
+        }, 0, 1, TimeUnit.HOURS);
+
+        Runtime.getRuntime().addShutdownHook(new Thread("time series db close") {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+        logger.info("open time series db success, path: {}, series: {}, retention: {}ms, prefix retention: {}",
+                path, seriesMap.size(), retentionMillis, this.prefixRetentionMillis);
+    }
+
+    private static Map<String, Long> sortByPrefixLength(Map<String, Long> prefixRetentionMillis) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(prefixRetentionMillis.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getKey().length() - o1.getKey().length();
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private void load() {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        for (File dir : dirs) {
+            File[] segments = listSegments(dir);
+            if (segments.length == 0) {
+                continue;
+            }
+            try {
+                String name = Segment.readName(segments[segments.length - 1]);
+                seriesMap.put(name, new Series(name, dir));
+            } catch (IOException e) {
+                logger.warn("load time series error, dir: {}", dir, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean append(String name, long timestamp, double value) {
+        while (true) {
+            Series series = getOrCreate(name);
+            boolean result;
+            synchronized (series) {
+                if (series.removed) {
+                    continue;
+                }
+                result = series.append(timestamp, value);
+            }
+            closeEldest(series);
+            return result;
+        }
+    }
+
+    /**
+     * 不能在持有series锁的时候去锁别的series，关闭放在append之外
+     */
+    private void closeEldest(Series recent) {
+        List<Series> eldest = null;
+        synchronized (openSeries) {
+            openSeries.put(recent, Boolean.TRUE);
+            Iterator<Series> iterator = openSeries.keySet().iterator();
+            while (openSeries.size() > maxOpenSegments && iterator.hasNext()) {
+                Series series = iterator.next();
+                iterator.remove();
+                if (eldest == null) {
+                    eldest = new ArrayList<>();
+                }
+                eldest.add(series);
+            }
+        }
+
+        if (eldest != null) {
+            for (Series series : eldest) {
+                synchronized (series) {
+                    series.closeActive();
+                }
+            }
+        }
+    }
+
+    private Series getOrCreate(String name) {
+        Series series = seriesMap.get(name);
+        if (series != null) {
+            return series;
+        }
+        Preconditions.checkArgument(name.getBytes(Charsets.UTF_8).length <= MAX_SERIES_NAME_BYTES, "series name too long: %s", name);
+        series = new Series(name, new File(root, dirName(name)));
+        Series old = seriesMap.putIfAbsent(name, series);
+        return old == null ? series : old;
+    }
+
+    /**
+     * 序列名做url编码作为目录名，太长时截断后加hash，真实的名字在segment文件头中
+     */
+    private static String dirName(String name) {
+        String encoded;
+        try {
+            encoded = URLEncoder.encode(name, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        if (encoded.length() <= MAX_DIR_NAME_LENGTH) {
+            return encoded;
+        }
+        return encoded.substring(0, MAX_DIR_NAME_LENGTH) + "~" + Hashing.murmur3_128().hashString(name, Charsets.UTF_8);
+    }
+
+    @Override
+    public List<DataPoint> query(String name, long from, long to) {
+        Series series = seriesMap.get(name);
+        if (series == null || from >= to) {
+            return Collections.emptyList();
+        }
+        return series.query(from, to);
+    }
+
+    @Override
+    public Map<String, List<DataPoint>> queryPrefix(String prefix, long from, long to) {
+        Map<String, List<DataPoint>> result = new TreeMap<>();
+        for (Series series : seriesMap.values()) {
+            if (series.name.startsWith(prefix)) {
+                List<DataPoint> points = series.query(from, to);
+                if (!points.isEmpty()) {
+                    result.put(series.name, points);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long firstTimestamp(String name) {
+        Series series = seriesMap.get(name);
+        if (series == null) {
+            return -1;
+        }
+        List<DataPoint> first = series.query(0, Long.MAX_VALUE, 1);
+        return first.isEmpty() ? -1 : first.get(0).getTimestamp();
+    }
+
+    @Override
+    public long getRetention(String name) {
+        for (Map.Entry<String, Long> entry : prefixRetentionMillis.entrySet()) {
+            if (name.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return retentionMillis;
+    }
+
+    @Override
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        int segments = 0;
+        long bytes = 0;
+        for (Series series : seriesMap.values()) {
+            for (File file : listSegments(series.dir)) {
+                segments++;
+                bytes += file.length();
+            }
+        }
+        stats.put("series", String.valueOf(seriesMap.size()));
+        stats.put("segments", String.valueOf(segments));
+        stats.put("bytes", String.valueOf(bytes));
+        synchronized (openSeries) {
+            stats.put("openSegments", String.valueOf(openSeries.size()));
+        }
+        return stats;
+    }
+
+    void deleteExpired(long now) {
+        for (Series series : seriesMap.values()) {
+            long expireBefore = now - getRetention(series.name);
+            synchronized (series) {
+                series.deleteExpired(now, expireBefore);
+                if (series.active == null && listSegments(series.dir).length == 0) {
+                    series.removed = true;
+                    seriesMap.remove(series.name, series);
+                    synchronized (openSeries) {
+                        openSeries.remove(series);
+                    }
+                    if (!series.dir.delete() && series.dir.exists()) {
+                        logger.warn("delete time series dir fail, {}", series.dir);
+                    }
+                }
+            }
+        }
+    }
+
+    void close() {
+        cleanExecutor.shutdownNow();
+        for (Series series : seriesMap.values()) {
+            synchronized (series) {
+                series.closeActive();
+            }
+        }
+        synchronized (openSeries) {
+            openSeries.clear();
+        }
+    }
+
+    private static File[] listSegments(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (Segment.parseStart(file) >= 0) {
+                segments.add(file);
+            }
+        }
+        File[] result = segments.toArray(new File[segments.size()]);
+        Arrays.sort(result, SegmentStartComparator.INSTANCE);
+        return result;
+    }
+
+    private enum SegmentStartComparator implements Comparator<File> {
+        INSTANCE;
+
+        @Override
+        public int compare(File o1, File o2) {
+            long start1 = Segment.parseStart(o1);
+            long start2 = Segment.parseStart(o2);
+            return start1 < start2 ? -1 : (start1 == start2 ? 0 : 1);
+        }
+    }
+
+    private class Series {
+
+        private final String name;
+
+        private final File dir;
+
+        private Segment active;
+
+        private boolean removed = false;
+
+        private Series(String name, File dir) {
+            this.name = name;
+            this.dir = dir;
+        }
+
+        private boolean append(long timestamp, double value) {
+            long start = timestamp - timestamp % segmentMillis;
+            try {
+                if (active == null || active.getStart() != start) {
+                    if (active != null && start < active.getStart()) {
+                        return false;
+                    }
+                    closeActive();
+                    active = open(start);
+                }
+                return active.append(timestamp, value);
+            } catch (IOException e) {
+                logger.error("append time series error, series: {}", name, e);
+                closeActive();
+                return false;
+            }
+        }
+
+        private Segment open(long start) throws IOException {
+            FileUtil.ensureDirectoryExists(dir.getPath());
+            File file = Segment.file(dir, start);
+            try {
+                return Segment.openForAppend(file, name, start);
+            } catch (IOException e) {
+                logger.warn("open time series segment error, recreate it, {}", file, e);
+                if (!file.delete()) {
+                    throw e;
+                }
+                return Segment.openForAppend(file, name, start);
+            }
+        }
+
+        private List<DataPoint> query(long from, long to) {
+            return query(from, to, Integer.MAX_VALUE);
+        }
+
+        private List<DataPoint> query(long from, long to, int limit) {
+            List<DataPoint> result = new ArrayList<>();
+            for (File file : listSegments(dir)) {
+                long start = Segment.parseStart(file);
+                if (start + segmentMillis <= from || start >= to) {
+                    continue;
+                }
+                try {
+                    if (!readActive(start, from, to, result)) {
+                        Segment.read(file, from, to, result);
+                    }
+                } catch (IOException e) {
+                    logger.warn("read time series segment error, {}", file, e);
+                }
+                if (result.size() >= limit) {
+                    return result.subList(0, limit);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 正在写入的segment从mmap中读，不读文件
+         */
+        private synchronized boolean readActive(long start, long from, long to, List<DataPoint> result) {
+            if (active != null && active.getStart() == start) {
+                active.read(from, to, result);
+                return true;
+            }
+            return false;
+        }
+
+        private void deleteExpired(long now, long expireBefore) {
+            if (active != null && active.getStart() + segmentMillis <= now) {
+                closeActive();
+            }
+            for (File file : listSegments(dir)) {
+                if (Segment.parseStart(file) + segmentMillis <= expireBefore && !file.delete()) {
+                    logger.warn("delete expired time series segment fail, {}", file);
+                }
+            }
+        }
+
+        private void closeActive() {
+            if (active == null) {
+                return;
+            }
+            try {
+                active.close();
+            } catch (IOException e) {
+                logger.warn("close time series segment error, {}", active.getFile(), e);
+            }
+            active = null;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * 一个序列在一个时间窗口内的数据，一个文件
+ * <p>
+ * 文件格式：magic(4) version(2) nameLength(2) start(8) count(4) bitLength(4) name data
+ * <p>
+ * 正在写入的segment使用mmap，每写一个点先写数据再更新count和bitLength，进程退出时最多丢掉最后一个点
+ */
+class Segment {
+
+    static final String SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x42545344;
+
+    private static final short VERSION = 1;
+
+    private static final int START_POSITION = 8;
+
+    private static final int COUNT_POSITION = 16;
+
+    private static final int BIT_LENGTH_POSITION = 20;
+
+    private static final int HEADER_LENGTH = 24;
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final File file;
+
+    private final String name;
+
+    private final long start;
+
+    private final int dataOffset;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private MappedByteBuffer buffer;
+
+    private final GorillaEncoder encoder;
+
+    private Segment(File file, String name, long start, int dataOffset, RandomAccessFile randomAccessFile, MappedByteBuffer buffer, GorillaEncoder encoder) {
+        this.file = file;
+        this.name = name;
+        this.start = start;
+        this.dataOffset = dataOffset;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        this.encoder = encoder;
+    }
+
+    static File file(File dir, long start) {
+        return new File(dir, start + SUFFIX);
+    }
+
+    /**
+     * @return 不是segment文件时返回-1
+     */
+    static long parseStart(File file) {
+        String fileName = file.getName();
+        if (!fileName.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 打开segment用于追加，文件不存在时创建
+     */
+    static Segment openForAppend(File file, String name, long start) throws IOException {
+        boolean exists = file.exists() && file.length() >= HEADER_LENGTH;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (!exists) {
+                byte[] nameBytes = name.getBytes(Charsets.UTF_8);
+                MappedByteBuffer buffer = map(randomAccessFile, INITIAL_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) nameBytes.length);
+                buffer.putLong(START_POSITION, start);
+                buffer.putInt(COUNT_POSITION, 0);
+                buffer.putInt(BIT_LENGTH_POSITION, 0);
+                buffer.position(HEADER_LENGTH);
+                buffer.put(nameBytes);
+                int dataOffset = HEADER_LENGTH + nameBytes.length;
+                return new Segment(file, name, start, dataOffset, randomAccessFile, buffer, new GorillaEncoder(buffer, dataOffset, start));
+            }
+
+            MappedByteBuffer buffer = map(randomAccessFile, Math.max(INITIAL_CAPACITY, (int) randomAccessFile.length()));
+            checkMagic(file, buffer);
+            int dataOffset = HEADER_LENGTH + buffer.getShort(6);
+            GorillaDecoder decoder = new GorillaDecoder(buffer, dataOffset, start, buffer.getInt(COUNT_POSITION));
+            while (decoder.hasNext()) {
+                decoder.next();
+            }
+            return new Segment(file, name, start, dataOffset, randomAccessFile, buffer, new GorillaEncoder(buffer, dataOffset, start, decoder));
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    private static MappedByteBuffer map(RandomAccessFile randomAccessFile, int capacity) throws IOException {
+        return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private static void checkMagic(File file, ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            throw new IOException("illegal time series segment: " + file);
+        }
+    }
+
+    boolean append(long timestamp, double value) throws IOException {
+        ensureCapacity();
+        if (!encoder.append(timestamp, value)) {
+            return false;
+        }
+        buffer.putInt(BIT_LENGTH_POSITION, encoder.getBitLength());
+        buffer.putInt(COUNT_POSITION, encoder.getCount());
+        return true;
+    }
+
+    private void ensureCapacity() throws IOException {
+        int required = dataOffset + encoder.getByteLength() + GorillaEncoder.MAX_POINT_BYTES;
+        if (required > buffer.capacity()) {
+            buffer = map(randomAccessFile, buffer.capacity() * 2);
+            encoder.setBuffer(buffer);
+        }
+    }
+
+    void read(long from, long to, List<DataPoint> result) {
+        read(buffer, dataOffset, start, buffer.getInt(COUNT_POSITION), from, to, result);
+    }
+
+    /**
+     * 读取已经不再写入的segment
+     */
+    static void read(File file, long from, long to, List<DataPoint> result) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.toByteArray(file));
+        checkMagic(file, buffer);
+        read(buffer, HEADER_LENGTH + buffer.getShort(6), buffer.getLong(START_POSITION), buffer.getInt(COUNT_POSITION), from, to, result);
+    }
+
+    private static void read(ByteBuffer buffer, int dataOffset, long start, int count, long from, long to, List<DataPoint> result) {
+        GorillaDecoder decoder = new GorillaDecoder(buffer, dataOffset, start, count);
+        while (decoder.hasNext()) {
+            decoder.next();
+            long timestamp = decoder.getTimestamp();
+            if (timestamp >= to) {
+                return;
+            }
+            if (timestamp >= from) {
+                result.add(new DataPoint(timestamp, decoder.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @return segment中保存的序列名
+     */
+    static String readName(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] header = new byte[HEADER_LENGTH];
+            randomAccessFile.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            checkMagic(file, buffer);
+            byte[] name = new byte[buffer.getShort(6)];
+            randomAccessFile.readFully(name);
+            return new String(name, Charsets.UTF_8);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * 不再写入，文件截断到实际使用的长度
+     */
+    void close() throws IOException {
+        try {
+            buffer.force();
+            buffer = null;
+            randomAccessFile.setLength(dataOffset + encoder.getByteLength());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按时间序列存储的数值型指标，一个序列由名字区分，每个点是(时间戳, 值)
+ * <p>
+ * 同一序列的时间戳必须递增写入
+ */
+public interface TimeSeriesDb {
+
+    /**
+     * @return 时间戳不大于该序列上一个点时丢弃，返回false
+     */
+    boolean append(String series, long timestamp, double value);
+
+    /**
+     * 查询[from, to)区间内的点，按时间排序
+     */
+    List<DataPoint> query(String series, long from, long to);
+
+    /**
+     * 查询所有以prefix开头的序列在[from, to)区间内的点，没有点的序列不返回
+     */
+    Map<String, List<DataPoint>> queryPrefix(String prefix, long from, long to);
+
+    /**
+     * @return 序列中最早的点的时间戳，没有数据时返回-1
+     */
+    long firstTimestamp(String series);
+
+    /**
+     * @return 序列数据的保留时间，更早的数据会被删除
+     */
+    long getRetention(String series);
+
+    Map<String, String> getStats();
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import com.google.common.collect.ImmutableMap;
+import qunar.tc.bistoury.clientside.common.store.BistouryStore;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class TimeSeriesDbs {
+
+    private static final String TSDB = "tsdb";
+
+    private static final TimeSeriesDb timeSeriesDb;
+
+    static {
+        long retentionHours = Long.getLong("bistoury.store.tsdb.retention.hours", TimeUnit.DAYS.toHours(3));
+        //监控预聚合的点少，保留更久，查询一周、一个月的数据时使用
+        Map<String, Long> prefixRetention = ImmutableMap.of(
+                TimeSeriesPrefixes.QMONITOR_FIVE_MINUTES, retentionDays("qmonitor.5m", 7),
+                TimeSeriesPrefixes.QMONITOR_HOUR, retentionDays("qmonitor.1h", 30),
+                TimeSeriesPrefixes.QMONITOR_DAY, retentionDays("qmonitor.1d", 90));
+        timeSeriesDb = new MappedTimeSeriesDb(BistouryStore.getStorePath(TSDB), TimeUnit.DAYS.toMillis(1), TimeUnit.HOURS.toMillis(retentionHours), prefixRetention);
+    }
+
+    private static long retentionDays(String name, int defaultDays) {
+        return TimeUnit.DAYS.toMillis(Integer.getInteger("bistoury.store.tsdb." + name + ".retention.days", defaultDays));
+    }
+
+    public static TimeSeriesDb getTimeSeriesDb() {
+        return timeSeriesDb;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.tsdb;
+
+/**
+ * 写到时间序列存储里的各类数据的序列名前缀，可以按前缀设置不同的保留时间
+ */
+public class TimeSeriesPrefixes {
+
+    //QMonitorStore的分钟数据
+    public static final String QMONITOR_MINUTE = "qm.";
+
+    //监控数据预聚合的点，值和分钟数两个序列都以这些前缀开头
+    public static final String QMONITOR_FIVE_MINUTES = "qm5m";
+
+    public static final String QMONITOR_HOUR = "qm1h";
+
+    public static final String QMONITOR_DAY = "qm1d";
+
+    private TimeSeriesPrefixes() {
+    }
+}
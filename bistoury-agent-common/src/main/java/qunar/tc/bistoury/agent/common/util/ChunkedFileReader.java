@@ -0,0 +1,125 @@
+package qunar.tc.bistoury.agent.common.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CHUNK_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_ID_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_LENGTH_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_OFFSET_HEADER;
+
+/**
+ * 从指定位置开始按chunk读取文件，每个chunk带上offset和crc32，读完后给出整个文件的crc32
+ * <p>
+ * 从非0位置续传时会先把前面的部分读一遍算出crc，接收方拿到的整个文件的crc和从头传输时一致
+ */
+public class ChunkedFileReader implements Closeable {
+
+    private static final int SKIP_BUFFER_SIZE = 64 * 1024;
+
+    private final String fileId;
+
+    private final InputStream inputStream;
+
+    private final CRC32 fileCrc = new CRC32();
+
+    private final CRC32 chunkCrc = new CRC32();
+
+    private long offset;
+
+    private long chunkOffset;
+
+    private long length;
+
+    public ChunkedFileReader(File file, long offset) throws IOException {
+        Preconditions.checkArgument(offset >= 0 && offset <= file.length(),
+                "illegal offset %s, file %s length %s", offset, file.getAbsolutePath(), file.length());
+        this.fileId = fileId(file);
+        this.inputStream = new FileInputStream(file);
+        this.offset = offset;
+        this.chunkOffset = offset;
+        try {
+            skip(offset);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static String fileId(File file) throws IOException {
+        String key = file.getCanonicalPath() + ":" + file.length() + ":" + file.lastModified();
+        return Hashing.murmur3_128().hashUnencodedChars(key).toString();
+    }
+
+    private void skip(long offset) throws IOException {
+        byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+        long remain = offset;
+        while (remain > 0) {
+            int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remain));
+            if (read == -1) {
+                throw new IOException("file truncated while skip to offset " + offset);
+            }
+            fileCrc.update(buffer, 0, read);
+            remain -= read;
+        }
+    }
+
+    /**
+     * @return 读到的字节数，-1表示文件已经读完
+     */
+    public int read(byte[] buffer) throws IOException {
+        int read = inputStream.read(buffer);
+        if (read <= 0) {
+            if (read == -1) {
+                length = offset;
+            }
+            return read;
+        }
+
+        chunkOffset = offset;
+        chunkCrc.reset();
+        chunkCrc.update(buffer, 0, read);
+        fileCrc.update(buffer, 0, read);
+        offset += read;
+        return read;
+    }
+
+    /**
+     * @return 最近一次read的chunk对应的response header
+     */
+    public Map<String, String> chunkHeader() {
+        return ImmutableMap.of(
+                FILE_ID_HEADER, fileId,
+                FILE_OFFSET_HEADER, String.valueOf(chunkOffset),
+                FILE_CHUNK_CRC_HEADER, String.valueOf(chunkCrc.getValue()));
+    }
+
+    /**
+     * @return 文件读完后的response header，带上文件长度和整个文件的crc32
+     */
+    public Map<String, String> endHeader() {
+        return ImmutableMap.of(
+                FILE_ID_HEADER, fileId,
+                FILE_LENGTH_HEADER, String.valueOf(length),
+                FILE_CRC_HEADER, String.valueOf(fileCrc.getValue()));
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
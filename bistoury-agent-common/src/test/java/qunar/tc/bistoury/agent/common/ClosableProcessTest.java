@@ -0,0 +1,69 @@
+package qunar.tc.bistoury.agent.common;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+public class ClosableProcessTest {
+
+    @Test
+    public void testReadNotBlockWhenNoOutput() throws Exception {
+        NormalProcess process = new NormalProcess(start("sleep 5"));
+        try {
+            long start = System.nanoTime();
+            byte[] bytes = process.read();
+            Assert.assertEquals(0, bytes.length);
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        } finally {
+            process.close();
+        }
+    }
+
+    @Test
+    public void testRateLimitNotBlock() throws Exception {
+        NormalProcess process = new NormalProcess(start("sleep 5"));
+        try {
+            //每秒只允许16次read，超过的部分直接返回空数据而不是等待
+            long start = System.nanoTime();
+            for (int i = 0; i < 100; ++i) {
+                Assert.assertEquals(0, process.read().length);
+            }
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        } finally {
+            process.close();
+        }
+    }
+
+    @Test
+    public void testNormalProcessReadAll() throws Exception {
+        Assert.assertEquals("helloworld", readAll(new NormalProcess(start("printf hello; sleep 0.2; printf world"))));
+    }
+
+    @Test
+    public void testWrappedProcessReadAll() throws Exception {
+        Assert.assertEquals("helloworld", readAll(ClosableProcesses.wrap(start("printf hello; sleep 0.2; printf world"))));
+    }
+
+    private static Process start(String command) throws Exception {
+        return new ProcessBuilder("sh", "-c", command).redirectErrorStream(true).start();
+    }
+
+    private static String readAll(ClosableProcess process) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        try {
+            byte[] bytes;
+            while ((bytes = process.read()) != null) {
+                out.write(bytes);
+                Assert.assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            process.close();
+        }
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package qunar.tc.bistoury.agent.common.cpujstack;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ThreadCpuRingBufferTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    @Test
+    public void testEmpty() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(4, 4);
+        Assert.assertTrue(ringBuffer.topN(0, 10).isEmpty());
+        Assert.assertTrue(ringBuffer.history(1, 0).isEmpty());
+    }
+
+    @Test
+    public void testWeightByDuration() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(4, 4);
+        ringBuffer.record(START + 1000, 1000, ImmutableMap.of(1, 100, 2, 800));
+        ringBuffer.record(START + 4000, 3000, ImmutableMap.of(1, 500));
+
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(1, top.get(0).getThreadId());
+        Assert.assertEquals((100 * 1000 + 500 * 3000) / 4000, top.get(0).getAvgUsage());
+        Assert.assertEquals(500, top.get(0).getMaxUsage());
+        //没有记录到的采样按0算，时间仍然计入总时间
+        Assert.assertEquals(2, top.get(1).getThreadId());
+        Assert.assertEquals(800 * 1000 / 4000, top.get(1).getAvgUsage());
+        Assert.assertEquals(800, top.get(1).getMaxUsage());
+    }
+
+    @Test
+    public void testTopN() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(4, 8);
+        ringBuffer.record(START, 1000, ImmutableMap.of(1, 10, 2, 30, 3, 20, 4, 40));
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 2);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(4, top.get(0).getThreadId());
+        Assert.assertEquals(2, top.get(1).getThreadId());
+    }
+
+    @Test
+    public void testSkipIdleAndKeepBusiestThreads() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(4, 3);
+        Map<Integer, Integer> usages = new HashMap<>();
+        for (int i = 1; i <= 10; ++i) {
+            usages.put(i, i * 10);
+        }
+        usages.put(11, 0);
+        ringBuffer.record(START, 1000, usages);
+
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(3, top.size());
+        Assert.assertEquals(10, top.get(0).getThreadId());
+        Assert.assertEquals(9, top.get(1).getThreadId());
+        Assert.assertEquals(8, top.get(2).getThreadId());
+
+        ringBuffer.record(START + 1000, 1000, ImmutableMap.of(11, 0, 12, 0));
+        Assert.assertEquals(0, ringBuffer.history(11, 0).get(1).getUsage());
+    }
+
+    @Test
+    public void testWrapAround() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(3, 2);
+        for (int i = 0; i < 7; ++i) {
+            ringBuffer.record(START + i * 1000, 1000, ImmutableMap.of(1, (i + 1) * 100));
+        }
+
+        //只剩最近3次采样，按时间顺序
+        List<ThreadCpuRingBuffer.CpuSample> history = ringBuffer.history(1, 0);
+        Assert.assertEquals(3, history.size());
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertEquals(START + (i + 4) * 1000, history.get(i).getTimestamp());
+            Assert.assertEquals((i + 5) * 100, history.get(i).getUsage());
+        }
+
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(600, top.get(0).getAvgUsage());
+        Assert.assertEquals(700, top.get(0).getMaxUsage());
+    }
+
+    @Test
+    public void testOverwriteSlot() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(2, 4);
+        ringBuffer.record(START, 1000, ImmutableMap.of(1, 100, 2, 200, 3, 300));
+        ringBuffer.record(START + 1000, 1000, ImmutableMap.of(1, 100));
+        //覆盖第一个slot，线程数变少，之前的线程不能残留
+        ringBuffer.record(START + 2000, 1000, ImmutableMap.of(4, 400));
+
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(4, top.get(0).getThreadId());
+        Assert.assertEquals(200, top.get(0).getAvgUsage());
+        Assert.assertEquals(1, top.get(1).getThreadId());
+        Assert.assertEquals(50, top.get(1).getAvgUsage());
+    }
+
+    @Test
+    public void testSince() {
+        ThreadCpuRingBuffer ringBuffer = new ThreadCpuRingBuffer(10, 2);
+        for (int i = 0; i < 5; ++i) {
+            ringBuffer.record(START + i * 1000, 1000, ImmutableMap.of(1, (i + 1) * 100));
+        }
+
+        //只看时间戳大于since的采样
+        List<ThreadCpuRingBuffer.CpuSample> history = ringBuffer.history(1, START + 2000);
+        Assert.assertEquals(2, history.size());
+        Assert.assertEquals(START + 3000, history.get(0).getTimestamp());
+        Assert.assertEquals(450, ringBuffer.topN(START + 2000, 10).get(0).getAvgUsage());
+        Assert.assertTrue(ringBuffer.topN(START + 4000, 10).isEmpty());
+        Assert.assertEquals(0, ringBuffer.history(2, START + 2000).get(0).getUsage());
+    }
+}
@@ -0,0 +1,281 @@
+package qunar.tc.bistoury.agent.common.job;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DefaultResponseJobStoreTest {
+
+    private ListeningExecutorService executor;
+
+    private DefaultResponseJobStore store;
+
+    @Before
+    public void setUp() {
+        executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+        store = new DefaultResponseJobStore();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFinish() throws Exception {
+        CountingJob job = new CountingJob("finish", 10, 0);
+        store.submit(job);
+
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(10, job.responses.get());
+        Assert.assertTrue(job.cleared.get());
+    }
+
+    @Test
+    public void testCreditExhaustedAndGrant() throws Exception {
+        CountingJob job = new CountingJob("credit", 100, 10);
+        store.submit(job, 30);
+
+        //每次doResponse消耗10，30的credit只够3次
+        waitStable(job);
+        Assert.assertEquals(3, job.responses.get());
+
+        store.grant("credit", 20);
+        waitStable(job);
+        Assert.assertEquals(5, job.responses.get());
+
+        store.grant("credit", 1000);
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100, job.responses.get());
+    }
+
+    @Test
+    public void testUnlimitedCreditIgnoreConsume() throws Exception {
+        CountingJob job = new CountingJob("unlimited", 50, 1000);
+        store.submit(job);
+
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(50, job.responses.get());
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        BlockingJob job = new BlockingJob("pause");
+        store.submit(job);
+        job.step();
+        store.pause("pause");
+        job.step();
+
+        waitStable(job);
+        int paused = job.responses.get();
+        Thread.sleep(100);
+        Assert.assertEquals(paused, job.responses.get());
+
+        store.resume("pause");
+        job.release();
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnwritable() throws Exception {
+        store.setWritable(false);
+        CountingJob job = new CountingJob("unwritable", 10, 0);
+        store.submit(job);
+
+        Thread.sleep(100);
+        Assert.assertEquals(0, job.responses.get());
+
+        store.setWritable(true);
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(10, job.responses.get());
+    }
+
+    @Test
+    public void testNotMonopolizeExecutor() throws Exception {
+        //两个job共用一个线程，持续输出的job不能一直占着线程
+        CountingJob endless = new CountingJob("endless", Integer.MAX_VALUE, 0);
+        CountingJob small = new CountingJob("small", 3, 0);
+        store.submit(endless);
+        store.submit(small);
+
+        Assert.assertTrue(small.finished.await(5, TimeUnit.SECONDS));
+        store.stop("endless");
+        Assert.assertTrue(endless.cancelled.get());
+    }
+
+    @Test
+    public void testIdleJobScheduleLater() throws Exception {
+        IdleJob job = new IdleJob("idle", 3);
+        store.submit(job);
+
+        Assert.assertTrue(job.finished.await(5, TimeUnit.SECONDS));
+        //空闲时不在线程上空转，每次空闲都会延迟后再调度
+        Assert.assertEquals(4, job.responses.get());
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        CountingJob job = new CountingJob("stop", Integer.MAX_VALUE, 10);
+        store.submit(job, 10);
+        waitStable(job);
+
+        store.stop("stop");
+        Assert.assertTrue(job.cancelled.get());
+        Assert.assertTrue(job.cleared.get());
+
+        store.grant("stop", 1000);
+        Thread.sleep(100);
+        Assert.assertEquals(1, job.responses.get());
+    }
+
+    @Test
+    public void testSubmitAfterClose() throws Exception {
+        store.close();
+        CountingJob job = new CountingJob("closed", 1, 0);
+        store.submit(job);
+        Assert.assertTrue(job.error.get());
+        Assert.assertEquals(0, job.responses.get());
+    }
+
+    private void waitStable(CountingJob job) throws InterruptedException {
+        int last;
+        do {
+            last = job.responses.get();
+            Thread.sleep(100);
+        } while (last != job.responses.get());
+    }
+
+    private class CountingJob implements ContinueResponseJob {
+
+        private final String id;
+
+        private final int total;
+
+        private final int bytesPerResponse;
+
+        final AtomicInteger responses = new AtomicInteger();
+
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        final AtomicBoolean cleared = new AtomicBoolean(false);
+
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        final AtomicBoolean error = new AtomicBoolean(false);
+
+        private CountingJob(String id, int total, int bytesPerResponse) {
+            this.id = id;
+            this.total = total;
+            this.bytesPerResponse = bytesPerResponse;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void init() throws Exception {
+        }
+
+        @Override
+        public boolean doResponse() throws Exception {
+            store.consume(id, bytesPerResponse);
+            return responses.incrementAndGet() >= total;
+        }
+
+        @Override
+        public void clear() {
+            cleared.set(true);
+        }
+
+        @Override
+        public void finish() throws Exception {
+            finished.countDown();
+        }
+
+        @Override
+        public void error(Throwable t) {
+            error.set(true);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        @Override
+        public ListeningExecutorService getExecutor() {
+            return executor;
+        }
+    }
+
+    private class BlockingJob extends CountingJob {
+
+        private final Object lock = new Object();
+
+        private int permits = 0;
+
+        private boolean released = false;
+
+        private BlockingJob(String id) {
+            super(id, Integer.MAX_VALUE, 0);
+        }
+
+        void step() throws InterruptedException {
+            synchronized (lock) {
+                permits++;
+                lock.notifyAll();
+            }
+            Thread.sleep(50);
+        }
+
+        void release() {
+            synchronized (lock) {
+                released = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean doResponse() throws Exception {
+            synchronized (lock) {
+                while (!released && permits == 0) {
+                    lock.wait();
+                }
+                if (released) {
+                    responses.incrementAndGet();
+                    return true;
+                }
+                permits--;
+            }
+            responses.incrementAndGet();
+            return false;
+        }
+    }
+
+    private class IdleJob extends CountingJob implements IdleAwareJob {
+
+        private final int idleTimes;
+
+        private IdleJob(String id, int idleTimes) {
+            super(id, idleTimes + 1, 0);
+            this.idleTimes = idleTimes;
+        }
+
+        @Override
+        public boolean isIdle() {
+            return responses.get() <= idleTimes;
+        }
+    }
+}
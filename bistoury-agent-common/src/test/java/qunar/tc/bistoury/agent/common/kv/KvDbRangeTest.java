@@ -0,0 +1,143 @@
+package qunar.tc.bistoury.agent.common.kv;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import qunar.tc.bistoury.common.FileUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+@RunWith(Parameterized.class)
+public class KvDbRangeTest {
+
+    private static final int TTL_SECONDS = 3600;
+
+    private final String type;
+
+    private File dir;
+
+    private KvDb kvDb;
+
+    public KvDbRangeTest(String type) {
+        this.type = type;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> types() {
+        return Arrays.asList(new Object[][]{{"sqlite"}, {"rocksdb"}});
+    }
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+        if ("sqlite".equals(type)) {
+            kvDb = new SQLiteStoreImpl(dir.getAbsolutePath(), TTL_SECONDS);
+        } else {
+            kvDb = new RocksDBStoreImpl(dir.getAbsolutePath(), TTL_SECONDS, 2);
+        }
+
+        kvDb.putBatch(ImmutableMap.<String, String>builder()
+                .put("qm-1000", "a")
+                .put("qm-1060", "b")
+                .put("qm-1120", "c")
+                .put("qm-1180", "d")
+                .put("qm-latest_time", "1180")
+                .put("hh-1000", "heap")
+                .put("other", "x")
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        kvDb.close();
+        FileUtil.deleteDirectory(dir, true);
+    }
+
+    @Test
+    public void testRange() {
+        KvIterator iterator = kvDb.range("qm-1060", "qm-1180");
+        Assert.assertEquals(ImmutableList.of("qm-1060", "qm-1120"), keys(iterator));
+        assertExhausted(iterator);
+    }
+
+    @Test
+    public void testRangeBetweenKeys() {
+        Assert.assertEquals(ImmutableList.of("qm-1060"), keys(kvDb.range("qm-1001", "qm-1119")));
+    }
+
+    @Test
+    public void testEmptyRange() {
+        assertExhausted(kvDb.range("qm-1060", "qm-1060"));
+        assertExhausted(kvDb.range("qm-1121", "qm-1179"));
+        assertExhausted(kvDb.range("qm-1180", "qm-1060"));
+    }
+
+    @Test
+    public void testRangeToEnd() {
+        Assert.assertEquals(ImmutableList.of("qm-1180", "qm-latest_time"), keys(kvDb.range("qm-1180", null)));
+    }
+
+    @Test
+    public void testScan() {
+        Assert.assertEquals(ImmutableList.of("qm-1000", "qm-1060", "qm-1120", "qm-1180", "qm-latest_time"), keys(kvDb.scan("qm-")));
+        Assert.assertEquals(ImmutableList.of("qm-1000", "qm-1060"), keys(kvDb.scan("qm-10")));
+        Assert.assertEquals(ImmutableList.of("hh-1000"), keys(kvDb.scan("hh-")));
+        assertExhausted(kvDb.scan("qm-2"));
+    }
+
+    @Test
+    public void testScanValue() {
+        KvIterator iterator = kvDb.scan("qm-10");
+        Map.Entry<String, String> first = iterator.next();
+        Assert.assertEquals("qm-1000", first.getKey());
+        Assert.assertEquals("a", first.getValue());
+        Assert.assertEquals("b", iterator.next().getValue());
+        assertExhausted(iterator);
+    }
+
+    @Test
+    public void testOverwrite() {
+        kvDb.put("qm-1060", "new");
+        KvIterator iterator = kvDb.range("qm-1060", "qm-1061");
+        Assert.assertEquals("new", iterator.next().getValue());
+        assertExhausted(iterator);
+    }
+
+    private static void assertExhausted(KvIterator iterator) {
+        try {
+            Assert.assertFalse(iterator.hasNext());
+            try {
+                iterator.next();
+                Assert.fail();
+            } catch (NoSuchElementException e) {
+                //expected
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    private static List<String> keys(KvIterator iterator) {
+        List<String> result = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                result.add(iterator.next().getKey());
+            }
+        } finally {
+            iterator.close();
+        }
+        return result;
+    }
+}
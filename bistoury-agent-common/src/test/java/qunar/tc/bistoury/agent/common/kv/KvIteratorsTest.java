@@ -0,0 +1,147 @@
+package qunar.tc.bistoury.agent.common.kv;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class KvIteratorsTest {
+
+    @Test
+    public void testPrefixEnd() {
+        Assert.assertEquals("qm-", KvIterators.prefixEnd("qm,"));
+        Assert.assertEquals("abd", KvIterators.prefixEnd("abc"));
+        Assert.assertEquals("b", KvIterators.prefixEnd("a" + Character.MAX_VALUE));
+        Assert.assertEquals("b", KvIterators.prefixEnd("a" + Character.MAX_VALUE + Character.MAX_VALUE));
+        Assert.assertNull(KvIterators.prefixEnd(String.valueOf(Character.MAX_VALUE)));
+        Assert.assertNull(KvIterators.prefixEnd(""));
+    }
+
+    @Test
+    public void testPrefixEndBound() {
+        String prefix = "qm-1";
+        String end = KvIterators.prefixEnd(prefix);
+        Assert.assertTrue((prefix + Character.MAX_VALUE).compareTo(end) < 0);
+        Assert.assertTrue("qm-19999".compareTo(end) < 0);
+        Assert.assertTrue("qm-2".compareTo(end) >= 0);
+    }
+
+    @Test
+    public void testOf() {
+        KvIterator iterator = KvIterators.of(entries("a", "b"));
+        Assert.assertEquals(ImmutableList.of("a", "b"), keys(iterator));
+        assertExhausted(iterator);
+    }
+
+    @Test
+    public void testMerge() {
+        KvIterator iterator = KvIterators.merge(KvIterators.of(entries("a", "c", "e")), KvIterators.of(entries("b", "d", "f", "g")));
+        Assert.assertEquals(ImmutableList.of("a", "b", "c", "d", "e", "f", "g"), keys(iterator));
+        assertExhausted(iterator);
+    }
+
+    @Test
+    public void testMergeSameKeyUseFirst() {
+        List<Map.Entry<String, String>> first = ImmutableList.of(Maps.immutableEntry("a", "new"), Maps.immutableEntry("b", "new"));
+        List<Map.Entry<String, String>> second = ImmutableList.of(Maps.immutableEntry("a", "old"), Maps.immutableEntry("c", "old"));
+        KvIterator iterator = KvIterators.merge(KvIterators.of(first), KvIterators.of(second));
+
+        List<Map.Entry<String, String>> result = Lists.newArrayList(iterator);
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals(Maps.immutableEntry("a", "new"), result.get(0));
+        Assert.assertEquals(Maps.immutableEntry("b", "new"), result.get(1));
+        Assert.assertEquals(Maps.immutableEntry("c", "old"), result.get(2));
+    }
+
+    @Test
+    public void testMergeEmpty() {
+        Assert.assertEquals(ImmutableList.of("a", "b"),
+                keys(KvIterators.merge(KvIterators.of(entries()), KvIterators.of(entries("a", "b")))));
+        Assert.assertEquals(ImmutableList.of("a", "b"),
+                keys(KvIterators.merge(KvIterators.of(entries("a", "b")), KvIterators.of(entries()))));
+
+        KvIterator empty = KvIterators.merge(KvIterators.of(entries()), KvIterators.of(entries()));
+        assertExhausted(empty);
+    }
+
+    @Test
+    public void testMergeCloseBoth() {
+        CloseCountIterator first = new CloseCountIterator(true);
+        CloseCountIterator second = new CloseCountIterator(false);
+        try {
+            KvIterators.merge(first, second).close();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //first close出错时second也要close
+        }
+        Assert.assertEquals(1, first.closed);
+        Assert.assertEquals(1, second.closed);
+    }
+
+    private static void assertExhausted(KvIterator iterator) {
+        Assert.assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+            //expected
+        }
+    }
+
+    private static List<Map.Entry<String, String>> entries(String... keys) {
+        List<Map.Entry<String, String>> result = new ArrayList<>();
+        for (String key : keys) {
+            result.add(Maps.immutableEntry(key, key + "-value"));
+        }
+        return result;
+    }
+
+    private static List<String> keys(KvIterator iterator) {
+        List<String> result = new ArrayList<>();
+        while (iterator.hasNext()) {
+            result.add(iterator.next().getKey());
+        }
+        iterator.close();
+        return result;
+    }
+
+    private static class CloseCountIterator implements KvIterator {
+
+        private final boolean throwOnClose;
+
+        private int closed = 0;
+
+        private CloseCountIterator(boolean throwOnClose) {
+            this.throwOnClose = throwOnClose;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed++;
+            if (throwOnClose) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
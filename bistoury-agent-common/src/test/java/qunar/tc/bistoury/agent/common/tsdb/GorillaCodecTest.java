@@ -0,0 +1,163 @@
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class GorillaCodecTest {
+
+    private static final int OFFSET = 7;
+
+    private static final long START = 1_600_000_000_000L;
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    public void testRepeatedValues() {
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1440; ++i) {
+            points.add(new DataPoint(START + i * MINUTE, 42.5));
+        }
+        GorillaEncoder encoder = roundTrip(points);
+        //第一个点96bit，第二个点的delta of delta超过12bit，要4 + 32bit，之后时间戳和值各1bit
+        Assert.assertEquals(96 + 37 + (points.size() - 2) * 2, encoder.getBitLength());
+    }
+
+    @Test
+    public void testLargeDeltas() {
+        long[] timestamps = {START, START + 1, START + 100_000, START + 100_001, START + 500_000_000L,
+                START + 1_000_000_000L, START + 2_000_000_000L, START + 2_000_000_001L};
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < timestamps.length; ++i) {
+            points.add(new DataPoint(timestamps[i], i * 1e12));
+        }
+        roundTrip(points);
+    }
+
+    @Test
+    public void testNegativeDeltaOfDelta() {
+        //间隔先变大再变小，覆盖每个区间的正负边界
+        long[] intervals = {MINUTE, MINUTE - 63, MINUTE + 1, MINUTE - 255, MINUTE + 1, MINUTE - 2047, MINUTE + 1, MINUTE - 50_000, 1, 2, 1};
+        List<DataPoint> points = new ArrayList<>();
+        long timestamp = START;
+        points.add(new DataPoint(timestamp, 0));
+        for (long interval : intervals) {
+            timestamp += interval;
+            points.add(new DataPoint(timestamp, -interval));
+        }
+        roundTrip(points);
+    }
+
+    @Test
+    public void testDeltaOfDeltaBoundaries() {
+        long[] dods = {-63, 64, -64, 65, -255, 256, -256, 257, -2047, 2048, -2048, 2049};
+        List<DataPoint> points = new ArrayList<>();
+        long timestamp = START;
+        long delta = 100_000;
+        points.add(new DataPoint(timestamp, 1));
+        timestamp += delta;
+        points.add(new DataPoint(timestamp, 1));
+        for (long dod : dods) {
+            delta += dod;
+            timestamp += delta;
+            points.add(new DataPoint(timestamp, 1));
+        }
+        roundTrip(points);
+    }
+
+    @Test
+    public void testSpecialValues() {
+        double[] values = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, -1.5, 1.5, 1L << 52, -(1L << 52)};
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < values.length; ++i) {
+            points.add(new DataPoint(START + i * MINUTE, values[i]));
+        }
+        roundTrip(points);
+    }
+
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(0);
+        List<DataPoint> points = new ArrayList<>();
+        long timestamp = START;
+        for (int i = 0; i < 10000; ++i) {
+            timestamp += 1 + random.nextInt(120_000);
+            double value = random.nextBoolean() ? random.nextDouble() * 1000 : random.nextInt(100);
+            points.add(new DataPoint(timestamp, value));
+        }
+        roundTrip(points);
+    }
+
+    @Test
+    public void testRejectNotIncreasingTimestamp() {
+        GorillaEncoder encoder = new GorillaEncoder(ByteBuffer.allocate(1024), OFFSET, START);
+        Assert.assertTrue(encoder.append(START + MINUTE, 1));
+        Assert.assertFalse(encoder.append(START + MINUTE, 2));
+        Assert.assertFalse(encoder.append(START, 2));
+        Assert.assertEquals(1, encoder.getCount());
+    }
+
+    @Test
+    public void testResumeOverDirtyBytes() {
+        Random random = new Random(1);
+        List<DataPoint> points = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            points.add(new DataPoint(START + i * MINUTE + random.nextInt(1000), random.nextDouble()));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        GorillaEncoder encoder = new GorillaEncoder(buffer, OFFSET, START);
+        for (DataPoint point : points.subList(0, 50)) {
+            Assert.assertTrue(encoder.append(point.getTimestamp(), point.getValue()));
+        }
+
+        //进程在写一个点的中途退出，count和bitLength之后留下了没有提交的数据
+        int bitLength = encoder.getBitLength();
+        int lastByte = OFFSET + ((bitLength - 1) >>> 3);
+        int used = bitLength & 7;
+        if (used != 0) {
+            buffer.put(lastByte, (byte) (buffer.get(lastByte) | (0xFF >>> used)));
+        }
+        for (int i = OFFSET + encoder.getByteLength(); i < buffer.capacity(); ++i) {
+            buffer.put(i, (byte) 0xFF);
+        }
+
+        GorillaDecoder decoder = new GorillaDecoder(buffer, OFFSET, START, 50);
+        while (decoder.hasNext()) {
+            decoder.next();
+        }
+        GorillaEncoder resumed = new GorillaEncoder(buffer, OFFSET, START, decoder);
+        for (DataPoint point : points.subList(50, points.size())) {
+            Assert.assertTrue(resumed.append(point.getTimestamp(), point.getValue()));
+        }
+        assertDecode(buffer, resumed.getCount(), points);
+    }
+
+    private static GorillaEncoder roundTrip(List<DataPoint> points) {
+        ByteBuffer buffer = ByteBuffer.allocate(OFFSET + points.size() * GorillaEncoder.MAX_POINT_BYTES + 16);
+        GorillaEncoder encoder = new GorillaEncoder(buffer, OFFSET, START);
+        for (DataPoint point : points) {
+            Assert.assertTrue(encoder.append(point.getTimestamp(), point.getValue()));
+        }
+        Assert.assertEquals(points.size(), encoder.getCount());
+        Assert.assertTrue(encoder.getByteLength() <= points.size() * GorillaEncoder.MAX_POINT_BYTES);
+        assertDecode(buffer, encoder.getCount(), points);
+        return encoder;
+    }
+
+    private static void assertDecode(ByteBuffer buffer, int count, List<DataPoint> expected) {
+        GorillaDecoder decoder = new GorillaDecoder(buffer, OFFSET, START, count);
+        for (DataPoint point : expected) {
+            Assert.assertTrue(decoder.hasNext());
+            decoder.next();
+            Assert.assertEquals(point.getTimestamp(), decoder.getTimestamp());
+            Assert.assertEquals(Double.doubleToRawLongBits(point.getValue()), Double.doubleToRawLongBits(decoder.getValue()));
+        }
+        Assert.assertFalse(decoder.hasNext());
+    }
+}
@@ -0,0 +1,169 @@
+package qunar.tc.bistoury.agent.common.tsdb;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.common.FileUtil;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class MappedTimeSeriesDbTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    //后台清理按当前时间删除过期数据，测试数据从今天开始
+    private static final long START = System.currentTimeMillis() / DAY * DAY;
+
+    private File dir;
+
+    private MappedTimeSeriesDb db;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+        db = open(128);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        FileUtil.deleteDirectory(dir, true);
+    }
+
+    @Test
+    public void testAppendAndQuery() {
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(db.append("a", START + i * MINUTE, i));
+        }
+        Assert.assertFalse(db.append("a", START + 99 * MINUTE, 0));
+
+        List<DataPoint> points = db.query("a", START + 10 * MINUTE, START + 20 * MINUTE);
+        Assert.assertEquals(10, points.size());
+        Assert.assertEquals(START + 10 * MINUTE, points.get(0).getTimestamp());
+        Assert.assertEquals(19, points.get(9).getValue(), 0);
+        Assert.assertEquals(START, db.firstTimestamp("a"));
+        Assert.assertEquals(-1, db.firstTimestamp("not-exist"));
+    }
+
+    @Test
+    public void testReopenAndAppend() {
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertTrue(db.append("qm.timer.1.a", START + i * MINUTE, i * 1.5));
+        }
+        db.close();
+
+        db = open(128);
+        Assert.assertEquals(50, db.query("qm.timer.1.a", 0, Long.MAX_VALUE).size());
+        Assert.assertFalse(db.append("qm.timer.1.a", START + 49 * MINUTE, 0));
+        for (int i = 50; i < 100; ++i) {
+            Assert.assertTrue(db.append("qm.timer.1.a", START + i * MINUTE, i * 1.5));
+        }
+        db.close();
+
+        db = open(128);
+        assertSeries(db.query("qm.timer.1.a", 0, Long.MAX_VALUE), 100, 1.5);
+    }
+
+    @Test
+    public void testCrossSegment() {
+        Assert.assertTrue(db.append("a", START + DAY - MINUTE, 1));
+        Assert.assertTrue(db.append("a", START + DAY, 2));
+        Assert.assertTrue(db.append("a", START + 2 * DAY + MINUTE, 3));
+        //已经切到后面的segment，不能再写更早的segment
+        Assert.assertFalse(db.append("a", START + DAY + MINUTE, 4));
+
+        List<DataPoint> points = db.query("a", START, START + 3 * DAY);
+        Assert.assertEquals(3, points.size());
+        Assert.assertEquals(3, db.query("a", START + 2 * DAY, START + 3 * DAY).get(0).getValue(), 0);
+        Assert.assertEquals("3", db.getStats().get("segments"));
+    }
+
+    @Test
+    public void testCloseEldestSegment() {
+        db.close();
+        db = open(2);
+
+        //线程id之类的序列很多，打开的segment数不能超过上限
+        for (int minute = 0; minute < 10; ++minute) {
+            for (int series = 0; series < 20; ++series) {
+                Assert.assertTrue(db.append("thread." + series, START + minute * MINUTE, series * 100 + minute));
+            }
+            Assert.assertTrue(Integer.parseInt(db.getStats().get("openSegments")) <= 2);
+        }
+
+        for (int series = 0; series < 20; ++series) {
+            List<DataPoint> points = db.query("thread." + series, 0, Long.MAX_VALUE);
+            Assert.assertEquals(10, points.size());
+            for (int minute = 0; minute < 10; ++minute) {
+                Assert.assertEquals(START + minute * MINUTE, points.get(minute).getTimestamp());
+                Assert.assertEquals(series * 100 + minute, points.get(minute).getValue(), 0);
+            }
+        }
+
+        Map<String, List<DataPoint>> prefix = db.queryPrefix("thread.1", START, START + 5 * MINUTE);
+        //thread.1和thread.10到thread.19
+        Assert.assertEquals(11, prefix.size());
+        Assert.assertEquals(5, prefix.get("thread.1").size());
+    }
+
+    @Test
+    public void testDeleteExpired() {
+        Assert.assertTrue(db.append("a", START, 1));
+        Assert.assertTrue(db.append("a", START + 3 * DAY, 2));
+        Assert.assertTrue(db.append("b", START, 1));
+
+        db.deleteExpired(START + 3 * DAY + 2 * DAY);
+        Assert.assertEquals(1, db.query("a", 0, Long.MAX_VALUE).size());
+        Assert.assertTrue(db.query("b", 0, Long.MAX_VALUE).isEmpty());
+        Assert.assertEquals("1", db.getStats().get("series"));
+
+        //删掉之后可以重新写
+        Assert.assertTrue(db.append("b", START + 4 * DAY, 5));
+        Assert.assertEquals(5, db.query("b", 0, Long.MAX_VALUE).get(0).getValue(), 0);
+    }
+
+    @Test
+    public void testPrefixRetention() {
+        db.close();
+        db = new MappedTimeSeriesDb(dir.getAbsolutePath(), DAY, 3 * DAY,
+                ImmutableMap.of("qm1h", 30 * DAY, "qm1h.timer.", 10 * DAY), 128);
+        Assert.assertEquals(3 * DAY, db.getRetention("qm.timer.a"));
+        Assert.assertEquals(30 * DAY, db.getRetention("qm1h.counter.a"));
+        //最长的前缀优先
+        Assert.assertEquals(10 * DAY, db.getRetention("qm1h.timer.a"));
+
+        Assert.assertTrue(db.append("qm.timer.a", START, 1));
+        Assert.assertTrue(db.append("qm1h.counter.a", START, 1));
+        Assert.assertTrue(db.append("qm1h.timer.a", START, 1));
+
+        //分钟数据过期了，预聚合的数据还在
+        db.deleteExpired(START + 5 * DAY);
+        Assert.assertTrue(db.query("qm.timer.a", 0, Long.MAX_VALUE).isEmpty());
+        Assert.assertEquals(1, db.query("qm1h.counter.a", 0, Long.MAX_VALUE).size());
+        Assert.assertEquals(1, db.query("qm1h.timer.a", 0, Long.MAX_VALUE).size());
+
+        db.deleteExpired(START + 12 * DAY);
+        Assert.assertEquals(1, db.query("qm1h.counter.a", 0, Long.MAX_VALUE).size());
+        Assert.assertTrue(db.query("qm1h.timer.a", 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    private MappedTimeSeriesDb open(int maxOpenSegments) {
+        return new MappedTimeSeriesDb(dir.getAbsolutePath(), DAY, 3 * DAY, maxOpenSegments);
+    }
+
+    private static void assertSeries(List<DataPoint> points, int count, double factor) {
+        Assert.assertEquals(count, points.size());
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(START + i * MINUTE, points.get(i).getTimestamp());
+            Assert.assertEquals(i * factor, points.get(i).getValue(), 0);
+        }
+    }
+}
@@ -20,13 +20,17 @@ package qunar.tc.bistoury.agent.task.cpujstack;
 import com.google.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import qunar.tc.bistoury.agent.common.config.AgentConfig;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffers;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
 import qunar.tc.bistoury.agent.common.kv.KvDbs;
 import qunar.tc.bistoury.agent.common.task.AgentGlobalTaskFactory;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDbs;
 import qunar.tc.bistoury.clientside.common.meta.MetaStores;
 import qunar.tc.bistoury.common.NamedThreadFactory;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,15 +40,24 @@ public class CpuJStackTaskFactory implements AgentGlobalTaskFactory {
 
     private static final ListeningScheduledExecutorService executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cpu-jstack-task", true)));
 
+    private static final ScheduledExecutorService sampleExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cpu-sample-task", true));
+
     private static final KvDb kvDb = KvDbs.getKvDb();
 
+    private static final TimeSeriesDb timeSeriesDb = TimeSeriesDbs.getTimeSeriesDb();
+
     private static final AgentConfig agentConfig = new AgentConfig(MetaStores.getMetaStore());
 
     @Override
     public void start() {
-        PidExecutor jstackExecutor = new JStackPidExecutor();
+        PidExecutor jstackExecutor = new InProcessJStackExecutor(new JStackPidExecutor(), Integer.getInteger("bistoury.cpujstack.max.depth", 0));
         PidRecordExecutor momentCpuTimePidExecutor = new MomentCpuTimeRecordExecutor(executor);
-        TaskRunner taskRunner = new TaskRunner(agentConfig, kvDb, jstackExecutor, momentCpuTimePidExecutor);
+        TaskRunner taskRunner = new TaskRunner(agentConfig, kvDb, timeSeriesDb, jstackExecutor, momentCpuTimePidExecutor);
         executor.scheduleAtFixedRate(taskRunner, 5, 60, TimeUnit.SECONDS);
+
+        //jstack可能要跑几秒，秒级采样放在单独的线程里
+        int sampleInterval = ThreadCpuRingBuffers.getIntervalSeconds();
+        ThreadCpuSampler sampler = new ThreadCpuSampler(agentConfig, ThreadCpuRingBuffers.getRingBuffer());
+        sampleExecutor.scheduleAtFixedRate(sampler, sampleInterval, sampleInterval, TimeUnit.SECONDS);
     }
 }
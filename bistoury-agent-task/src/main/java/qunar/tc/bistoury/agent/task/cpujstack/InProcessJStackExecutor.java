@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.commands.arthas.telnet.Telnet;
+import qunar.tc.bistoury.commands.arthas.telnet.TelnetStore;
+import qunar.tc.bistoury.commands.arthas.telnet.UrlEncodedTelnetStore;
+import qunar.tc.bistoury.common.Base64;
+import qunar.tc.bistoury.common.BistouryConstants;
+import qunar.tc.bistoury.common.CodeProcessResponse;
+import qunar.tc.bistoury.common.JacksonSerializer;
+import qunar.tc.bistoury.common.TypeResponse;
+import qunar.tc.bistoury.common.VersionUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 已经attach过时，通过telnet让应用进程自己做线程dump，避免每分钟attach一次；没有attach或者失败时退回到attach
+ * <p>
+ * 版本号相同的老agent也可能不支持这个命令，不支持时记下当时的attach，重新attach之前都直接退回到attach
+ */
+public class InProcessJStackExecutor implements PidExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessJStackExecutor.class);
+
+    private static final TelnetStore TELNET_STORE = UrlEncodedTelnetStore.getInstance();
+
+    private static final String COMMAND = BistouryConstants.REQ_THREAD_DUMP;
+
+    private static final String MIN_VERSION = "2.0.7";
+
+    private static final long NOT_MARKED = -1;
+
+    private static final TypeReference<TypeResponse<String>> TYPE_REFERENCE = new TypeReference<TypeResponse<String>>() {
+    };
+
+    private final PidExecutor fallback;
+
+    private final int maxDepth;
+
+    private volatile long unsupportedAttachCount = NOT_MARKED;
+
+    public InProcessJStackExecutor(PidExecutor fallback, int maxDepth) {
+        this.fallback = fallback;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public String execute(int pid, ThreadInfoHandler handler) {
+        byte[] dump = tryDumpInProcess();
+        if (dump == null) {
+            return fallback.execute(pid, handler);
+        }
+
+        try {
+            InflaterInputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(dump));
+            return new JStackParser(handler).parse(new InputStreamReader(inputStream, Charsets.UTF_8));
+        } catch (Exception e) {
+            logger.error("parse in process thread dump error, pid:{}", pid, e);
+            return "";
+        }
+    }
+
+    /**
+     * @return 压缩后的dump，拿不到时返回null
+     */
+    private byte[] tryDumpInProcess() {
+        //先取attach次数，中间重新attach了也只会标记老的那次
+        final long attachCount = TELNET_STORE.getAttachCount();
+        if (attachCount == unsupportedAttachCount) {
+            return null;
+        }
+
+        Telnet telnet = tryGetTelnet();
+        if (telnet == null) {
+            return null;
+        }
+
+        try {
+            if (!legalVersion(telnet.getVersion())) {
+                markUnsupported(attachCount, telnet.getVersion());
+                return null;
+            }
+            telnet.write(COMMAND + " -d " + maxDepth);
+            TypeResponse<String> typeResponse = parse(readAll(telnet));
+            if (typeResponse == null || !COMMAND.equals(typeResponse.getType())) {
+                markUnsupported(attachCount, telnet.getVersion());
+                return null;
+            }
+            CodeProcessResponse<String> response = typeResponse.getData();
+            if (response.getCode() != 0) {
+                logger.warn("in process thread dump fail: {}", response.getMessage());
+                return null;
+            }
+            return Base64.getUrlDecoder().decode(response.getData());
+        } catch (Exception e) {
+            logger.warn("in process thread dump error, fallback to attach", e);
+            return null;
+        } finally {
+            telnet.close();
+        }
+    }
+
+    private TypeResponse<String> parse(byte[] bytes) {
+        try {
+            return JacksonSerializer.deSerialize(bytes, TYPE_REFERENCE);
+        } catch (Exception e) {
+            //不认识的命令返回的不是json
+            return null;
+        }
+    }
+
+    private void markUnsupported(long attachCount, String version) {
+        unsupportedAttachCount = attachCount;
+        logger.info("in process thread dump not supported by bistoury {}, use attach until next attach", version);
+    }
+
+    private byte[] readAll(Telnet telnet) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        while (true) {
+            byte[] bytes = telnet.read();
+            if (bytes == null) {
+                break;
+            }
+            outputStream.write(bytes);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private Telnet tryGetTelnet() {
+        try {
+            return TELNET_STORE.tryGetTelnet();
+        } catch (Exception e) {
+            logger.debug("try get telnet fail", e);
+            return null;
+        }
+    }
+
+    private boolean legalVersion(final String version) {
+        try {
+            return VersionUtil.greaterEqualThanVersion(version, MIN_VERSION);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadInfo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 逐行解析jstack输出，每解析完一个线程就交给{@link ThreadInfoHandler}，不持有全部行和全部线程
+ * <p>
+ * 线程状态这类大量重复的字符串在一次解析内复用同一个实例
+ * <p>
+ * 栈帧虽然重复很多（2000个线程的dump里7万多帧只有二十几种），但每个线程的栈拼成一个字符串后就交给handler，
+ * 帧字符串活不过这一行，复用它们不会少分配内存，实测只多了查表的耗时，所以不复用
+ */
+class JStackParser {
+
+    private static final Logger logger = LoggerFactory.getLogger(JStackParser.class);
+
+    private static final Splitter SPACE_SPLITTER = Splitter.on(' ').trimResults().omitEmptyStrings();
+
+    private static final int THREAD_NAME_START_INDEX = "\"".length();
+
+    private static final String THREAD_ID_PREFIX = " nid=";
+
+    private static final String THREAD_STATE_PREFIX = "java.lang.Thread.State: ";
+
+    private static final String NO_THREAD_NAME = "NoThreadName#";
+
+    private final ThreadInfoHandler handler;
+
+    private final StringBuilder dump = new StringBuilder();
+
+    private final StringBuilder stack = new StringBuilder();
+
+    private final List<String> lockLines = new ArrayList<>();
+
+    private final Map<String, String> states = new HashMap<>();
+
+    private ThreadInfo current;
+
+    private boolean hasState;
+
+    JStackParser(ThreadInfoHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * @return 完整的dump文本
+     */
+    String parse(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            dump.append(line).append('\n');
+            parseLine(line);
+        }
+        if (current != null) {
+            finishThread();
+        }
+        return dump.toString();
+    }
+
+    private void parseLine(String line) {
+        if (current == null) {
+            if (line.startsWith("\"") && line.contains("nid=")) {
+                startThread(line);
+            }
+            return;
+        }
+
+        if (!hasState) {
+            if (Strings.isNullOrEmpty(line)) {
+                emit();
+            } else {
+                current.setState(parseThreadState(line));
+                hasState = true;
+                stack.append('\n').append(line);
+            }
+            return;
+        }
+
+        if (Strings.isNullOrEmpty(line)) {
+            finishThread();
+            return;
+        }
+
+        stack.append('\n').append(line);
+        String trimmed = line.trim();
+        if (trimmed.startsWith("-")) {
+            lockLines.add(trimmed);
+        }
+    }
+
+    private void startThread(String line) {
+        current = parseThreadFirstLine(line);
+        hasState = false;
+        stack.setLength(0);
+        stack.append(line);
+        lockLines.clear();
+    }
+
+    private void finishThread() {
+        if (hasState) {
+            current.setStack(stack.toString());
+            current.setLockOn(parseLockOn());
+        }
+        emit();
+    }
+
+    private void emit() {
+        ThreadInfo threadInfo = current;
+        current = null;
+        handler.handle(threadInfo);
+    }
+
+    private List<String> parseLockOn() {
+        if (lockLines.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        Set<String> lock = Sets.newLinkedHashSet();
+        for (int lineIndex = lockLines.size() - 1; lineIndex >= 0; lineIndex--) {
+            List<String> strs = SPACE_SPLITTER.splitToList(lockLines.get(lineIndex));
+            int lockIdIndex = findLockIdIndex(strs);
+            if (lockIdIndex < 0) {
+                continue;
+            }
+
+            for (int i = 0; i < lockIdIndex; ++i) {
+                String str = strs.get(i);
+                if (str.contains("lock")) {
+                    lock.add(getLockId(strs.get(lockIdIndex)));
+                    break;
+                } else if (str.contains("wait")) {
+                    lock.remove(strs.get(lockIdIndex));
+                    break;
+                }
+            }
+        }
+        return ImmutableList.copyOf(lock);
+    }
+
+    private String getLockId(String input) {
+        return input.substring(1, input.length() - 1);
+    }
+
+    private int findLockIdIndex(List<String> strs) {
+        for (int i = 0; i < strs.size(); ++i) {
+            String str = strs.get(i);
+            if (str.startsWith("<") && str.endsWith(">")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String parseThreadState(String line) {
+        int indexSymbol = line.indexOf(THREAD_STATE_PREFIX);
+        if (indexSymbol < 0) {
+            logger.error("illegal thread first line:\n{}", line);
+            return "";
+        }
+
+        int indexOfStateStart = indexSymbol + THREAD_STATE_PREFIX.length();
+        int indexOfStateEnd = line.indexOf(' ', indexOfStateStart);
+        if (indexOfStateEnd < 0) {
+            indexOfStateEnd = line.length();
+        }
+        return intern(line.substring(indexOfStateStart, indexOfStateEnd));
+    }
+
+    private String intern(String state) {
+        String result = states.get(state);
+        if (result == null) {
+            states.put(state, state);
+            result = state;
+        }
+        return result;
+    }
+
+    private ThreadInfo parseThreadFirstLine(String line) {
+        int indexAfterName = line.indexOf('"', THREAD_NAME_START_INDEX);
+        if (indexAfterName < 0) {
+            throw new IllegalArgumentException("illegal thread first line:\n" + line);
+        }
+        String name = line.substring(THREAD_NAME_START_INDEX, indexAfterName);
+        int indexOfThreadIdPrefix = line.indexOf(THREAD_ID_PREFIX, indexAfterName);
+        if (indexOfThreadIdPrefix < 0) {
+            throw new IllegalArgumentException("illegal thread first line:\n" + line);
+        }
+        int endOfThreadId = line.indexOf(' ', indexOfThreadIdPrefix + THREAD_ID_PREFIX.length());
+        if (endOfThreadId < 0) {
+            endOfThreadId = line.length();
+        }
+        String threadId = line.substring(indexOfThreadIdPrefix + THREAD_ID_PREFIX.length(), endOfThreadId);
+
+        if (Strings.isNullOrEmpty(name)) {
+            name = NO_THREAD_NAME + threadId;
+        }
+
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(name) && !Strings.isNullOrEmpty(threadId), "illegal thread first line:\n%s", line);
+        ThreadInfo threadInfo = new ThreadInfo();
+        threadInfo.setId(threadId);
+        threadInfo.setName(name);
+        threadInfo.setState("");
+        threadInfo.setStack("");
+        threadInfo.setLockOn(ImmutableList.<String>of());
+        return threadInfo;
+    }
+}
@@ -18,7 +18,6 @@
 package qunar.tc.bistoury.agent.task.cpujstack;
 
 import com.google.common.base.Charsets;
-import com.google.common.io.ByteStreams;
 import com.sun.tools.attach.VirtualMachine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +25,7 @@ import sun.tools.attach.HotSpotVirtualMachine;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 
 /**
  * @author cai.wen
@@ -36,12 +36,12 @@ public class JStackPidExecutor implements PidExecutor {
     private static final Logger LOGGER = LoggerFactory.getLogger(JStackPidExecutor.class);
 
     @Override
-    public String execute(int pid) {
+    public String execute(int pid, ThreadInfoHandler handler) {
         VirtualMachine virtualMachine = null;
         try {
             virtualMachine = VirtualMachine.attach(String.valueOf(pid));
             HotSpotVirtualMachine hotSpotVirtualMachine = (HotSpotVirtualMachine) virtualMachine;
-            return readJStackOutput(hotSpotVirtualMachine);
+            return readJStackOutput(hotSpotVirtualMachine, handler);
         } catch (Exception e) {
             LOGGER.error("run JStackPidExecutor error pid:{}", pid, e);
         } finally {
@@ -56,10 +56,9 @@ public class JStackPidExecutor implements PidExecutor {
         return "";
     }
 
-    private String readJStackOutput(HotSpotVirtualMachine hotSpotVirtualMachine) throws IOException {
+    private String readJStackOutput(HotSpotVirtualMachine hotSpotVirtualMachine, ThreadInfoHandler handler) throws IOException {
         try (InputStream inputStream = hotSpotVirtualMachine.remoteDataDump(new String[0])) {
-            byte[] bytes = ByteStreams.toByteArray(inputStream);
-            return new String(bytes, Charsets.UTF_8);
+            return new JStackParser(handler).parse(new InputStreamReader(inputStream, Charsets.UTF_8));
         }
     }
 }
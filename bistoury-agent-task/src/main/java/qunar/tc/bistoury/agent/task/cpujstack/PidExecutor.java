@@ -22,5 +22,10 @@ package qunar.tc.bistoury.agent.task.cpujstack;
  */
 public interface PidExecutor {
 
-    String execute(int pid);
+    /**
+     * 边读边解析，每个线程交给handler处理
+     *
+     * @return 完整的dump文本，失败时返回空字符串
+     */
+    String execute(int pid, ThreadInfoHandler handler);
 }
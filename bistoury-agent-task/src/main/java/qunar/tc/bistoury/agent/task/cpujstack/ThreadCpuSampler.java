@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.agent.common.config.AgentConfig;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffer;
+import qunar.tc.bistoury.agent.common.pid.PidUtils;
+import qunar.tc.bistoury.agent.task.proc.FullState;
+import qunar.tc.bistoury.agent.task.proc.ProcessStateCalculator;
+
+import java.util.Map;
+
+/**
+ * 按固定间隔持续采样线程cpu，写入{@link ThreadCpuRingBuffer}，用来发现分钟采样之间的短时间cpu尖刺
+ */
+public class ThreadCpuSampler implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadCpuSampler.class);
+
+    private final AgentConfig agentConfig;
+
+    private final ThreadCpuRingBuffer ringBuffer;
+
+    private final ProcessStateCalculator processStateCalculator = ProcessStateCalculator.getInstance();
+
+    private FullState lastState;
+
+    private long lastTimestamp;
+
+    public ThreadCpuSampler(AgentConfig agentConfig, ThreadCpuRingBuffer ringBuffer) {
+        this.agentConfig = agentConfig;
+        this.ringBuffer = ringBuffer;
+    }
+
+    @Override
+    public void run() {
+        try {
+            doRun();
+        } catch (Throwable e) {
+            logger.error("thread cpu sample error", e);
+        }
+    }
+
+    private void doRun() {
+        if (!agentConfig.isCpuJStackOn()) {
+            lastState = null;
+            return;
+        }
+
+        int pid = PidUtils.getPid();
+        if (pid <= 0) {
+            lastState = null;
+            return;
+        }
+
+        sample(processStateCalculator.getCurrentFullState(pid), System.currentTimeMillis());
+    }
+
+    /**
+     * 和上一次采样比较，算出这段时间内每个线程的cpu使用率写入环形数组，没有上一次采样时只记录状态
+     */
+    void sample(FullState currentState, long timestamp) {
+        FullState preState = lastState;
+        long preTimestamp = lastTimestamp;
+        lastState = currentState;
+        lastTimestamp = timestamp;
+        if (preState == null || currentState == null) {
+            return;
+        }
+
+        Map<Integer, Double> usages = processStateCalculator.threadCpuUsage(preState, currentState);
+        Map<Integer, Integer> intUsages = Maps.newHashMapWithExpectedSize(usages.size());
+        for (Map.Entry<Integer, Double> entry : usages.entrySet()) {
+            intUsages.put(entry.getKey(), (int) (entry.getValue() * 10000));
+        }
+        ringBuffer.record(timestamp, timestamp - preTimestamp, intUsages);
+    }
+}
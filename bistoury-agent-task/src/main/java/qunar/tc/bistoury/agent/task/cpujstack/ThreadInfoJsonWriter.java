@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Throwables;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadInfo;
+import qunar.tc.bistoury.common.JacksonSerializer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * 把解析出的线程直接写成json，格式和序列化Map&lt;String, ThreadInfo&gt;一致，不需要先攒出全部线程
+ * <p>
+ * kv的value是字符串，json和dump最后仍然各有一份完整的字符串，加上构建时的缓冲，峰值约为两者大小之和的2.5到3倍
+ */
+class ThreadInfoJsonWriter implements ThreadInfoHandler {
+
+    private final Map<String, Double> threadMinuteTimes;
+
+    private final StringWriter writer = new StringWriter();
+
+    private final JsonGenerator generator;
+
+    ThreadInfoJsonWriter(Map<String, Double> threadMinuteTimes) throws IOException {
+        this.threadMinuteTimes = threadMinuteTimes;
+        this.generator = JacksonSerializer.createGenerator(writer);
+        generator.writeStartObject();
+    }
+
+    @Override
+    public void handle(ThreadInfo threadInfo) {
+        Double time = threadMinuteTimes.get(threadInfo.getId());
+        if (time == null) {
+            time = 0.0;
+        }
+        threadInfo.setMinuteCpuTime((int) (time * 10000));
+        try {
+            generator.writeFieldName(threadInfo.getId());
+            generator.writeObject(threadInfo);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    String finish() throws IOException {
+        generator.writeEndObject();
+        generator.close();
+        return writer.toString();
+    }
+}
@@ -17,8 +17,6 @@
 
 package qunar.tc.bistoury.agent.task.proc;
 
-import java.util.List;
-
 /**
  * @author cai.wen
  * @date 19-1-17
@@ -35,7 +33,7 @@ class CpuState {
     //public final long stealStolen;
     //public final long guest;
 
-    private CpuState(long userTime, long niceTime, long systemTime, long idleTime, long ioWaitTime, long irqTime, long softIrqTime) {
+    CpuState(long userTime, long niceTime, long systemTime, long idleTime, long ioWaitTime, long irqTime, long softIrqTime) {
         this.userTime = userTime;
         this.niceTime = niceTime;
         this.systemTime = systemTime;
@@ -49,15 +47,6 @@ class CpuState {
         return userTime + niceTime + systemTime + idleTime + ioWaitTime + irqTime + softIrqTime;
     }
 
-    static CpuState parse(List<String> info) {
-        return new CpuState(Long.valueOf(info.get(1)),
-                Long.valueOf(info.get(2)),
-                Long.valueOf(info.get(3)),
-                Long.valueOf(info.get(4)),
-                Long.valueOf(info.get(5)),
-                Long.valueOf(info.get(6)),
-                Long.valueOf(info.get(7)));
-    }
 
     @Override
     public String toString() {
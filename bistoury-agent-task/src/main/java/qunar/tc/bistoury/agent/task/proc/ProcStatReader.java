@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.task.proc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * 解析/proc下的stat文件，读到每个线程复用的buffer里按字节扫描，不生成中间字符串
+ * <p>
+ * 字段下标和proc(5)中一致，从0开始：0 pid，1 comm，2 state，13 utime，14 stime，15 cutime，16 cstime，19 num_threads
+ */
+class ProcStatReader {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<ProcStatReader> READERS = new ThreadLocal<ProcStatReader>() {
+        @Override
+        protected ProcStatReader initialValue() {
+            return new ProcStatReader();
+        }
+    };
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final byte[] bytes = buffer.array();
+
+    private int length;
+
+    /**
+     * comm之后的第一个字段(state)的起始位置
+     */
+    private int afterComm;
+
+    private ProcStatReader() {
+    }
+
+    static ProcStatReader get() {
+        return READERS.get();
+    }
+
+    /**
+     * @return 线程已经退出时返回null
+     */
+    ThreadState readThreadState(Path stat) throws IOException {
+        if (!read(stat) || !locateComm()) {
+            return null;
+        }
+        return new ThreadState((int) parseLong(0), stateChar(), field(13), field(14));
+    }
+
+    /**
+     * 一次遍历task目录读出所有线程
+     */
+    Map<Integer, ThreadState> readThreadStates(Path taskDir) throws IOException {
+        Map<Integer, ThreadState> result = Maps.newHashMap();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(taskDir)) {
+            for (Path thread : stream) {
+                ThreadState state;
+                try {
+                    state = readThreadState(thread.resolve("stat"));
+                } catch (IOException e) {
+                    continue;
+                }
+                //查询时候可能线程已经死去
+                if (state != null) {
+                    result.put(state.tid, state);
+                }
+            }
+        }
+        return result;
+    }
+
+    ProcessState readProcessState(Path stat) throws IOException {
+        if (!read(stat) || !locateComm()) {
+            throw new IOException("can not read process stat: " + stat);
+        }
+        int commStart = indexOf((byte) '(', 0) + 1;
+        String command = new String(bytes, commStart, afterComm - 2 - commStart, Charsets.UTF_8);
+        return new ProcessState((int) parseLong(0), command, stateChar(), (int) field(3),
+                field(13), field(14), field(15), field(16), (int) field(19));
+    }
+
+    /**
+     * 只解析第一行的cpu汇总，后面的每个cpu和中断统计不需要读
+     */
+    CpuState readCpuState(Path stat) throws IOException {
+        if (!read(stat)) {
+            throw new IOException("can not read cpu stat: " + stat);
+        }
+        int index = 0;
+        long[] values = new long[7];
+        for (int i = 0; i < values.length; ++i) {
+            index = skipSpaces(skipToken(index));
+            values[i] = parseLong(index);
+        }
+        return new CpuState(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+    }
+
+    /**
+     * @return 文件不存在时返回false
+     */
+    private boolean read(Path path) throws IOException {
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        length = buffer.position();
+        return length > 0;
+    }
+
+    /**
+     * comm可能包含空格和括号，以最后一个')'为准
+     */
+    private boolean locateComm() {
+        for (int i = length - 1; i >= 0; --i) {
+            if (bytes[i] == ')') {
+                afterComm = i + 2;
+                return afterComm < length;
+            }
+        }
+        return false;
+    }
+
+    private char stateChar() {
+        return (char) bytes[afterComm];
+    }
+
+    private long field(int index) {
+        int position = afterComm;
+        for (int i = 2; i < index; ++i) {
+            position = skipSpaces(skipToken(position));
+        }
+        return parseLong(position);
+    }
+
+    private int skipToken(int index) {
+        while (index < length && bytes[index] != ' ' && bytes[index] != '\n') {
+            index++;
+        }
+        return index;
+    }
+
+    private int skipSpaces(int index) {
+        while (index < length && bytes[index] == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private int indexOf(byte b, int from) {
+        for (int i = from; i < length; ++i) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long parseLong(int index) {
+        boolean negative = index < length && bytes[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long result = 0;
+        while (index < length && bytes[index] >= '0' && bytes[index] <= '9') {
+            result = result * 10 + (bytes[index] - '0');
+            index++;
+        }
+        return negative ? -result : result;
+    }
+}
@@ -17,8 +17,6 @@
 
 package qunar.tc.bistoury.agent.task.proc;
 
-import java.util.List;
-
 /**
  * @author cai.wen
  * @date 19-1-17
@@ -42,7 +40,7 @@ class ProcessState {
     public final long cSystemTime;
     //private long start_time;
 
-    private ProcessState(int pid, String command, char state, int ppid, long userTime, long systemTime, long cUserTime, long cSystemTime, int threadNum) {
+    ProcessState(int pid, String command, char state, int ppid, long userTime, long systemTime, long cUserTime, long cSystemTime, int threadNum) {
         this.pid = pid;
         this.ppid = ppid;
         this.state = state;
@@ -58,19 +56,6 @@ class ProcessState {
         return userTime + systemTime + cUserTime + cSystemTime;
     }
 
-    static ProcessState parse(List<String> info) {
-        return new ProcessState(
-                Integer.valueOf(info.get(0)),
-                info.get(1),
-                info.get(2).charAt(0),
-                Integer.valueOf(info.get(3)),
-                Long.valueOf(info.get(13)),
-                Long.valueOf(info.get(14)),
-                Long.valueOf(info.get(15)),
-                Long.valueOf(info.get(16)),
-                Integer.valueOf(info.get(19))
-        );
-    }
 
     @Override
     public String toString() {
@@ -21,7 +21,6 @@ import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
@@ -65,6 +64,13 @@ public class ProcessStateCalculator {
     private Map<Integer, Double> threadCpuMomentUsage(AtomicReference<FullState> prePSReference, FullState currentFullState) {
         FullState preFullState = prePSReference.get();
         prePSReference.set(currentFullState);
+        return threadCpuUsage(preFullState, currentFullState);
+    }
+
+    /**
+     * 两次采样之间每个线程的cpu使用率，调用方自己保存上一次的状态，不影响分钟和瞬时的记录
+     */
+    public Map<Integer, Double> threadCpuUsage(FullState preFullState, FullState currentFullState) {
         if (preFullState == null || currentFullState == null) {
             return Collections.emptyMap();
         }
@@ -76,34 +82,15 @@ public class ProcessStateCalculator {
     public FullState getCurrentFullState(int pid) {
         try {
             CpuState cpuState = StatParser.getInstance().parseCpuInfo();
-            File processFile = new File("/proc", String.valueOf(pid));
             ProcessState processState = StatParser.getInstance().parseProcessInfo(pid);
-            File taskFile = new File(processFile, "task");
-            File[] taskFiles = taskFile.listFiles();
-            if (!taskFile.exists() || taskFiles == null) {
-                return null;
-            }
-            Map<Integer, ThreadState> threadInfo = getThreadInfo(pid, taskFiles);
+            Map<Integer, ThreadState> threadInfo = StatParser.getInstance().parseThreadInfos(pid);
             return new FullState(cpuState, processState, threadInfo);
         } catch (IOException e) {
-            LOGGER.error("get current process state error");
+            LOGGER.error("get current process state error", e);
             return null;
         }
     }
 
-    private Map<Integer, ThreadState> getThreadInfo(int pid, File[] taskFiles) throws IOException {
-        Map<Integer, ThreadState> threadInfo = Maps.newHashMapWithExpectedSize(taskFiles.length);
-        for (File file : taskFiles) {
-            ThreadState singleThreadState = StatParser.getInstance().parseThreadInfo(pid, Integer.parseInt(file.getName()));
-            //查询时候可能线程已经死去
-            if (singleThreadState == null) {
-                continue;
-            }
-            threadInfo.put(singleThreadState.tid, singleThreadState);
-        }
-        return threadInfo;
-    }
-
     private Map<Integer, Double> threadCpuMomentUsage(
             CpuState preCpuState, CpuState currentCpuState,
             Map<Integer, ThreadState> preThreadInfo, Map<Integer, ThreadState> currentThreadInfo) {
@@ -18,15 +18,10 @@
 package qunar.tc.bistoury.agent.task.proc;
 
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
-import com.google.common.io.Files;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.io.File;
 import java.io.IOException;
-import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
 
 /**
  * @author cai.wen
@@ -34,9 +29,6 @@ import java.util.List;
  */
 class StatParser {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(StatParser.class);
-
-    private static final Splitter SPACE_SPLITTER = Splitter.on(" ").omitEmptyStrings();
     private static final StatParser INSTANCE = new StatParser();
     private static final String PROC_PATH = "/proc";
 
@@ -44,36 +36,39 @@ class StatParser {
     }
 
     public CpuState parseCpuInfo() throws IOException {
-        File procDir = new File(PROC_PATH);
-        if (!procDir.exists()) {
+        Path procDir = Paths.get(PROC_PATH);
+        if (!procDir.toFile().exists()) {
             throw new IllegalStateException("can't get proc directory");
         }
-        return CpuState.parse(getInfoList(new File(procDir, "stat")));
+        return ProcStatReader.get().readCpuState(procDir.resolve("stat"));
     }
 
+    /**
+     * @return 线程已经退出时返回null
+     */
     public ThreadState parseThreadInfo(int pid, int tid) throws IOException {
-        File pidDir = new File(PROC_PATH, String.valueOf(pid));
-        if (!pidDir.exists()) {
-            throw new IllegalStateException("can not open pid directory : " + pidDir.getAbsoluteFile());
-        }
-        File tidDir = new File(pidDir, "task/" + String.valueOf(tid));
-        if (!tidDir.exists()) {
-            LOGGER.info("can not open tid directory : {}", tidDir.getAbsoluteFile());
-            return null;
-        }
-        return ThreadState.parse(getInfoList(new File(tidDir, "stat")));
+        Path pidDir = pidDir(pid);
+        return ProcStatReader.get().readThreadState(pidDir.resolve("task").resolve(String.valueOf(tid)).resolve("stat"));
+    }
+
+    /**
+     * @return 进程所有线程的状态，key为tid
+     */
+    public Map<Integer, ThreadState> parseThreadInfos(int pid) throws IOException {
+        Path pidDir = pidDir(pid);
+        return ProcStatReader.get().readThreadStates(pidDir.resolve("task"));
     }
 
     public ProcessState parseProcessInfo(int pid) throws IOException {
-        File pidDir = new File(PROC_PATH, String.valueOf(pid));
-        if (!pidDir.exists()) {
-            throw new IllegalStateException("can not open pid directory : " + pidDir.getAbsoluteFile());
-        }
-        return ProcessState.parse(getInfoList(new File(pidDir, "stat")));
+        return ProcStatReader.get().readProcessState(pidDir(pid).resolve("stat"));
     }
 
-    private List<String> getInfoList(File file) throws IOException {
-        return SPACE_SPLITTER.splitToList(Files.toString(file, Charsets.UTF_8));
+    private Path pidDir(int pid) {
+        Path pidDir = Paths.get(PROC_PATH, String.valueOf(pid));
+        if (!pidDir.toFile().exists()) {
+            throw new IllegalStateException("can not open pid directory : " + pidDir.toAbsolutePath());
+        }
+        return pidDir;
     }
 
     public static StatParser getInstance() {
@@ -0,0 +1,63 @@
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadInfo;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JStackParserTest {
+
+    private static final String DUMP = "2026-10-18 23:40:00\n" +
+            "Full thread dump Java HotSpot(TM) 64-Bit Server VM (25.201-b09 mixed mode):\n" +
+            "\n" +
+            "\"worker-1\" #12 prio=5 os_prio=0 tid=0x00007f3c5c001000 nid=0x1a2b in Object.wait() [0x00007f3c4b7fe000]\n" +
+            "   java.lang.Thread.State: WAITING (on object monitor)\n" +
+            "\tat java.lang.Object.wait(Native Method)\n" +
+            "\t- waiting on <0x00000000a230d470> (a java.lang.Object)\n" +
+            "\tat Busy$1.run(Busy.java:1)\n" +
+            "\t- locked <0x00000000a230d480> (a java.lang.Object)\n" +
+            "\n" +
+            "\"\" #13 prio=5 os_prio=0 tid=0x00007f3c5c002000 nid=0x1a2c waiting on condition [0x00007f3c4b6fe000]\n" +
+            "   java.lang.Thread.State: TIMED_WAITING (sleeping)\n" +
+            "\tat java.lang.Thread.sleep(Native Method)\n" +
+            "\n" +
+            "\"VM Thread\" os_prio=0 tid=0x00007f3c5c003000 nid=0x1a2d runnable \n" +
+            "\n" +
+            "JNI global references: 5\n";
+
+    @Test
+    public void testParse() throws IOException {
+        final List<ThreadInfo> threads = new ArrayList<>();
+        String dump = new JStackParser(new ThreadInfoHandler() {
+            @Override
+            public void handle(ThreadInfo threadInfo) {
+                threads.add(threadInfo);
+            }
+        }).parse(new StringReader(DUMP));
+
+        Assert.assertEquals(DUMP, dump);
+        Assert.assertEquals(3, threads.size());
+
+        ThreadInfo worker = threads.get(0);
+        Assert.assertEquals("0x1a2b", worker.getId());
+        Assert.assertEquals("worker-1", worker.getName());
+        Assert.assertEquals("WAITING", worker.getState());
+        Assert.assertEquals(ImmutableList.of("0x00000000a230d480"), worker.getLockOn());
+        Assert.assertTrue(worker.getStack().startsWith("\"worker-1\""));
+        Assert.assertTrue(worker.getStack().endsWith("(a java.lang.Object)"));
+
+        ThreadInfo noName = threads.get(1);
+        Assert.assertEquals("NoThreadName#0x1a2c", noName.getName());
+        Assert.assertEquals("TIMED_WAITING", noName.getState());
+
+        ThreadInfo vmThread = threads.get(2);
+        Assert.assertEquals("0x1a2d", vmThread.getId());
+        Assert.assertEquals("", vmThread.getState());
+        Assert.assertEquals("", vmThread.getStack());
+    }
+}
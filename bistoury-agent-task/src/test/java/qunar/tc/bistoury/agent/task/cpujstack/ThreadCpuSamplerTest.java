@@ -0,0 +1,87 @@
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.agent.common.config.AgentConfig;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffer;
+import qunar.tc.bistoury.agent.task.proc.FullStates;
+import qunar.tc.bistoury.agent.task.proc.ProcUtil;
+import qunar.tc.bistoury.clientside.common.meta.MetaStores;
+
+import java.util.List;
+
+public class ThreadCpuSamplerTest {
+
+    private static final long START = 1_600_000_000_000L;
+
+    private ThreadCpuRingBuffer ringBuffer;
+
+    private ThreadCpuSampler sampler;
+
+    @Before
+    public void setUp() {
+        ringBuffer = new ThreadCpuRingBuffer(10, 16);
+        sampler = new ThreadCpuSampler(new AgentConfig(MetaStores.getMetaStore()), ringBuffer);
+    }
+
+    @Test
+    public void testFirstSampleOnlyKeepState() {
+        sampler.sample(FullStates.of(1000, ImmutableMap.of(1, 100L)), START);
+        Assert.assertTrue(ringBuffer.topN(0, 10).isEmpty());
+        Assert.assertTrue(ringBuffer.history(1, 0).isEmpty());
+    }
+
+    @Test
+    public void testUsageAndDuration() {
+        long cpuNum = ProcUtil.getCpuNum();
+        sampler.sample(FullStates.of(1000, ImmutableMap.of(1, 100L, 2, 0L)), START);
+        //每个核100个jiffies，线程1用了50，线程2用了25
+        sampler.sample(FullStates.of(1000 + 100 * cpuNum, ImmutableMap.of(1, 150L, 2, 25L)), START + 5000);
+
+        List<ThreadCpuRingBuffer.CpuSample> history = ringBuffer.history(1, 0);
+        Assert.assertEquals(1, history.size());
+        Assert.assertEquals(START + 5000, history.get(0).getTimestamp());
+        Assert.assertEquals(5000, history.get(0).getUsage());
+        Assert.assertEquals(2500, ringBuffer.history(2, 0).get(0).getUsage());
+
+        //第二段时间是第一段的3倍，按时间加权
+        sampler.sample(FullStates.of(1000 + 200 * cpuNum, ImmutableMap.of(1, 150L, 2, 125L)), START + 20000);
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(2, top.get(0).getThreadId());
+        Assert.assertEquals((2500 * 5000 + 10000 * 15000) / 20000, top.get(0).getAvgUsage());
+        Assert.assertEquals(10000, top.get(0).getMaxUsage());
+        Assert.assertEquals(1, top.get(1).getThreadId());
+        Assert.assertEquals(5000 * 5000 / 20000, top.get(1).getAvgUsage());
+    }
+
+    @Test
+    public void testNewThread() {
+        long cpuNum = ProcUtil.getCpuNum();
+        sampler.sample(FullStates.of(1000, ImmutableMap.of(1, 100L)), START);
+        //上一次采样时还没有的线程，所有时间都算在这段内
+        sampler.sample(FullStates.of(1000 + 100 * cpuNum, ImmutableMap.of(1, 100L, 3, 20L)), START + 5000);
+        List<ThreadCpuRingBuffer.ThreadCpuUsage> top = ringBuffer.topN(0, 10);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals(3, top.get(0).getThreadId());
+        Assert.assertEquals(2000, top.get(0).getAvgUsage());
+    }
+
+    @Test
+    public void testNullStateRestart() {
+        long cpuNum = ProcUtil.getCpuNum();
+        sampler.sample(FullStates.of(1000, ImmutableMap.of(1, 100L)), START);
+        sampler.sample(null, START + 5000);
+        //读取失败之后重新从下一次采样开始算
+        sampler.sample(FullStates.of(1000 + 100 * cpuNum, ImmutableMap.of(1, 200L)), START + 10000);
+        Assert.assertTrue(ringBuffer.topN(0, 10).isEmpty());
+
+        sampler.sample(FullStates.of(1000 + 200 * cpuNum, ImmutableMap.of(1, 210L)), START + 12000);
+        List<ThreadCpuRingBuffer.CpuSample> history = ringBuffer.history(1, 0);
+        Assert.assertEquals(1, history.size());
+        Assert.assertEquals(1000, history.get(0).getUsage());
+        Assert.assertEquals(1000, ringBuffer.topN(0, 10).get(0).getAvgUsage());
+    }
+}
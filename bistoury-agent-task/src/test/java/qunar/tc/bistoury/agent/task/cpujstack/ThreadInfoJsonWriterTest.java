@@ -0,0 +1,59 @@
+package qunar.tc.bistoury.agent.task.cpujstack;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadInfo;
+import qunar.tc.bistoury.common.JacksonSerializer;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ThreadInfoJsonWriterTest {
+
+    private static final TypeReference<Map<String, ThreadInfo>> TYPE_REFERENCE = new TypeReference<Map<String, ThreadInfo>>() {
+    };
+
+    @Test
+    public void testSameAsMapSerialize() throws IOException {
+        ThreadInfoJsonWriter writer = new ThreadInfoJsonWriter(ImmutableMap.of("0x1a2b", 0.25, "0x1a2c", 0.0));
+        Map<String, ThreadInfo> expected = new LinkedHashMap<>();
+        for (ThreadInfo threadInfo : ImmutableList.of(
+                threadInfo("0x1a2b", "worker-1", "\"worker-1\" nid=0x1a2b\n\tat Busy.run(Busy.java:1)"),
+                threadInfo("0x1a2c", "worker-2", "\"worker-2\" nid=0x1a2c 中文"),
+                threadInfo("0x1a2d", "VM Thread", ""))) {
+            writer.handle(threadInfo);
+            expected.put(threadInfo.getId(), threadInfo);
+        }
+        String json = writer.finish();
+
+        Assert.assertEquals(2500, expected.get("0x1a2b").getMinuteCpuTime());
+        //不在分钟数据里的线程cpu时间为0
+        Assert.assertEquals(0, expected.get("0x1a2d").getMinuteCpuTime());
+        Assert.assertEquals(JacksonSerializer.serialize(expected), json);
+
+        Map<String, ThreadInfo> actual = JacksonSerializer.deSerialize(json, TYPE_REFERENCE);
+        Assert.assertEquals(3, actual.size());
+        Assert.assertEquals("worker-2", actual.get("0x1a2c").getName());
+        Assert.assertEquals(expected.get("0x1a2c").getStack(), actual.get("0x1a2c").getStack());
+        Assert.assertEquals(ImmutableList.of("0x1"), actual.get("0x1a2b").getLockOn());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Assert.assertEquals(JacksonSerializer.serialize(ImmutableMap.of()), new ThreadInfoJsonWriter(ImmutableMap.<String, Double>of()).finish());
+    }
+
+    private static ThreadInfo threadInfo(String id, String name, String stack) {
+        ThreadInfo threadInfo = new ThreadInfo();
+        threadInfo.setId(id);
+        threadInfo.setName(name);
+        threadInfo.setState("RUNNABLE");
+        threadInfo.setStack(stack);
+        threadInfo.setLockOn(ImmutableList.of("0x1"));
+        return threadInfo;
+    }
+}
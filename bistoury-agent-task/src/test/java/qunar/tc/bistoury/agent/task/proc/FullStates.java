@@ -0,0 +1,19 @@
+package qunar.tc.bistoury.agent.task.proc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 构造测试用的进程状态，cpu和线程时间都记在user time上
+ */
+public class FullStates {
+
+    public static FullState of(long cpuTime, Map<Integer, Long> threadTimes) {
+        Map<Integer, ThreadState> threads = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : threadTimes.entrySet()) {
+            threads.put(entry.getKey(), new ThreadState(entry.getKey(), 'R', entry.getValue(), 0));
+        }
+        return new FullState(new CpuState(cpuTime, 0, 0, 0, 0, 0, 0),
+                new ProcessState(1, "java", 'S', 0, 0, 0, 0, 0, threads.size()), threads);
+    }
+}
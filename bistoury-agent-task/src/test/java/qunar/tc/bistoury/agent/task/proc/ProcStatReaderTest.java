@@ -0,0 +1,132 @@
+package qunar.tc.bistoury.agent.task.proc;
+
+import com.google.common.base.Charsets;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.common.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class ProcStatReaderTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("proc-stat");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteDirectory(dir.toFile(), true);
+    }
+
+    @Test
+    public void testThreadState() throws IOException {
+        Path stat = write("stat", stat(123, "java", 'S', 1, 1500, 300, 0, 0, 1));
+        ThreadState state = ProcStatReader.get().readThreadState(stat);
+        Assert.assertEquals(123, state.tid);
+        Assert.assertEquals('S', state.state);
+        Assert.assertEquals(1500, state.userTime);
+        Assert.assertEquals(300, state.systemTime);
+    }
+
+    @Test
+    public void testCommWithSpaceAndParenthesis() throws IOException {
+        String comm = "pool-1 (thread) 2)";
+        Path stat = write("stat", stat(4567, comm, 'R', 1, 10, 20, 30, 40, 88));
+
+        ThreadState threadState = ProcStatReader.get().readThreadState(stat);
+        Assert.assertEquals(4567, threadState.tid);
+        Assert.assertEquals('R', threadState.state);
+        Assert.assertEquals(10, threadState.userTime);
+        Assert.assertEquals(20, threadState.systemTime);
+
+        ProcessState processState = ProcStatReader.get().readProcessState(stat);
+        Assert.assertEquals(4567, processState.pid);
+        Assert.assertEquals(comm, processState.command);
+        Assert.assertEquals('R', processState.state);
+        Assert.assertEquals(1, processState.ppid);
+        Assert.assertEquals(30, processState.cUserTime);
+        Assert.assertEquals(40, processState.cSystemTime);
+        Assert.assertEquals(88, processState.threadNum);
+    }
+
+    @Test
+    public void testEmptyComm() throws IOException {
+        ProcessState state = ProcStatReader.get().readProcessState(write("stat", stat(1, "", 'S', 0, 1, 2, 3, 4, 5)));
+        Assert.assertEquals("", state.command);
+        Assert.assertEquals(5, state.threadNum);
+    }
+
+    @Test
+    public void testMissingOrEmptyThreadStat() throws IOException {
+        Assert.assertNull(ProcStatReader.get().readThreadState(dir.resolve("not-exist")));
+        Assert.assertNull(ProcStatReader.get().readThreadState(write("empty", "")));
+        //截断在comm之后，没有state字段
+        Assert.assertNull(ProcStatReader.get().readThreadState(write("truncated", "12 (java)")));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingProcessStat() throws IOException {
+        ProcStatReader.get().readProcessState(dir.resolve("not-exist"));
+    }
+
+    @Test
+    public void testThreadStates() throws IOException {
+        Path task = Files.createDirectory(dir.resolve("task"));
+        Files.createDirectory(task.resolve("10"));
+        Files.write(task.resolve("10").resolve("stat"), stat(10, "main", 'S', 1, 5, 6, 0, 0, 3).getBytes(Charsets.UTF_8));
+        Files.createDirectory(task.resolve("11"));
+        Files.write(task.resolve("11").resolve("stat"), stat(11, "gc (1)", 'R', 1, 7, 8, 0, 0, 3).getBytes(Charsets.UTF_8));
+        //线程已经退出，目录还在但stat读不到
+        Files.createDirectory(task.resolve("12"));
+
+        Map<Integer, ThreadState> states = ProcStatReader.get().readThreadStates(task);
+        Assert.assertEquals(2, states.size());
+        Assert.assertEquals(11, states.get(10).totalTime());
+        Assert.assertEquals('R', states.get(11).state);
+        Assert.assertEquals(15, states.get(11).totalTime());
+    }
+
+    @Test
+    public void testCpuState() throws IOException {
+        Path stat = write("stat", "cpu  100 2 300 4000 50 6 70 0 0 0\n"
+                + "cpu0 50 1 150 2000 25 3 35 0 0 0\n"
+                + "intr 123456 0 0\n");
+        CpuState state = ProcStatReader.get().readCpuState(stat);
+        Assert.assertEquals(100, state.userTime);
+        Assert.assertEquals(2, state.niceTime);
+        Assert.assertEquals(300, state.systemTime);
+        Assert.assertEquals(4000, state.idleTime);
+        Assert.assertEquals(50, state.ioWaitTime);
+        Assert.assertEquals(6, state.irqTime);
+        Assert.assertEquals(70, state.softIrqTime);
+    }
+
+    @Test
+    public void testReuseBuffer() throws IOException {
+        //前一次读的内容更长，不能影响后一次解析
+        Path longComm = write("long", stat(1, "a very long thread name", 'S', 1, 111111, 222222, 0, 0, 1));
+        Path shortComm = write("short", stat(2, "b", 'R', 1, 3, 4, 0, 0, 1));
+        ProcStatReader.get().readThreadState(longComm);
+        ThreadState state = ProcStatReader.get().readThreadState(shortComm);
+        Assert.assertEquals(2, state.tid);
+        Assert.assertEquals(3, state.userTime);
+        Assert.assertEquals(4, state.systemTime);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(Charsets.UTF_8));
+    }
+
+    private static String stat(int pid, String comm, char state, int ppid, long utime, long stime, long cutime, long cstime, int threads) {
+        return pid + " (" + comm + ") " + state + " " + ppid + " 100 100 0 -1 4194560 2000 0 0 0 "
+                + utime + " " + stime + " " + cutime + " " + cstime + " 20 0 " + threads + " 0 123456 1000000 500 18446744073709551615\n";
+    }
+}
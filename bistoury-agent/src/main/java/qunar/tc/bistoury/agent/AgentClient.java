@@ -18,10 +18,10 @@
 package qunar.tc.bistoury.agent;
 
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.common.NamedThreadFactory;
+import qunar.tc.bistoury.remoting.netty.NettyTransport;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -42,7 +42,11 @@ public class AgentClient {
         return INSTANCE;
     }
 
-    private final EventLoopGroup WORK_GROUP = new NioEventLoopGroup(Integer.parseInt(System.getProperty("bistoury.agent.workgroup.num", "2")), new NamedThreadFactory("bistoury-agent-netty"));
+    private final NettyTransport TRANSPORT = NettyTransport.create(
+            Boolean.parseBoolean(System.getProperty("bistoury.agent.netty.epoll", "true")),
+            Boolean.parseBoolean(System.getProperty("bistoury.agent.netty.epoll.edgeTriggered", "true")));
+
+    private final EventLoopGroup WORK_GROUP = TRANSPORT.newEventLoopGroup(Integer.parseInt(System.getProperty("bistoury.agent.workgroup.num", "2")), new NamedThreadFactory("bistoury-agent-netty"));
 
     private boolean start = false;
 
@@ -90,7 +94,7 @@ public class AgentClient {
     }
 
     private AgentNettyClient initNettyClient(ProxyConfig proxyConfig) {
-        AgentNettyClient agentNettyClient = new AgentNettyClient(proxyConfig, WORK_GROUP);
+        AgentNettyClient agentNettyClient = new AgentNettyClient(proxyConfig, TRANSPORT, WORK_GROUP);
         agentNettyClient.start();
         return agentNettyClient;
     }
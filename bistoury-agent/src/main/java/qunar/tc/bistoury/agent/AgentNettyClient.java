@@ -22,7 +22,6 @@ import com.google.common.util.concurrent.SettableFuture;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
@@ -48,10 +47,20 @@ class AgentNettyClient {
 
     private static final Logger logger = LoggerFactory.getLogger(AgentNettyClient.class);
 
+    private static final int COMPRESS_THRESHOLD = Integer.parseInt(System.getProperty("bistoury.agent.compress.threshold", String.valueOf(8 * 1024)));
+
+    private static final boolean TCP_NODELAY = Boolean.parseBoolean(System.getProperty("bistoury.agent.tcp.nodelay", "true"));
+
+    private static final int WRITE_LOW_WATER_MARK = Integer.parseInt(System.getProperty("bistoury.agent.write.buffer.low.water.mark", String.valueOf(32 * 1024)));
+
+    private static final int WRITE_HIGH_WATER_MARK = Integer.parseInt(System.getProperty("bistoury.agent.write.buffer.high.water.mark", String.valueOf(64 * 1024)));
+
     private final ProxyConfig proxyConfig;
 
     private final Bootstrap bootstrap = new Bootstrap();
 
+    private final NettyTransport transport;
+
     private final EventLoopGroup workGroup;
 
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -60,8 +69,9 @@ class AgentNettyClient {
 
     private volatile Channel channel;
 
-    public AgentNettyClient(ProxyConfig proxyConfig, EventLoopGroup workGroup) {
+    public AgentNettyClient(ProxyConfig proxyConfig, NettyTransport transport, EventLoopGroup workGroup) {
         this.proxyConfig = proxyConfig;
+        this.transport = transport;
         this.workGroup = workGroup;
     }
 
@@ -78,6 +88,7 @@ class AgentNettyClient {
         final RequestHandler requestHandler = new RequestHandler(ImmutableList.<Processor>of(
                 new JobPauseProcessor(jobStore),
                 new JobResumeProcessor(jobStore),
+                new JobCreditProcessor(jobStore),
                 new CancelProcessor(taskStore),
                 new HeartbeatProcessor(),
                 new MetaRefreshProcessor(),
@@ -86,16 +97,17 @@ class AgentNettyClient {
 
         final ConnectionManagerHandler connectionManagerHandler = new ConnectionManagerHandler(jobStore);
 
-        bootstrap.group(workGroup)
-                .channel(NioSocketChannel.class)
+        transport.configure(bootstrap).group(workGroup)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000)
                 .option(ChannelOption.SO_KEEPALIVE, true)
                 .option(ChannelOption.SO_REUSEADDR, true)
+                .option(ChannelOption.TCP_NODELAY, TCP_NODELAY)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(WRITE_LOW_WATER_MARK, WRITE_HIGH_WATER_MARK))
                 .handler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel socketChannel) throws Exception {
                         socketChannel.pipeline()
-                                .addLast("encoder", new AgentEncoder())
+                                .addLast("encoder", new AgentEncoder(COMPRESS_THRESHOLD))
                                 .addLast("decoder", new AgentDecoder())
                                 .addLast("idle", idleStateHandler)
                                 .addLast(requestHandler)
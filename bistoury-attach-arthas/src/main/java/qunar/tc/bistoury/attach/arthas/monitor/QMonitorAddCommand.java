@@ -21,6 +21,7 @@ import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.middleware.cli.annotations.Argument;
 import com.taobao.middleware.cli.annotations.Name;
+import com.taobao.middleware.cli.annotations.Option;
 import com.taobao.middleware.logger.Logger;
 import qunar.tc.bistoury.attach.common.AttachJacksonSerializer;
 import qunar.tc.bistoury.attach.common.BistouryLoggger;
@@ -43,6 +44,8 @@ public class QMonitorAddCommand extends AnnotatedCommand {
 
     private int line;
 
+    private int sampleRate = 1;
+
     public String id;
 
     @Argument(index = 0, argName = "id")
@@ -60,10 +63,18 @@ public class QMonitorAddCommand extends AnnotatedCommand {
         this.line = line;
     }
 
+    /**
+     * 调用非常频繁的方法可以每sampleRate次统计一次耗时，调用次数依然精确统计
+     */
+    @Option(shortName = "s", longName = "sample")
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
 
     @Override
     public void process(CommandProcess process) {
-        logger.info("receive monitor add command, source: {}, line: {}", source, line);
+        logger.info("receive monitor add command, source: {}, line: {}, sample rate: {}", source, line, sampleRate);
         CodeProcessResponse<String> response = new CodeProcessResponse<>();
         TypeResponse<String> typeResponse = new TypeResponse<>();
         typeResponse.setType(BistouryConstants.REQ_MONITOR_ADD);
@@ -71,7 +82,7 @@ public class QMonitorAddCommand extends AnnotatedCommand {
         response.setId(id);
         try {
             final QMonitorClient monitorClient = QMonitorClients.getInstance();
-            String monitorId = monitorClient.addMonitor(source, line);
+            String monitorId = monitorClient.addMonitor(source, line, sampleRate);
             response.setData(monitorId);
             response.setCode(0);
         } catch (Throwable e) {
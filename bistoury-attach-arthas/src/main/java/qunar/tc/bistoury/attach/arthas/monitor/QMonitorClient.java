@@ -56,8 +56,8 @@ public class QMonitorClient implements InstrumentClient {
         }
     }
 
-    public String addMonitor(String source, int line) {
-        return monitor.addMonitor(source, line);
+    public String addMonitor(String source, int line, int sampleRate) {
+        return monitor.addMonitor(source, line, sampleRate);
     }
 
     public MetricsSnapshot reportMonitor(final String name) {
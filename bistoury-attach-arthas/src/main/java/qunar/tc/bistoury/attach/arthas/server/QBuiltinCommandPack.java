@@ -37,6 +37,7 @@ import qunar.tc.bistoury.attach.arthas.profiler.ProfilerInfoCommand;
 import qunar.tc.bistoury.attach.arthas.profiler.ProfilerStateSearchCommand;
 import qunar.tc.bistoury.attach.arthas.profiler.ProfilerStartCommand;
 import qunar.tc.bistoury.attach.arthas.profiler.ProfilerStopCommand;
+import qunar.tc.bistoury.attach.arthas.threaddump.ThreadDumpCommand;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -110,6 +111,8 @@ public class QBuiltinCommandPack extends BuiltinCommandPack {
         commands.add(Command.create(QMonitorAddCommand.class));
         commands.add(Command.create(QMonitorSnapshotCommand.class));
 
+        commands.add(Command.create(ThreadDumpCommand.class));
+
         commands.add(Command.create(JarInfoCommand.class));
 
         commands.add(Command.create(JarDebugCommand.class));
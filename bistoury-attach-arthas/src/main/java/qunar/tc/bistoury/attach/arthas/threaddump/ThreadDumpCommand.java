@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.attach.arthas.threaddump;
+
+import com.taobao.arthas.core.shell.command.AnnotatedCommand;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.middleware.cli.annotations.Name;
+import com.taobao.middleware.cli.annotations.Option;
+import com.taobao.middleware.logger.Logger;
+import qunar.tc.bistoury.attach.common.AttachJacksonSerializer;
+import qunar.tc.bistoury.attach.common.BistouryLoggger;
+import qunar.tc.bistoury.common.BistouryConstants;
+import qunar.tc.bistoury.common.CodeProcessResponse;
+import qunar.tc.bistoury.common.TypeResponse;
+import qunar.tc.bistoury.common.URLCoder;
+
+/**
+ * 在应用进程内做线程dump，agent不用每分钟attach一次
+ */
+@Name(BistouryConstants.REQ_THREAD_DUMP)
+public class ThreadDumpCommand extends AnnotatedCommand {
+
+    private static final Logger logger = BistouryLoggger.getLogger();
+
+    private int maxDepth;
+
+    @Option(shortName = "d", longName = "depth")
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public void process(CommandProcess process) {
+        logger.debug("receive thread dump command");
+        CodeProcessResponse<String> response = new CodeProcessResponse<>();
+        TypeResponse<String> typeResponse = new TypeResponse<>();
+        typeResponse.setType(BistouryConstants.REQ_THREAD_DUMP);
+        typeResponse.setData(response);
+        try {
+            response.setData(ThreadDumper.dump(maxDepth));
+            response.setCode(0);
+        } catch (Throwable e) {
+            logger.error("thread dump error, {}", e.getMessage(), e);
+            response.setCode(-1);
+            response.setMessage("thread dump error, " + e.getClass() + ", " + e.getMessage());
+        } finally {
+            process.write(URLCoder.encode(AttachJacksonSerializer.serialize(typeResponse)));
+            process.end();
+            logger.debug("finish thread dump command");
+        }
+    }
+}
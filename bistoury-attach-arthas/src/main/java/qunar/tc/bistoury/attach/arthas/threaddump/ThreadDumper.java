@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.attach.arthas.threaddump;
+
+import com.google.common.base.Charsets;
+import qunar.tc.bistoury.common.Base64;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 通过DiagnosticCommand的threadPrint拿到和jstack -l一样的输出，包含nid，agent可以和/proc中的线程cpu对上
+ * <p>
+ * ThreadMXBean拿不到native线程id，所以没有用它
+ */
+class ThreadDumper {
+
+    private static final String DIAGNOSTIC_COMMAND = "com.sun.management:type=DiagnosticCommand";
+
+    private static final String FRAME_PREFIX = "\tat ";
+
+    private ThreadDumper() {
+    }
+
+    /**
+     * @param maxDepth 每个线程最多保留的栈帧数，不大于0时不限制，锁信息总是保留
+     * @return deflate压缩后的base64
+     */
+    static String dump(int maxDepth) throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String dump = (String) server.invoke(new ObjectName(DIAGNOSTIC_COMMAND), "threadPrint",
+                new Object[]{new String[]{"-l"}}, new String[]{String[].class.getName()});
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(dump.length() / 8);
+        try (Writer writer = new OutputStreamWriter(new DeflaterOutputStream(output), Charsets.UTF_8)) {
+            write(dump, maxDepth, writer);
+        }
+        return Base64.getUrlEncoder().encodeToString(output.toByteArray());
+    }
+
+    private static void write(String dump, int maxDepth, Writer writer) throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(dump));
+        int depth = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(FRAME_PREFIX)) {
+                depth++;
+                if (maxDepth > 0 && depth > maxDepth) {
+                    continue;
+                }
+            } else if (!line.startsWith("\t")) {
+                depth = 0;
+            }
+            writer.write(line);
+            writer.write('\n');
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.agent.common.kv;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import qunar.tc.bistoury.common.FileUtil;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * agent本地kv存储的读写，value大小和监控、profiler数据接近
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KvDbBenchmark {
+
+    private static final int TTL_SECONDS = 3600;
+
+    private static final int KEY_COUNT = 10000;
+
+    //和cpu jstack每分钟写入的线程数接近
+    private static final int BATCH_SIZE = 300;
+
+    @Param({"sqlite", "rocksdb"})
+    private String store;
+
+    @Param({"256", "4096"})
+    private int valueSize;
+
+    private File dir;
+
+    private KvDb kvDb;
+
+    private String value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dir = Files.createTempDir();
+        if ("sqlite".equals(store)) {
+            kvDb = new SQLiteStoreImpl(dir.getAbsolutePath(), TTL_SECONDS);
+        } else {
+            kvDb = new RocksDBStoreImpl(dir.getAbsolutePath(), TTL_SECONDS, 2);
+        }
+
+        value = Strings.repeat("x", valueSize);
+        for (int i = 0; i < KEY_COUNT; ++i) {
+            kvDb.put(key(i), value);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        kvDb.close();
+        FileUtil.deleteDirectory(dir, true);
+    }
+
+    @Benchmark
+    public void put() {
+        kvDb.put(key(ThreadLocalRandom.current().nextInt(KEY_COUNT)), value);
+    }
+
+    @Benchmark
+    public String get() {
+        return kvDb.get(key(ThreadLocalRandom.current().nextInt(KEY_COUNT)));
+    }
+
+    @Benchmark
+    public void putBatch() {
+        Map<String, String> batch = new HashMap<>(BATCH_SIZE);
+        int start = ThreadLocalRandom.current().nextInt(KEY_COUNT - BATCH_SIZE);
+        for (int i = start; i < start + BATCH_SIZE; ++i) {
+            batch.put(key(i), value);
+        }
+        kvDb.putBatch(batch);
+    }
+
+    private static String key(int i) {
+        return "bistoury-benchmark-" + i;
+    }
+}
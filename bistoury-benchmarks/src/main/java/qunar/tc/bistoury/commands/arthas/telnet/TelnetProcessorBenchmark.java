@@ -0,0 +1,76 @@
+package qunar.tc.bistoury.commands.arthas.telnet;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * arthas telnet输出的处理，每次调用处理一整屏输出（4k一块）直到读到prompt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelnetProcessorBenchmark {
+
+    private static final String PROMPT = "[arthas@12345]$ ";
+
+    private static final String CONTENT = Strings.repeat("\"main\" Id=1 RUNNABLE\n    at java.lang.Thread.sleep(Native Method) 中文\n", 200);
+
+    private byte[] plainOutput;
+
+    private byte[] urlEncodedOutput;
+
+    @Setup
+    public void setUp() throws Exception {
+        plainOutput = (CONTENT + PROMPT).getBytes(Charsets.UTF_8);
+        urlEncodedOutput = (URLEncoder.encode(CONTENT, "UTF-8") + PROMPT).getBytes(Charsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean prompt(Blackhole blackhole) {
+        return feed(new PromptProcessor(new BlackholeWriter(blackhole)), plainOutput);
+    }
+
+    @Benchmark
+    public boolean urlDecode(Blackhole blackhole) {
+        return feed(new UrlDecodeProcessor(new PromptProcessor(new BlackholeWriter(blackhole))), urlEncodedOutput);
+    }
+
+    private boolean feed(ResultProcessor processor, byte[] output) {
+        boolean end = false;
+        for (int start = 0; start < output.length; start += CommunicateUtil.DEFAULT_BUFFER_SIZE) {
+            end = processor.process(output, start, Math.min(CommunicateUtil.DEFAULT_BUFFER_SIZE, output.length - start));
+        }
+        return end;
+    }
+
+    private static class BlackholeWriter implements Writer {
+
+        private final Blackhole blackhole;
+
+        private BlackholeWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(byte[] data) {
+            blackhole.consume(data);
+        }
+    }
+}
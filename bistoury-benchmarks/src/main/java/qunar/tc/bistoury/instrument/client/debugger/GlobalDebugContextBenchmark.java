@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.instrument.client.debugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import qunar.tc.bistoury.instrument.client.location.Location;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 断点所在行每次执行都会调用isHit，条件断点在条件不满足时每次都会走完整个判断
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlobalDebugContextBenchmark {
+
+    private static final String SOURCE = "qunar/tc/bistoury/benchmark/Service.java";
+
+    private static final int BREAKPOINTS = 100;
+
+    private int hitLocationId;
+
+    private int missLocationId;
+
+    @Setup
+    public void setUp() {
+        GlobalDebugContext.initSnapshotReceiver((SnapshotReceiver) Proxy.newProxyInstance(
+                SnapshotReceiver.class.getClassLoader(), new Class<?>[]{SnapshotReceiver.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                }));
+        for (int i = 0; i < BREAKPOINTS; ++i) {
+            GlobalDebugContext.addBreakpoint(new Location(SOURCE, i), GlobalDebugContext.prepareBreakpointCondition("false"));
+        }
+        hitLocationId = GlobalDebugContext.getLocationId(new Location(SOURCE, 1));
+        missLocationId = GlobalDebugContext.getLocationId(new Location(SOURCE, BREAKPOINTS + 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        GlobalDebugContext.destroy();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean conditionMiss1() {
+        return GlobalDebugContext.isHit(hitLocationId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean conditionMiss4() {
+        return GlobalDebugContext.isHit(hitLocationId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean noBreakpoint4() {
+        return GlobalDebugContext.isHit(missLocationId);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean hasBreakpointSet4() {
+        return GlobalDebugContext.hasBreakpointSet(hitLocationId);
+    }
+}
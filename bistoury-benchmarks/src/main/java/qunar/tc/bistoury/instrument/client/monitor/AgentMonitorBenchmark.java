@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.instrument.client.monitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监控字节码在每次方法返回时调用的AgentMonitor.stop
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentMonitorBenchmark {
+
+    private static final int ID = AgentMonitor.register("qunar.tc.bistoury.benchmark.Service#handle(java.lang.String)", 1);
+
+    private static final int SAMPLED_ID = AgentMonitor.register("qunar.tc.bistoury.benchmark.Service#sampled(java.lang.String)", 100);
+
+    @Benchmark
+    @Threads(1)
+    public void stop1() {
+        AgentMonitor.stop(ID, AgentMonitor.start(ID));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void stop4() {
+        AgentMonitor.stop(ID, AgentMonitor.start(ID));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sampledStop4() {
+        AgentMonitor.stop(SAMPLED_ID, AgentMonitor.start(SAMPLED_ID));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.instrument.client.profiler.sync.runtime;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import qunar.tc.bistoury.instrument.client.profiler.sync.runtime.cpu.DumpData;
+import qunar.tc.bistoury.instrument.client.profiler.sync.runtime.cpu.ThreadCpuInfo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步profiler每次采样对每个线程调用一次addStackTrace，这里用当前jvm中真实的线程栈
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfilerDataBenchmark {
+
+    private ThreadCpuInfo[] threads;
+
+    private DumpData dumpData;
+
+    @Setup
+    public void setUp() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        ThreadInfo[] threadInfos = threadMXBean.dumpAllThreads(false, false);
+        threads = new ThreadCpuInfo[threadInfos.length];
+        for (int i = 0; i < threadInfos.length; ++i) {
+            threads[i] = new ThreadCpuInfo(threadInfos[i], threadMXBean.getThreadCpuTime(threadInfos[i].getThreadId()));
+        }
+        dumpData = new DumpData(new HashMap<Long, Long>());
+    }
+
+    @Benchmark
+    public DumpData addStackTraces() {
+        ProfilerData profilerData = ProfilerData.getInstance();
+        for (ThreadCpuInfo thread : threads) {
+            profilerData.addStackTrace(thread, dumpData);
+        }
+        return dumpData;
+    }
+}
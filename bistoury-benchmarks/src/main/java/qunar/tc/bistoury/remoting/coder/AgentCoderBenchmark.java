@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.remoting.coder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import qunar.tc.bistoury.remoting.netty.AgentConstants;
+import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
+import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
+import qunar.tc.bistoury.remoting.protocol.ResponseCode;
+import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.ResponsePayloadHolder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * agent和proxy之间datagram的编码、解码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentCoderBenchmark {
+
+    @Param({"128", "4096", "65536"})
+    private int bodySize;
+
+    @Param({"false", "true"})
+    private boolean retainedSlice;
+
+    @Param({"-1", "1024"})
+    private int compressThreshold;
+
+    private byte[] body;
+
+    private EmbeddedChannel encodeChannel;
+
+    private EmbeddedChannel decodeChannel;
+
+    private ByteBuf encoded;
+
+    @Setup
+    public void setUp() {
+        //半随机的文本，接近jstack、日志这类实际输出的压缩率
+        body = new byte[bodySize];
+        Random random = new Random(0);
+        for (int i = 0; i < body.length; ++i) {
+            body[i] = (byte) ('a' + random.nextInt(8));
+        }
+
+        encodeChannel = new EmbeddedChannel(new AgentEncoder(compressThreshold));
+        encodeChannel.attr(AgentConstants.PEER_PROTOCOL_VERSION).set(RemotingHeader.PROTOCOL_VERSION);
+        encodeChannel.attr(AgentConstants.PEER_SUPPORT_COMPRESSION).set(true);
+        decodeChannel = new EmbeddedChannel(new AgentDecoder(retainedSlice));
+
+        encoded = encode();
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoded.release();
+        encodeChannel.finishAndReleaseAll();
+        decodeChannel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int encodeOnly() {
+        ByteBuf buf = encode();
+        int size = buf.readableBytes();
+        buf.release();
+        return size;
+    }
+
+    @Benchmark
+    public int decodeOnly() {
+        return decode(encoded.retainedDuplicate());
+    }
+
+    @Benchmark
+    public int roundTrip() {
+        return decode(encode());
+    }
+
+    private ByteBuf encode() {
+        RemotingHeader header = RemotingBuilder.buildRemotingHeader(ResponseCode.RESP_TYPE_CONTENT.getCode(), "benchmark");
+        encodeChannel.writeOutbound(RemotingBuilder.buildFullResponseDatagram(header, new ResponsePayloadHolder(body)));
+        return encodeChannel.readOutbound();
+    }
+
+    private int decode(ByteBuf buf) {
+        decodeChannel.writeInbound(buf);
+        Datagram datagram = decodeChannel.readInbound();
+        int size = datagram.getBody().readableBytes();
+        datagram.release();
+        return size;
+    }
+}
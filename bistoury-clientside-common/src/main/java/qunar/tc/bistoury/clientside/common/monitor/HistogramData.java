@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.clientside.common.monitor;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * 对数线性分桶直方图的稀疏形式，只保存非空的桶，随timer数据一起上报和存储
+ * <p>
+ * 小于2^precision的值每个值一个桶，更大的值每个2的幂区间再等分成2^precision个桶，分位数的相对误差不超过1/2^precision
+ * <p>
+ * 精度相同的直方图按桶相加就能合并，多个分钟、多个预聚合的桶或者多台机器的分位数要先合并直方图再计算，对分位数取平均是不对的
+ */
+public class HistogramData {
+
+    /**
+     * timer数据从下标1开始依次存放的分位数，之后是最大值，前两个值保持原来的顺序
+     */
+    private static final double[] TIMER_PERCENTILES = {98.0, 50.0, 90.0, 99.0, 99.9};
+
+    private int precision;
+
+    private long max;
+
+    /**
+     * 非空桶的下标，升序，和counts一一对应
+     */
+    private int[] indexes;
+
+    private long[] counts;
+
+    public HistogramData() {
+        this(1, new int[0], new long[0], 0);
+    }
+
+    public HistogramData(int precision, int[] indexes, long[] counts, long max) {
+        Preconditions.checkArgument(indexes.length == counts.length, "indexes and counts must have same length");
+        this.precision = precision;
+        this.indexes = indexes;
+        this.counts = counts;
+        this.max = max;
+    }
+
+    /**
+     * @param buckets 以桶下标为下标的计数
+     */
+    public static HistogramData fromBuckets(int precision, long[] buckets, long max) {
+        int size = 0;
+        for (long count : buckets) {
+            if (count != 0) {
+                ++size;
+            }
+        }
+        int[] indexes = new int[size];
+        long[] counts = new long[size];
+        int j = 0;
+        for (int i = 0; i < buckets.length; ++i) {
+            if (buckets[i] != 0) {
+                indexes[j] = i;
+                counts[j] = buckets[i];
+                ++j;
+            }
+        }
+        return new HistogramData(precision, indexes, counts, max);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(int precision) {
+        this.precision = precision;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public void setMax(long max) {
+        this.max = max;
+    }
+
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(int[] indexes) {
+        this.indexes = indexes;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public void setCounts(long[] counts) {
+        this.counts = counts;
+    }
+
+    public HistogramData copy() {
+        return new HistogramData(precision, indexes.clone(), counts.clone(), max);
+    }
+
+    /**
+     * 把other的计数加到当前直方图，other不变
+     */
+    public void merge(HistogramData other) {
+        Preconditions.checkArgument(precision == other.precision, "can not merge histograms with different precision");
+        int[] mergedIndexes = new int[indexes.length + other.indexes.length];
+        long[] mergedCounts = new long[mergedIndexes.length];
+        int i = 0, j = 0, size = 0;
+        while (i < indexes.length || j < other.indexes.length) {
+            if (j == other.indexes.length || (i < indexes.length && indexes[i] < other.indexes[j])) {
+                mergedIndexes[size] = indexes[i];
+                mergedCounts[size++] = counts[i++];
+            } else if (i == indexes.length || other.indexes[j] < indexes[i]) {
+                mergedIndexes[size] = other.indexes[j];
+                mergedCounts[size++] = other.counts[j++];
+            } else {
+                mergedIndexes[size] = indexes[i];
+                mergedCounts[size++] = counts[i++] + other.counts[j++];
+            }
+        }
+        indexes = Arrays.copyOf(mergedIndexes, size);
+        counts = Arrays.copyOf(mergedCounts, size);
+        max = Math.max(max, other.max);
+    }
+
+    public long totalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile (0, 100]之间
+     * @return 排在该位置的值所在桶的最大值，不超过实际的最大值
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = totalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(indexes[i], precision), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 直方图按微秒记录
+     *
+     * @return timer的数据，[rate, p98, p50, p90, p99, p99.9, max]，耗时的单位为毫秒
+     */
+    public float[] toTimerData(float rate) {
+        float[] data = new float[TIMER_PERCENTILES.length + 2];
+        data[0] = rate;
+        for (int i = 0; i < TIMER_PERCENTILES.length; ++i) {
+            data[i + 1] = millis(valueAtPercentile(TIMER_PERCENTILES[i]));
+        }
+        data[data.length - 1] = millis(max);
+        return data;
+    }
+
+    private static float millis(long micros) {
+        return micros / 1000.0f;
+    }
+
+    public static int bucketIndex(long value, int precision) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - precision;
+        if (shift < 0) {
+            return (int) value;
+        }
+        return ((shift + 1) << precision) | (int) ((value >>> shift) & ((1 << precision) - 1));
+    }
+
+    /**
+     * @return 桶中的最大值
+     */
+    public static long highestValue(int index, int precision) {
+        int shift = (index >>> precision) - 1;
+        if (shift < 0) {
+            return index;
+        }
+        long lowest = ((long) ((index & ((1 << precision) - 1)) | (1 << precision))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "precision: " + precision + ", max: " + max + ", indexes: " + Arrays.toString(indexes) + ", counts: " + Arrays.toString(counts);
+    }
+}
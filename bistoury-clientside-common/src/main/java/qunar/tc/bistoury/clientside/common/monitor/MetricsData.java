@@ -28,6 +28,8 @@ public class MetricsData {
     private String name;
     private int type;
     private float[] data;
+    //timer的耗时分布，用于合并多个点后计算分位数，counter和老版本的数据没有
+    private HistogramData histogram;
 
     public MetricsData() {
 
@@ -63,6 +65,14 @@ public class MetricsData {
         this.data = data;
     }
 
+    public HistogramData getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(HistogramData histogram) {
+        this.histogram = histogram;
+    }
+
     @Override
     public String toString() {
         return "name: " + name + ", type: " + type + ", data: " + Arrays.toString(data);
@@ -28,6 +28,7 @@ import qunar.tc.bistoury.agent.common.ClosableProcess;
 import qunar.tc.bistoury.agent.common.ClosableProcesses;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.agent.common.job.IdleAwareJob;
 import qunar.tc.bistoury.clientside.common.store.BistouryStore;
 import qunar.tc.bistoury.common.BistouryConstants;
 import qunar.tc.bistoury.common.FileUtil;
@@ -106,12 +107,14 @@ public class SystemTask implements Task {
         return future;
     }
 
-    private class Job implements ContinueResponseJob {
+    private class Job implements ContinueResponseJob, IdleAwareJob {
 
         private ClosableProcess process;
 
         private InputStream inputStream;
 
+        private boolean idle = false;
+
         @Override
         public String getId() {
             return id;
@@ -130,12 +133,18 @@ public class SystemTask implements Task {
                 return true;
             }
 
-            if (bytes.length > 0) {
+            idle = bytes.length == 0;
+            if (!idle) {
                 handler.handle(bytes);
             }
             return false;
         }
 
+        @Override
+        public boolean isIdle() {
+            return idle;
+        }
+
         @Override
         public void clear() {
             if (inputStream != null) {
@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.agent.common.job.IdleAwareJob;
 import qunar.tc.bistoury.commands.arthas.telnet.Telnet;
 import qunar.tc.bistoury.commands.arthas.telnet.TelnetStore;
 import qunar.tc.bistoury.common.BistouryConstants;
@@ -98,12 +99,14 @@ public class ArthasTask implements Task {
         return SHUTDOWN_COMMANDS.contains(realCommand);
     }
 
-    private class Job implements ContinueResponseJob {
+    private class Job implements ContinueResponseJob, IdleAwareJob {
 
         private final ListeningExecutorService executor;
 
         private Telnet telnet;
 
+        private boolean idle = false;
+
         private Job(ListeningExecutorService executor) {
             this.executor = executor;
         }
@@ -126,12 +129,18 @@ public class ArthasTask implements Task {
                 return true;
             }
 
-            if (bytes.length > 0) {
+            idle = bytes.length == 0;
+            if (!idle) {
                 handler.handle(bytes);
             }
             return false;
         }
 
+        @Override
+        public boolean isIdle() {
+            return idle;
+        }
+
         @Override
         public void clear() {
             if (telnet != null) {
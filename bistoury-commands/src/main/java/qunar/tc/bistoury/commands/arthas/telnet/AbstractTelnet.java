@@ -12,7 +12,9 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.net.SocketTimeoutException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author zhenyu.nie created on 2019 2019/10/14 14:37
@@ -25,6 +27,12 @@ public abstract class AbstractTelnet implements Telnet {
 
     private static final int DEFAULT_BUFFER_SIZE = CommunicateUtil.DEFAULT_BUFFER_SIZE;
 
+    //telnet的读线程每隔这么久读超时一次，读超时会转交给下一次read，保证read最多阻塞这么久
+    private static final int READ_TIMEOUT_MS = 500;
+
+    //没有数据时每隔这么久实际read一次，用来发现连接已经断开
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
     private final byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
 
     private final TelnetClient client;
@@ -41,11 +49,14 @@ public abstract class AbstractTelnet implements Telnet {
 
     private boolean isEnd = false;
 
+    private long lastProbeTime = System.nanoTime();
+
     public AbstractTelnet(TelnetClient client) throws IOException {
         this.client = client;
         this.in = client.getInputStream();
         this.out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), Charsets.UTF_8));
         this.version = readVersionUtilPrompt();
+        client.setSoTimeout(READ_TIMEOUT_MS);
         this.writer = new SettedWriter();
         this.resultProcessor = getProcessor(writer);
     }
@@ -104,13 +115,31 @@ public abstract class AbstractTelnet implements Telnet {
         return version;
     }
 
+    /**
+     * 只在有数据时读取，没有数据时直接返回空，不阻塞调度线程；
+     * 连接正常关闭时available也是0，所以空闲时每隔一段时间实际read一次，连接断开时会立即返回-1
+     */
     @Override
     public byte[] read() throws Exception {
         if (isEnd) {
             return null;
         }
 
-        int size = in.read(buffer);
+        long now = System.nanoTime();
+        if (in.available() == 0) {
+            if (now - lastProbeTime < PROBE_INTERVAL_NANOS) {
+                return ZERO_BYTES;
+            }
+            lastProbeTime = now;
+        }
+
+        int size;
+        try {
+            size = in.read(buffer);
+        } catch (SocketTimeoutException e) {
+            return ZERO_BYTES;
+        }
+
         if (size == -1) {
             throw new IllegalStateException("read data end, not complete data");
         } else if (size == 0) {
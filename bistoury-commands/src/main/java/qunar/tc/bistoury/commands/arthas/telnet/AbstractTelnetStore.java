@@ -25,6 +25,7 @@ import qunar.tc.bistoury.commands.arthas.TelnetConstants;
 import qunar.tc.bistoury.common.BistouryConstants;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author zhenyu.nie created on 2018 2018/10/15 19:07
@@ -35,6 +36,9 @@ public abstract class AbstractTelnetStore implements TelnetStore {
 
     private static final int MAX_ILLEGAL_VERSION_COUNT = 2;
 
+    //各个store连的是同一个端口，attach次数共用
+    private static final AtomicLong ATTACH_COUNT = new AtomicLong();
+
     private enum CheckVersion {
         check, notCheck
     }
@@ -132,6 +136,11 @@ public abstract class AbstractTelnetStore implements TelnetStore {
         return null;
     }
 
+    @Override
+    public long getAttachCount() {
+        return ATTACH_COUNT.get();
+    }
+
     private void resetClient() {
         this.arthasEntity = null;
     }
@@ -146,6 +155,7 @@ public abstract class AbstractTelnetStore implements TelnetStore {
 
     private TelnetClient forceCreateClient(int pid) throws IOException {
         ArthasEntity arthasEntity = new ArthasEntity(pid);
+        ATTACH_COUNT.incrementAndGet();
         arthasEntity.start();
         TelnetClient client = createClient();
         this.arthasEntity = arthasEntity;
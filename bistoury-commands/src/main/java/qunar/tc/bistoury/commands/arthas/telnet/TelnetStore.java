@@ -25,4 +25,9 @@ public interface TelnetStore {
     Telnet getTelnet(int pid) throws Exception;
 
     Telnet tryGetTelnet() throws Exception;
+
+    /**
+     * agent启动后attach的次数，变化时说明应用里的bistoury重新attach过
+     */
+    long getAttachCount();
 }
@@ -31,6 +31,7 @@ import qunar.tc.bistoury.agent.common.cpujstack.KvUtils;
 import qunar.tc.bistoury.agent.common.job.BytesJob;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
 import qunar.tc.bistoury.agent.common.util.DateUtils;
 import qunar.tc.bistoury.common.JacksonSerializer;
 import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
@@ -54,6 +55,8 @@ public class CpuTimeTask implements Task {
 
     private final KvDb kvDb;
 
+    private final TimeSeriesDb timeSeriesDb;
+
     private final String threadId;
 
     private final DateTime start;
@@ -62,10 +65,11 @@ public class CpuTimeTask implements Task {
 
     private final ResponseHandler handler;
 
-    public CpuTimeTask(String id, long maxRunningMs, KvDb kvDb, String threadId, DateTime start, DateTime end, ResponseHandler handler) {
+    public CpuTimeTask(String id, long maxRunningMs, KvDb kvDb, TimeSeriesDb timeSeriesDb, String threadId, DateTime start, DateTime end, ResponseHandler handler) {
         this.id = id;
         this.maxRunningMs = maxRunningMs;
         this.kvDb = kvDb;
+        this.timeSeriesDb = timeSeriesDb;
         this.threadId = threadId;
         this.start = start;
         this.end = end;
@@ -103,10 +107,12 @@ public class CpuTimeTask implements Task {
         protected byte[] getBytes() throws Exception {
             List<CpuTime> cpuTimes = Lists.newArrayList();
 
+            MinuteSeries series = new MinuteSeries(timeSeriesDb, kvDb, KvUtils.getThreadMinuteCpuTimeSeries(threadId),
+                    KvUtils.TOTAL_MINUTE_CPU_TIME_SERIES, start, end);
             DateTime time = start;
             while (!time.isAfter(end)) {
                 String timestamp = DateUtils.TIME_FORMATTER.print(time);
-                int cpuTime = getCpuTime(timestamp);
+                int cpuTime = series.get(time, KvUtils.getThreadMinuteCpuTimeKey(timestamp, threadId));
                 if (cpuTime > 0) {
                     cpuTimes.add(new CpuTime(timestamp, cpuTime));
                 }
@@ -131,15 +137,6 @@ public class CpuTimeTask implements Task {
         }
     }
 
-    private int getCpuTime(String timestamp) {
-        String key = KvUtils.getThreadMinuteCpuTimeKey(timestamp, threadId);
-        String value = kvDb.get(key);
-        if (value == null) {
-            return 0;
-        }
-        return Integer.parseInt(value);
-    }
-
     private static class CpuTime {
         private String timestamp;
 
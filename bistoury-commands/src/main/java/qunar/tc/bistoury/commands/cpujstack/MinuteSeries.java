@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.commands.cpujstack;
+
+import org.joda.time.DateTime;
+import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.tsdb.DataPoint;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次读出一个序列在查询区间内的所有分钟数据
+ * <p>
+ * 改用时间序列存储之前的数据还在kv里，早于时间序列中第一个点的分钟仍然从kv读，kv数据过期后就不会再读kv了
+ */
+class MinuteSeries {
+
+    private final Map<Long, Integer> values = new HashMap<>();
+
+    private final long since;
+
+    private final KvDb kvDb;
+
+    /**
+     * @param sinceSeries 每分钟都会写入的序列，用它的第一个点判断从什么时候开始使用时间序列存储
+     */
+    MinuteSeries(TimeSeriesDb timeSeriesDb, KvDb kvDb, String series, String sinceSeries, DateTime start, DateTime end) {
+        this.kvDb = kvDb;
+        this.since = timeSeriesDb.firstTimestamp(sinceSeries);
+        List<DataPoint> points = timeSeriesDb.query(series, start.getMillis(), end.plusMinutes(1).getMillis());
+        for (DataPoint point : points) {
+            values.put(point.getTimestamp(), (int) point.getValue());
+        }
+    }
+
+    /**
+     * @return 没有数据时返回0
+     */
+    int get(DateTime minute, String legacyKey) {
+        if (since < 0 || minute.getMillis() < since) {
+            String value = kvDb.get(legacyKey);
+            return value == null ? 0 : Integer.parseInt(value);
+        }
+        Integer value = values.get(minute.getMillis());
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.commands.cpujstack;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
+import qunar.tc.bistoury.agent.common.ResponseHandler;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffer;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffers;
+import qunar.tc.bistoury.agent.common.job.BytesJob;
+import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.common.JacksonSerializer;
+import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
+import qunar.tc.bistoury.remoting.netty.Task;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询秒级线程cpu采样，不指定线程时返回最近一段时间cpu最高的线程，指定时返回该线程的cpu变化
+ */
+public class ThreadCpuSampleTask implements Task {
+
+    private final SettableFuture<Integer> future = SettableFuture.create();
+
+    private final String id;
+
+    private final long maxRunningMs;
+
+    private final ThreadCpuRingBuffer ringBuffer;
+
+    private final int seconds;
+
+    private final int top;
+
+    private final Integer threadId;
+
+    private final ResponseHandler handler;
+
+    public ThreadCpuSampleTask(String id, long maxRunningMs, ThreadCpuRingBuffer ringBuffer, int seconds, int top, Integer threadId, ResponseHandler handler) {
+        this.id = id;
+        this.maxRunningMs = maxRunningMs;
+        this.ringBuffer = ringBuffer;
+        this.seconds = seconds;
+        this.top = top;
+        this.threadId = threadId;
+        this.handler = handler;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getMaxRunningMs() {
+        return maxRunningMs;
+    }
+
+    @Override
+    public ContinueResponseJob createJob() {
+        return new Job();
+    }
+
+    @Override
+    public ListenableFuture<Integer> getResultFuture() {
+        return future;
+    }
+
+    private class Job extends BytesJob {
+
+        private Job() {
+            super(id, handler, future);
+        }
+
+        @Override
+        protected byte[] getBytes() throws Exception {
+            long since = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(seconds);
+
+            Map<String, Object> map = Maps.newHashMap();
+            map.put("type", "threadCpuSample");
+            map.put("interval", ThreadCpuRingBuffers.getIntervalSeconds());
+            map.put("seconds", seconds);
+            if (threadId == null) {
+                List<ThreadCpu> threads = Lists.newArrayList();
+                for (ThreadCpuRingBuffer.ThreadCpuUsage usage : ringBuffer.topN(since, top)) {
+                    threads.add(new ThreadCpu(toHex(usage.getThreadId()), usage.getAvgUsage(), usage.getMaxUsage()));
+                }
+                map.put("threads", threads);
+            } else {
+                map.put("threadId", toHex(threadId));
+                map.put("history", ringBuffer.history(threadId, since));
+            }
+            return JacksonSerializer.serializeToBytes(map);
+        }
+
+        @Override
+        public ListeningExecutorService getExecutor() {
+            return AgentRemotingExecutor.getExecutor();
+        }
+    }
+
+    private static String toHex(int threadId) {
+        return "0x" + Integer.toHexString(threadId);
+    }
+
+    private static class ThreadCpu {
+
+        private final String id;
+
+        private final int avgCpuTime;
+
+        private final int maxCpuTime;
+
+        private ThreadCpu(String id, int avgCpuTime, int maxCpuTime) {
+            this.id = id;
+            this.avgCpuTime = avgCpuTime;
+            this.maxCpuTime = maxCpuTime;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getAvgCpuTime() {
+            return avgCpuTime;
+        }
+
+        public int getMaxCpuTime() {
+            return maxCpuTime;
+        }
+    }
+}
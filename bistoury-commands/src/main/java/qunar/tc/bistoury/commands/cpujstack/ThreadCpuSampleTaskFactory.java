@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.commands.cpujstack;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import qunar.tc.bistoury.agent.common.ResponseHandler;
+import qunar.tc.bistoury.agent.common.cpujstack.ThreadCpuRingBuffers;
+import qunar.tc.bistoury.remoting.command.ThreadCpuSampleCommand;
+import qunar.tc.bistoury.remoting.netty.Task;
+import qunar.tc.bistoury.remoting.netty.TaskFactory;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
+
+import java.util.Set;
+
+public class ThreadCpuSampleTaskFactory implements TaskFactory<ThreadCpuSampleCommand> {
+
+    private static final int DEFAULT_SECONDS = 30;
+
+    private static final int DEFAULT_TOP = 10;
+
+    private static final String NAME = "ThreadCpuSample";
+
+    @Override
+    public Set<Integer> codes() {
+        return ImmutableSet.of(CommandCode.REQ_TYPE_CPU_THREAD_SAMPLE.getCode());
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Task create(RemotingHeader header, ThreadCpuSampleCommand command, ResponseHandler handler) {
+        int seconds = command.getSeconds() > 0 ? command.getSeconds() : DEFAULT_SECONDS;
+        int top = command.getTop() > 0 ? command.getTop() : DEFAULT_TOP;
+        Integer threadId = parseThreadId(command.getThreadId());
+        return new ThreadCpuSampleTask(header.getId(), header.getMaxRunningMs(), ThreadCpuRingBuffers.getRingBuffer(), seconds, top, threadId, handler);
+    }
+
+    private Integer parseThreadId(String threadId) {
+        if (Strings.isNullOrEmpty(threadId)) {
+            return null;
+        }
+        if (threadId.startsWith("0x")) {
+            return Integer.parseInt(threadId.substring(2), 16);
+        }
+        return Integer.parseInt(threadId);
+    }
+}
@@ -31,6 +31,7 @@ import qunar.tc.bistoury.agent.common.cpujstack.ThreadInfo;
 import qunar.tc.bistoury.agent.common.job.BytesJob;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.kv.KvIterator;
 import qunar.tc.bistoury.common.JacksonSerializer;
 import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
 import qunar.tc.bistoury.remoting.netty.Task;
@@ -118,12 +119,26 @@ public class ThreadInfoTask implements Task {
     }
 
     private void addMomentCpuTimeInfo(Map<String, ThreadInfo> threadInfo, String time) {
+        Map<String, String> momentCpuTimes = getMomentCpuTimes(time);
         for (ThreadInfo info : threadInfo.values()) {
-            String momentCpuTime = kvDb.get(KvUtils.getThreadMomentCpuTimeKey(time, info.getId()));
+            String momentCpuTime = momentCpuTimes.get(info.getId());
             if (momentCpuTime == null) {
                 momentCpuTime = "0";
             }
             info.setCpuTime(Integer.parseInt(momentCpuTime));
         }
     }
+
+    //一分钟内所有线程的cpu时间是连续存放的，一次遍历读出来，不用每个线程查一次
+    private Map<String, String> getMomentCpuTimes(String time) {
+        String prefix = KvUtils.getThreadMomentCpuTimePrefix(time);
+        Map<String, String> result = Maps.newHashMap();
+        try (KvIterator iterator = kvDb.scan(prefix)) {
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> entry = iterator.next();
+                result.put(entry.getKey().substring(prefix.length()), entry.getValue());
+            }
+        }
+        return result;
+    }
 }
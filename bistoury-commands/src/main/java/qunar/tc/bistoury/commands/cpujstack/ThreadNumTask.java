@@ -30,6 +30,7 @@ import qunar.tc.bistoury.agent.common.cpujstack.KvUtils;
 import qunar.tc.bistoury.agent.common.job.BytesJob;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
 import qunar.tc.bistoury.agent.common.util.DateUtils;
 import qunar.tc.bistoury.common.JacksonSerializer;
 import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
@@ -53,16 +54,19 @@ public class ThreadNumTask implements Task {
 
     private final KvDb kvDb;
 
+    private final TimeSeriesDb timeSeriesDb;
+
     private final DateTime start;
 
     private final DateTime end;
 
     private final ResponseHandler handler;
 
-    public ThreadNumTask(String id, long maxRunningMs, KvDb kvDb, DateTime start, DateTime end, ResponseHandler handler) {
+    public ThreadNumTask(String id, long maxRunningMs, KvDb kvDb, TimeSeriesDb timeSeriesDb, DateTime start, DateTime end, ResponseHandler handler) {
         this.id = id;
         this.maxRunningMs = maxRunningMs;
         this.kvDb = kvDb;
+        this.timeSeriesDb = timeSeriesDb;
         this.start = start;
         this.end = end;
         this.handler = handler;
@@ -98,10 +102,11 @@ public class ThreadNumTask implements Task {
         protected byte[] getBytes() throws Exception {
             List<ThreadNum> threadNums = Lists.newArrayList();
 
+            MinuteSeries series = new MinuteSeries(timeSeriesDb, kvDb, KvUtils.THREAD_NUM_SERIES, KvUtils.THREAD_NUM_SERIES, start, end);
             DateTime time = start;
             while (!time.isAfter(end)) {
                 String timestamp = DateUtils.TIME_FORMATTER.print(time);
-                int threadNum = getThreadNum(timestamp);
+                int threadNum = series.get(time, KvUtils.getThreadNumKey(timestamp));
                 if (threadNum > 0) {
                     threadNums.add(new ThreadNum(timestamp, threadNum));
                 }
@@ -123,15 +128,6 @@ public class ThreadNumTask implements Task {
         }
     }
 
-    private int getThreadNum(String timestamp) {
-        String key = KvUtils.getThreadNumKey(timestamp);
-        String value = kvDb.get(key);
-        if (value == null) {
-            return 0;
-        }
-        return Integer.parseInt(value);
-    }
-
     private static class ThreadNum {
         private String timestamp;
 
@@ -25,6 +25,8 @@ import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
 import qunar.tc.bistoury.agent.common.kv.KvDbs;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDbs;
 import qunar.tc.bistoury.agent.common.util.DateUtils;
 import qunar.tc.bistoury.remoting.command.ThreadNumCommand;
 import qunar.tc.bistoury.remoting.netty.Task;
@@ -43,6 +45,8 @@ public class ThreadNumTaskFactory implements TaskFactory<ThreadNumCommand> {
 
     private static final KvDb kvDb = KvDbs.getKvDb();
 
+    private static final TimeSeriesDb timeSeriesDb = TimeSeriesDbs.getTimeSeriesDb();
+
     private static final int DEFAULT_HOUR_INTERVAL = 2;
 
     private static final String NAME = "ThreadNum";
@@ -61,7 +65,7 @@ public class ThreadNumTaskFactory implements TaskFactory<ThreadNumCommand> {
     public Task create(RemotingHeader header, ThreadNumCommand command, ResponseHandler handler) {
         DateTime startTime = parseTimeWithoutSecond(command.getStart(), DateTime.now().minusHours(DEFAULT_HOUR_INTERVAL));
         DateTime endTime = parseTimeWithoutSecond(command.getEnd(), DateTime.now());
-        return new ThreadNumTask(header.getId(), header.getMaxRunningMs(), kvDb, startTime, endTime, handler);
+        return new ThreadNumTask(header.getId(), header.getMaxRunningMs(), kvDb, timeSeriesDb, startTime, endTime, handler);
     }
 
     private DateTime parseTimeWithoutSecond(String start, DateTime defaultTime) {
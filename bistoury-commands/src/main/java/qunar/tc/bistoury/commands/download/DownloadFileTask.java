@@ -1,6 +1,7 @@
 package qunar.tc.bistoury.commands.download;
 
 import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.RateLimiter;
@@ -9,16 +10,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.agent.common.job.IdleAwareJob;
+import qunar.tc.bistoury.agent.common.util.ChunkedFileReader;
 import qunar.tc.bistoury.clientside.common.meta.MetaStore;
 import qunar.tc.bistoury.clientside.common.meta.MetaStores;
 import qunar.tc.bistoury.remoting.command.DownloadCommand;
 import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
 import qunar.tc.bistoury.remoting.netty.Task;
+import qunar.tc.bistoury.remoting.protocol.ResponseCode;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -37,6 +39,8 @@ public class DownloadFileTask implements Task {
 
     private static final int BYTE_KB = 4;
 
+    private static final byte[] EMPTY = new byte[0];
+
     private static final int DEFAULT_DOWNLOAD_LIMIT_KB = 10 * 1024;
 
     private final String id;
@@ -66,7 +70,7 @@ public class DownloadFileTask implements Task {
 
     @Override
     public ContinueResponseJob createJob() {
-        return new Job(AgentRemotingExecutor.getExecutor());
+        return new Job(AgentRemotingExecutor.getExecutor(AgentRemotingExecutor.Lane.BULK));
     }
 
     @Override
@@ -74,10 +78,11 @@ public class DownloadFileTask implements Task {
         return future;
     }
 
-    private class Job implements ContinueResponseJob {
+    private class Job implements ContinueResponseJob, IdleAwareJob {
         private final ListeningExecutorService executor;
-        private InputStream inputStream;
+        private ChunkedFileReader reader;
         private byte[] bytes = new byte[BYTE_KB * 1024];
+        private boolean idle = false;
 
         private Job(ListeningExecutorService executor) {
             this.executor = executor;
@@ -95,23 +100,37 @@ public class DownloadFileTask implements Task {
             if (!ensureFilePermission(file, command.getDir())) {
                 throw new RuntimeException("download: " + file.getAbsolutePath() + ": No permission to download");
             }
-            inputStream = new FileInputStream(file);
+            reader = new ChunkedFileReader(file, command.getOffset());
+            if (command.getOffset() > 0 && !Strings.isNullOrEmpty(command.getFileId()) && !command.getFileId().equals(reader.getFileId())) {
+                throw new RuntimeException("download: " + file.getAbsolutePath() + ": File changed, can not resume");
+            }
         }
 
         @Override
         public boolean doResponse() throws Exception {
-            int read = inputStream.read(bytes);
+            //超过限速时不等待，当作本次没有数据，由job store延迟后再调度
+            idle = !rateLimiter.tryAcquire(bytes.length);
+            if (idle) {
+                return false;
+            }
+
+            int read = reader.read(bytes);
             if (read == -1) {
+                handler.handle(ResponseCode.RESP_TYPE_CONTENT.getCode(), EMPTY, reader.endHeader());
                 return true;
             }
 
             if (read > 0) {
-                rateLimiter.acquire(read);
-                handler.handle(Arrays.copyOfRange(bytes, 0, read));
+                handler.handle(ResponseCode.RESP_TYPE_CONTENT.getCode(), Arrays.copyOfRange(bytes, 0, read), reader.chunkHeader());
             }
             return false;
         }
 
+        @Override
+        public boolean isIdle() {
+            return idle;
+        }
+
         private void ensureFileExists(File file) {
             if (!file.exists()) {
                 throw new RuntimeException("download: " + file.getAbsolutePath() + ": No such file or directory");
@@ -151,9 +170,9 @@ public class DownloadFileTask implements Task {
 
         @Override
         public void clear() {
-            if (inputStream != null) {
+            if (reader != null) {
                 try {
-                    inputStream.close();
+                    reader.close();
                 } catch (IOException e) {
                     //ignore
                 }
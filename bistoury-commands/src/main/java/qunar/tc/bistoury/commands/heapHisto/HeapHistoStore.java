@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
 import qunar.tc.bistoury.agent.common.kv.KvDbs;
+import qunar.tc.bistoury.agent.common.kv.KvPrefixes;
 import qunar.tc.bistoury.common.DateUtil;
 import qunar.tc.bistoury.common.JacksonSerializer;
 
@@ -36,7 +37,7 @@ import java.util.List;
  */
 public class HeapHistoStore {
     private static final Logger logger = LoggerFactory.getLogger(HeapHistoStore.class);
-    private static final String PREFIX = "hh-";
+    private static final String PREFIX = KvPrefixes.HEAP_HISTO_PREFIX;
     private static final KvDb KV_DB = KvDbs.getKvDb();
     private static final HeapHistoStore INSTANCE = new HeapHistoStore();
 
@@ -102,7 +102,7 @@ public class HeapHistoTask implements Task {
 
         @Override
         public ListeningExecutorService getExecutor() {
-            return AgentRemotingExecutor.getExecutor();
+            return AgentRemotingExecutor.getExecutor(AgentRemotingExecutor.Lane.BACKGROUND);
         }
     }
 
@@ -29,6 +29,8 @@ import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.BytesJob;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.agent.common.kv.KvDbs;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDbs;
 import qunar.tc.bistoury.commands.perf.PerfData;
 import qunar.tc.bistoury.common.FileUtil;
 import qunar.tc.bistoury.common.JacksonSerializer;
@@ -120,6 +122,9 @@ public class HostTask implements Task {
             result.put("host", getHostInfo(mxBean));
             result.put("memPool", getMemoryPoolMXBeansInfo(mxBean.getMemoryPoolMXBeans()));
             result.put("visuaGC", getVisuaGCInfo(mxBean.getCounters()));
+            result.put("kvStore", KvDbs.getKvDb().getStats());
+            result.put("timeSeriesStore", TimeSeriesDbs.getTimeSeriesDb().getStats());
+            result.put("taskExecutor", AgentRemotingExecutor.getStats());
             return JacksonSerializer.serializeToBytes(result);
         }
 
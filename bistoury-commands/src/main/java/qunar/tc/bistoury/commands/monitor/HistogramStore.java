@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.commands.monitor;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.kv.KvIterator;
+import qunar.tc.bistoury.agent.common.kv.KvPrefixes;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+import qunar.tc.bistoury.commands.monitor.MetricsRollup.Resolution;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * timer耗时直方图的存储，每个精度的每个时间点一条数据，value为指标到直方图的json
+ * <p>
+ * key为 qmh-$精度前缀$时间戳，时间戳位数相同，key的字典序就是时间顺序；
+ * 预聚合的直方图前缀为qmhr-，和预聚合的时间序列一样保留更久
+ */
+class HistogramStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistogramStore.class);
+
+    private static final TypeReference<Map<String, HistogramData>> TYPE_REFERENCE = new TypeReference<Map<String, HistogramData>>() {
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final KvDb kvDb;
+
+    HistogramStore(KvDb kvDb) {
+        this.kvDb = kvDb;
+    }
+
+    void put(Resolution resolution, long time, Map<String, HistogramData> histograms) {
+        if (histograms.isEmpty()) {
+            return;
+        }
+        try {
+            kvDb.put(prefix(resolution) + time, MAPPER.writeValueAsString(histograms));
+        } catch (Exception e) {
+            logger.error("store histogram error", e);
+        }
+    }
+
+    /**
+     * @return [from, to)内每个时间点的直方图
+     */
+    TreeMap<Long, Map<String, HistogramData>> range(Resolution resolution, long from, long to) {
+        TreeMap<Long, Map<String, HistogramData>> result = new TreeMap<>();
+        if (from >= to) {
+            return result;
+        }
+        String prefix = prefix(resolution);
+        try (KvIterator iterator = kvDb.range(prefix + from, prefix + to)) {
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> entry = iterator.next();
+                try {
+                    result.put(Long.parseLong(entry.getKey().substring(prefix.length())), MAPPER.<Map<String, HistogramData>>readValue(entry.getValue(), TYPE_REFERENCE));
+                } catch (Exception e) {
+                    logger.error("read histogram error, key: {}", entry.getKey(), e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String prefix(Resolution resolution) {
+        String prefix = resolution == Resolution.MINUTE ? KvPrefixes.QMONITOR_HISTOGRAM_PREFIX : KvPrefixes.QMONITOR_ROLLUP_HISTOGRAM_PREFIX;
+        return prefix + resolution.getSeriesPrefix();
+    }
+}
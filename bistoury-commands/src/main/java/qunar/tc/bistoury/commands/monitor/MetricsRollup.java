@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.commands.monitor;
+
+import qunar.tc.bistoury.agent.common.tsdb.DataPoint;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesPrefixes;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监控数据的预聚合，每分钟的数据到达时累加到5分钟、1小时、1天的桶里，桶结束时把平均值和分钟数各写成一个点
+ * <p>
+ * timer的耗时直方图在桶里合并，桶结束时写到{@link HistogramStore}，查询时用合并后的直方图计算分位数
+ * <p>
+ * 正在累加的桶只在内存中，重启后从分钟数据恢复，停机期间没有写出的桶也一起补上
+ */
+class MetricsRollup {
+
+    enum Resolution {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), TimeSeriesPrefixes.QMONITOR_MINUTE, null),
+        FIVE_MINUTES(TimeUnit.MINUTES.toMillis(5), TimeSeriesPrefixes.QMONITOR_FIVE_MINUTES + ".", TimeSeriesPrefixes.QMONITOR_FIVE_MINUTES + "n."),
+        HOUR(TimeUnit.HOURS.toMillis(1), TimeSeriesPrefixes.QMONITOR_HOUR + ".", TimeSeriesPrefixes.QMONITOR_HOUR + "n."),
+        DAY(TimeUnit.DAYS.toMillis(1), TimeSeriesPrefixes.QMONITOR_DAY + ".", TimeSeriesPrefixes.QMONITOR_DAY + "n.");
+
+        private final long millis;
+
+        private final String seriesPrefix;
+
+        /**
+         * 每个点由多少分钟的数据聚合而成，查询时按分钟数加权，分钟数据没有
+         */
+        private final String countPrefix;
+
+        Resolution(long millis, String seriesPrefix, String countPrefix) {
+            this.millis = millis;
+            this.seriesPrefix = seriesPrefix;
+            this.countPrefix = countPrefix;
+        }
+
+        long bucketStart(long time) {
+            return time - time % millis;
+        }
+
+        long getMillis() {
+            return millis;
+        }
+
+        String getSeriesPrefix() {
+            return seriesPrefix;
+        }
+
+        String getCountPrefix() {
+            return countPrefix;
+        }
+
+        /**
+         * @return 能整除interval的最粗的精度，查询的每个点由整数个该精度的点聚合而成
+         */
+        static Resolution coarsest(long interval) {
+            Resolution[] resolutions = values();
+            for (int i = resolutions.length - 1; i > 0; --i) {
+                if (interval % resolutions[i].millis == 0) {
+                    return resolutions[i];
+                }
+            }
+            return MINUTE;
+        }
+
+        /**
+         * @return 下一级更粗的精度，已经是最粗的时返回null
+         */
+        Resolution coarser() {
+            Resolution[] resolutions = values();
+            return ordinal() + 1 < resolutions.length ? resolutions[ordinal() + 1] : null;
+        }
+    }
+
+    private final TimeSeriesDb timeSeriesDb;
+
+    private final HistogramStore histogramStore;
+
+    /**
+     * 恢复时往前看多久的分钟数据，更早的数据不再查询，不用补
+     */
+    private final long recoverMillis;
+
+    private final Map<Resolution, Bucket> buckets = new EnumMap<>(Resolution.class);
+
+    private boolean recovered = false;
+
+    MetricsRollup(TimeSeriesDb timeSeriesDb, HistogramStore histogramStore, long recoverMillis) {
+        this.timeSeriesDb = timeSeriesDb;
+        this.histogramStore = histogramStore;
+        this.recoverMillis = recoverMillis;
+    }
+
+    /**
+     * @param values     key为去掉精度前缀的序列名
+     * @param histograms key为指标，不会被修改
+     */
+    synchronized void add(long minute, Map<String, Double> values, Map<String, HistogramData> histograms) {
+        if (!recovered) {
+            recover(minute);
+            recovered = true;
+        }
+        for (Resolution resolution : Resolution.values()) {
+            if (resolution == Resolution.MINUTE) {
+                continue;
+            }
+            Bucket bucket = bucket(resolution, minute);
+            if (bucket != null) {
+                bucket.add(values);
+                bucket.addHistograms(histograms);
+            }
+        }
+    }
+
+    /**
+     * @return 时间早于当前的桶时返回null
+     */
+    private Bucket bucket(Resolution resolution, long minute) {
+        long start = resolution.bucketStart(minute);
+        Bucket bucket = buckets.get(resolution);
+        if (bucket != null && bucket.start == start) {
+            return bucket;
+        }
+        if (bucket != null) {
+            if (start < bucket.start) {
+                return null;
+            }
+            flush(resolution, bucket);
+        }
+        bucket = new Bucket(start);
+        buckets.put(resolution, bucket);
+        return bucket;
+    }
+
+    private void flush(Resolution resolution, Bucket bucket) {
+        boolean appended = false;
+        for (Map.Entry<String, double[]> entry : bucket.sums.entrySet()) {
+            double[] sum = entry.getValue();
+            appended |= timeSeriesDb.append(resolution.seriesPrefix + entry.getKey(), bucket.start, sum[0] / sum[1]);
+            timeSeriesDb.append(resolution.countPrefix + entry.getKey(), bucket.start, sum[1]);
+        }
+        //写出过的桶恢复时不再覆盖直方图，最早的分钟直方图可能已经过期，重新合并出的数据不全
+        if (appended) {
+            histogramStore.put(resolution, bucket.start, bucket.histograms);
+        }
+    }
+
+    /**
+     * 按天读取recoverMillis内的分钟数据重新聚合，当前的桶放回内存，之前的桶全部写出
+     * <p>
+     * 已经写出过的桶再append时间戳不会增加，会被丢弃，所以不用区分哪些桶写出过
+     */
+    private void recover(long minute) {
+        long dayMillis = Resolution.DAY.millis;
+        for (long day = Resolution.DAY.bucketStart(minute - recoverMillis); day < minute; day += dayMillis) {
+            long end = Math.min(day + dayMillis, minute);
+            Map<String, List<DataPoint>> minutes = timeSeriesDb.queryPrefix(Resolution.MINUTE.seriesPrefix, day, end);
+            if (minutes.isEmpty()) {
+                continue;
+            }
+            Map<Long, Map<String, HistogramData>> histograms = histogramStore.range(Resolution.MINUTE, day, end);
+            for (Resolution resolution : Resolution.values()) {
+                if (resolution == Resolution.MINUTE) {
+                    continue;
+                }
+                recover(resolution, minutes, histograms, resolution.bucketStart(minute));
+            }
+        }
+    }
+
+    private void recover(Resolution resolution, Map<String, List<DataPoint>> minutes,
+                         Map<Long, Map<String, HistogramData>> histograms, long currentStart) {
+        TreeMap<Long, Bucket> rebuilt = new TreeMap<>();
+        for (Map.Entry<String, List<DataPoint>> entry : minutes.entrySet()) {
+            String key = entry.getKey().substring(Resolution.MINUTE.seriesPrefix.length());
+            for (DataPoint point : entry.getValue()) {
+                rebuiltBucket(rebuilt, resolution.bucketStart(point.getTimestamp())).add(key, point.getValue());
+            }
+        }
+        for (Map.Entry<Long, Map<String, HistogramData>> entry : histograms.entrySet()) {
+            rebuiltBucket(rebuilt, resolution.bucketStart(entry.getKey())).addHistograms(entry.getValue());
+        }
+        for (Bucket bucket : rebuilt.values()) {
+            if (bucket.start < currentStart) {
+                flush(resolution, bucket);
+            } else {
+                buckets.put(resolution, bucket);
+            }
+        }
+    }
+
+    private static Bucket rebuiltBucket(Map<Long, Bucket> rebuilt, long start) {
+        Bucket bucket = rebuilt.get(start);
+        if (bucket == null) {
+            bucket = new Bucket(start);
+            rebuilt.put(start, bucket);
+        }
+        return bucket;
+    }
+
+    private static class Bucket {
+
+        private final long start;
+
+        /**
+         * value为[sum, count]
+         */
+        private final Map<String, double[]> sums = new HashMap<>();
+
+        private final Map<String, HistogramData> histograms = new HashMap<>();
+
+        private Bucket(long start) {
+            this.start = start;
+        }
+
+        private void add(Map<String, Double> values) {
+            for (Map.Entry<String, Double> entry : values.entrySet()) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void add(String key, double value) {
+            double[] sum = sums.get(key);
+            if (sum == null) {
+                sum = new double[2];
+                sums.put(key, sum);
+            }
+            sum[0] += value;
+            sum[1]++;
+        }
+
+        /**
+         * 修改精度配置后同一个桶里的直方图不能合并，只保留先到的
+         */
+        private void addHistograms(Map<String, HistogramData> values) {
+            for (Map.Entry<String, HistogramData> entry : values.entrySet()) {
+                HistogramData histogram = histograms.get(entry.getKey());
+                if (histogram == null) {
+                    histograms.put(entry.getKey(), entry.getValue().copy());
+                } else if (histogram.getPrecision() == entry.getValue().getPrecision()) {
+                    histogram.merge(entry.getValue());
+                }
+            }
+        }
+    }
+}
@@ -84,7 +84,7 @@ public class QMonitorQueryTask implements Task {
 
         @Override
         public ListeningExecutorService getExecutor() {
-            return AgentRemotingExecutor.getExecutor();
+            return AgentRemotingExecutor.getExecutor(AgentRemotingExecutor.Lane.BACKGROUND);
         }
     }
 
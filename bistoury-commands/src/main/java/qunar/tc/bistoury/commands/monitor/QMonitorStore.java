@@ -19,14 +19,23 @@ package qunar.tc.bistoury.commands.monitor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.kv.KvDb;
 import qunar.tc.bistoury.agent.common.kv.KvDbs;
+import qunar.tc.bistoury.agent.common.kv.KvPrefixes;
+import qunar.tc.bistoury.agent.common.kv.KvIterator;
+import qunar.tc.bistoury.agent.common.tsdb.DataPoint;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDbs;
 import qunar.tc.bistoury.agent.common.util.Response;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
 import qunar.tc.bistoury.clientside.common.monitor.MetricType;
 import qunar.tc.bistoury.clientside.common.monitor.MetricsData;
 import qunar.tc.bistoury.clientside.common.monitor.MetricsSnapshot;
+import qunar.tc.bistoury.commands.monitor.MetricsRollup.Resolution;
 import qunar.tc.bistoury.common.DateUtil;
 
 import java.util.*;
@@ -42,7 +51,24 @@ public class QMonitorStore {
 
     private static final QMonitorStore INSTANCE = new QMonitorStore();
     private static final KvDb KV_DB = KvDbs.getKvDb();
-    private static final String PREFIX = "qm-";
+    private static final TimeSeriesDb TIME_SERIES_DB = TimeSeriesDbs.getTimeSeriesDb();
+    private static final String PREFIX = KvPrefixes.QMONITOR_PREFIX;
+    /**
+     * 每个指标的每个值一个时间序列，序列名为 $精度前缀$type.$index.$name，分钟数据的前缀是qm.
+     */
+    private static final char SERIES_SEPARATOR = '.';
+    /**
+     * 默认能查到最粗精度的预聚合数据保留的天数，较早的时间只剩下粗精度的点
+     */
+    private static final int MAX_QUERY_DAYS = Integer.getInteger("bistoury.monitor.query.max.days",
+            (int) TimeUnit.MILLISECONDS.toDays(TIME_SERIES_DB.getRetention(Resolution.DAY.getSeriesPrefix())));
+    private static final HistogramStore HISTOGRAM_STORE = new HistogramStore(KV_DB);
+    //只有分钟数据保留期内的桶需要恢复
+    private static final MetricsRollup ROLLUP = new MetricsRollup(TIME_SERIES_DB, HISTOGRAM_STORE, TIME_SERIES_DB.getRetention(Resolution.MINUTE.getSeriesPrefix()));
+    /**
+     * 每分钟记录一次指标个数，用它的第一个点区分数据在时间序列里还是在kv里
+     */
+    private static final String SNAPSHOT_SERIES = "qmSnapshot";
     private static final String LATEST_TIME = PREFIX + "latest_time";
     private static final String MERTICS_SNAPSHOT_FORMAT = "{\"name\":\"%s\",\"timestamp\":%d,\"metricsData\":[]}";
     private static final String EMPTY_STRING = "";
@@ -52,8 +78,7 @@ public class QMonitorStore {
 
     private static final int MAX_ERROR_COUNT = 10;
     private static final byte COUNT_INDEX = 0;
-    private static final byte MIN_1_INDEX = 0;
-    private static final byte P98_INDEX = 1;
+    private static final int TIMER_MIN_LENGTH = 2;
 
     private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
 
@@ -67,10 +92,32 @@ public class QMonitorStore {
 
     public void store(MetricsSnapshot snapshot) {
         try {
-            String currentMinute = String.valueOf(DateUtil.transformToMinute(snapshot.getTimestamp()));
-            if (!isEmpty(snapshot.getMetricsData())) {
-                KV_DB.put(LATEST_TIME, currentMinute);
-                KV_DB.put(addPrefix(currentMinute), MAPPER.writeValueAsString(snapshot));
+            long currentMinute = DateUtil.transformToMinute(snapshot.getTimestamp());
+            List<MetricsData> metricsDataList = snapshot.getMetricsData();
+            if (!isEmpty(metricsDataList)) {
+                Map<String, Double> values = new HashMap<>();
+                Map<String, HistogramData> histograms = new HashMap<>();
+                for (MetricsData metricsData : metricsDataList) {
+                    float[] data = metricsData == null ? null : metricsData.getData();
+                    if (data == null) {
+                        continue;
+                    }
+                    boolean appended = false;
+                    for (int i = 0; i < data.length; ++i) {
+                        String key = toSeriesKey(metricsData, i);
+                        if (TIME_SERIES_DB.append(Resolution.MINUTE.getSeriesPrefix() + key, currentMinute, data[i])) {
+                            values.put(key, (double) data[i]);
+                            appended = true;
+                        }
+                    }
+                    if (appended && metricsData.getHistogram() != null) {
+                        histograms.put(toMetricsKey(metricsData), metricsData.getHistogram());
+                    }
+                }
+                TIME_SERIES_DB.append(SNAPSHOT_SERIES, currentMinute, metricsDataList.size());
+                HISTOGRAM_STORE.put(Resolution.MINUTE, currentMinute, histograms);
+                ROLLUP.add(currentMinute, values, histograms);
+                KV_DB.put(LATEST_TIME, String.valueOf(currentMinute));
             }
         } catch (Throwable e) {
             logger.error("store metrics snapshot error", e);
@@ -87,7 +134,7 @@ public class QMonitorStore {
             return handlerError("latest", -2, minute + "处的数据还没准备好");
         }
 
-        String metric = KV_DB.get(addPrefix(latestTime));
+        String metric = getMetric(name, minute);
         if (Strings.isNullOrEmpty(metric)) {
             return handlerError("latest", -2, "监控数据保存失败，跳过这个点");
         }
@@ -99,13 +146,13 @@ public class QMonitorStore {
             name = EMPTY_STRING;
         }
 
-        if (Math.abs(endTime - startTime) > TimeUnit.DAYS.toMillis(3)) {
-            return handlerError("list", -1, "查询时间区间超过三天，请修改查询条件");
+        if (Math.abs(endTime - startTime) > TimeUnit.DAYS.toMillis(MAX_QUERY_DAYS)) {
+            return handlerError("list", -1, "查询时间区间超过" + MAX_QUERY_DAYS + "天，请修改查询条件");
         }
 
-        long threeDayAgo = DateUtil.plusDays(System.currentTimeMillis(), -3);
-        if (startTime < threeDayAgo) {
-            return handlerError("list", -1, "监控数据不能查询三天前的数据，请修改查询条件");
+        long maxDaysAgo = DateUtil.plusDays(System.currentTimeMillis(), -MAX_QUERY_DAYS);
+        if (startTime < maxDaysAgo) {
+            return handlerError("list", -1, "监控数据不能查询" + MAX_QUERY_DAYS + "天前的数据，请修改查询条件");
         }
         try {
             String latestTime = KV_DB.get(LATEST_TIME);
@@ -122,20 +169,30 @@ public class QMonitorStore {
             if (latestMinute < endTime) {
                 endTime = latestMinute;
             }
-            final long interval = computeInterval(startTime, endTime);
+            //查询的每个点都由整数个预聚合的点组成
+            final Resolution resolution = chooseResolution(startTime, Resolution.coarsest(computeInterval(startTime, endTime)));
+            final long interval = roundUp(computeInterval(startTime, endTime), resolution.getMillis());
+            startTime = resolution.bucketStart(startTime);
+            final long since = getTimeSeriesSince();
             List<String> result = new ArrayList<>();
             int errorCount = 0;
-            while (endTime >= startTime) {
-                try {
-                    result.add(polymerize(startTime, interval, name));
-                } catch (Exception e) {
-                    logger.error("参数聚合错误", e);
-                    if (errorCount++ > MAX_ERROR_COUNT) {
-                        throw new RuntimeException("监控结果采样发生错误超过" + MAX_ERROR_COUNT + "次，放弃本次查询");
+            PeekingIterator<Map.Entry<Long, WeightedSnapshot>> seriesSnapshots = Iterators.peekingIterator(
+                    readSeriesSnapshots(resolution, name, Math.max(startTime, since), endTime + interval, latestMinute, interval != MINUTE).entrySet().iterator());
+            //分钟时间戳位数相同，key的字典序就是时间顺序，整个区间顺序读一遍
+            try (KvIterator iterator = KV_DB.range(addPrefix(startTime), addPrefix(Math.min(since, endTime + interval)))) {
+                PeekingIterator<Map.Entry<String, String>> snapshots = Iterators.peekingIterator(iterator);
+                while (endTime >= startTime) {
+                    try {
+                        result.add(polymerize(snapshots, seriesSnapshots, startTime, interval, name));
+                    } catch (Exception e) {
+                        logger.error("参数聚合错误", e);
+                        if (errorCount++ > MAX_ERROR_COUNT) {
+                            throw new RuntimeException("监控结果采样发生错误超过" + MAX_ERROR_COUNT + "次，放弃本次查询");
+                        }
+                        continue;
+                    } finally {
+                        startTime += interval;
                     }
-                    continue;
-                } finally {
-                    startTime += interval;
                 }
             }
             return handlerSuccess("list", result);
@@ -145,19 +202,28 @@ public class QMonitorStore {
         }
     }
 
-    private String polymerize(final long start, final long interval, final String name) throws Exception {
-        List<MetricsSnapshot> snapshots = new ArrayList<>();
-        long newStart = start;
-        while (newStart < start + interval) {
-            snapshots.add(getMetricsSnapshot(name, newStart));
-            newStart += MINUTE;
+    private String polymerize(final PeekingIterator<Map.Entry<String, String>> iterator,
+                              final PeekingIterator<Map.Entry<Long, WeightedSnapshot>> seriesIterator,
+                              final long start, final long interval, final String name) throws Exception {
+        List<WeightedSnapshot> snapshots = new ArrayList<>();
+        while (iterator.hasNext() && getMinute(iterator.peek().getKey()) < start + interval) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (getMinute(entry.getKey()) >= start) {
+                snapshots.add(new WeightedSnapshot(readMetricsSnapshot(entry.getValue())));
+            }
+        }
+        while (seriesIterator.hasNext() && seriesIterator.peek().getKey() < start + interval) {
+            Map.Entry<Long, WeightedSnapshot> entry = seriesIterator.next();
+            if (entry.getKey() >= start) {
+                snapshots.add(entry.getValue());
+            }
         }
         if (isEmpty(snapshots)) {
             return String.format(MERTICS_SNAPSHOT_FORMAT, name, start);
         }
 
-        if (snapshots.size() == 1) {
-            return MAPPER.writeValueAsString(snapshots.get(0));
+        if (interval == MINUTE) {
+            return MAPPER.writeValueAsString(snapshots.get(0).snapshot);
         }
 
         Map<String, PolymerizeData> map = groupByMetricsName(snapshots);
@@ -170,22 +236,25 @@ public class QMonitorStore {
             PolymerizeData polymerizeData = entry.getValue();
             if (polymerizeData.type == MetricType.COUNTER.code()) {
                 float[] data = new float[1];
-                data[0] = average(polymerizeData.count);
+                data[0] = average(polymerizeData.count, polymerizeData.countWeights);
                 metricsDataList.add(new MetricsData(polymerizeData.name, polymerizeData.type, data));
             } else {
-                float[] data = new float[2];
-                data[MIN_1_INDEX] = average(polymerizeData.min_1);
-                data[P98_INDEX] = average(polymerizeData.p98);
+                float[] data = averageByIndex(polymerizeData.timer, polymerizeData.timerWeights);
+                //分位数不能取平均，每个点都有直方图时用合并后的直方图重新计算
+                if (data.length > 0 && polymerizeData.histogram != null && !polymerizeData.histogramMissing) {
+                    data = polymerizeData.histogram.toTimerData(data[0]);
+                }
                 metricsDataList.add(new MetricsData(polymerizeData.name, polymerizeData.type, data));
             }
         }
         return MAPPER.writeValueAsString(snapshot);
     }
 
-    private Map<String, PolymerizeData> groupByMetricsName(List<MetricsSnapshot> list) {
+    private Map<String, PolymerizeData> groupByMetricsName(List<WeightedSnapshot> list) {
         Map<String, PolymerizeData> result = new HashMap<>();
         for (int i = 0; i < list.size(); i++) {
-            MetricsSnapshot metricsSnapshot = list.get(i);
+            WeightedSnapshot weightedSnapshot = list.get(i);
+            MetricsSnapshot metricsSnapshot = weightedSnapshot.snapshot;
             if (metricsSnapshot == null) {
                 continue;
             }
@@ -196,14 +265,14 @@ public class QMonitorStore {
             for (int j = 0; j < metricsDataList.size(); j++) {
                 MetricsData metricsData = metricsDataList.get(j);
                 if (metricsData != null) {
-                    final String key = metricsData.getName() + metricsData.getType();
+                    final String key = toMetricsKey(metricsData);
                     PolymerizeData polymerizeData = result.get(key);
                     if (polymerizeData == null) {
                         polymerizeData = new PolymerizeData(metricsData.getName(), metricsData.getType());
                         result.put(key, polymerizeData);
                     }
                     if (metricsData != null) {
-                        handleData(metricsData, polymerizeData);
+                        handleData(metricsData, weightedSnapshot.getWeight(key), weightedSnapshot.getHistogram(key), polymerizeData);
                     }
                 }
             }
@@ -212,45 +281,203 @@ public class QMonitorStore {
         return result;
     }
 
-    private void handleData(MetricsData metricsData, PolymerizeData polymerizeData) {
+    private void handleData(MetricsData metricsData, int weight, HistogramData histogram, PolymerizeData polymerizeData) {
         if (metricsData.getType() == MetricType.COUNTER.code()) {
             float[] data = metricsData.getData();
             if (data != null && data.length == 1) {
                 polymerizeData.count.add(data[COUNT_INDEX]);
+                polymerizeData.countWeights.add(weight);
             }
         } else if (metricsData.getType() == MetricType.TIMER.code()) {
             float[] data = metricsData.getData();
-            if (data != null && data.length == 2) {
-                polymerizeData.min_1.add(data[MIN_1_INDEX]);
-                polymerizeData.p98.add(data[P98_INDEX]);
+            //之前的数据只有MIN_1和P98两个值
+            if (data != null && data.length >= TIMER_MIN_LENGTH) {
+                polymerizeData.timer.add(data);
+                polymerizeData.timerWeights.add(weight);
+                polymerizeData.addHistogram(histogram);
             }
         }
     }
 
-    private MetricsSnapshot getMetricsSnapshot(final String name, long key) {
+    /**
+     * @return 某一分钟的快照，没有数据时返回null
+     */
+    private String getMetric(final String name, final long minute) {
+        if (minute < getTimeSeriesSince()) {
+            return KV_DB.get(addPrefix(minute));
+        }
+        WeightedSnapshot snapshot = readSeriesSnapshots(Resolution.MINUTE, name, minute, minute + MINUTE, false).get(minute);
+        if (snapshot == null) {
+            return null;
+        }
         try {
-            String metric = KV_DB.get(addPrefix(key));
-            if (!Strings.isNullOrEmpty(metric)) {
-                return MAPPER.readValue(metric, MetricsSnapshot.class);
-            } else {
-                return new MetricsSnapshot(name, key, Collections.EMPTY_LIST);
+            return MAPPER.writeValueAsString(snapshot.snapshot);
+        } catch (Exception e) {
+            logger.error("serialize metrics snapshot error", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return 开始写时间序列的时间，在这之前的数据在kv里
+     */
+    private long getTimeSeriesSince() {
+        long since = TIME_SERIES_DB.firstTimestamp(SNAPSHOT_SERIES);
+        return since < 0 ? Long.MAX_VALUE : since;
+    }
+
+    /**
+     * 读取[from, to)内预聚合的点，latestMinute所在的桶还没有聚合完，这部分读分钟数据
+     */
+    private TreeMap<Long, WeightedSnapshot> readSeriesSnapshots(final Resolution resolution, final String name, final long from, final long to,
+                                                                final long latestMinute, final boolean withHistograms) {
+        if (resolution == Resolution.MINUTE) {
+            return readSeriesSnapshots(resolution, name, from, to, withHistograms);
+        }
+        long rollupEnd = Math.max(from, Math.min(to, resolution.bucketStart(latestMinute)));
+        TreeMap<Long, WeightedSnapshot> result = readSeriesSnapshots(resolution, name, from, rollupEnd, withHistograms);
+        result.putAll(readSeriesSnapshots(Resolution.MINUTE, name, rollupEnd, to, withHistograms));
+        return result;
+    }
+
+    /**
+     * 把[from, to)内所有指标的序列按时间点拼回快照，预聚合的点带上每个指标聚合的分钟数
+     *
+     * @param withHistograms 是否读取timer的直方图，只有需要合并多个点时才用得到
+     */
+    private TreeMap<Long, WeightedSnapshot> readSeriesSnapshots(final Resolution resolution, final String name, final long from, final long to,
+                                                                final boolean withHistograms) {
+        TreeMap<Long, WeightedSnapshot> result = new TreeMap<>();
+        if (from >= to) {
+            return result;
+        }
+        final String prefix = resolution.getSeriesPrefix();
+        Map<Long, Map<String, MetricsData>> minutes = new HashMap<>();
+        for (Map.Entry<String, List<DataPoint>> entry : TIME_SERIES_DB.queryPrefix(prefix, from, to).entrySet()) {
+            String series = entry.getKey();
+            int typeEnd = series.indexOf(SERIES_SEPARATOR, prefix.length());
+            int indexEnd = series.indexOf(SERIES_SEPARATOR, typeEnd + 1);
+            int type = Integer.parseInt(series.substring(prefix.length(), typeEnd));
+            int index = Integer.parseInt(series.substring(typeEnd + 1, indexEnd));
+            String metricName = series.substring(indexEnd + 1);
+            String key = metricName + type;
+
+            for (DataPoint point : entry.getValue()) {
+                Map<String, MetricsData> metrics = minutes.get(point.getTimestamp());
+                if (metrics == null) {
+                    metrics = new LinkedHashMap<>();
+                    minutes.put(point.getTimestamp(), metrics);
+                }
+                MetricsData metricsData = metrics.get(key);
+                if (metricsData == null) {
+                    metricsData = new MetricsData(metricName, type, new float[index + 1]);
+                    metrics.put(key, metricsData);
+                } else if (metricsData.getData().length <= index) {
+                    metricsData.setData(Arrays.copyOf(metricsData.getData(), index + 1));
+                }
+                metricsData.getData()[index] = (float) point.getValue();
             }
+        }
+        Map<Long, Map<String, Integer>> weights = readWeights(resolution, from, to);
+        Map<Long, Map<String, HistogramData>> histograms = withHistograms
+                ? HISTOGRAM_STORE.range(resolution, from, to)
+                : Collections.<Long, Map<String, HistogramData>>emptyMap();
+        for (Map.Entry<Long, Map<String, MetricsData>> entry : minutes.entrySet()) {
+            List<MetricsData> metricsDataList = new ArrayList<>(entry.getValue().values());
+            MetricsSnapshot snapshot = new MetricsSnapshot(name, entry.getKey(), metricsDataList);
+            result.put(entry.getKey(), new WeightedSnapshot(snapshot, weights.get(entry.getKey()), histograms.get(entry.getKey())));
+        }
+        return result;
+    }
+
+    /**
+     * @return 时间点 -> 指标 -> 聚合的分钟数，指标的key和groupByMetricsName一致
+     */
+    private Map<Long, Map<String, Integer>> readWeights(final Resolution resolution, final long from, final long to) {
+        Map<Long, Map<String, Integer>> result = new HashMap<>();
+        final String prefix = resolution.getCountPrefix();
+        if (prefix == null) {
+            return result;
+        }
+        for (Map.Entry<String, List<DataPoint>> entry : TIME_SERIES_DB.queryPrefix(prefix, from, to).entrySet()) {
+            String series = entry.getKey();
+            int typeEnd = series.indexOf(SERIES_SEPARATOR, prefix.length());
+            int indexEnd = series.indexOf(SERIES_SEPARATOR, typeEnd + 1);
+            //同一个指标的每个值分钟数相同，取第一个
+            if (Integer.parseInt(series.substring(typeEnd + 1, indexEnd)) != 0) {
+                continue;
+            }
+            String key = series.substring(indexEnd + 1) + Integer.parseInt(series.substring(prefix.length(), typeEnd));
+            for (DataPoint point : entry.getValue()) {
+                Map<String, Integer> metrics = result.get(point.getTimestamp());
+                if (metrics == null) {
+                    metrics = new HashMap<>();
+                    result.put(point.getTimestamp(), metrics);
+                }
+                metrics.put(key, (int) point.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 指标的key，同名的counter和timer是不同的指标
+     */
+    private String toMetricsKey(final MetricsData metricsData) {
+        return metricsData.getName() + metricsData.getType();
+    }
+
+    private String toSeriesKey(final MetricsData metricsData, final int index) {
+        return String.valueOf(metricsData.getType()) + SERIES_SEPARATOR + index + SERIES_SEPARATOR + metricsData.getName();
+    }
+
+    private MetricsSnapshot readMetricsSnapshot(final String metric) {
+        try {
+            return MAPPER.readValue(metric, MetricsSnapshot.class);
         } catch (Exception e) {
             throw new RuntimeException("rocks db 数据反序列化失败");
         }
+    }
 
+    private long getMinute(final String key) {
+        return Long.parseLong(key.substring(PREFIX.length()));
     }
 
-    private float sum(List<Float> data) {
+    /**
+     * 按分钟数加权平均，预聚合的点本身是平均值，不能和分钟数据等权
+     */
+    private float average(List<Float> data, List<Integer> weights) {
         float sum = 0.0f;
-        for (Float datum : data) {
-            sum += datum;
+        long total = 0;
+        for (int i = 0; i < data.size(); ++i) {
+            sum += data.get(i) * weights.get(i);
+            total += weights.get(i);
         }
-        return sum;
+        return sum / total;
     }
 
-    private float average(List<Float> data) {
-        return sum(data) / (data.size() * 1.0f);
+    /**
+     * 每个位置分别按分钟数加权平均，长度不同时以最短的为准
+     */
+    private float[] averageByIndex(List<float[]> data, List<Integer> weights) {
+        int length = data.isEmpty() ? 0 : Integer.MAX_VALUE;
+        for (float[] datum : data) {
+            length = Math.min(length, datum.length);
+        }
+        float[] result = new float[length];
+        long total = 0;
+        for (int j = 0; j < data.size(); ++j) {
+            float[] datum = data.get(j);
+            int weight = weights.get(j);
+            for (int i = 0; i < length; ++i) {
+                result[i] += datum[i] * weight;
+            }
+            total += weight;
+        }
+        for (int i = 0; i < length; ++i) {
+            result[i] /= total;
+        }
+        return result;
     }
 
     private String addPrefix(final String key) {
@@ -261,6 +488,22 @@ public class QMonitorStore {
         return PREFIX + key;
     }
 
+    /**
+     * 各精度的数据保留时间不同，开始时间超过保留时间时换成更粗的精度，最粗的精度也过期时只能查到部分数据
+     */
+    private Resolution chooseResolution(final long startTime, final Resolution resolution) {
+        final long now = System.currentTimeMillis();
+        Resolution result = resolution;
+        while (startTime < now - TIME_SERIES_DB.getRetention(result.getSeriesPrefix()) && result.coarser() != null) {
+            result = result.coarser();
+        }
+        return result;
+    }
+
+    private long roundUp(final long interval, final long unit) {
+        return (interval + unit - 1) / unit * unit;
+    }
+
     private long computeInterval(final long start, final long end) {
         final long minutes = TimeUnit.MILLISECONDS.toMinutes(end - start);
         if (minutes <= 2 * HOUR) {
@@ -275,8 +518,14 @@ public class QMonitorStore {
             return 10 * MINUTE;
         } else if (minutes <= 48 * HOUR) {
             return 20 * MINUTE;
-        } else {
+        } else if (minutes <= 72 * HOUR) {
             return 30 * MINUTE;
+        } else if (minutes <= 7 * 24 * HOUR) {
+            return 60 * MINUTE;
+        } else if (minutes <= 30 * 24 * HOUR) {
+            return 6 * 60 * MINUTE;
+        } else {
+            return 24 * 60 * MINUTE;
         }
     }
 
@@ -292,13 +541,57 @@ public class QMonitorStore {
         String name;
         int type;
         List<Float> count = new ArrayList<>();
-        List<Float> min_1 = new ArrayList<>();
-        List<Float> p98 = new ArrayList<>();
+        List<Integer> countWeights = new ArrayList<>();
+        List<float[]> timer = new ArrayList<>();
+        List<Integer> timerWeights = new ArrayList<>();
+        HistogramData histogram;
+        //有的点没有直方图，比如老版本的数据，这时只能对分位数取平均
+        boolean histogramMissing;
 
         public PolymerizeData(String name, int type) {
             this.name = name;
             this.type = type;
         }
+
+        void addHistogram(HistogramData other) {
+            if (other == null || (histogram != null && histogram.getPrecision() != other.getPrecision())) {
+                histogramMissing = true;
+            } else if (histogram == null) {
+                histogram = other.copy();
+            } else {
+                histogram.merge(other);
+            }
+        }
+    }
+
+    /**
+     * 快照和其中每个指标聚合的分钟数，kv和分钟序列里的快照每个指标都是1分钟
+     * <p>
+     * timer的直方图单独存储，不放在快照里，避免查询结果里带上直方图
+     */
+    private static class WeightedSnapshot {
+        private final MetricsSnapshot snapshot;
+        private final Map<String, Integer> weights;
+        private final Map<String, HistogramData> histograms;
+
+        private WeightedSnapshot(MetricsSnapshot snapshot) {
+            this(snapshot, null, null);
+        }
+
+        private WeightedSnapshot(MetricsSnapshot snapshot, Map<String, Integer> weights, Map<String, HistogramData> histograms) {
+            this.snapshot = snapshot;
+            this.weights = weights;
+            this.histograms = histograms;
+        }
+
+        private int getWeight(String key) {
+            Integer weight = weights == null ? null : weights.get(key);
+            return weight == null ? 1 : weight;
+        }
+
+        private HistogramData getHistogram(String key) {
+            return histograms == null ? null : histograms.get(key);
+        }
     }
 
     private boolean isEmpty(Collection collection) {
@@ -2,6 +2,7 @@ package qunar.tc.bistoury.commands.profiler;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -12,6 +13,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.ContinueResponseJob;
+import qunar.tc.bistoury.agent.common.job.IdleAwareJob;
+import qunar.tc.bistoury.agent.common.util.ChunkedFileReader;
 import qunar.tc.bistoury.clientside.common.meta.MetaStore;
 import qunar.tc.bistoury.clientside.common.meta.MetaStores;
 import qunar.tc.bistoury.clientside.common.store.BistouryStore;
@@ -19,17 +22,14 @@ import qunar.tc.bistoury.common.ProfilerUtil;
 import qunar.tc.bistoury.remoting.netty.AgentRemotingExecutor;
 import qunar.tc.bistoury.remoting.netty.Task;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_RESUME_OFFSET_PREFIX;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_DIR_HEADER;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_NAME_HEADER;
 import static qunar.tc.bistoury.remoting.protocol.CommandCode.REQ_TYPE_PROFILER_ALL_FILE_END;
@@ -52,6 +52,8 @@ public class ProfilerFileForProxyTask implements Task {
 
     private final String profilerId;
 
+    private final Map<String, String> requestHeader;
+
     private final SettableFuture<Integer> future = SettableFuture.create();
 
     private static final byte[] empty = new byte[0];
@@ -60,11 +62,12 @@ public class ProfilerFileForProxyTask implements Task {
     private static final MetaStore META_STORE = MetaStores.getMetaStore();
     private final RateLimiter rateLimiter;
 
-    ProfilerFileForProxyTask(String id, long maxRunningMs, ResponseHandler handler, String profilerId) {
+    ProfilerFileForProxyTask(String id, long maxRunningMs, ResponseHandler handler, String profilerId, Map<String, String> requestHeader) {
         this.id = id;
         this.maxRunningMs = maxRunningMs;
         this.handler = handler;
         this.profilerId = profilerId;
+        this.requestHeader = requestHeader == null ? ImmutableMap.<String, String>of() : requestHeader;
         rateLimiter = RateLimiter.create(META_STORE.getIntProperty("download.kb.per.second", DEFAULT_DOWNLOAD_LIMIT_KB) * 1024);
     }
 
@@ -85,13 +88,14 @@ public class ProfilerFileForProxyTask implements Task {
 
     @Override
     public ContinueResponseJob createJob() {
-        return new Job(AgentRemotingExecutor.getExecutor());
+        return new Job(AgentRemotingExecutor.getExecutor(AgentRemotingExecutor.Lane.BULK));
     }
 
-    private class Job implements ContinueResponseJob {
+    private class Job implements ContinueResponseJob, IdleAwareJob {
 
         private final ListeningExecutorService executor;
-        private InputStream currentInputStream;
+        private boolean idle = false;
+        private ChunkedFileReader currentReader;
         private File currentProfilerFile;
         private File profilerDir;
         private boolean fileWriteEnd = false;
@@ -123,25 +127,31 @@ public class ProfilerFileForProxyTask implements Task {
 
         @Override
         public boolean doResponse() throws IOException {
-            Optional<Integer> writeSizeRef = writeNextChunk();
-            if (!writeSizeRef.isPresent()) {
-                return true;
+            //超过限速时不等待，当作本次没有数据，由job store延迟后再调度
+            idle = !rateLimiter.tryAcquire(PROFILER_BUFFER_SIZE);
+            if (idle) {
+                return false;
             }
-            rateLimiter.acquire(writeSizeRef.get() == 0 ? 1 : writeSizeRef.get());
-            return false;
+
+            Optional<Integer> writeSizeRef = writeNextChunk();
+            return !writeSizeRef.isPresent();
+        }
+
+        @Override
+        public boolean isIdle() {
+            return idle;
         }
 
         private Optional<Integer> writeNextChunk() throws IOException {
             final byte[] buffer = new byte[PROFILER_BUFFER_SIZE];
-            if (currentInputStream == null || fileWriteEnd) {
+            if (currentReader == null || fileWriteEnd) {
                 fileWriteEnd = false;
                 if (writingFileIndex >= profilerFiles.size()) {
                     return Optional.absent();
                 }
-                switchInputStream(profilerFiles.get(writingFileIndex));
+                switchReader(profilerFiles.get(writingFileIndex));
             }
-            int read;
-            read = currentInputStream.read(buffer);
+            int read = currentReader.read(buffer);
             if (read != -1) {
                 if (read < (PROFILER_BUFFER_SIZE)) {
                     final byte[] endContent = Arrays.copyOf(buffer, read);
@@ -153,29 +163,43 @@ public class ProfilerFileForProxyTask implements Task {
             }
 
             fileWriteEnd = true;
-            closeStream(currentInputStream);
+            closeReader(currentReader);
             writingFileIndex++;
             return Optional.of(0);
         }
 
-        private void switchInputStream(File downloadFile) {
+        private void switchReader(File downloadFile) throws IOException {
             currentProfilerFile = downloadFile;
+            if (!downloadFile.exists()) {
+                throw new RuntimeException("profiler file not find. " + downloadFile.getName());
+            }
+            currentReader = new ChunkedFileReader(downloadFile, getResumeOffset(downloadFile));
+        }
+
+        //proxy上已经收到的部分不再重复传输，文件比已收到的还小说明已经不是同一个文件，从头开始传
+        private long getResumeOffset(File downloadFile) {
+            String offset = requestHeader.get(FILE_RESUME_OFFSET_PREFIX + downloadFile.getName());
+            if (Strings.isNullOrEmpty(offset)) {
+                return 0;
+            }
             try {
-                currentInputStream = new BufferedInputStream(new FileInputStream(downloadFile));
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException("profiler file not find.", e);
+                long result = Long.parseLong(offset);
+                return result > 0 && result <= downloadFile.length() ? result : 0;
+            } catch (NumberFormatException e) {
+                logger.warn("illegal resume offset of profiler file {}: {}", downloadFile.getName(), offset);
+                return 0;
             }
         }
 
-        private void closeStream(InputStream inputStream) throws IOException {
-            if (inputStream != null) {
-                inputStream.close();
-                doWriteEndStateToProxy(currentProfilerFile);
+        private void closeReader(ChunkedFileReader reader) throws IOException {
+            if (reader != null) {
+                reader.close();
+                doWriteEndStateToProxy(currentProfilerFile, reader.endHeader());
             }
         }
 
-        private void doWriteEndStateToProxy(File downloadFile) {
-            Map<String, String> responseHeader = getFileInfoHeader(downloadFile);
+        private void doWriteEndStateToProxy(File downloadFile, Map<String, String> endHeader) {
+            Map<String, String> responseHeader = mergeHeader(getFileInfoHeader(downloadFile), endHeader);
             handler.handle(REQ_TYPE_PROFILER_FILE_END.getCode(), empty, responseHeader);
         }
 
@@ -185,10 +209,14 @@ public class ProfilerFileForProxyTask implements Task {
         }
 
         private void doWriteFileToProxy(File downloadFile, byte[] chunk) {
-            Map<String, String> responseHeader = getFileInfoHeader(downloadFile);
+            Map<String, String> responseHeader = mergeHeader(getFileInfoHeader(downloadFile), currentReader.chunkHeader());
             handler.handle(REQ_TYPE_PROFILER_FILE.getCode(), chunk, responseHeader);
         }
 
+        private Map<String, String> mergeHeader(Map<String, String> fileInfoHeader, Map<String, String> chunkHeader) {
+            return ImmutableMap.<String, String>builder().putAll(fileInfoHeader).putAll(chunkHeader).build();
+        }
+
         private void doWriteFileReadError(ResponseHandler handler, String detailMsg) {
             handler.handle(REQ_TYPE_PROFILER_FILE_ERROR.getCode(), detailMsg.getBytes(Charsets.UTF_8), ImmutableMap.<String, String>of());
         }
@@ -203,9 +231,9 @@ public class ProfilerFileForProxyTask implements Task {
 
         @Override
         public void clear() {
-            if (currentInputStream != null) {
+            if (currentReader != null) {
                 try {
-                    currentInputStream.close();
+                    currentReader.close();
                 } catch (IOException e) {
                     logger.warn("close profiler file inputStream error. id: " + id, e);
                 }
@@ -32,6 +32,6 @@ public class ProfilerFileForProxyTaskFactory implements TaskFactory<String> {
 
     @Override
     public Task create(RemotingHeader header, String command, ResponseHandler handler) {
-        return new ProfilerFileForProxyTask(header.getId(), header.getMaxRunningMs(), handler, command);
+        return new ProfilerFileForProxyTask(header.getId(), header.getMaxRunningMs(), handler, command, header.getProperties());
     }
 }
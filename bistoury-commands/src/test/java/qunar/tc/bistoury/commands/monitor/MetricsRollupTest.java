@@ -0,0 +1,350 @@
+package qunar.tc.bistoury.commands.monitor;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.agent.common.kv.KvDb;
+import qunar.tc.bistoury.agent.common.kv.KvIterator;
+import qunar.tc.bistoury.agent.common.kv.KvIterators;
+import qunar.tc.bistoury.agent.common.tsdb.DataPoint;
+import qunar.tc.bistoury.agent.common.tsdb.TimeSeriesDb;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsRollupTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final long START = 1_600_041_600_000L;
+
+    private static final String KEY = "1.0.a";
+
+    private static final String METRICS_KEY = "a1";
+
+    private static final int PRECISION = 7;
+
+    private MemoryTimeSeriesDb db;
+
+    private MemoryKvDb kvDb;
+
+    private HistogramStore histogramStore;
+
+    @Before
+    public void setUp() {
+        db = new MemoryTimeSeriesDb();
+        kvDb = new MemoryKvDb();
+        histogramStore = new HistogramStore(kvDb);
+    }
+
+    @Test
+    public void testFlushWhenBucketEnd() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 0; i < 5; ++i) {
+            add(rollup, START + i * MINUTE, i);
+        }
+        Assert.assertTrue(db.query("qm5m." + KEY, 0, Long.MAX_VALUE).isEmpty());
+
+        add(rollup, START + 5 * MINUTE, 10.0);
+        assertPoint("qm5m." + KEY, START, 2);
+        assertPoint("qm5mn." + KEY, START, 5);
+        Assert.assertTrue(db.query("qm1h." + KEY, 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testSkipBucketAndOldMinute() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        add(rollup, START + 2 * MINUTE, 4.0);
+        add(rollup, START + 7 * MINUTE, 8.0);
+        //比当前桶早的分钟直接丢掉
+        add(rollup, START + 3 * MINUTE, 100.0);
+        add(rollup, START + 20 * MINUTE, 1.0);
+
+        List<DataPoint> points = db.query("qm5m." + KEY, 0, Long.MAX_VALUE);
+        Assert.assertEquals(2, points.size());
+        assertPoint("qm5m." + KEY, START, 4);
+        assertPoint("qm5m." + KEY, START + 5 * MINUTE, 8);
+        assertPoint("qm5mn." + KEY, START, 1);
+    }
+
+    @Test
+    public void testRecoverCurrentBucket() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 0; i < 3; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            add(rollup, START + i * MINUTE, i);
+        }
+
+        //重启，前3分钟只在分钟数据里
+        MetricsRollup restarted = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 3; i < 6; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            add(restarted, START + i * MINUTE, i);
+        }
+        assertPoint("qm5m." + KEY, START, 2);
+        assertPoint("qm5mn." + KEY, START, 5);
+    }
+
+    @Test
+    public void testRecoverUnflushedBuckets() {
+        //停机前的最后一段数据都没有写出：前一天的最后两个小时和当天的前90分钟
+        long downAt = START + DAY + 90 * MINUTE;
+        for (long minute = START + DAY - 2 * HOUR; minute < downAt; minute += MINUTE) {
+            appendMinute(minute, minute < START + DAY ? 1 : 3);
+        }
+
+        long restartAt = START + DAY + 3 * HOUR;
+        appendMinute(restartAt, 3);
+        add(new MetricsRollup(db, histogramStore, 3 * DAY), restartAt, 3.0);
+
+        assertPoint("qm1d." + KEY, START, 1);
+        assertPoint("qm1dn." + KEY, START, 120);
+        assertPoint("qm1h." + KEY, START + DAY - 2 * HOUR, 1);
+        assertPoint("qm1h." + KEY, START + DAY - HOUR, 1);
+        assertPoint("qm1h." + KEY, START + DAY, 3);
+        assertPoint("qm1hn." + KEY, START + DAY, 60);
+        assertPoint("qm1h." + KEY, START + DAY + HOUR, 3);
+        assertPoint("qm1hn." + KEY, START + DAY + HOUR, 30);
+        Assert.assertEquals(4, db.query("qm1h." + KEY, 0, Long.MAX_VALUE).size());
+        Assert.assertEquals(42, db.query("qm5m." + KEY, 0, Long.MAX_VALUE).size());
+        //当前的天、小时、5分钟桶还在内存里
+        Assert.assertTrue(db.query("qm1d." + KEY, START + DAY, Long.MAX_VALUE).isEmpty());
+        Assert.assertTrue(db.query("qm5m." + KEY, restartAt, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testRecoverKeepFlushedBuckets() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 0; i < 12; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            add(rollup, START + i * MINUTE, i);
+        }
+        Assert.assertEquals(2, db.query("qm5m." + KEY, 0, Long.MAX_VALUE).size());
+
+        //写出过的桶再恢复一遍也不会改变
+        appendMinute(START + 12 * MINUTE, 12);
+        add(new MetricsRollup(db, histogramStore, DAY), START + 12 * MINUTE, 12.0);
+        Assert.assertEquals(2, db.query("qm5m." + KEY, 0, Long.MAX_VALUE).size());
+        assertPoint("qm5m." + KEY, START, 2);
+        assertPoint("qm5m." + KEY, START + 5 * MINUTE, 7);
+    }
+
+    @Test
+    public void testRecoverWindow() {
+        appendMinute(START, 1);
+        appendMinute(START + 2 * DAY, 2);
+        add(new MetricsRollup(db, histogramStore, DAY), START + 2 * DAY + HOUR, 2.0);
+
+        //超过恢复窗口的数据不再补
+        Assert.assertTrue(db.query("qm1d." + KEY, START, START + DAY).isEmpty());
+        assertPoint("qm1h." + KEY, START + 2 * DAY, 2);
+    }
+
+    @Test
+    public void testMergeHistograms() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        //前4分钟都是1ms，最后1分钟都是100ms，按分钟平均p50会得到20ms左右
+        HistogramData first = histogram(100, 1000);
+        add(rollup, START, 1.0, first);
+        for (int i = 1; i < 4; ++i) {
+            add(rollup, START + i * MINUTE, 1.0, histogram(100, 1000));
+        }
+        add(rollup, START + 4 * MINUTE, 100.0, histogram(1, 100000));
+        add(rollup, START + 5 * MINUTE, 1.0, histogram(1, 1000));
+
+        HistogramData merged = histogramStore.range(MetricsRollup.Resolution.FIVE_MINUTES, START, START + 1).get(START).get(METRICS_KEY);
+        Assert.assertEquals(401, merged.totalCount());
+        assertNear(1000, merged.valueAtPercentile(50));
+        assertNear(1000, merged.valueAtPercentile(99.75));
+        assertNear(100000, merged.valueAtPercentile(99.9));
+        Assert.assertEquals(100000, merged.getMax());
+        //传入的直方图不会被合并修改
+        Assert.assertEquals(100, first.totalCount());
+        Assert.assertTrue(histogramStore.range(MetricsRollup.Resolution.HOUR, 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testRecoverHistograms() {
+        for (int i = 0; i < 3; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            histogramStore.put(MetricsRollup.Resolution.MINUTE, START + i * MINUTE, ImmutableMap.of(METRICS_KEY, histogram(10, 2000)));
+        }
+
+        //重启，前3分钟的直方图只在分钟数据里
+        MetricsRollup restarted = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 3; i < 6; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            add(restarted, START + i * MINUTE, i, histogram(10, 3000));
+        }
+        HistogramData merged = histogramStore.range(MetricsRollup.Resolution.FIVE_MINUTES, START, START + 1).get(START).get(METRICS_KEY);
+        Assert.assertEquals(50, merged.totalCount());
+        assertNear(2000, merged.valueAtPercentile(60));
+        assertNear(3000, merged.valueAtPercentile(61));
+    }
+
+    @Test
+    public void testRecoverKeepFlushedHistograms() {
+        MetricsRollup rollup = new MetricsRollup(db, histogramStore, DAY);
+        for (int i = 0; i < 6; ++i) {
+            appendMinute(START + i * MINUTE, i);
+            histogramStore.put(MetricsRollup.Resolution.MINUTE, START + i * MINUTE, ImmutableMap.of(METRICS_KEY, histogram(1, 1000)));
+            add(rollup, START + i * MINUTE, i, histogram(1, 1000));
+        }
+
+        //最早的分钟直方图过期后再恢复，已经写出的桶不能被不全的数据覆盖
+        kvDb.data.remove(kvDb.data.firstKey());
+        add(new MetricsRollup(db, histogramStore, DAY), START + 6 * MINUTE, 6.0);
+        Assert.assertEquals(5, histogramStore.range(MetricsRollup.Resolution.FIVE_MINUTES, START, START + 1).get(START).get(METRICS_KEY).totalCount());
+    }
+
+    @Test
+    public void testCoarsest() {
+        Assert.assertEquals(MetricsRollup.Resolution.MINUTE, MetricsRollup.Resolution.coarsest(MINUTE));
+        Assert.assertEquals(MetricsRollup.Resolution.MINUTE, MetricsRollup.Resolution.coarsest(6 * MINUTE));
+        Assert.assertEquals(MetricsRollup.Resolution.FIVE_MINUTES, MetricsRollup.Resolution.coarsest(10 * MINUTE));
+        Assert.assertEquals(MetricsRollup.Resolution.HOUR, MetricsRollup.Resolution.coarsest(6 * HOUR));
+        Assert.assertEquals(MetricsRollup.Resolution.DAY, MetricsRollup.Resolution.coarsest(DAY));
+    }
+
+    private static void add(MetricsRollup rollup, long minute, double value) {
+        rollup.add(minute, ImmutableMap.of(KEY, value), Collections.<String, HistogramData>emptyMap());
+    }
+
+    private static void add(MetricsRollup rollup, long minute, double value, HistogramData histogram) {
+        rollup.add(minute, ImmutableMap.of(KEY, value), ImmutableMap.of(METRICS_KEY, histogram));
+    }
+
+    /**
+     * @return count个值都是micros的直方图
+     */
+    private static HistogramData histogram(long count, long micros) {
+        long[] buckets = new long[HistogramData.bucketIndex(micros, PRECISION) + 1];
+        buckets[buckets.length - 1] = count;
+        return HistogramData.fromBuckets(PRECISION, buckets, micros);
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected >> PRECISION);
+    }
+
+    private void appendMinute(long minute, double value) {
+        Assert.assertTrue(db.append("qm." + KEY, minute, value));
+    }
+
+    private void assertPoint(String series, long timestamp, double value) {
+        List<DataPoint> points = db.query(series, timestamp, timestamp + 1);
+        Assert.assertEquals(series + "@" + timestamp, 1, points.size());
+        Assert.assertEquals(value, points.get(0).getValue(), 1e-9);
+    }
+
+    private static class MemoryKvDb implements KvDb {
+
+        private final TreeMap<String, String> data = new TreeMap<>();
+
+        @Override
+        public String get(String key) {
+            return data.get(key);
+        }
+
+        @Override
+        public void put(String key, String value) {
+            data.put(key, value);
+        }
+
+        @Override
+        public void putBatch(Map<String, String> data) {
+            this.data.putAll(data);
+        }
+
+        @Override
+        public KvIterator scan(String prefix) {
+            return KvIterators.of(new ArrayList<>(data.tailMap(prefix).headMap(KvIterators.prefixEnd(prefix)).entrySet()));
+        }
+
+        @Override
+        public KvIterator range(String from, String to) {
+            return KvIterators.of(new ArrayList<>(data.subMap(from, to).entrySet()));
+        }
+
+        @Override
+        public Map<String, String> getStats() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class MemoryTimeSeriesDb implements TimeSeriesDb {
+
+        private final Map<String, TreeMap<Long, Double>> seriesMap = new TreeMap<>();
+
+        @Override
+        public boolean append(String series, long timestamp, double value) {
+            TreeMap<Long, Double> points = seriesMap.get(series);
+            if (points == null) {
+                points = new TreeMap<>();
+                seriesMap.put(series, points);
+            }
+            if (!points.isEmpty() && points.lastKey() >= timestamp) {
+                return false;
+            }
+            points.put(timestamp, value);
+            return true;
+        }
+
+        @Override
+        public List<DataPoint> query(String series, long from, long to) {
+            TreeMap<Long, Double> points = seriesMap.get(series);
+            if (points == null || from >= to) {
+                return Collections.emptyList();
+            }
+            List<DataPoint> result = new ArrayList<>();
+            for (Map.Entry<Long, Double> entry : points.subMap(from, to).entrySet()) {
+                result.add(new DataPoint(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, List<DataPoint>> queryPrefix(String prefix, long from, long to) {
+            Map<String, List<DataPoint>> result = new TreeMap<>();
+            for (String series : seriesMap.keySet()) {
+                if (series.startsWith(prefix)) {
+                    List<DataPoint> points = query(series, from, to);
+                    if (!points.isEmpty()) {
+                        result.put(series, points);
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public long firstTimestamp(String series) {
+            TreeMap<Long, Double> points = seriesMap.get(series);
+            return points == null || points.isEmpty() ? -1 : points.firstKey();
+        }
+
+        @Override
+        public long getRetention(String series) {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public Map<String, String> getStats() {
+            return Collections.emptyMap();
+        }
+    }
+}
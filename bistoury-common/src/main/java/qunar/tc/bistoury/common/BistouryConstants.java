@@ -49,6 +49,8 @@ public class BistouryConstants {
 
     public static final String REQ_MONITOR_SNAPSHOT = "qmonitorsnapshot";
 
+    public static final String REQ_THREAD_DUMP = "qthreaddump";
+
     public static final String REQ_JAR_INFO = "jarinfo";
 
     public static final String REQ_APP_CONFIG = "appconfig";
@@ -71,7 +73,7 @@ public class BistouryConstants {
 
     public static final String BISTOURY_COMMAND_THREAD_NAME = "bistoury-command-execute-daemon";
 
-    public static final String SPY_CLASSNAME = "qunar.tc.bistoury.instrument.spy.BistourySpys1";
+    public static final String SPY_CLASSNAME = "qunar.tc.bistoury.instrument.spy.BistourySpys2";
 
     public static final String PROFILER_ID = "$$profilerId$$";
 
@@ -86,6 +88,15 @@ public class BistouryConstants {
 
     public static final int MIN_AGENT_VERSION_SUPPORT_JOB_PAUSE = 12;
 
+    public static final int MIN_AGENT_VERSION_SUPPORT_JOB_CREDIT = 13;
+
+    public static final int MIN_AGENT_VERSION_SUPPORT_THREAD_CPU_SAMPLE = 14;
+
+    /**
+     * 请求header中的初始credit窗口大小，单位byte，存在时agent按credit控制job的输出
+     */
+    public static final String JOB_CREDIT_WINDOW = "job.credit.window";
+
     public static final String PROFILER_ROOT_PATH = System.getProperty("java.io.tmpdir") + File.separator + "bistoury-profiler";
 
     public static final String PROFILER_ROOT_TEMP_PATH = PROFILER_ROOT_PATH + File.separator + "tmp";
@@ -95,4 +106,34 @@ public class BistouryConstants {
     public static final String PROFILER_DIR_HEADER = "profilerDir";
 
     public static final String PROFILER_NAME_HEADER = "profilerName";
+
+    /**
+     * 文件传输的response header：文件标识（路径、大小、修改时间），续传时用来确认文件没有变化
+     */
+    public static final String FILE_ID_HEADER = "file.id";
+
+    /**
+     * 文件传输的response header：当前chunk在文件中的起始位置
+     */
+    public static final String FILE_OFFSET_HEADER = "file.offset";
+
+    /**
+     * 文件传输的response header：当前chunk的crc32
+     */
+    public static final String FILE_CHUNK_CRC_HEADER = "file.chunk.crc32";
+
+    /**
+     * 文件传输结束时的response header：文件总长度
+     */
+    public static final String FILE_LENGTH_HEADER = "file.length";
+
+    /**
+     * 文件传输结束时的response header：整个文件的crc32，接收方用来校验完整性
+     */
+    public static final String FILE_CRC_HEADER = "file.crc32";
+
+    /**
+     * profiler文件续传时请求header中每个文件已经收到的字节数，key为前缀加文件名
+     */
+    public static final String FILE_RESUME_OFFSET_PREFIX = "file.resume.offset.";
 }
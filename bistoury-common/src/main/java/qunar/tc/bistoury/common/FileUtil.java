@@ -194,6 +194,9 @@ public final class FileUtil {
             for (int i = 0; i < list.length; i++) {
                 deleteDirectory(new File(file, list[i]), deleteChildDirectory);
             }
+            if (deleteChildDirectory) {
+                file.delete();
+            }
         } else {
             file.delete();
         }
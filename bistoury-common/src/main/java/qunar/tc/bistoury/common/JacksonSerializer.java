@@ -17,6 +17,7 @@
 
 package qunar.tc.bistoury.common;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -27,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
 
 /**
  * @author zhenyu.nie created on 2017 2017/8/31 19:27
@@ -68,6 +70,13 @@ public class JacksonSerializer {
         }
     }
 
+    /**
+     * 数据太大不适合一次序列化时，用generator边生成边写出
+     */
+    public static JsonGenerator createGenerator(Writer writer) throws IOException {
+        return mapper.getFactory().createGenerator(writer);
+    }
+
     public static <T> T deSerialize(String content, Class<T> clazz) {
         try {
             return mapper.readValue(content, clazz);
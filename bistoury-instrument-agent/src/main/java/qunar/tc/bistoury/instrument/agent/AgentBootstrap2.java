@@ -17,7 +17,7 @@
 
 package qunar.tc.bistoury.instrument.agent;
 
-import qunar.tc.bistoury.instrument.spy.BistourySpys1;
+import qunar.tc.bistoury.instrument.spy.BistourySpys2;
 
 import java.arthas.Spy;
 import java.io.File;
@@ -190,7 +190,7 @@ public class AgentBootstrap2 {
         }
     }
 
-    private static void initSpy(ClassLoader classLoader) throws ClassNotFoundException, NoSuchMethodException {
+    private static void initSpy(ClassLoader classLoader) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
         initArthasSpy(classLoader);
         initQSpy(classLoader);
     }
@@ -208,22 +208,22 @@ public class AgentBootstrap2 {
         Spy.initForAgentLauncher(classLoader, onBefore, onReturn, onThrows, beforeInvoke, afterInvoke, throwInvoke, reset);
     }
 
-    private static void initQSpy(ClassLoader classLoader) throws ClassNotFoundException, NoSuchMethodException {
+    private static void initQSpy(ClassLoader classLoader) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
         Class<?> globalContextClass = classLoader.loadClass("qunar.tc.bistoury.instrument.client.debugger.GlobalDebugContext");
         Class<?> snapshotCaptureClass = classLoader.loadClass("qunar.tc.bistoury.instrument.client.debugger.SnapshotCapture");
         Class<?> agentMonitorClass = classLoader.loadClass("qunar.tc.bistoury.instrument.client.monitor.AgentMonitor");
-        BistourySpys1.init(
-                globalContextClass.getMethod(BistourySpys1.HAS_BREAKPOINT_SET, String.class, int.class),
-                globalContextClass.getMethod(BistourySpys1.IS_HIT, String.class, int.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.PUT_LOCAL_VARIABLE, String.class, Object.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.PUT_FIELD, String.class, Object.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.PUT_STATIC_FIELD, String.class, Object.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.FILL_STACKTRACE, String.class, int.class, Throwable.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.DUMP, String.class, int.class),
-                snapshotCaptureClass.getMethod(BistourySpys1.END_RECEIVE, String.class, int.class),
-                agentMonitorClass.getMethod(BistourySpys1.START_MONITOR),
-                agentMonitorClass.getMethod(BistourySpys1.STOP_MONITOR, String.class, long.class),
-                agentMonitorClass.getMethod(BistourySpys1.EXCEPTION_MONITOR, String.class)
+        BistourySpys2.init(
+                globalContextClass.getMethod(BistourySpys2.HAS_BREAKPOINT_SET, int.class),
+                globalContextClass.getMethod(BistourySpys2.IS_HIT, int.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.PUT_LOCAL_VARIABLE, String.class, Object.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.PUT_FIELD, String.class, Object.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.PUT_STATIC_FIELD, String.class, Object.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.FILL_STACKTRACE, String.class, int.class, Throwable.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.DUMP, String.class, int.class),
+                snapshotCaptureClass.getMethod(BistourySpys2.END_RECEIVE, String.class, int.class),
+                agentMonitorClass.getMethod(BistourySpys2.START_MONITOR, int.class),
+                agentMonitorClass.getMethod(BistourySpys2.STOP_MONITOR, int.class, long.class),
+                agentMonitorClass.getMethod(BistourySpys2.EXCEPTION_MONITOR, int.class)
         );
     }
 
@@ -23,7 +23,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.AdviceAdapter;
 import qunar.tc.bistoury.instrument.client.location.Location;
-import qunar.tc.bistoury.instrument.spy.BistourySpys1;
+import qunar.tc.bistoury.instrument.spy.BistourySpys2;
 
 import java.util.Collection;
 
@@ -34,7 +34,7 @@ import java.util.Collection;
  */
 class DebuggerMethodVisitor extends AdviceAdapter {
 
-    private static final String SPY_NAME = Type.getInternalName(BistourySpys1.class);
+    private static final String SPY_NAME = Type.getInternalName(BistourySpys2.class);
     private static final String THROWABLE_INTERNALNAME = Type.getInternalName(Throwable.class);
 
     private static final String DEFAULT_DEBUG_ADDKV_DESC = "(Ljava/lang/String;Ljava/lang/Object;)V";
@@ -72,20 +72,20 @@ class DebuggerMethodVisitor extends AdviceAdapter {
         super.visitLineNumber(line, start);
         Location location = new Location(source, line);
         if (GlobalDebugContext.hasBreakpointSet(location)) {
+            final int locationId = GlobalDebugContext.getLocationId(location);
             final Label breakpointLabel = new Label();
-            breakpointSwitch(source, line, breakpointLabel);
+            breakpointSwitch(locationId, breakpointLabel);
             captureSnapshot(line);
-            isHit(source, line, breakpointLabel);
+            isHit(locationId, breakpointLabel);
             processForBreakpoint(source, line);
             super.visitLabel(breakpointLabel);
         }
     }
 
-    private void breakpointSwitch(String source, int line, Label breakpointLabel) {
-        super.visitLdcInsn(source);
-        super.visitLdcInsn(line);
+    private void breakpointSwitch(int locationId, Label breakpointLabel) {
+        super.visitLdcInsn(locationId);
         super.visitMethodInsn(INVOKESTATIC, SPY_NAME, "hasBreakpointSet",
-                "(Ljava/lang/String;I)Z", false);
+                "(I)Z", false);
         super.visitJumpInsn(IFEQ, breakpointLabel);
     }
 
@@ -95,11 +95,10 @@ class DebuggerMethodVisitor extends AdviceAdapter {
         addFields();
     }
 
-    private void isHit(final String source, final int line, final Label breakpointLabel) {
-        super.visitLdcInsn(source);
-        super.visitLdcInsn(line);
+    private void isHit(final int locationId, final Label breakpointLabel) {
+        super.visitLdcInsn(locationId);
         super.visitMethodInsn(INVOKESTATIC, SPY_NAME, "isHit",
-                "(Ljava/lang/String;I)Z", false);
+                "(I)Z", false);
         super.visitJumpInsn(IFEQ, breakpointLabel);
     }
 
@@ -24,6 +24,7 @@ import qunar.tc.bistoury.attach.common.BistouryLoggger;
 import qunar.tc.bistoury.instrument.client.location.Location;
 import qunar.tc.bistoury.instrument.client.spring.el.*;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.UUID;
 
@@ -40,7 +41,17 @@ public final class GlobalDebugContext {
     private static final String NORMAL_BREAKPOINT_SUFFIX = "-n";
     private static final String CONDITION_BREAKPOINT_SUFFIX = "-c";
 
-    private static final Map<Location, Breakpoint> breakpoints = Maps.newHashMap();
+    private static final Object lock = new Object();
+
+    /**
+     * 断点所在位置的id，写进字节码里，分配之后不再变化，也不复用
+     */
+    private static final Map<Location, Integer> locationIds = Maps.newHashMap();
+
+    /**
+     * 以位置id为下标，字节码中每次执行到断点行都会读，写时复制，读不加锁也不分配对象
+     */
+    private static volatile Breakpoint[] breakpoints = new Breakpoint[0];
 
     private static final ThreadLocal<String> breakpointId = new ThreadLocal<>();
 
@@ -54,7 +65,7 @@ public final class GlobalDebugContext {
     }
 
     static void initSnapshotReceiver(SnapshotReceiver aSnapshotReceiver) {
-        synchronized (breakpoints) {
+        synchronized (lock) {
             snapshotReceiver = aSnapshotReceiver;
         }
     }
@@ -64,15 +75,42 @@ public final class GlobalDebugContext {
     }
 
     static void destroy() {
-        synchronized (breakpoints) {
-            breakpoints.clear();
+        synchronized (lock) {
+            breakpoints = new Breakpoint[0];
             breakpointId.remove();
         }
     }
 
+    /**
+     * 字节码生成时调用，断点已经添加过，所以位置一定有id
+     */
+    static int getLocationId(Location location) {
+        synchronized (lock) {
+            Integer id = locationIds.get(location);
+            if (id == null) {
+                id = locationIds.size();
+                locationIds.put(location, id);
+            }
+            return id;
+        }
+    }
+
+    private static Breakpoint getBreakpoint(int locationId) {
+        Breakpoint[] current = breakpoints;
+        return locationId < current.length ? current[locationId] : null;
+    }
+
+    private static void setBreakpoint(int locationId, Breakpoint breakpoint) {
+        Breakpoint[] current = breakpoints;
+        Breakpoint[] copy = Arrays.copyOf(current, Math.max(current.length, locationId + 1));
+        copy[locationId] = breakpoint;
+        breakpoints = copy;
+    }
+
     static AddBreakpointResult addBreakpoint(Location location, Expression condition) {
-        synchronized (breakpoints) {
-            Breakpoint oldBreakpoint = breakpoints.get(location);
+        synchronized (lock) {
+            int locationId = getLocationId(location);
+            Breakpoint oldBreakpoint = getBreakpoint(locationId);
             if (oldBreakpoint != null && oldBreakpoint.getCondition() == null && condition == null) {
                 return new AddBreakpointResult(oldBreakpoint.getId(), false);
             } else if (oldBreakpoint != null && oldBreakpoint.getCondition() != null && condition != null) {
@@ -90,7 +128,7 @@ public final class GlobalDebugContext {
                 id = UUID.randomUUID().toString() + CONDITION_BREAKPOINT_SUFFIX;
             }
             Breakpoint breakpoint = new Breakpoint(id, location, condition);
-            breakpoints.put(location, breakpoint);
+            setBreakpoint(locationId, breakpoint);
             if (oldBreakpoint != null) {
                 snapshotReceiver.remove(oldBreakpoint.getId());
             }
@@ -103,26 +141,26 @@ public final class GlobalDebugContext {
     }
 
     static void removeBreakpoint(Location location, String breakpointId) {
-        synchronized (breakpoints) {
-            Breakpoint breakpoint = breakpoints.get(location);
+        synchronized (lock) {
+            Integer locationId = locationIds.get(location);
+            if (locationId == null) {
+                return;
+            }
+            Breakpoint breakpoint = getBreakpoint(locationId);
             if (breakpoint != null && breakpoint.getId().equals(breakpointId)) {
-                breakpoints.remove(location);
+                setBreakpoint(locationId, null);
             }
         }
     }
 
     private static void removeBreakpoint(Breakpoint breakpoint) {
-        synchronized (breakpoints) {
-            Breakpoint candidate = breakpoints.get(breakpoint.getLocation());
-            if (candidate != null && candidate.getId().equals(breakpoint.getId())) {
-                breakpoints.remove(breakpoint.getLocation());
-            }
-        }
+        removeBreakpoint(breakpoint.getLocation(), breakpoint.getId());
     }
 
     static boolean hasBreakpointSet(final Location location) {
-        synchronized (breakpoints) {
-            return breakpoints.containsKey(location);
+        synchronized (lock) {
+            Integer locationId = locationIds.get(location);
+            return locationId != null && getBreakpoint(locationId) != null;
         }
     }
 
@@ -146,21 +184,16 @@ public final class GlobalDebugContext {
 
 
     //方法不要删除，字节码中使用
-    public static boolean hasBreakpointSet(final String source, final int line) {
-        Location location = new Location(source, line);
-        return hasBreakpointSet(location);
+    public static boolean hasBreakpointSet(final int locationId) {
+        return getBreakpoint(locationId) != null;
     }
 
 
     //方法不要删除，字节码中使用
-    public static boolean isHit(final String source, final int line) {
+    public static boolean isHit(final int locationId) {
         if (snapshotReceiver == null) return false;
 
-        final Location location = new Location(source, line);
-        Breakpoint breakpoint;
-        synchronized (breakpoints) {
-            breakpoint = breakpoints.get(location);
-        }
+        Breakpoint breakpoint = getBreakpoint(locationId);
         if (breakpoint == null) {
             return false;
         }
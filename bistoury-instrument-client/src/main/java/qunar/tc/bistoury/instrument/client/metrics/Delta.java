@@ -17,7 +17,10 @@
 
 package qunar.tc.bistoury.instrument.client.metrics;
 
-interface Delta {
+/**
+ * 由Metrics每分钟调用一次tick，汇报的是上一次tick时的数据
+ */
+public interface Delta {
 
     void tick();
 }
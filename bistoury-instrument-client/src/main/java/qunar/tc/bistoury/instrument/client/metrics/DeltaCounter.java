@@ -17,36 +17,39 @@
 
 package qunar.tc.bistoury.instrument.client.metrics;
 
-import java.util.concurrent.atomic.AtomicLong;
-
+/**
+ * inc走的是codahale Counter内部的LongAdder，按线程分散到多个cell上累加，没有所有线程共享的原子变量
+ * <p>
+ * 累计值不清零，每分钟tick时用两次累计值的差作为这一分钟的计数，和inc并发时也不会丢失
+ */
 class DeltaCounter extends com.codahale.metrics.Counter implements Delta {
 
-    // last, value
-    private AtomicLong[] value = new AtomicLong[2];
     // keep value if delta=0?
     private final boolean keep;
 
+    // 只在tick线程中访问
+    private long last;
+
+    private volatile long delta;
+
     public DeltaCounter(boolean keep) {
         this.keep = keep;
-        value[0] = new AtomicLong();
-        value[1] = new AtomicLong();
     }
 
     @Override
     public void tick() {
         long cur_cnt = super.getCount();
-        long last_cnt = value[0].get();
 
-        long delta = cur_cnt - last_cnt;
+        long delta = cur_cnt - last;
         if (keep && delta == 0) {
             return;
         }
-        value[0].set(cur_cnt);
-        value[1].set(delta);
+        last = cur_cnt;
+        this.delta = delta;
     }
 
     @Override
     public long getCount() {
-        return value[1].get();
+        return delta;
     }
 }
@@ -19,10 +19,9 @@ package qunar.tc.bistoury.instrument.client.metrics;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Metric;
-import com.google.common.primitives.Doubles;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
 import qunar.tc.bistoury.clientside.common.monitor.MetricType;
 import qunar.tc.bistoury.instrument.client.metrics.adapter.ResettableTimer;
-import qunar.tc.bistoury.instrument.client.metrics.adapter.StatsBuffer;
 
 public class ItemValue extends Item {
 
@@ -35,21 +34,16 @@ public class ItemValue extends Item {
                 return new float[]{value(counter.getCount())};
             case TIMER:
                 ResettableTimer resettableTimer = (ResettableTimer) value;
-                StatsBuffer buffer = resettableTimer.getBuffer();
-                buffer.computeStats();
-                double[] percentileValues = buffer.getPercentileValues();
-                double[] percentiles = buffer.getPercentiles();
-                float p98 = value(percentileValues[percentilesIndex(ResettableTimer.P98, percentiles)]);
-                buffer.reset();
-                return new float[]{value(resettableTimer.getOneMinuteRate()),
-                        p98};
+                return resettableTimer.getSnapshot().toTimerData(value(resettableTimer.getOneMinuteRate()));
         }
         throw new IllegalArgumentException("invalid metric");
     }
 
-    private static int percentilesIndex(double percentile, double[] percentiles) {
-        int indexOf = Doubles.indexOf(percentiles, percentile);
-        return indexOf == -1 ? 0 : indexOf;
+    /**
+     * @return timer上一分钟的耗时分布，其他类型返回null
+     */
+    static HistogramData histogramOf(MetricType type, Metric value) {
+        return type == MetricType.TIMER ? ((ResettableTimer) value).getSnapshot() : null;
     }
 
     static float value(double value) {
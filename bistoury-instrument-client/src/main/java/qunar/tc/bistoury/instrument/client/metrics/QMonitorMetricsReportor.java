@@ -50,6 +50,7 @@ public class QMonitorMetricsReportor extends AbstractProcessorMetricsReportor {
             snapshot.setName(key.name);
             snapshot.setType(type.code());
             snapshot.setData(data);
+            snapshot.setHistogram(ItemValue.histogramOf(type, value));
             return snapshot;
         }
     };
@@ -23,6 +23,11 @@ public interface Timer {
 
     void update(long duration, TimeUnit unit);
 
+    /**
+     * 采样记录时每条记录代表count次调用
+     */
+    void update(long duration, TimeUnit unit, long count);
+
     Context time();
 
     Context time(long startTime);
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.instrument.client.metrics.adapter;
+
+import com.google.common.base.Preconditions;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数线性分桶的直方图，内存固定，记录时不加锁，分桶方式见{@link HistogramData}
+ * <p>
+ * 按线程id分成多个stripe记录，减少高并发时的cas冲突，取快照时合并
+ */
+public class Histogram {
+
+    private final int precision;
+
+    private final long maxValue;
+
+    private final int bucketCount;
+
+    private final int stripeMask;
+
+    /**
+     * 每个stripe最后一个位置存放最大值
+     */
+    private final AtomicLongArray[] stripes;
+
+    /**
+     * @param precision 有效bit数，决定相对误差
+     * @param maxValue  能记录的最大值，更大的值按最大值记录
+     * @param stripes   stripe个数，会向上取整到2的幂
+     */
+    public Histogram(int precision, long maxValue, int stripes) {
+        Preconditions.checkArgument(precision > 0 && precision < 16, "precision must be in [1, 15]");
+        Preconditions.checkArgument(maxValue > 0, "max value must be greater than 0");
+        Preconditions.checkArgument(stripes > 0, "stripes must be greater than 0");
+        this.precision = precision;
+        this.maxValue = maxValue;
+        this.bucketCount = HistogramData.bucketIndex(maxValue, precision) + 1;
+
+        int stripeCount = Integer.highestOneBit(stripes);
+        if (stripeCount < stripes) {
+            stripeCount <<= 1;
+        }
+        this.stripeMask = stripeCount - 1;
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            this.stripes[i] = new AtomicLongArray(bucketCount + 1);
+        }
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * @param count 采样时一次记录代表的调用次数，按权重计入分布，合并不同采样率的数据时分位数依然正确
+     */
+    public void record(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > maxValue) {
+            value = maxValue;
+        }
+
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        stripe.addAndGet(HistogramData.bucketIndex(value, precision), count);
+        long max = stripe.get(bucketCount);
+        while (value > max && !stripe.compareAndSet(bucketCount, max, value)) {
+            max = stripe.get(bucketCount);
+        }
+    }
+
+    /**
+     * 取出上次快照以来的数据并清零，和记录并发时每个值只会落在前后某一次快照里
+     */
+    public HistogramData snapshotAndReset() {
+        long[] counts = new long[bucketCount];
+        long max = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < bucketCount; ++i) {
+                if (stripe.get(i) != 0) {
+                    counts[i] += stripe.getAndSet(i, 0);
+                }
+            }
+            max = Math.max(max, stripe.getAndSet(bucketCount, 0));
+        }
+        return HistogramData.fromBuckets(precision, counts, max);
+    }
+
+    public HistogramData emptySnapshot() {
+        return new HistogramData(precision, new int[0], new long[0], 0);
+    }
+}
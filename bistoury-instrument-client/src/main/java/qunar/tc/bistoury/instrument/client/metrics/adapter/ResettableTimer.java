@@ -20,9 +20,8 @@ package qunar.tc.bistoury.instrument.client.metrics.adapter;
 import com.codahale.metrics.Clock;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
-import com.google.common.primitives.Ints;
-import com.taobao.middleware.logger.Logger;
-import qunar.tc.bistoury.attach.common.BistouryLoggger;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+import qunar.tc.bistoury.instrument.client.metrics.Delta;
 
 import java.util.concurrent.TimeUnit;
 
@@ -32,34 +31,40 @@ import java.util.concurrent.TimeUnit;
  * Date: 15-5-7
  * Time: 下午2:02
  */
-public class ResettableTimer implements Metric {
-    private static final Logger LOG = BistouryLoggger.getLogger();
+public class ResettableTimer implements Metric, Delta {
 
     public static final double P98 = 98.0;
 
-    private static final int DEFAULT_TIMER_SIZE = 8000;
-    private static final double[] DEFAULT_PER = new double[]{P98};
+    //默认相对误差在1%以内
+    private static final int PRECISION = Integer.getInteger("bistoury.monitor.histogram.precision", 7);
+    private static final int STRIPES = Integer.getInteger("bistoury.monitor.histogram.stripes", 4);
+
+    //按微秒记录，超过一小时的按一小时算
+    private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
 
     private final Meter meter;
-    private final StatsBuffer timer;
+    private final Histogram histogram;
+
+    //上一次tick时取出的数据，和DeltaCounter的计数是同一分钟
+    private volatile HistogramData snapshot;
 
     public ResettableTimer() {
-        this(Clock.defaultClock(), DEFAULT_PER, DEFAULT_TIMER_SIZE);
+        this(Clock.defaultClock(), PRECISION, STRIPES);
     }
 
-    public ResettableTimer(Clock clock, double[] percentiles, int timerSize) {
+    public ResettableTimer(Clock clock, int precision, int stripes) {
         this.meter = new Meter(clock);
-        this.timer = new StatsBuffer(timerSize, percentiles);
+        this.histogram = new Histogram(precision, MAX_MICROS, stripes);
+        this.snapshot = histogram.emptySnapshot();
     }
 
     public void update(long el, TimeUnit timeUnit) {
-        meter.mark();
-        long time = timeUnit.toMillis(el);
-        try {
-            timer.record(Ints.checkedCast(time));
-        } catch (IllegalArgumentException e) {
-            LOG.debug("update timer failed.", e);
-        }
+        update(el, timeUnit, 1);
+    }
+
+    public void update(long el, TimeUnit timeUnit, long count) {
+        meter.mark(count);
+        histogram.record(timeUnit.toMicros(el), count);
     }
 
     public double getFifteenMinuteRate() {
@@ -78,7 +83,15 @@ public class ResettableTimer implements Metric {
         return meter.getOneMinuteRate();
     }
 
-    public StatsBuffer getBuffer() {
-        return timer;
+    @Override
+    public void tick() {
+        snapshot = histogram.snapshotAndReset();
+    }
+
+    /**
+     * @return 上一分钟的耗时分布，单位为微秒
+     */
+    public HistogramData getSnapshot() {
+        return snapshot;
     }
 }
@@ -39,6 +39,11 @@ public class ResettableTimerAdapter implements Timer {
         record.update(duration, unit);
     }
 
+    @Override
+    public void update(long duration, TimeUnit unit, long count) {
+        record.update(duration, unit, count);
+    }
+
     @Override
     public Context time() {
         return new ResettableTimerContext(record);
@@ -17,9 +17,16 @@
 
 package qunar.tc.bistoury.instrument.client.monitor;
 
-import com.google.common.base.Strings;
+import qunar.tc.bistoury.instrument.client.metrics.Counter;
 import qunar.tc.bistoury.instrument.client.metrics.Metrics;
+import qunar.tc.bistoury.instrument.client.metrics.Timer;
+import qunar.tc.bistoury.instrument.client.util.DescDeal;
+import qunar.tc.bistoury.instrument.spy.BistourySpys2;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -28,19 +35,124 @@ import java.util.concurrent.TimeUnit;
  * @describe：
  */
 public class AgentMonitor {
-    public static Long start() {
-        long startTime = System.currentTimeMillis();
-        return startTime;
+
+    private static final Object lock = new Object();
+
+    //同一个方法重复增强时使用同一个id，id不会复用
+    private static final Map<String, Integer> keyIds = new HashMap<>();
+
+    //增强时解析好metric，字节码里只带id，执行时按下标取，不需要拼接key和查cache
+    private static volatile MonitorMetrics[] metrics = new MonitorMetrics[0];
+
+    static String monitorKey(String className, String methodName, String methodDesc) {
+        return className.replaceAll("\\/", ".") + "#" + methodName + "(" + DescDeal.getSimplifyMethodDesc(methodDesc) + ")";
+    }
+
+    /**
+     * @param sampleRate 每sampleRate次调用统计一次耗时，调用次数始终精确统计
+     */
+    public static int register(String key, int sampleRate) {
+        synchronized (lock) {
+            Integer id = keyIds.get(key);
+            if (id != null) {
+                metrics[id].sampleRate = sampleRate;
+                return id;
+            }
+
+            id = metrics.length;
+            MonitorMetrics[] newMetrics = Arrays.copyOf(metrics, id + 1);
+            newMetrics[id] = new MonitorMetrics(key, sampleRate);
+            metrics = newMetrics;
+            keyIds.put(key, id);
+            return id;
+        }
     }
 
-    public static void stop(String key, long startTime) {
-        if (startTime != 0L && !Strings.isNullOrEmpty(key)) {
-            Metrics.timer(key + "_timer").get().update(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
-            Metrics.counter(key + "_counter").delta().get().inc();
+    /**
+     * 修改前已经采样、还没有结束的调用会按新的采样率放大，见{@link #stop(int, long)}
+     *
+     * @return 已经监控的方法返回true
+     */
+    public static boolean updateSampleRate(String key, int sampleRate) {
+        synchronized (lock) {
+            Integer id = keyIds.get(key);
+            if (id == null) {
+                return false;
+            }
+            metrics[id].sampleRate = sampleRate;
+            return true;
         }
     }
 
-    public static void exception(String key) {
-        Metrics.counter(key + "_exception").delta().get().inc();
+    /**
+     * @return 这次调用没有被采样时返回{@link BistourySpys2#NOT_SAMPLED}，不计时
+     */
+    public static long start(int id) {
+        MonitorMetrics monitorMetrics = get(id);
+        if (monitorMetrics == null || !monitorMetrics.sample()) {
+            return BistourySpys2.NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    public static void stop(int id, long startTime) {
+        MonitorMetrics monitorMetrics = get(id);
+        if (monitorMetrics == null) {
+            return;
+        }
+        monitorMetrics.counter.inc();
+        if (startTime != BistourySpys2.NOT_SAMPLED) {
+            //按采样率放大，qps和合并后的分布与全量统计一致；
+            //start只能返回开始时间，这里取的是当前的采样率，采样率修改时正在执行的少数调用会按新的采样率放大，
+            //只影响修改那一刻的耗时分布，调用次数是精确统计的不受影响
+            monitorMetrics.timer.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS, monitorMetrics.sampleRate);
+        }
+    }
+
+    public static void exception(int id) {
+        MonitorMetrics monitorMetrics = get(id);
+        if (monitorMetrics != null) {
+            monitorMetrics.exception().inc();
+        }
+    }
+
+    private static MonitorMetrics get(int id) {
+        MonitorMetrics[] metrics = AgentMonitor.metrics;
+        return id >= 0 && id < metrics.length ? metrics[id] : null;
+    }
+
+    private static class MonitorMetrics {
+
+        private final String key;
+
+        private final Timer timer;
+
+        private final Counter counter;
+
+        //和之前一样，第一次出现异常时才注册
+        private volatile Counter exception;
+
+        private volatile int sampleRate;
+
+        private MonitorMetrics(String key, int sampleRate) {
+            this.key = key;
+            this.sampleRate = sampleRate;
+            this.timer = Metrics.timer(key + "_timer").get();
+            this.counter = Metrics.counter(key + "_counter").delta().get();
+        }
+
+        private boolean sample() {
+            int sampleRate = this.sampleRate;
+            return sampleRate <= 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+        }
+
+        private Counter exception() {
+            Counter exception = this.exception;
+            if (exception == null) {
+                exception = Metrics.counter(key + "_exception").delta().get();
+                this.exception = exception;
+            }
+            return exception;
+        }
     }
 }
@@ -19,6 +19,7 @@ package qunar.tc.bistoury.instrument.client.monitor;
 
 import com.google.common.base.Preconditions;
 import com.taobao.middleware.logger.Logger;
+import org.objectweb.asm.Type;
 import qunar.tc.bistoury.attach.common.BistouryLoggger;
 import qunar.tc.bistoury.common.Status;
 import qunar.tc.bistoury.instrument.client.common.ClassFileBuffer;
@@ -78,10 +79,11 @@ public class DefaultMonitor implements Monitor {
     }
 
     @Override
-    public synchronized String addMonitor(String source, int line) {
+    public synchronized String addMonitor(String source, int line, int sampleRate) {
+        Preconditions.checkArgument(sampleRate > 0, "sample rate must be greater than 0");
         lock.lock();
         try {
-            return doAddMonitor(source, line);
+            return doAddMonitor(source, line, sampleRate);
         } finally {
             lock.unlock();
         }
@@ -92,7 +94,7 @@ public class DefaultMonitor implements Monitor {
 
     }
 
-    private String doAddMonitor(String source, int line) {
+    private String doAddMonitor(String source, int line, int sampleRate) {
         ensureStarted();
         final String path = new File(source).getPath().replace(File.separatorChar, '/');
         final ResolvedSourceLocation location = classPathLookup.resolveSourceLocation(path, line);
@@ -103,13 +105,16 @@ public class DefaultMonitor implements Monitor {
             throw new IllegalStateException("add monitor failed, " + message);
         } else {
             if (GlobalMonitorContext.check(location)) {
+                //已经增强过，只更新采样率
+                String className = Type.getType(location.getClassSignature()).getInternalName();
+                AgentMonitor.updateSampleRate(AgentMonitor.monitorKey(className, location.getMethodName(), location.getMethodDesc()), sampleRate);
                 return "success";
             } else {
                 GlobalMonitorContext.addMonitor(location);
             }
 
             try {
-                boolean success = instrument(source, location, location.getAdjustedLineNumber());
+                boolean success = instrument(source, location, location.getAdjustedLineNumber(), sampleRate);
                 if (!success) {
                     logger.error("instrument failed. source: {}, line: {}", source, line);
                     throw new IllegalStateException("register breakpoint fail, instrument fail");
@@ -123,8 +128,8 @@ public class DefaultMonitor implements Monitor {
 
     }
 
-    private boolean instrument(String source, ResolvedSourceLocation location, final int line) throws UnmodifiableClassException, ClassNotFoundException {
-        ClassFileTransformer transformer = new MonitorClassFileTransformer(classFileBuffer, source, location, line);
+    private boolean instrument(String source, ResolvedSourceLocation location, final int line, final int sampleRate) throws UnmodifiableClassException, ClassNotFoundException {
+        ClassFileTransformer transformer = new MonitorClassFileTransformer(classFileBuffer, source, location, line, sampleRate);
         try {
             Class<?> clazz = instrumentInfo.signatureToClass(location.getClassSignature());
             inst.addTransformer(transformer, true);
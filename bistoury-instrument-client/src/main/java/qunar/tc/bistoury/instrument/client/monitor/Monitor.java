@@ -27,7 +27,10 @@ import qunar.tc.bistoury.instrument.client.common.InstrumentInfo;
 public interface Monitor {
     boolean startup(InstrumentInfo instrumentInfo);
 
-    String addMonitor(final String source, final int line);
+    /**
+     * @param sampleRate 每sampleRate次调用统计一次耗时，1表示全部统计
+     */
+    String addMonitor(final String source, final int line, final int sampleRate);
 
     void removeMonitor(final String source, final int line, String monitorId);
 
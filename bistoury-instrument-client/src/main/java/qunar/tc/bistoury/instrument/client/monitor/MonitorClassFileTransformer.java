@@ -47,13 +47,15 @@ public class MonitorClassFileTransformer extends Transformer {
     private String methodName;
     private String methodDesc;
     private int line;
+    private int sampleRate;
 
-    MonitorClassFileTransformer(ClassFileBuffer classFileBuffer, final String source, final ResolvedSourceLocation location, final int line) {
+    MonitorClassFileTransformer(ClassFileBuffer classFileBuffer, final String source, final ResolvedSourceLocation location, final int line, final int sampleRate) {
         this.classFileBuffer = classFileBuffer;
         this.source = source;
         this.methodDesc = location.getMethodDesc();
         this.methodName = location.getMethodName();
         this.line = line;
+        this.sampleRate = sampleRate;
         this.monitorClassName = signatureToClassName(location.getClassSignature());
     }
 
@@ -71,7 +73,7 @@ public class MonitorClassFileTransformer extends Transformer {
         try {
             final ClassReader classReader = new ClassReader(classFileBuffer.getClassBuffer(classBeingRedefined, classBytes));
             final ClassWriter classWriter = new ClassWriter(computeFlag(classReader));
-            final ClassVisitor classVisitor = new MonitorClassVisitor(new CheckClassAdapter(classWriter), methodName, methodDesc);
+            final ClassVisitor classVisitor = new MonitorClassVisitor(new CheckClassAdapter(classWriter), methodName, methodDesc, sampleRate);
             classReader.accept(classVisitor, ClassReader.EXPAND_FRAMES);
             byte[] bytes = classWriter.toByteArray();
             classFileBuffer.setClassBuffer(classBeingRedefined, bytes);
@@ -35,11 +35,13 @@ public class MonitorClassVisitor extends ClassVisitor {
     private String className;
     private String methodName;
     private String methodDesc;
+    private int sampleRate;
 
-    MonitorClassVisitor(final ClassVisitor cv, final String methodName, final String methodDesc) {
+    MonitorClassVisitor(final ClassVisitor cv, final String methodName, final String methodDesc, final int sampleRate) {
         super(Opcodes.ASM7, cv);
         this.methodName = methodName;
         this.methodDesc = methodDesc;
+        this.sampleRate = sampleRate;
     }
 
     @Override
@@ -59,7 +61,7 @@ public class MonitorClassVisitor extends ClassVisitor {
         if (name.equals(methodName) && desc.equals(methodDesc)) {
             logger.debug("visit method, name: {}, desc: {}", name, desc);
 
-            MonitorMethodVisitor monitorMV = new MonitorMethodVisitor(methodVisitor, access, name, desc, className);
+            MonitorMethodVisitor monitorMV = new MonitorMethodVisitor(methodVisitor, access, name, desc, className, sampleRate);
 
             AnalyzerAdapter analyzerAdapter = new AnalyzerAdapter(className, access, name, desc, monitorMV);
             monitorMV.setAnalyzerAdapter(analyzerAdapter);
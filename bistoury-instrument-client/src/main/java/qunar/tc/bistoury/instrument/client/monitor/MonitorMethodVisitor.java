@@ -23,8 +23,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.commons.AnalyzerAdapter;
 import org.objectweb.asm.commons.LocalVariablesSorter;
-import qunar.tc.bistoury.instrument.client.util.DescDeal;
-import qunar.tc.bistoury.instrument.spy.BistourySpys1;
+import qunar.tc.bistoury.instrument.spy.BistourySpys2;
 
 import java.util.List;
 
@@ -36,17 +35,17 @@ import java.util.List;
 public class MonitorMethodVisitor extends MethodVisitor implements Opcodes {
 
     private static final String THROWABLE_CLASS_TYPE = Type.getInternalName(Throwable.class);
-    private static final String SPY_CLASS_TYPE = Type.getInternalName(BistourySpys1.class);
+    private static final String SPY_CLASS_TYPE = Type.getInternalName(BistourySpys2.class);
 
     private static final String START_METHOD_NAME = "start";
     private static final String STOP_METHOD_NAME = "stop";
     private static final String EXCEPTION_METHOD_NAME = "exception";
 
-    private static final String START_METHOD_DESC = Type.getMethodDescriptor(Type.getType(Long.class));
-    private static final String STOP_METHOD_DESC = Type.getMethodDescriptor(Type.getType(void.class), Type.getType(String.class), Type.getType(Long.class));
-    private static final String EXCEPTION_METHOD_DESC = Type.getMethodDescriptor(Type.getType(void.class), Type.getType(String.class));
+    private static final String START_METHOD_DESC = Type.getMethodDescriptor(Type.LONG_TYPE, Type.INT_TYPE);
+    private static final String STOP_METHOD_DESC = Type.getMethodDescriptor(Type.VOID_TYPE, Type.INT_TYPE, Type.LONG_TYPE);
+    private static final String EXCEPTION_METHOD_DESC = Type.getMethodDescriptor(Type.VOID_TYPE, Type.INT_TYPE);
 
-    private final String MONITOR_KEY;
+    private final int monitorId;
 
     private int scopeVarIndex;
 
@@ -59,10 +58,10 @@ public class MonitorMethodVisitor extends MethodVisitor implements Opcodes {
 
     private int maxStack;
 
-    public MonitorMethodVisitor(MethodVisitor methodVisitor, int access, final String name, final String desc, final String className) {
+    public MonitorMethodVisitor(MethodVisitor methodVisitor, int access, final String name, final String desc, final String className, final int sampleRate) {
         super(ASM7, methodVisitor);
 
-        this.MONITOR_KEY = className.replaceAll("\\/", ".") + "#" + name + "(" + DescDeal.getSimplifyMethodDesc(desc) + ")";
+        this.monitorId = AgentMonitor.register(AgentMonitor.monitorKey(className, name, desc), sampleRate);
 
         beginLabel = new Label();
         endLabel = new Label();
@@ -105,27 +104,27 @@ public class MonitorMethodVisitor extends MethodVisitor implements Opcodes {
     }
 
     private void startMonitor() {
-        //long startTime=AgentMonitor.start();
-
+        //long startTime=AgentMonitor.start(monitorId);
+        mv.visitLdcInsn(monitorId);
         mv.visitMethodInsn(INVOKESTATIC, SPY_CLASS_TYPE, START_METHOD_NAME, START_METHOD_DESC, false);
 
-        this.scopeVarIndex = localVariablesSorter.newLocal(Type.getType(Long.class));
-        mv.visitVarInsn(ASTORE, scopeVarIndex);
+        this.scopeVarIndex = localVariablesSorter.newLocal(Type.LONG_TYPE);
+        mv.visitVarInsn(LSTORE, scopeVarIndex);
 
         maxStack = 4;
     }
 
     private void endMonitor() {
-        //AgentMonitor.stop(key,startTime);
-        mv.visitLdcInsn(MONITOR_KEY);
-        mv.visitVarInsn(ALOAD, scopeVarIndex);
+        //AgentMonitor.stop(monitorId,startTime);
+        mv.visitLdcInsn(monitorId);
+        mv.visitVarInsn(LLOAD, scopeVarIndex);
         mv.visitMethodInsn(INVOKESTATIC, SPY_CLASS_TYPE, STOP_METHOD_NAME, STOP_METHOD_DESC, false);
 
     }
 
     private void exceptionMonitor() {
-        //AgentMonitor.exception(key);
-        mv.visitLdcInsn(MONITOR_KEY);
+        //AgentMonitor.exception(monitorId);
+        mv.visitLdcInsn(monitorId);
         mv.visitMethodInsn(INVOKESTATIC, SPY_CLASS_TYPE, EXCEPTION_METHOD_NAME, EXCEPTION_METHOD_DESC, false);
     }
 
@@ -0,0 +1,158 @@
+package qunar.tc.bistoury.instrument.client.debugger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.instrument.client.location.Location;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class GlobalDebugContextTest {
+
+    private static final int LOCATIONS = 64;
+
+    private static final int ROUNDS = 2000;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        GlobalDebugContext.initSnapshotReceiver((SnapshotReceiver) Proxy.newProxyInstance(
+                SnapshotReceiver.class.getClassLoader(), new Class[]{SnapshotReceiver.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        GlobalDebugContext.destroy();
+    }
+
+    @Test
+    public void testAddRemove() {
+        Location location = new Location("AddRemove.java", 1);
+        AddBreakpointResult first = GlobalDebugContext.addBreakpoint(location, null);
+        Assert.assertTrue(first.isNewId());
+        Assert.assertFalse(GlobalDebugContext.addBreakpoint(location, null).isNewId());
+
+        int locationId = GlobalDebugContext.getLocationId(location);
+        Assert.assertTrue(GlobalDebugContext.hasBreakpointSet(locationId));
+        Assert.assertTrue(GlobalDebugContext.hasBreakpointSet(location));
+
+        //id不匹配不能删
+        GlobalDebugContext.removeBreakpoint(location, "other");
+        Assert.assertTrue(GlobalDebugContext.hasBreakpointSet(locationId));
+        GlobalDebugContext.removeBreakpoint(location, first.getId());
+        Assert.assertFalse(GlobalDebugContext.hasBreakpointSet(locationId));
+        Assert.assertFalse(GlobalDebugContext.isHit(locationId));
+
+        //还没分配过的id直接返回false
+        Assert.assertFalse(GlobalDebugContext.hasBreakpointSet(Integer.MAX_VALUE));
+        Assert.assertFalse(GlobalDebugContext.isHit(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testHitOnlyOnce() throws Exception {
+        Location location = new Location("HitOnlyOnce.java", 1);
+        GlobalDebugContext.addBreakpoint(location, null);
+        final int locationId = GlobalDebugContext.getLocationId(location);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    start.await();
+                    return GlobalDebugContext.isHit(locationId);
+                }
+            }));
+        }
+        start.countDown();
+
+        int hit = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(10, TimeUnit.SECONDS)) {
+                ++hit;
+            }
+        }
+        Assert.assertEquals(1, hit);
+        Assert.assertFalse(GlobalDebugContext.hasBreakpointSet(locationId));
+    }
+
+    @Test
+    public void testConcurrentAddRemoveAndProbe() throws Exception {
+        final Location[] locations = new Location[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; ++i) {
+            locations[i] = new Location("Concurrent.java", i);
+        }
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        List<Future<?>> probes = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            probes.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    //写的同时数组会扩容，不加锁读也不能越界
+                    while (!stop.get()) {
+                        for (int id = 0; id < LOCATIONS * 2; ++id) {
+                            GlobalDebugContext.hasBreakpointSet(id);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        //两个线程各负责一半位置，反复添加删除，最后一轮保留line % 4 < 2的断点
+        List<Future<?>> writers = new ArrayList<>();
+        for (int i = 0; i < 2; ++i) {
+            final int part = i;
+            writers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int round = 0; round < ROUNDS; ++round) {
+                        for (int line = part; line < LOCATIONS; line += 2) {
+                            AddBreakpointResult result = GlobalDebugContext.addBreakpoint(locations[line], null);
+                            boolean last = round == ROUNDS - 1;
+                            if (!last || line % 4 >= 2) {
+                                GlobalDebugContext.removeBreakpoint(locations[line], result.getId());
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        stop.set(true);
+        for (Future<?> probe : probes) {
+            probe.get(10, TimeUnit.SECONDS);
+        }
+
+        for (int line = 0; line < LOCATIONS; ++line) {
+            int locationId = GlobalDebugContext.getLocationId(locations[line]);
+            Assert.assertEquals("line " + line, line % 4 < 2, GlobalDebugContext.hasBreakpointSet(locationId));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package qunar.tc.bistoury.instrument.client.metrics.adapter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import qunar.tc.bistoury.clientside.common.monitor.HistogramData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class HistogramTest {
+
+    private static final int PRECISION = 7;
+
+    private static final long MAX_VALUE = TimeUnit.HOURS.toMicros(1);
+
+    @Test
+    public void testBucketBoundaries() {
+        //小于2^precision的值每个值一个桶
+        for (int value = 0; value < 8; ++value) {
+            Assert.assertEquals(value, HistogramData.bucketIndex(value, 3));
+            Assert.assertEquals(value, HistogramData.highestValue(value, 3));
+        }
+        //[8, 16)每个值一个桶，[16, 32)每两个值一个桶
+        Assert.assertEquals(8, HistogramData.bucketIndex(8, 3));
+        Assert.assertEquals(15, HistogramData.bucketIndex(15, 3));
+        Assert.assertEquals(16, HistogramData.bucketIndex(16, 3));
+        Assert.assertEquals(16, HistogramData.bucketIndex(17, 3));
+        Assert.assertEquals(17, HistogramData.highestValue(16, 3));
+        Assert.assertEquals(23, HistogramData.bucketIndex(31, 3));
+        Assert.assertEquals(24, HistogramData.bucketIndex(32, 3));
+        Assert.assertEquals(35, HistogramData.highestValue(24, 3));
+
+        //桶连续不重叠，桶的宽度不超过值的1/2^precision
+        int lastIndex = -1;
+        for (long value = 0; value < 1 << 20; ++value) {
+            int index = HistogramData.bucketIndex(value, PRECISION);
+            if (index != lastIndex) {
+                Assert.assertEquals(lastIndex + 1, index);
+                Assert.assertEquals(value - 1, lastIndex < 0 ? -1 : HistogramData.highestValue(lastIndex, PRECISION));
+                lastIndex = index;
+            }
+            long highest = HistogramData.highestValue(index, PRECISION);
+            Assert.assertTrue(highest >= value);
+            Assert.assertTrue(highest - value <= value >> PRECISION);
+        }
+
+        long maxIndex = HistogramData.bucketIndex(Long.MAX_VALUE, PRECISION);
+        Assert.assertEquals(Long.MAX_VALUE, HistogramData.highestValue((int) maxIndex, PRECISION));
+    }
+
+    @Test
+    public void testPercentileOfUniform() {
+        Histogram histogram = new Histogram(PRECISION, MAX_VALUE, 4);
+        for (long value = 1; value <= 100000; ++value) {
+            histogram.record(value);
+        }
+        HistogramData snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(100000, snapshot.totalCount());
+        Assert.assertEquals(100000, snapshot.getMax());
+        double[] percentiles = {1, 25, 50, 90, 98, 99, 99.9};
+        for (double percentile : percentiles) {
+            long expected = (long) Math.ceil(percentile * 1000);
+            assertNear(expected, snapshot.valueAtPercentile(percentile));
+        }
+        Assert.assertEquals(100000, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    public void testPercentileOfSkewed() {
+        Histogram histogram = new Histogram(PRECISION, MAX_VALUE, 4);
+        //99%的调用1ms，1%的调用1s
+        histogram.record(1000, 990);
+        histogram.record(1000000, 10);
+        HistogramData snapshot = histogram.snapshotAndReset();
+        assertNear(1000, snapshot.valueAtPercentile(50));
+        assertNear(1000, snapshot.valueAtPercentile(99));
+        assertNear(1000000, snapshot.valueAtPercentile(99.1));
+        Assert.assertEquals(1000000, snapshot.valueAtPercentile(99.9));
+
+        float[] data = snapshot.toTimerData(5.0f);
+        Assert.assertEquals(7, data.length);
+        Assert.assertEquals(5.0f, data[0], 0);
+        Assert.assertEquals(1.0f, data[1], 0.01f);
+        Assert.assertEquals(1000.0f, data[5], 0);
+        Assert.assertEquals(1000.0f, data[6], 0);
+    }
+
+    @Test
+    public void testClampAndReset() {
+        Histogram histogram = new Histogram(PRECISION, MAX_VALUE, 1);
+        histogram.record(-1);
+        histogram.record(MAX_VALUE * 2);
+        HistogramData snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(2, snapshot.totalCount());
+        Assert.assertEquals(0, snapshot.valueAtPercentile(50));
+        Assert.assertEquals(MAX_VALUE, snapshot.getMax());
+        Assert.assertEquals(MAX_VALUE, snapshot.valueAtPercentile(100));
+
+        HistogramData empty = histogram.snapshotAndReset();
+        Assert.assertEquals(0, empty.totalCount());
+        Assert.assertEquals(0, empty.getMax());
+        Assert.assertEquals(0, empty.valueAtPercentile(99));
+        Assert.assertArrayEquals(new float[]{0, 0, 0, 0, 0, 0, 0}, empty.toTimerData(0), 0);
+    }
+
+    @Test
+    public void testMerge() {
+        Histogram first = new Histogram(PRECISION, MAX_VALUE, 1);
+        Histogram second = new Histogram(PRECISION, MAX_VALUE, 1);
+        for (long value = 1; value <= 1000; ++value) {
+            (value % 2 == 0 ? first : second).record(value);
+        }
+        second.record(500000);
+
+        HistogramData merged = first.snapshotAndReset();
+        HistogramData other = second.snapshotAndReset();
+        merged.merge(other);
+        Assert.assertEquals(1001, merged.totalCount());
+        Assert.assertEquals(500000, merged.getMax());
+        assertNear(500, merged.valueAtPercentile(50));
+        assertNear(990, merged.valueAtPercentile(99));
+        Assert.assertEquals(501, other.totalCount());
+
+        //和一次记录所有值的结果一致
+        Histogram all = new Histogram(PRECISION, MAX_VALUE, 1);
+        for (long value = 1; value <= 1000; ++value) {
+            all.record(value);
+        }
+        all.record(500000);
+        HistogramData expected = all.snapshotAndReset();
+        Assert.assertArrayEquals(expected.getIndexes(), merged.getIndexes());
+        Assert.assertArrayEquals(expected.getCounts(), merged.getCounts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeDifferentPrecision() {
+        new Histogram(PRECISION, MAX_VALUE, 1).snapshotAndReset().merge(new Histogram(PRECISION - 1, MAX_VALUE, 1).snapshotAndReset());
+    }
+
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        final Histogram histogram = new Histogram(PRECISION, MAX_VALUE, 4);
+        final int threads = 8;
+        final int records = 200000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < threads; ++i) {
+                final int thread = i;
+                writers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int j = 0; j < records; ++j) {
+                            histogram.record(thread * 1000 + j % 1000, 2);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            //记录的同时不断取快照，每个值只能落在某一个快照里
+            final AtomicBoolean stop = new AtomicBoolean(false);
+            Future<HistogramData> reader = executor.submit(new Callable<HistogramData>() {
+                @Override
+                public HistogramData call() throws Exception {
+                    start.await();
+                    HistogramData merged = histogram.emptySnapshot();
+                    while (!stop.get()) {
+                        merged.merge(histogram.snapshotAndReset());
+                    }
+                    return merged;
+                }
+            });
+
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            stop.set(true);
+            HistogramData merged = reader.get(10, TimeUnit.SECONDS);
+            merged.merge(histogram.snapshotAndReset());
+
+            Assert.assertEquals(2L * threads * records, merged.totalCount());
+            Assert.assertEquals((threads - 1) * 1000 + 999, merged.getMax());
+            assertNear(threads / 2 * 1000, merged.valueAtPercentile(50) + 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= Math.max(1, expected >> PRECISION));
+    }
+}
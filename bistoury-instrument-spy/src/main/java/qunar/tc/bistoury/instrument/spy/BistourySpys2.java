@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.instrument.spy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * spy放在bootstrap classloader里，一个jvm只会加载一次，重新attach新版本agent时还是老的类；
+ * 所以方法签名变化时要换一个类名，不能直接改{@link BistourySpys1}，否则新agent增强的代码会NoSuchMethodError
+ */
+public class BistourySpys2 {
+
+    public static final String HAS_BREAKPOINT_SET = "hasBreakpointSet";
+    public static final String IS_HIT = "isHit";
+    public static final String PUT_LOCAL_VARIABLE = "putLocalVariable";
+    public static final String PUT_FIELD = "putField";
+    public static final String PUT_STATIC_FIELD = "putStaticField";
+    public static final String FILL_STACKTRACE = "fillStacktrace";
+    public static final String DUMP = "dump";
+    public static final String END_RECEIVE = "endReceive";
+    public static final String START_MONITOR = "start";
+    public static final String STOP_MONITOR = "stop";
+    public static final String EXCEPTION_MONITOR = "exception";
+
+    //start没有计时时返回，nanoTime可能是0或负数，不能用0判断
+    public static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    //断点行每次执行都会调用，用MethodHandle调用，不需要装箱和参数数组
+    private static volatile MethodHandle HAS_BREAKPOINT_SET_METHOD;
+    private static volatile MethodHandle IS_HIT_METHOD;
+    private static volatile Method PUT_LOCAL_VARIABLE_METHOD;
+    private static volatile Method PUT_FIELD_METHOD;
+    private static volatile Method PUT_STATIC_FIELD_METHOD;
+    private static volatile Method FILL_STACK_TRACE_METHOD;
+    private static volatile Method DUMP_METHOD;
+    private static volatile Method END_RECEIVE_METHOD;
+    //被监控的方法每次执行都会调用，同样用MethodHandle
+    private static volatile MethodHandle START_MONITOR_METHOD;
+    private static volatile MethodHandle STOP_MONITOR_METHOD;
+    private static volatile MethodHandle EXCEPTION_MONITOR_METHOD;
+
+    public static boolean hasBreakpointSet(int locationId) {
+        try {
+            MethodHandle method = HAS_BREAKPOINT_SET_METHOD;
+            return method != null && (boolean) method.invokeExact(locationId);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return false;
+        }
+    }
+
+    public static boolean isHit(int locationId) {
+        try {
+            MethodHandle method = IS_HIT_METHOD;
+            return method != null && (boolean) method.invokeExact(locationId);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return false;
+        }
+    }
+
+    public static void putLocalVariable(String key, Object value) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.PUT_LOCAL_VARIABLE_METHOD, defaultValue, new Object[]{key, value});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void putField(String key, Object value) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.PUT_FIELD_METHOD, defaultValue, new Object[]{key, value});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void putStaticField(String key, Object value) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.PUT_STATIC_FIELD_METHOD, defaultValue, new Object[]{key, value});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void fillStacktrace(String source, int line, Throwable e) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.FILL_STACK_TRACE_METHOD, defaultValue, new Object[]{source, line, e});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void dump(String source, int line) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.DUMP_METHOD, defaultValue, new Object[]{source, line});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void endReceive(String source, int line) {
+        final Void defaultValue = null;
+        try {
+            doInvokeMethod(BistourySpys2.END_RECEIVE_METHOD, defaultValue, new Object[]{source, line});
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+
+    public static long start(int monitorId) {
+        try {
+            MethodHandle method = START_MONITOR_METHOD;
+            return method == null ? NOT_SAMPLED : (long) method.invokeExact(monitorId);
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+            return NOT_SAMPLED;
+        }
+    }
+
+    public static void stop(int monitorId, long startTime) {
+        try {
+            MethodHandle method = STOP_MONITOR_METHOD;
+            if (method != null) {
+                method.invokeExact(monitorId, startTime);
+            }
+        } catch (Throwable t) {
+            t.printStackTrace(System.err);
+        }
+    }
+
+    public static void exception(int monitorId) {
+        try {
+            MethodHandle method = EXCEPTION_MONITOR_METHOD;
+            if (method != null) {
+                method.invokeExact(monitorId);
+            }
+        } catch (Throwable e) {
+            e.printStackTrace(System.err);
+        }
+    }
+
+    private static Object doInvokeMethod(Method method, Object defaultValue, Object[] args) throws Throwable {
+        if (method == null) {
+            return defaultValue;
+        }
+
+        return method.invoke(null, args);
+    }
+
+    public static void init(Method hasBreakpointSet,
+                            Method isHit,
+                            Method putLocalVariable,
+                            Method putField,
+                            Method putStaticField,
+                            Method fillStackTrace,
+                            Method dump,
+                            Method endReceive,
+                            Method startMonitor,
+                            Method stopMonitor,
+                            Method exceptionMonitor) throws IllegalAccessException {
+        HAS_BREAKPOINT_SET_METHOD = MethodHandles.publicLookup().unreflect(hasBreakpointSet);
+        IS_HIT_METHOD = MethodHandles.publicLookup().unreflect(isHit);
+        PUT_LOCAL_VARIABLE_METHOD = putLocalVariable;
+        PUT_FIELD_METHOD = putField;
+        PUT_STATIC_FIELD_METHOD = putStaticField;
+        FILL_STACK_TRACE_METHOD = fillStackTrace;
+        DUMP_METHOD = dump;
+        END_RECEIVE_METHOD = endReceive;
+        START_MONITOR_METHOD = MethodHandles.publicLookup().unreflect(startMonitor);
+        STOP_MONITOR_METHOD = MethodHandles.publicLookup().unreflect(stopMonitor);
+        EXCEPTION_MONITOR_METHOD = MethodHandles.publicLookup().unreflect(exceptionMonitor);
+    }
+
+    public static void destroy() {
+        HAS_BREAKPOINT_SET_METHOD = null;
+        IS_HIT_METHOD = null;
+        PUT_LOCAL_VARIABLE_METHOD = null;
+        PUT_FIELD_METHOD = null;
+        PUT_STATIC_FIELD_METHOD = null;
+        FILL_STACK_TRACE_METHOD = null;
+        DUMP_METHOD = null;
+        END_RECEIVE_METHOD = null;
+        START_MONITOR_METHOD = null;
+        STOP_MONITOR_METHOD = null;
+        EXCEPTION_MONITOR_METHOD = null;
+    }
+}
@@ -21,14 +21,20 @@ import com.google.common.util.concurrent.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.common.BistouryConstants;
+import qunar.tc.bistoury.common.JacksonSerializer;
 import qunar.tc.bistoury.proxy.communicate.agent.AgentConnection;
 import qunar.tc.bistoury.remoting.protocol.RequestData;
 import qunar.tc.bistoury.proxy.communicate.ui.UiConnection;
 import qunar.tc.bistoury.proxy.communicate.ui.UiResponses;
+import qunar.tc.bistoury.remoting.command.JobCreditCommand;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
 import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
 import qunar.tc.bistoury.remoting.protocol.ResponseCode;
+import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.RequestPayloadHolder;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author zhenyu.nie created on 2019 2019/5/13 14:55
@@ -41,6 +47,8 @@ public class DefaultSession implements Session {
 
     private final boolean supportPause;
 
+    private final int creditWindow;
+
     private final RequestData requestData;
 
     private final AgentConnection agentConnection;
@@ -49,26 +57,60 @@ public class DefaultSession implements Session {
 
     private final SettableFuture<State> resultFuture = SettableFuture.create();
 
+    private final SessionMetrics metrics;
+
     private final AtomicBoolean end = new AtomicBoolean(false);
 
+    //已经写到ui但还没有归还给agent的credit
+    private final AtomicLong deliveredBytes = new AtomicLong(0);
+
     public DefaultSession(String id, boolean supportPause, RequestData requestData, AgentConnection agentConnection, UiConnection uiConnection) {
+        this(id, supportPause, 0, requestData, agentConnection, uiConnection);
+    }
+
+    public DefaultSession(String id, boolean supportPause, int creditWindow, RequestData requestData, AgentConnection agentConnection, UiConnection uiConnection) {
         this.id = id;
         this.supportPause = supportPause;
+        this.creditWindow = creditWindow;
         this.requestData = requestData;
         this.agentConnection = agentConnection;
         this.uiConnection = uiConnection;
+        this.metrics = new SessionMetrics(requestData.getType(), agentConnection.getVersion());
+        Futures.addCallback(resultFuture, new FutureCallback<State>() {
+            @Override
+            public void onSuccess(State state) {
+                metrics.onEnd(state);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
     public void writeToUi(Datagram message) {
         if (end.get()) {
+            message.release();
             return;
         }
 
+        final int bodyBytes = message.getBody() == null ? 0 : message.getBody().readableBytes();
+        metrics.onAgentData(bodyBytes);
+
         boolean isEndMessage = isEndMessage(message);
         if (isEndMessage) {
             end.set(true);
-        } else {
+        }
+
+        //ui连接已经关闭时pipeline中的encoder可能已被移除，body不会再被释放，这里直接释放掉
+        if (!uiConnection.isActive()) {
+            message.release();
+            broken();
+            return;
+        }
+
+        if (!isEndMessage) {
             if (agentConnection.getVersion() < BistouryConstants.MIN_AGENT_VERSION_SUPPORT_JOB_PAUSE &&
                     !agentConnection.isWritable()) {
                 broken();
@@ -76,7 +118,24 @@ public class DefaultSession implements Session {
         }
 
         ListenableFuture<WriteResult> result = uiConnection.write(message);
-        if (isEndMessage) {
+        if (!isEndMessage && creditWindow > 0 && bodyBytes > 0) {
+            Futures.addCallback(result, new FutureCallback<WriteResult>() {
+                @Override
+                public void onSuccess(WriteResult result) {
+                    if (result == WriteResult.success) {
+                        returnCredit(bodyBytes);
+                    } else {
+                        cancel();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    logger.error("ui connection write error, {}", id, t);
+                    cancel();
+                }
+            }, MoreExecutors.directExecutor());
+        } else if (isEndMessage) {
             Futures.addCallback(result, new FutureCallback<WriteResult>() {
                 @Override
                 public void onSuccess(WriteResult result) {
@@ -123,6 +182,32 @@ public class DefaultSession implements Session {
         }, MoreExecutors.directExecutor());
     }
 
+    /**
+     * 数据写到ui之后把credit还给agent，攒够半个窗口再发送，避免每个数据包都发一次
+     */
+    private void returnCredit(int bytes) {
+        long delivered = deliveredBytes.addAndGet(bytes);
+        if (delivered < creditWindow / 2 || end.get()) {
+            return;
+        }
+
+        if (deliveredBytes.compareAndSet(delivered, 0)) {
+            metrics.onCreditGrant(delivered);
+            JobCreditCommand command = new JobCreditCommand(id, delivered);
+            writeToAgent(RemotingBuilder.buildRequestDatagram(CommandCode.REQ_TYPE_JOB_CREDIT.getCode(), id,
+                    new RequestPayloadHolder(JacksonSerializer.serialize(command))));
+        }
+    }
+
+    /**
+     * 数据没有写到ui时credit不会归还，agent上的任务会一直等待，直接取消
+     */
+    private void cancel() {
+        if (broken()) {
+            writeToAgent(RemotingBuilder.buildRequestDatagram(CommandCode.REQ_TYPE_CANCEL.getCode(), id, new RequestPayloadHolder(id)));
+        }
+    }
+
     private boolean isEndMessage(Datagram message) {
         int code = message.getHeader().getCode();
         if (code == ResponseCode.RESP_TYPE_SINGLE_END.getCode() || code == ResponseCode.RESP_TYPE_ALL_END.getCode()) {
@@ -141,6 +226,11 @@ public class DefaultSession implements Session {
         return supportPause;
     }
 
+    @Override
+    public int getCreditWindow() {
+        return creditWindow;
+    }
+
     @Override
     public RequestData getRequestData() {
         return requestData;
@@ -156,6 +246,11 @@ public class DefaultSession implements Session {
         return uiConnection;
     }
 
+    @Override
+    public SessionMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public boolean finish() {
         return resultFuture.set(State.finish);
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import qunar.tc.bistoury.common.BistouryConstants;
 import qunar.tc.bistoury.proxy.communicate.agent.AgentConnection;
 import qunar.tc.bistoury.remoting.protocol.RequestData;
 import qunar.tc.bistoury.proxy.communicate.ui.UiConnection;
@@ -33,7 +34,11 @@ import qunar.tc.bistoury.proxy.generator.IdGenerator;
 import qunar.tc.bistoury.remoting.protocol.CommandCode;
 import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
 import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.RequestPayloadHolder;
+import qunar.tc.bistoury.serverside.agile.Conf;
+import qunar.tc.bistoury.serverside.configuration.DynamicConfigLoader;
+import qunar.tc.bistoury.serverside.configuration.local.LocalDynamicConfig;
 
+import javax.annotation.PostConstruct;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
@@ -47,9 +52,19 @@ public class DefaultSessionManager implements SessionManager {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultSessionManager.class);
 
+    private static final int DEFAULT_JOB_CREDIT_WINDOW = 1024 * 1024;
+
     @Autowired
     private IdGenerator sessionIdGenerator;
 
+    private volatile int jobCreditWindow = DEFAULT_JOB_CREDIT_WINDOW;
+
+    @PostConstruct
+    public void init() {
+        DynamicConfigLoader.<LocalDynamicConfig>load("global.properties")
+                .addListener(conf -> jobCreditWindow = Conf.fromMap(conf.asMap()).getInt("job.credit.window.bytes", DEFAULT_JOB_CREDIT_WINDOW));
+    }
+
     private final ConcurrentMap<String, Session> sessions = Maps.newConcurrentMap();
 
     private final ConcurrentMap<Connection, Set<Session>> uiConnectionToSessionsMapping = Maps.newConcurrentMap();
@@ -59,7 +74,7 @@ public class DefaultSessionManager implements SessionManager {
     @Override
     public Session create(CommunicateCommand command, RequestData requestData, AgentConnection agentConnection, UiConnection uiConnection) {
         String id = sessionIdGenerator.generateId();
-        Session session = new DefaultSession(id, command.isSupportPause(), requestData, agentConnection, uiConnection);
+        Session session = new DefaultSession(id, command.isSupportPause(), getCreditWindow(command, agentConnection), requestData, agentConnection, uiConnection);
         Session oldSession = sessions.putIfAbsent(id, session);
         if (oldSession != null) {
             return oldSession;
@@ -85,6 +100,13 @@ public class DefaultSessionManager implements SessionManager {
         return session;
     }
 
+    private int getCreditWindow(CommunicateCommand command, AgentConnection agentConnection) {
+        if (command.isSupportPause() && agentConnection.getVersion() >= BistouryConstants.MIN_AGENT_VERSION_SUPPORT_JOB_CREDIT) {
+            return jobCreditWindow;
+        }
+        return 0;
+    }
+
     @Override
     public Session getSession(String id) {
         return sessions.get(id);
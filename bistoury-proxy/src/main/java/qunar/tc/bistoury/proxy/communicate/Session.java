@@ -40,12 +40,19 @@ public interface Session {
 
     boolean isSupportPause();
 
+    /**
+     * @return 按credit控制agent输出时的窗口大小，单位byte，小于等于0表示不使用credit
+     */
+    int getCreditWindow();
+
     RequestData getRequestData();
 
     AgentConnection getAgentConnection();
 
     UiConnection getUiConnection();
 
+    SessionMetrics getMetrics();
+
     boolean finish();
 
     boolean broken();
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.proxy.communicate;
+
+import com.google.common.base.Optional;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.serverside.metrics.BistouryCounter;
+import qunar.tc.bistoury.serverside.metrics.BistouryMeter;
+import qunar.tc.bistoury.serverside.metrics.BistouryTimer;
+import qunar.tc.bistoury.serverside.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按命令和agent版本统计session的首包延迟、持续时间、流量、暂停恢复次数和结束状态
+ */
+public class SessionMetrics {
+
+    private static final String[] TAGS = new String[]{"command", "agentVersion"};
+
+    private static final String[] END_TAGS = new String[]{"command", "agentVersion", "state"};
+
+    private final String[] values;
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicBoolean firstByteReceived = new AtomicBoolean(false);
+
+    private final AtomicLong bytes = new AtomicLong(0);
+
+    //command和agent版本在创建时就确定了，创建时取好，每个数据包打点不用再去registry里查
+    private final BistouryTimer firstByteLatency;
+
+    private final BistouryCounter streamedBytes;
+
+    private final BistouryCounter pause;
+
+    private final BistouryCounter resume;
+
+    private final BistouryCounter creditGrant;
+
+    private final BistouryCounter creditGrantBytes;
+
+    private final BistouryTimer duration;
+
+    private final BistouryMeter sessionBytes;
+
+    SessionMetrics(int code, int agentVersion) {
+        this.values = new String[]{commandName(code), String.valueOf(agentVersion)};
+        this.firstByteLatency = Metrics.timer("session_first_byte_latency", TAGS, values);
+        this.streamedBytes = Metrics.counter("session_streamed_bytes", TAGS, values);
+        this.pause = Metrics.counter("session_pause", TAGS, values);
+        this.resume = Metrics.counter("session_resume", TAGS, values);
+        this.creditGrant = Metrics.counter("session_credit_grant", TAGS, values);
+        this.creditGrantBytes = Metrics.counter("session_credit_grant_bytes", TAGS, values);
+        this.duration = Metrics.timer("session_duration", TAGS, values);
+        this.sessionBytes = Metrics.meter("session_bytes", TAGS, values);
+    }
+
+    private static String commandName(int code) {
+        Optional<CommandCode> commandCode = CommandCode.valueOfCode(code);
+        return commandCode.isPresent() ? commandCode.get().name() : String.valueOf(code);
+    }
+
+    /**
+     * agent的数据到达proxy，第一次调用时记录请求到首包的延迟
+     */
+    void onAgentData(int bodyBytes) {
+        if (!firstByteReceived.get() && firstByteReceived.compareAndSet(false, true)) {
+            firstByteLatency.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+
+        if (bodyBytes > 0) {
+            bytes.addAndGet(bodyBytes);
+            streamedBytes.inc(bodyBytes);
+        }
+    }
+
+    public void onPause() {
+        pause.inc();
+    }
+
+    public void onResume() {
+        resume.inc();
+    }
+
+    void onCreditGrant(long credit) {
+        creditGrant.inc();
+        creditGrantBytes.inc(credit);
+    }
+
+    void onEnd(Session.State state) {
+        duration.update(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        sessionBytes.mark(bytes.get());
+        //结束状态只有结束时才知道，每个session只调用一次
+        Metrics.counter("session_end", END_TAGS, new String[]{values[0], values[1], state.name()}).inc();
+    }
+}
@@ -25,9 +25,8 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,8 +35,11 @@ import qunar.tc.bistoury.proxy.communicate.agent.handler.AgentMessageHandler;
 import qunar.tc.bistoury.proxy.communicate.handle.ChannelCloseHandler;
 import qunar.tc.bistoury.proxy.communicate.handle.ConnectionCounterHandler;
 import qunar.tc.bistoury.remoting.coder.AgentDecoder;
+import qunar.tc.bistoury.remoting.coder.BodyCompressor;
 import qunar.tc.bistoury.remoting.coder.AgentEncoder;
+import qunar.tc.bistoury.remoting.netty.NettyTransport;
 import qunar.tc.bistoury.serverside.agile.Conf;
+import qunar.tc.bistoury.serverside.metrics.Metrics;
 
 import java.util.concurrent.TimeUnit;
 
@@ -52,9 +54,15 @@ public class NettyServerForAgent implements NettyServer {
 
     private static final int DEFAULT_WRITE_HIGH_WATER_MARK = 128 * 1024;
 
-    private final EventLoopGroup BOSS_GROUP = new NioEventLoopGroup(1, new ThreadFactoryBuilder().setNameFormat("agent-netty-server-boss").build());
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 8 * 1024;
 
-    private final EventLoopGroup WORKER_GROUP = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().setNameFormat("agent-netty-server-worker").build());
+    private final NettyTransport transport;
+
+    private final EventLoopGroup BOSS_GROUP;
+
+    private final EventLoopGroup WORKER_GROUP;
+
+    private final WriteBufferWaterMark writeBufferWaterMark;
 
     private final int heartbeatTimeoutSec;
 
@@ -62,6 +70,10 @@ public class NettyServerForAgent implements NettyServer {
 
     private final int port;
 
+    private final boolean decodeRetainedSlice;
+
+    private final int compressThreshold;
+
     private volatile Channel channel;
 
     public NettyServerForAgent(Conf conf, AgentMessageHandler agentMessageHandler) {
@@ -69,24 +81,32 @@ public class NettyServerForAgent implements NettyServer {
         this.heartbeatTimeoutSec = heartbeatSec * 2 + heartbeatSec / 2;
         this.agentMessageHandler = agentMessageHandler;
         this.port = conf.getInt("agent.newport", -1);
+        this.decodeRetainedSlice = conf.getBoolean("agent.decoder.retainedSlice", true);
+        this.compressThreshold = conf.getInt("agent.compress.threshold", DEFAULT_COMPRESS_THRESHOLD);
+        this.transport = NettyTransport.create(conf.getBoolean("agent.netty.epoll", true), conf.getBoolean("agent.netty.epoll.edgeTriggered", true));
+        this.BOSS_GROUP = transport.newEventLoopGroup(1, new ThreadFactoryBuilder().setNameFormat("agent-netty-server-boss").build());
+        this.WORKER_GROUP = transport.newEventLoopGroup(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().setNameFormat("agent-netty-server-worker").build());
+        this.writeBufferWaterMark = new WriteBufferWaterMark(
+                conf.getInt("agent.write.buffer.low.water.mark", DEFAULT_WRITE_LOW_WATER_MARK),
+                conf.getInt("agent.write.buffer.high.water.mark", DEFAULT_WRITE_HIGH_WATER_MARK));
     }
 
     @Override
     public void start() {
         ConnectionCounterHandler connectionCounterHandler = new ConnectionCounterHandler("agent");
-        ServerBootstrap bootstrap = new ServerBootstrap()
-                .option(ChannelOption.TCP_NODELAY, true)
+        registerCompressGauges();
+        ServerBootstrap bootstrap = transport.configure(new ServerBootstrap())
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, DEFAULT_WRITE_LOW_WATER_MARK)
-                .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, DEFAULT_WRITE_HIGH_WATER_MARK)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
                 .group(BOSS_GROUP, WORKER_GROUP)
-                .channel(NioServerSocketChannel.class)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) throws Exception {
                         ch.pipeline().addLast("connectionCounter", connectionCounterHandler)
-                                .addLast("encoder", new AgentEncoder())
-                                .addLast("decoder", new AgentDecoder())
+                                .addLast("encoder", new AgentEncoder(compressThreshold))
+                                .addLast("decoder", new AgentDecoder(decodeRetainedSlice))
                                 .addLast("idleHandler", new IdleStateHandler(heartbeatTimeoutSec, 0, 0, TimeUnit.SECONDS))
                                 .addLast("messageHandler", agentMessageHandler)
                                 .addLast("closeHandler", new ChannelCloseHandler("agent"));
@@ -102,6 +122,13 @@ public class NettyServerForAgent implements NettyServer {
         }
     }
 
+    private void registerCompressGauges() {
+        Metrics.gauge("agent_frame_encode_raw_bytes", () -> (double) BodyCompressor.getEncodeRawBytes());
+        Metrics.gauge("agent_frame_encode_compressed_bytes", () -> (double) BodyCompressor.getEncodeCompressedBytes());
+        Metrics.gauge("agent_frame_decode_compressed_bytes", () -> (double) BodyCompressor.getDecodeCompressedBytes());
+        Metrics.gauge("agent_frame_decode_raw_bytes", () -> (double) BodyCompressor.getDecodeRawBytes());
+    }
+
     @Override
     public boolean isActive() {
         return channel.isActive();
@@ -59,6 +59,7 @@ public class AgentInfoRefreshProcessor implements AgentMessageProcessor {
     @Override
     public void process(final ChannelHandlerContext ctx, Datagram message) {
         Metrics.counter("agent_info_refresh").inc();
+        message.release();
         String ip = ChannelUtils.getIp(ctx.channel());
         ListenableFuture<Map<String, String>> agentInfoFuture = agentInfoManager.getAgentInfo(ip);
         Futures.addCallback(agentInfoFuture, (FutureSuccessCallBack<Map<String, String>>) agentInfo ->
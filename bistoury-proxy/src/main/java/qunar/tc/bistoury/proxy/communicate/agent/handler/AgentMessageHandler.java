@@ -18,15 +18,19 @@
 package qunar.tc.bistoury.proxy.communicate.agent.handler;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.serverside.metrics.BistouryCounter;
+import qunar.tc.bistoury.serverside.metrics.Metrics;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author zhenyu.nie created on 2019 2019/5/14 17:13
@@ -36,8 +40,13 @@ public class AgentMessageHandler extends SimpleChannelInboundHandler<Datagram> {
 
     private static final Logger logger = LoggerFactory.getLogger(AgentMessageHandler.class);
 
+    private static final String[] TAGS = new String[]{"code"};
+
     private final Map<Integer, AgentMessageProcessor> processorMap;
 
+    //每个数据包都要打点，按code缓存counter，不用每次拼tag再去registry里查
+    private final ConcurrentMap<Integer, CodeMetrics> codeMetrics = Maps.newConcurrentMap();
+
     public AgentMessageHandler(List<AgentMessageProcessor> processors) {
         ImmutableMap.Builder<Integer, AgentMessageProcessor> builder = new ImmutableMap.Builder<>();
         for (AgentMessageProcessor processor : processors) {
@@ -51,6 +60,15 @@ public class AgentMessageHandler extends SimpleChannelInboundHandler<Datagram> {
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Datagram message) throws Exception {
         int code = message.getHeader().getCode();
+        CodeMetrics metrics = codeMetrics.get(code);
+        if (metrics == null) {
+            metrics = codeMetrics.computeIfAbsent(code, CodeMetrics::new);
+        }
+        metrics.messages.inc();
+        if (message.getBody() != null) {
+            metrics.bytes.inc(message.getBody().readableBytes());
+        }
+
         AgentMessageProcessor messageProcessor = processorMap.get(code);
         if (messageProcessor == null) {
             message.release();
@@ -60,4 +78,17 @@ public class AgentMessageHandler extends SimpleChannelInboundHandler<Datagram> {
 
         messageProcessor.process(ctx, message);
     }
+
+    private static class CodeMetrics {
+
+        private final BistouryCounter messages;
+
+        private final BistouryCounter bytes;
+
+        private CodeMetrics(int code) {
+            String[] values = new String[]{String.valueOf(code)};
+            this.messages = Metrics.counter("agent_message", TAGS, values);
+            this.bytes = Metrics.counter("agent_message_bytes", TAGS, values);
+        }
+    }
 }
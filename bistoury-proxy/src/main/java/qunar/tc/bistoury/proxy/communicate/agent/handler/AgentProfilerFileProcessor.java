@@ -6,6 +6,8 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
@@ -20,11 +22,18 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CHUNK_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_OFFSET_HEADER;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_DIR_HEADER;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_NAME_HEADER;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_ROOT_AGENT_PATH;
@@ -51,6 +60,14 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
             .removalListener(this::close)
             .build(getCacheLoader());
 
+    //每个正在接收的文件下一个chunk应该从哪里开始写，BROKEN_OFFSET表示这个文件已经出错，剩下的chunk直接丢弃
+    private final Map<String, Long> fileOffsets = new HashMap<>();
+
+    private static final long BROKEN_OFFSET = -1;
+
+    //有文件出错的profiler，全部传完时不发布，留在agent目录下等下次请求续传
+    private final Set<String> brokenProfilers = new HashSet<>();
+
     private CacheLoader<String, OutputStream> getCacheLoader() {
         return new CacheLoader<String, OutputStream>() {
             @Override
@@ -58,7 +75,7 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
                 File path = new File(filePath);
                 path.getParentFile().mkdirs();
                 path.createNewFile();
-                return new BufferedOutputStream(new FileOutputStream(filePath));
+                return new BufferedOutputStream(new FileOutputStream(filePath, true));
             }
         };
     }
@@ -85,35 +102,103 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
 
     @Override
     public void process(ChannelHandlerContext ctx, Datagram message) {
-        writeFileExecutor.submit(() -> {
-            RemotingHeader remotingHeader = message.getHeader();
-            final int code = remotingHeader.getCode();
-            String relativeFilePath = getRelativeFilePath(remotingHeader);
-
-            try {
-                if (code == REQ_TYPE_PROFILER_FILE.getCode()) {
-                    handleWrite(message, relativeFilePath);
-                } else if (code == REQ_TYPE_PROFILER_FILE_END.getCode()) {
-                    handleEnd(relativeFilePath);
-                } else if (code == REQ_TYPE_PROFILER_FILE_ERROR.getCode()) {
-                    handleError(message);
-                } else if (code == REQ_TYPE_PROFILER_ALL_FILE_END.getCode()) {
-                    handleAllEnd(relativeFilePath);
-                }
-            } catch (Exception e) {
-                logger.error("process receive agent file error. message: {}", message, e);
+        writeFileExecutor.submit(() -> doProcess(message));
+    }
+
+    void doProcess(Datagram message) {
+        RemotingHeader remotingHeader = message.getHeader();
+        final int code = remotingHeader.getCode();
+        String relativeFilePath = getRelativeFilePath(remotingHeader);
+
+        try {
+            if (code == REQ_TYPE_PROFILER_FILE.getCode()) {
+                handleWrite(message, relativeFilePath);
+            } else if (code == REQ_TYPE_PROFILER_FILE_END.getCode()) {
+                handleEnd(remotingHeader, relativeFilePath);
+            } else if (code == REQ_TYPE_PROFILER_FILE_ERROR.getCode()) {
+                handleError(message);
+            } else if (code == REQ_TYPE_PROFILER_ALL_FILE_END.getCode()) {
+                handleAllEnd(remotingHeader, relativeFilePath);
             }
-        });
+        } catch (Exception e) {
+            logger.error("process receive agent file error. message: {}", message, e);
+        } finally {
+            message.release();
+        }
     }
 
     private void handleWrite(Datagram message, String relativeFilePath) throws Exception {
         String path = getWritePath(relativeFilePath);
-        writeToFile(path, message.getBody());
+        RemotingHeader header = message.getHeader();
+        byte[] content = getContent(message.getBody());
+        //老版本agent不带offset，总是从头开始传
+        long offset = parseLong(header.getProperty(FILE_OFFSET_HEADER), 0);
+        Long expectOffset = fileOffsets.get(path);
+        if (expectOffset == null) {
+            expectOffset = startFile(path, offset);
+        }
+
+        if (expectOffset == BROKEN_OFFSET) {
+            return;
+        }
+
+        if (offset != expectOffset) {
+            logger.warn("receive profiler file chunk with unexpected offset, path: {}, expect: {}, actual: {}", path, expectOffset, offset);
+            breakFile(path);
+            return;
+        }
+
+        String chunkCrc = header.getProperty(FILE_CHUNK_CRC_HEADER);
+        if (chunkCrc != null && Long.parseLong(chunkCrc) != crc32(content)) {
+            logger.warn("receive profiler file chunk with wrong crc32, path: {}, offset: {}", path, offset);
+            breakFile(path);
+            return;
+        }
+
+        fileStreamCache.get(path).write(content);
+        fileOffsets.put(path, offset + content.length);
     }
 
-    private void handleEnd(String relativeFilePath) throws Exception {
+    private long startFile(String path, long offset) {
+        File file = new File(path);
+        if (offset == 0) {
+            fileStreamCache.invalidate(path);
+            file.delete();
+            return 0;
+        }
+
+        if (file.length() != offset) {
+            logger.warn("can not resume profiler file, path: {}, local length: {}, offset: {}", path, file.length(), offset);
+            return BROKEN_OFFSET;
+        }
+        logger.info("resume profiler file: {}, offset: {}", path, offset);
+        return offset;
+    }
+
+    private void breakFile(String path) {
+        fileStreamCache.invalidate(path);
+        fileOffsets.put(path, BROKEN_OFFSET);
+    }
+
+    private void handleEnd(RemotingHeader header, String relativeFilePath) throws Exception {
         String path = getWritePath(relativeFilePath);
         closeFileStream(path);
+        Long offset = fileOffsets.remove(path);
+        if (offset != null && offset == BROKEN_OFFSET) {
+            //删掉出错的文件，下次请求时重新传
+            new File(path).delete();
+            brokenProfilers.add(header.getProperty(PROFILER_DIR_HEADER));
+            logger.warn("discard broken profiler file: {}", path);
+            return;
+        }
+
+        String fileCrc = header.getProperty(FILE_CRC_HEADER);
+        if (fileCrc != null && Long.parseLong(fileCrc) != Files.hash(new File(path), Hashing.crc32()).padToLong()) {
+            new File(path).delete();
+            brokenProfilers.add(header.getProperty(PROFILER_DIR_HEADER));
+            logger.warn("discard profiler file with wrong crc32: {}", path);
+            return;
+        }
         logger.info("write file: {}", path);
     }
 
@@ -121,8 +206,19 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
         logger.warn("request file error. result msg: {}", new String(getContent(message.getBody()), Charsets.UTF_8));
     }
 
-    private void handleAllEnd(String relativeFilePath) {
+    private void handleAllEnd(RemotingHeader header, String relativeFilePath) {
         String path = getWritePath(relativeFilePath);
+        boolean broken = brokenProfilers.remove(header.getProperty(PROFILER_DIR_HEADER));
+        for (Map.Entry<String, Long> entry : fileOffsets.entrySet()) {
+            if (entry.getKey().startsWith(path) && entry.getValue() == BROKEN_OFFSET) {
+                broken = true;
+            }
+        }
+        fileOffsets.keySet().removeIf(filePath -> filePath.startsWith(path));
+        if (broken) {
+            logger.warn("profiler has broken file, not publish. file: {}", path);
+            return;
+        }
         renamePath(path);
         logger.info("write profiler file all end. file: {}", path);
     }
@@ -140,9 +236,14 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
         fileStreamCache.invalidate(filePath);
     }
 
-    private void writeToFile(String filePath, ByteBuf byteBuf) throws Exception {
-        byte[] content = getContent(byteBuf);
-        fileStreamCache.get(filePath).write(content);
+    private long crc32(byte[] content) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+        return crc32.getValue();
+    }
+
+    private long parseLong(String value, long defaultValue) {
+        return value == null ? defaultValue : Long.parseLong(value);
     }
 
     private byte[] getContent(ByteBuf byteBuf) {
@@ -157,8 +258,8 @@ public class AgentProfilerFileProcessor implements AgentMessageProcessor {
     }
 
     private String getRelativeFilePath(RemotingHeader remotingHeader) {
-        final String profilerDir = remotingHeader.getProperties().get(PROFILER_DIR_HEADER);
-        final String profilerFileName = remotingHeader.getProperties().get(PROFILER_NAME_HEADER);
+        final String profilerDir = remotingHeader.getProperty(PROFILER_DIR_HEADER);
+        final String profilerFileName = remotingHeader.getProperty(PROFILER_NAME_HEADER);
         return profilerDir + File.separator + profilerFileName;
     }
 }
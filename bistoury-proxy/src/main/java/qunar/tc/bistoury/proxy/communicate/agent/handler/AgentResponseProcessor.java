@@ -59,6 +59,7 @@ public class AgentResponseProcessor implements AgentMessageProcessor {
         if (session != null) {
             session.writeToUi(message);
         } else {
+            message.release();
             logger.warn("id [{}] can not get session, write response fail, {}", id, ctx.channel());
         }
     }
@@ -22,9 +22,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
@@ -40,6 +38,7 @@ import qunar.tc.bistoury.proxy.communicate.ui.command.CommunicateCommandStore;
 import qunar.tc.bistoury.proxy.communicate.ui.handler.*;
 import qunar.tc.bistoury.proxy.generator.IdGenerator;
 import qunar.tc.bistoury.proxy.util.AppCenterServerFinder;
+import qunar.tc.bistoury.remoting.netty.NettyTransport;
 import qunar.tc.bistoury.serverside.agile.Conf;
 import qunar.tc.bistoury.serverside.common.encryption.DefaultRequestEncryption;
 import qunar.tc.bistoury.serverside.common.encryption.RSAEncryption;
@@ -56,9 +55,13 @@ public class NettyServerForUi implements NettyServer {
 
     private static final int DEFAULT_WRITE_HIGH_WATER_MARK = 128 * 1024;
 
-    private static final EventLoopGroup BOSS = new NioEventLoopGroup(1, new ThreadFactoryBuilder().setNameFormat("ui-netty-server-boss").build());
+    private final NettyTransport transport;
 
-    private static final EventLoopGroup WORKER = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().setNameFormat("ui-netty-server-worker").build());
+    private final EventLoopGroup BOSS;
+
+    private final EventLoopGroup WORKER;
+
+    private final WriteBufferWaterMark writeBufferWaterMark;
 
     private final int port;
 
@@ -92,18 +95,24 @@ public class NettyServerForUi implements NettyServer {
         this.commandStore = commandStore;
         this.appServerService = appServerService;
         this.serverFinder = new AppCenterServerFinder(this.appServerService);
+        this.transport = NettyTransport.create(conf.getBoolean("ui.netty.epoll", true), conf.getBoolean("ui.netty.epoll.edgeTriggered", true));
+        this.BOSS = transport.newEventLoopGroup(1, new ThreadFactoryBuilder().setNameFormat("ui-netty-server-boss").build());
+        this.WORKER = transport.newEventLoopGroup(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder().setNameFormat("ui-netty-server-worker").build());
+        this.writeBufferWaterMark = new WriteBufferWaterMark(
+                conf.getInt("ui.write.buffer.low.water.mark", DEFAULT_WRITE_LOW_WATER_MARK),
+                conf.getInt("ui.write.buffer.high.water.mark", DEFAULT_WRITE_HIGH_WATER_MARK));
     }
 
     @Override
     public void start() {
-        ServerBootstrap bootstrap = new ServerBootstrap()
-                .option(ChannelOption.SO_KEEPALIVE, true)
+        final RSAEncryption rsaEncryption = createRsaEncryption();
+        ServerBootstrap bootstrap = transport.configure(new ServerBootstrap())
                 .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
-                .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, DEFAULT_WRITE_LOW_WATER_MARK)
-                .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, DEFAULT_WRITE_HIGH_WATER_MARK)
-                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
                 .group(BOSS, WORKER)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
@@ -114,7 +123,7 @@ public class NettyServerForUi implements NettyServer {
                                 .addLast(new HttpObjectAggregator(1024 * 1024))
                                 .addLast(new WebSocketServerProtocolHandler("/ws"))
                                 .addLast(new WebSocketFrameAggregator(1024 * 1024 * 1024))
-                                .addLast(new RequestDecoder(new DefaultRequestEncryption(new RSAEncryption())))
+                                .addLast(new RequestDecoder(new DefaultRequestEncryption(rsaEncryption)))
                                 .addLast(new WebSocketEncoder())
                                 .addLast(new TabHandler())
                                 .addLast(new HostsValidatorHandler(serverFinder))
@@ -134,6 +143,15 @@ public class NettyServerForUi implements NettyServer {
         }
     }
 
+    private RSAEncryption createRsaEncryption() {
+        try {
+            return new RSAEncryption();
+        } catch (Exception e) {
+            logger.error("load rsa key error", e);
+            throw Throwables.propagate(e);
+        }
+    }
+
     @Override
     public boolean isActive() {
         return channel.isActive();
@@ -38,7 +38,9 @@ import qunar.tc.bistoury.proxy.communicate.ui.handler.commandprocessor.Communica
 import qunar.tc.bistoury.remoting.protocol.*;
 import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.RequestPayloadHolder;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -88,6 +90,7 @@ public class UiRequestHandler extends ChannelDuplexHandler {
         Optional<CommunicateCommand> communicateCommand = commandStore.getCommunicateCommand(session.getRequestData().getType());
         if (!communicateCommand.isPresent()) {
             logger.warn("unknown command response, {}", datagram);
+            datagram.release();
             session.finish();
             return;
         }
@@ -202,8 +205,11 @@ public class UiRequestHandler extends ChannelDuplexHandler {
             return session;
         }
 
+        if (session.getCreditWindow() > 0) {
+            setCreditWindow(datagram.getHeader(), session.getCreditWindow());
+        }
         session.writeToAgent(datagram);
-        if (session.isSupportPause()) {
+        if (session.isSupportPause() && session.getCreditWindow() <= 0) {
             UiWritableListener listener = new UiWritableListener(session);
             uiConnection.addWritableListener(listener);
             session.getEndState().addListener(
@@ -213,6 +219,12 @@ public class UiRequestHandler extends ChannelDuplexHandler {
         return session;
     }
 
+    private static void setCreditWindow(RemotingHeader header, int creditWindow) {
+        Map<String, String> properties = new HashMap<>(header.getProperties());
+        properties.put(BistouryConstants.JOB_CREDIT_WINDOW, String.valueOf(creditWindow));
+        header.setProperties(properties);
+    }
+
     private static class UiWritableListener implements WritableListener {
 
         private final Session session;
@@ -228,6 +240,11 @@ public class UiRequestHandler extends ChannelDuplexHandler {
             if (this.writable != writable) {
                 this.writable = writable;
                 if (session.getAgentConnection().getVersion() >= BistouryConstants.MIN_AGENT_VERSION_SUPPORT_JOB_PAUSE) {
+                    if (writable) {
+                        session.getMetrics().onResume();
+                    } else {
+                        session.getMetrics().onPause();
+                    }
                     CommandCode code = writable ? CommandCode.REQ_TYPE_JOB_RESUME : CommandCode.REQ_TYPE_JOB_PAUSE;
                     Datagram datagram = RemotingBuilder.buildRequestDatagram(code.getCode(), session.getId(), new RequestPayloadHolder(session.getId()));
                     session.writeToAgent(datagram);
@@ -19,6 +19,7 @@ package qunar.tc.bistoury.proxy.communicate.ui.handler;
 
 import com.google.common.base.Optional;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
@@ -63,15 +64,11 @@ public class WebSocketEncoder extends MessageToMessageEncoder<Datagram> {
             result.writerIndex(start);
             result.writeInt(bodyLen);
             result.resetWriterIndex();
+            out.add(new BinaryWebSocketFrame(result));
         } else {
-            int bodyLen = body.readableBytes();
-            result.writeInt(bodyLen);
-
-            byte[] bytes = new byte[bodyLen];
-            body.readBytes(bytes);
-            result.writeBytes(bytes);
+            result.writeInt(body.readableBytes());
+            //body的所有权转移给frame，frame写出后一起释放，避免再拷贝一次
+            out.add(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(result, body)));
         }
-
-        out.add(new BinaryWebSocketFrame(result));
     }
 }
@@ -10,10 +10,20 @@ import qunar.tc.bistoury.proxy.communicate.ui.handler.commandprocessor.AbstractC
 import qunar.tc.bistoury.proxy.util.DownloadDirUtils;
 import qunar.tc.bistoury.remoting.command.DownloadCommand;
 import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
+import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
 import qunar.tc.bistoury.remoting.protocol.RequestData;
+import qunar.tc.bistoury.remoting.protocol.ResponseCode;
+import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.ResponsePayloadHolder;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.Set;
+import java.util.zip.CRC32;
+
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CHUNK_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_OFFSET_HEADER;
 
 /**
  * @author leix.xie
@@ -41,6 +51,26 @@ public class DownloadFileProcessor extends AbstractCommand<DownloadCommand> {
         return Optional.of(requestData);
     }
 
+    @Override
+    public Datagram prepareResponse(Datagram datagram) {
+        RemotingHeader header = datagram.getHeader();
+        String chunkCrc = header.getProperty(FILE_CHUNK_CRC_HEADER);
+        if (header.getCode() != ResponseCode.RESP_TYPE_CONTENT.getCode() || chunkCrc == null || datagram.getBody() == null) {
+            return datagram;
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(datagram.getBody().nioBuffer());
+        if (crc32.getValue() == Long.parseLong(chunkCrc)) {
+            return datagram;
+        }
+
+        String message = "download file chunk crc32 check failed, offset: " + header.getProperty(FILE_OFFSET_HEADER);
+        logger.warn("{}, id: {}", message, header.getId());
+        datagram.release();
+        return RemotingBuilder.buildResponseDatagram(ResponseCode.RESP_TYPE_EXCEPTION.getCode(), header, new ResponsePayloadHolder(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
     @Override
     public Set<Integer> getCodes() {
         return ImmutableSet.of(CommandCode.REQ_TYPE_DOWNLOAD_FILE.getCode());
@@ -1,5 +1,6 @@
 package qunar.tc.bistoury.proxy.service.impl;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.springframework.stereotype.Service;
@@ -15,6 +16,8 @@ import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
 import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.RequestPayloadHolder;
 
 import javax.annotation.Resource;
+import java.io.File;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -23,6 +26,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_RESUME_OFFSET_PREFIX;
+import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_ROOT_AGENT_PATH;
 import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_ROOT_TEMP_PATH;
 
 
@@ -75,7 +80,28 @@ public class DefaultProfilerDataManager implements ProfilerDataManager {
     }
 
     private Datagram initProfilerDatagram(String profilerId) {
-        return RemotingBuilder.buildRequestDatagram(CommandCode.REQ_TYPE_PROFILER_FILE.getCode(), idGenerator.generateId(), new RequestPayloadHolder(profilerId));
+        Datagram datagram = RemotingBuilder.buildRequestDatagram(CommandCode.REQ_TYPE_PROFILER_FILE.getCode(), idGenerator.generateId(), new RequestPayloadHolder(profilerId));
+        datagram.getHeader().setProperties(getResumeOffsets(profilerId));
+        return datagram;
+    }
+
+    //上次没有传完的文件，告诉agent已经收到的长度，从这个位置继续传
+    private Map<String, String> getResumeOffsets(String profilerId) {
+        com.google.common.base.Optional<File> partialDir = ProfilerUtil.getProfilerDir(PROFILER_ROOT_AGENT_PATH, profilerId);
+        if (!partialDir.isPresent()) {
+            return ImmutableMap.of();
+        }
+        File[] files = partialDir.get().listFiles();
+        if (files == null) {
+            return ImmutableMap.of();
+        }
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (File file : files) {
+            if (file.isFile() && file.length() > 0) {
+                builder.put(FILE_RESUME_OFFSET_PREFIX + file.getName(), String.valueOf(file.length()));
+            }
+        }
+        return builder.build();
     }
 
     private static class ProfileRequestState {
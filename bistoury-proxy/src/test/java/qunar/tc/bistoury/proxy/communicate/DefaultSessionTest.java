@@ -0,0 +1,216 @@
+package qunar.tc.bistoury.proxy.communicate;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.common.BistouryConstants;
+import qunar.tc.bistoury.proxy.communicate.agent.AgentConnection;
+import qunar.tc.bistoury.proxy.communicate.ui.UiConnection;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
+import qunar.tc.bistoury.remoting.protocol.RequestData;
+import qunar.tc.bistoury.remoting.protocol.ResponseCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+public class DefaultSessionTest {
+
+    private static final String ID = "session";
+
+    private static final int WINDOW = 1000;
+
+    private FakeAgentConnection agent;
+
+    private FakeUiConnection ui;
+
+    private DefaultSession session;
+
+    @Before
+    public void setUp() {
+        agent = new FakeAgentConnection();
+        ui = new FakeUiConnection();
+        RequestData<String> requestData = new RequestData<>();
+        requestData.setType(CommandCode.REQ_TYPE_COMMAND.getCode());
+        session = new DefaultSession(ID, true, WINDOW, requestData, agent, ui);
+    }
+
+    @Test
+    public void testReturnCreditAfterHalfWindow() {
+        for (int i = 0; i < 4; ++i) {
+            session.writeToUi(content(100));
+        }
+        Assert.assertEquals(0, codes(agent.written, CommandCode.REQ_TYPE_JOB_CREDIT));
+
+        session.writeToUi(content(100));
+        Assert.assertEquals(1, codes(agent.written, CommandCode.REQ_TYPE_JOB_CREDIT));
+
+        for (int i = 0; i < 5; ++i) {
+            session.writeToUi(content(100));
+        }
+        Assert.assertEquals(2, codes(agent.written, CommandCode.REQ_TYPE_JOB_CREDIT));
+        Assert.assertFalse(session.getEndState().isDone());
+    }
+
+    @Test
+    public void testNoCreditAfterEnd() throws Exception {
+        session.writeToUi(content(400));
+        session.writeToUi(end());
+        Assert.assertEquals(0, codes(agent.written, CommandCode.REQ_TYPE_JOB_CREDIT));
+        Assert.assertEquals(Session.State.finish, session.getEndState().get());
+    }
+
+    @Test
+    public void testCancelWhenUiWriteFail() throws Exception {
+        ui.result = WriteResult.fail;
+        session.writeToUi(content(100));
+        session.writeToUi(content(100));
+
+        Assert.assertEquals(Session.State.broken, session.getEndState().get());
+        Assert.assertEquals(1, codes(agent.written, CommandCode.REQ_TYPE_CANCEL));
+        Assert.assertEquals(0, codes(agent.written, CommandCode.REQ_TYPE_JOB_CREDIT));
+    }
+
+    @Test
+    public void testCancelWhenUiWriteException() throws Exception {
+        ui.exception = new RuntimeException("write error");
+        session.writeToUi(content(100));
+
+        Assert.assertEquals(Session.State.broken, session.getEndState().get());
+        Assert.assertEquals(1, codes(agent.written, CommandCode.REQ_TYPE_CANCEL));
+    }
+
+    @Test
+    public void testNoCreditWithoutWindow() throws ExecutionException, InterruptedException {
+        RequestData<String> requestData = new RequestData<>();
+        requestData.setType(CommandCode.REQ_TYPE_COMMAND.getCode());
+        DefaultSession noWindow = new DefaultSession(ID, true, requestData, agent, ui);
+        for (int i = 0; i < 20; ++i) {
+            noWindow.writeToUi(content(100));
+        }
+        Assert.assertTrue(agent.written.isEmpty());
+    }
+
+    private static int codes(List<Datagram> datagrams, CommandCode code) {
+        int count = 0;
+        for (Datagram datagram : datagrams) {
+            if (datagram.getHeader().getCode() == code.getCode()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Datagram content(int bytes) {
+        Datagram datagram = RemotingBuilder.buildRequestDatagram(ResponseCode.RESP_TYPE_CONTENT.getCode(), ID, null);
+        datagram.setBody(Unpooled.wrappedBuffer(new byte[bytes]));
+        return datagram;
+    }
+
+    private static Datagram end() {
+        return RemotingBuilder.buildRequestDatagram(ResponseCode.RESP_TYPE_SINGLE_END.getCode(), ID, null);
+    }
+
+    private static class FakeAgentConnection implements AgentConnection {
+
+        private final List<Datagram> written = new ArrayList<>();
+
+        @Override
+        public String getAgentId() {
+            return "agent";
+        }
+
+        @Override
+        public int getVersion() {
+            return BistouryConstants.MIN_AGENT_VERSION_SUPPORT_JOB_CREDIT;
+        }
+
+        @Override
+        public ListenableFuture<WriteResult> write(Datagram message) {
+            written.add(message);
+            SettableFuture<WriteResult> future = SettableFuture.create();
+            future.set(WriteResult.success);
+            return future;
+        }
+
+        @Override
+        public ListenableFuture<Void> closeFuture() {
+            return SettableFuture.create();
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FakeUiConnection implements UiConnection {
+
+        private WriteResult result = WriteResult.success;
+
+        private Throwable exception;
+
+        @Override
+        public ListenableFuture<WriteResult> write(Datagram message) {
+            message.release();
+            SettableFuture<WriteResult> future = SettableFuture.create();
+            if (exception != null) {
+                future.setException(exception);
+            } else {
+                future.set(result);
+            }
+            return future;
+        }
+
+        @Override
+        public Channel getChannel() {
+            return null;
+        }
+
+        @Override
+        public void setWritable(boolean writable) {
+        }
+
+        @Override
+        public void addWritableListener(WritableListener listener) {
+        }
+
+        @Override
+        public void removeWritableListener(WritableListener listener) {
+        }
+
+        @Override
+        public ListenableFuture<Void> closeFuture() {
+            return SettableFuture.create();
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
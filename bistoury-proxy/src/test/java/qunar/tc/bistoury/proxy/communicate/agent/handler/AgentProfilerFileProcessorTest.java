@@ -0,0 +1,163 @@
+package qunar.tc.bistoury.proxy.communicate.agent.handler;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import qunar.tc.bistoury.common.FileUtil;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CHUNK_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_CRC_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.FILE_OFFSET_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_DIR_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_NAME_HEADER;
+import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_ROOT_AGENT_PATH;
+import static qunar.tc.bistoury.common.BistouryConstants.PROFILER_ROOT_TEMP_PATH;
+
+public class AgentProfilerFileProcessorTest {
+
+    private static final String NAME = "cpu.svg";
+
+    private static final byte[] FIRST = "first chunk,".getBytes(Charsets.UTF_8);
+
+    private static final byte[] SECOND = "second chunk".getBytes(Charsets.UTF_8);
+
+    private AgentProfilerFileProcessor processor;
+
+    private String profilerDir;
+
+    @Before
+    public void setUp() {
+        processor = new AgentProfilerFileProcessor();
+        profilerDir = UUID.randomUUID().toString();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteDirectory(agentDir(), true);
+        FileUtil.deleteDirectory(publishedDir(), true);
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST)));
+        processor.doProcess(chunk(FIRST.length, SECOND, crc(SECOND)));
+        processor.doProcess(end(crc(FIRST, SECOND)));
+        processor.doProcess(allEnd());
+
+        Assert.assertFalse(agentDir().exists());
+        Assert.assertEquals(FIRST.length + SECOND.length, new File(publishedDir(), NAME).length());
+    }
+
+    @Test
+    public void testNotPublishWithBadChunk() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST)));
+        processor.doProcess(chunk(FIRST.length, SECOND, crc(SECOND) + 1));
+        processor.doProcess(end(crc(FIRST, SECOND)));
+        processor.doProcess(allEnd());
+
+        Assert.assertFalse(publishedDir().exists());
+        Assert.assertFalse(new File(agentDir(), NAME).exists());
+    }
+
+    @Test
+    public void testNotPublishWithUnexpectedOffset() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST)));
+        processor.doProcess(chunk(FIRST.length + 1, SECOND, crc(SECOND)));
+        processor.doProcess(end(crc(FIRST, SECOND)));
+        processor.doProcess(allEnd());
+
+        Assert.assertFalse(publishedDir().exists());
+    }
+
+    @Test
+    public void testNotPublishWithBadFileCrc() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST)));
+        processor.doProcess(chunk(FIRST.length, SECOND, crc(SECOND)));
+        processor.doProcess(end(crc(FIRST, SECOND) + 1));
+        processor.doProcess(allEnd());
+
+        Assert.assertFalse(publishedDir().exists());
+        Assert.assertFalse(new File(agentDir(), NAME).exists());
+    }
+
+    @Test
+    public void testNotPublishWithoutFileEnd() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST) + 1));
+        processor.doProcess(allEnd());
+
+        Assert.assertFalse(publishedDir().exists());
+    }
+
+    @Test
+    public void testPublishAfterRetry() throws Exception {
+        processor.doProcess(chunk(0, FIRST, crc(FIRST) + 1));
+        processor.doProcess(end(crc(FIRST)));
+        processor.doProcess(allEnd());
+        Assert.assertFalse(publishedDir().exists());
+
+        processor.doProcess(chunk(0, FIRST, crc(FIRST)));
+        processor.doProcess(end(crc(FIRST)));
+        processor.doProcess(allEnd());
+        Assert.assertEquals(FIRST.length, new File(publishedDir(), NAME).length());
+    }
+
+    private File agentDir() {
+        return new File(PROFILER_ROOT_AGENT_PATH, profilerDir);
+    }
+
+    private File publishedDir() {
+        return new File(PROFILER_ROOT_TEMP_PATH, profilerDir);
+    }
+
+    private Datagram chunk(long offset, byte[] content, long chunkCrc) {
+        Datagram datagram = datagram(CommandCode.REQ_TYPE_PROFILER_FILE, NAME, ImmutableMap.of(
+                FILE_OFFSET_HEADER, String.valueOf(offset),
+                FILE_CHUNK_CRC_HEADER, String.valueOf(chunkCrc)));
+        datagram.setBody(Unpooled.wrappedBuffer(content));
+        return datagram;
+    }
+
+    private Datagram end(long fileCrc) {
+        return datagram(CommandCode.REQ_TYPE_PROFILER_FILE_END, NAME, ImmutableMap.of(FILE_CRC_HEADER, String.valueOf(fileCrc)));
+    }
+
+    private Datagram allEnd() {
+        return datagram(CommandCode.REQ_TYPE_PROFILER_ALL_FILE_END, "", ImmutableMap.<String, String>of());
+    }
+
+    private Datagram datagram(CommandCode code, String name, Map<String, String> properties) {
+        Datagram datagram = RemotingBuilder.buildRequestDatagram(code.getCode(), "id", null);
+        Map<String, String> headers = new HashMap<>(properties);
+        headers.put(PROFILER_DIR_HEADER, profilerDir);
+        headers.put(PROFILER_NAME_HEADER, name);
+        datagram.getHeader().setProperties(headers);
+        return datagram;
+    }
+
+    private static long crc(byte[]... contents) {
+        int length = 0;
+        for (byte[] content : contents) {
+            length += content.length;
+        }
+        byte[] all = new byte[length];
+        int index = 0;
+        for (byte[] content : contents) {
+            System.arraycopy(content, 0, all, index, content.length);
+            index += content.length;
+        }
+        return Hashing.crc32().hashBytes(all).padToLong();
+    }
+}
@@ -18,13 +18,19 @@
 package qunar.tc.bistoury.remoting.coder;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.Attribute;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.common.JacksonSerializer;
+import qunar.tc.bistoury.remoting.netty.AgentConstants;
 import qunar.tc.bistoury.remoting.protocol.Datagram;
 import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
 import qunar.tc.bistoury.remoting.util.PayloadHolderUtils;
@@ -45,6 +51,19 @@ public class AgentDecoder extends ByteToMessageDecoder {
     private static final TypeReference PROPERTIES_TYPE = new TypeReference<Map<String, String>>() {
     };
 
+    /**
+     * 为true时body直接使用入站buffer的retained slice，不再拷贝，使用方需要负责调用{@link Datagram#release()}
+     */
+    private final boolean retainedSlice;
+
+    public AgentDecoder() {
+        this(false);
+    }
+
+    public AgentDecoder(boolean retainedSlice) {
+        this.retainedSlice = retainedSlice;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
         if (msg.readableBytes() < RemotingHeader.MIN_TOTAL_SIZE) {
@@ -65,10 +84,18 @@ public class AgentDecoder extends ByteToMessageDecoder {
 
         short headerSize = msg.readShort();
         RemotingHeader header = decodeHeader(msg);
+        int flag = header.getFlag();
+        header.setFlag(flag & ~RemotingHeader.CODER_FLAG_MASK);
+        recordPeerVersion(ctx, header.getVersion());
+        recordPeerCompression(ctx, (flag & RemotingHeader.FLAG_SUPPORT_COMPRESSION) != 0);
 
         int bodyLength = total - headerSize - RemotingHeader.HEADER_SIZE_LEN;
-        ByteBuf bodyData = Unpooled.buffer(bodyLength, bodyLength);
-        msg.readBytes(bodyData, bodyLength);
+        ByteBuf bodyData = decodeBody(msg, bodyLength);
+        if ((flag & RemotingHeader.FLAG_SNAPPY_BODY) != 0) {
+            //拷贝模式下使用方不一定会释放body，解压结果也使用unpooled
+            ByteBufAllocator allocator = retainedSlice ? ctx.alloc() : UnpooledByteBufAllocator.DEFAULT;
+            bodyData = BodyCompressor.uncompress(allocator, bodyData);
+        }
 
         Datagram datagram = new Datagram();
         datagram.setHeader(header);
@@ -78,6 +105,35 @@ public class AgentDecoder extends ByteToMessageDecoder {
 
     }
 
+    private ByteBuf decodeBody(ByteBuf msg, int bodyLength) {
+        if (retainedSlice) {
+            return msg.readRetainedSlice(bodyLength);
+        }
+
+        ByteBuf bodyData = Unpooled.buffer(bodyLength, bodyLength);
+        msg.readBytes(bodyData, bodyLength);
+        return bodyData;
+    }
+
+    private void recordPeerVersion(ChannelHandlerContext ctx, short version) {
+        Attribute<Short> peerVersion = ctx.channel().attr(AgentConstants.PEER_PROTOCOL_VERSION);
+        Short current = peerVersion.get();
+        if (current == null || current != version) {
+            peerVersion.set(version);
+        }
+    }
+
+    private void recordPeerCompression(ChannelHandlerContext ctx, boolean support) {
+        Attribute<Boolean> peerSupport = ctx.channel().attr(AgentConstants.PEER_SUPPORT_COMPRESSION);
+        Boolean current = peerSupport.get();
+        if (current == null || current != support) {
+            peerSupport.set(support);
+        }
+    }
+
+    /**
+     * 解码header，flag中包含编解码器使用的位，由调用方处理
+     */
     public RemotingHeader decodeHeader(ByteBuf msg) {
         RemotingHeader header = new RemotingHeader();
         header.setMagicCode(msg.readInt());
@@ -85,18 +141,38 @@ public class AgentDecoder extends ByteToMessageDecoder {
         header.setAgentVersion(msg.readShort());
         header.setId(PayloadHolderUtils.readString(msg));
         header.setCode(msg.readInt());
-        header.setFlag(msg.readInt());
+        int flag = msg.readInt();
+        header.setFlag(flag);
         int propertiesLen = msg.readShort();
-        if (propertiesLen > 0) {
+        if (propertiesLen <= 0) {
+            header.setProperties(Collections.<String, String>emptyMap());
+        } else if ((flag & RemotingHeader.FLAG_BINARY_PROPERTIES) != 0) {
+            header.setProperties(decodeBinaryProperties(msg));
+        } else {
             byte[] bs = new byte[propertiesLen];
             msg.readBytes(bs);
             header.setProperties(JacksonSerializer.<Map<String, String>>deSerialize(bs, PROPERTIES_TYPE));
-        } else {
-            header.setProperties(Collections.<String, String>emptyMap());
         }
 
         return header;
     }
-}
 
-    
\ No newline at end of file
+    private Map<String, String> decodeBinaryProperties(ByteBuf msg) {
+        int size = msg.readShort();
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (int i = 0; i < size; ++i) {
+            builder.put(readString(msg), readString(msg));
+        }
+        return builder.build();
+    }
+
+    private String readString(ByteBuf msg) {
+        int len = msg.readShort();
+        if (len == 0) {
+            return "";
+        }
+        String result = msg.toString(msg.readerIndex(), len, Charsets.UTF_8);
+        msg.skipBytes(len);
+        return result;
+    }
+}
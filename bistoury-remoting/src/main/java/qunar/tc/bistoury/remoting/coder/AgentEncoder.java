@@ -23,6 +23,7 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import qunar.tc.bistoury.common.JacksonSerializer;
+import qunar.tc.bistoury.remoting.netty.AgentConstants;
 import qunar.tc.bistoury.remoting.protocol.Datagram;
 import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
 import qunar.tc.bistoury.remoting.util.PayloadHolderUtils;
@@ -35,6 +36,19 @@ import java.util.Map;
 @ChannelHandler.Sharable
 public class AgentEncoder extends MessageToByteEncoder<Datagram> {
 
+    /**
+     * body超过该大小且对端支持时进行压缩，小于等于0表示不压缩
+     */
+    private final int compressThreshold;
+
+    public AgentEncoder() {
+        this(-1);
+    }
+
+    public AgentEncoder(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, Datagram msg, ByteBuf out) throws Exception {
         int start = out.writerIndex();
@@ -43,11 +57,16 @@ public class AgentEncoder extends MessageToByteEncoder<Datagram> {
         out.writerIndex(headerStart);
 
         RemotingHeader header = msg.getHeader();
-        encodeHeader(header, out);
+        int flagIndex = encodeHeader(header, out, supportBinaryProperties(ctx));
 
         int headerSize = out.writerIndex() - headerStart;
 
+        int bodyStart = out.writerIndex();
         msg.writeBody(out);
+        if (needCompress(ctx, out.writerIndex() - bodyStart)
+                && BodyCompressor.compress(ctx.alloc(), out, bodyStart)) {
+            out.setInt(flagIndex, out.getInt(flagIndex) | RemotingHeader.FLAG_SNAPPY_BODY);
+        }
 
         int end = out.writerIndex();
         int total = end - start - RemotingHeader.TOTAL_SIZE_LEN;
@@ -58,7 +77,28 @@ public class AgentEncoder extends MessageToByteEncoder<Datagram> {
         out.writerIndex(end);
     }
 
-    private void encodeHeader(final RemotingHeader header, ByteBuf out) {
+    private boolean supportBinaryProperties(ChannelHandlerContext ctx) {
+        Short peerVersion = ctx.channel().attr(AgentConstants.PEER_PROTOCOL_VERSION).get();
+        return peerVersion != null && peerVersion >= RemotingHeader.MIN_PROTOCOL_VERSION_SUPPORT_BINARY_PROPERTIES;
+    }
+
+    private boolean needCompress(ChannelHandlerContext ctx, int bodyLength) {
+        return compressThreshold > 0
+                && bodyLength > compressThreshold
+                && Boolean.TRUE.equals(ctx.channel().attr(AgentConstants.PEER_SUPPORT_COMPRESSION).get());
+    }
+
+    /**
+     * @return flag所在的index，body压缩后需要回写flag
+     */
+    private int encodeHeader(final RemotingHeader header, ByteBuf out, boolean binaryProperties) {
+        Map<String, String> properties = header.getProperties();
+        boolean hasProperties = properties != null && !properties.isEmpty();
+        int flag = (header.getFlag() & ~RemotingHeader.CODER_FLAG_MASK) | RemotingHeader.FLAG_SUPPORT_COMPRESSION;
+        if (hasProperties && binaryProperties) {
+            flag |= RemotingHeader.FLAG_BINARY_PROPERTIES;
+        }
+
         //magic code 4 bytes
         out.writeInt(header.getMagicCode());
         //version 2 bytes
@@ -70,14 +110,29 @@ public class AgentEncoder extends MessageToByteEncoder<Datagram> {
         //code 4 bytes
         out.writeInt(header.getCode());
         //flag 4 bytes
-        out.writeInt(header.getFlag());
+        int flagIndex = out.writerIndex();
+        out.writeInt(flag);
         //properties
-        Map<String, String> properties = header.getProperties();
-        if (properties != null && !properties.isEmpty()) {
+        if (!hasProperties) {
+            out.writeShort(0);
+        } else if (binaryProperties) {
+            encodeBinaryProperties(properties, out);
+        } else {
             String data = JacksonSerializer.serialize(properties);
             PayloadHolderUtils.writeString(data, out);
-        } else {
-            out.writeShort(0);
         }
+        return flagIndex;
+    }
+
+    private void encodeBinaryProperties(Map<String, String> properties, ByteBuf out) {
+        //properties len 2 bytes, then size 2 bytes and key/value pairs
+        int lenIndex = out.writerIndex();
+        out.writeShort(0);
+        PayloadHolderUtils.writeStringMap(properties, out);
+        int len = out.writerIndex() - lenIndex - RemotingHeader.HEADER_SIZE_LEN;
+        if (len > Short.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("properties is too large. len=" + len);
+        }
+        out.setShort(lenIndex, len);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.remoting.coder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * datagram body的snappy压缩，同时统计压缩前后的字节数
+ */
+public final class BodyCompressor {
+
+    private static final AtomicLong encodeRawBytes = new AtomicLong();
+
+    private static final AtomicLong encodeCompressedBytes = new AtomicLong();
+
+    private static final AtomicLong decodeCompressedBytes = new AtomicLong();
+
+    private static final AtomicLong decodeRawBytes = new AtomicLong();
+
+    private BodyCompressor() {
+    }
+
+    /**
+     * 压缩out中从bodyStart到writerIndex的数据，压缩后没有变小时保持原样
+     *
+     * @return 是否使用了压缩后的数据
+     */
+    static boolean compress(ByteBufAllocator allocator, ByteBuf out, int bodyStart) throws IOException {
+        int length = out.writerIndex() - bodyStart;
+        int maxLength = Snappy.maxCompressedLength(length);
+        int compressedLength;
+        ByteBuf compressed;
+        if (isSingleDirect(out)) {
+            compressed = allocator.directBuffer(maxLength);
+            compressedLength = Snappy.compress(out.nioBuffer(bodyStart, length), compressed.nioBuffer(0, maxLength));
+        } else {
+            compressed = allocator.heapBuffer(maxLength);
+            byte[] input = toArray(out, bodyStart, length);
+            int inputOffset = out.hasArray() ? out.arrayOffset() + bodyStart : 0;
+            compressedLength = Snappy.compress(input, inputOffset, length, compressed.array(), compressed.arrayOffset());
+        }
+
+        try {
+            encodeRawBytes.addAndGet(length);
+            if (compressedLength >= length) {
+                encodeCompressedBytes.addAndGet(length);
+                return false;
+            }
+
+            encodeCompressedBytes.addAndGet(compressedLength);
+            out.setBytes(bodyStart, compressed, 0, compressedLength);
+            out.writerIndex(bodyStart + compressedLength);
+            return true;
+        } finally {
+            compressed.release();
+        }
+    }
+
+    /**
+     * 解压body，body会被释放
+     */
+    static ByteBuf uncompress(ByteBufAllocator allocator, ByteBuf body) throws IOException {
+        try {
+            int length = body.readableBytes();
+            ByteBuf result;
+            if (isSingleDirect(body)) {
+                ByteBuffer input = body.nioBuffer();
+                int rawLength = Snappy.uncompressedLength(input);
+                result = allocator.directBuffer(rawLength);
+                Snappy.uncompress(input, result.nioBuffer(0, rawLength));
+                result.writerIndex(rawLength);
+            } else {
+                byte[] input = toArray(body, body.readerIndex(), length);
+                int inputOffset = body.hasArray() ? body.arrayOffset() + body.readerIndex() : 0;
+                int rawLength = Snappy.uncompressedLength(input, inputOffset, length);
+                result = allocator.heapBuffer(rawLength);
+                Snappy.uncompress(input, inputOffset, length, result.array(), result.arrayOffset());
+                result.writerIndex(rawLength);
+            }
+            decodeCompressedBytes.addAndGet(length);
+            decodeRawBytes.addAndGet(result.readableBytes());
+            return result;
+        } finally {
+            body.release();
+        }
+    }
+
+    private static boolean isSingleDirect(ByteBuf buf) {
+        return buf.isDirect() && buf.nioBufferCount() == 1;
+    }
+
+    private static byte[] toArray(ByteBuf buf, int index, int length) {
+        if (buf.hasArray()) {
+            return buf.array();
+        }
+        byte[] bytes = new byte[length];
+        buf.getBytes(index, bytes);
+        return bytes;
+    }
+
+    /**
+     * 参与压缩的body的原始字节数
+     */
+    public static long getEncodeRawBytes() {
+        return encodeRawBytes.get();
+    }
+
+    /**
+     * 参与压缩的body实际写出的字节数
+     */
+    public static long getEncodeCompressedBytes() {
+        return encodeCompressedBytes.get();
+    }
+
+    /**
+     * 收到的压缩body的字节数
+     */
+    public static long getDecodeCompressedBytes() {
+        return decodeCompressedBytes.get();
+    }
+
+    /**
+     * 收到的压缩body解压后的字节数
+     */
+    public static long getDecodeRawBytes() {
+        return decodeRawBytes.get();
+    }
+}
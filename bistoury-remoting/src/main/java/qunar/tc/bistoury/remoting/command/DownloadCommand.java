@@ -8,6 +8,10 @@ package qunar.tc.bistoury.remoting.command;
 public class DownloadCommand {
     private String path;
     private String dir;
+    //续传时从该位置开始读
+    private long offset;
+    //续传时之前传输的文件标识，文件发生变化时不能续传
+    private String fileId;
 
     public String getPath() {
         return path;
@@ -25,11 +29,29 @@ public class DownloadCommand {
         this.dir = dir;
     }
 
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(String fileId) {
+        this.fileId = fileId;
+    }
+
     @Override
     public String toString() {
         return "DownloadCommand{" +
                 "path='" + path + '\'' +
                 ", dir='" + dir + '\'' +
+                ", offset=" + offset +
+                ", fileId='" + fileId + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package qunar.tc.bistoury.remoting.command;
+
+/**
+ * proxy给agent上某个job增加的credit，单位byte
+ */
+public class JobCreditCommand {
+
+    private String id;
+
+    private long credit;
+
+    public JobCreditCommand() {
+    }
+
+    public JobCreditCommand(String id, long credit) {
+        this.id = id;
+        this.credit = credit;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getCredit() {
+        return credit;
+    }
+
+    public void setCredit(long credit) {
+        this.credit = credit;
+    }
+
+    @Override
+    public String toString() {
+        return "JobCreditCommand{" +
+                "id='" + id + '\'' +
+                ", credit=" + credit +
+                '}';
+    }
+}
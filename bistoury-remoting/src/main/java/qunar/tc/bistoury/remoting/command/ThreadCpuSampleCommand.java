@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package qunar.tc.bistoury.remoting.command;
+
+public class ThreadCpuSampleCommand {
+
+    /**
+     * 查询最近多少秒的采样
+     */
+    private int seconds;
+
+    /**
+     * 不指定threadId时，返回平均cpu使用率最高的top个线程
+     */
+    private int top;
+
+    /**
+     * 指定时返回该线程每次采样的cpu使用率，格式和jstack中的nid一致，如0x1a2b
+     */
+    private String threadId;
+
+    public int getSeconds() {
+        return seconds;
+    }
+
+    public void setSeconds(int seconds) {
+        this.seconds = seconds;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public void setTop(int top) {
+        this.top = top;
+    }
+
+    public String getThreadId() {
+        return threadId;
+    }
+
+    public void setThreadId(String threadId) {
+        this.threadId = threadId;
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadCpuSampleCommand{" +
+                "seconds=" + seconds +
+                ", top=" + top +
+                ", threadId='" + threadId + '\'' +
+                '}';
+    }
+}
@@ -32,6 +32,16 @@ public class AgentConstants {
      */
     public static final AttributeKey<String> attributeKey = AttributeKey.valueOf(CHANNEL_REQUEST_ID_KEY);
 
+    /**
+     * 存储对端的协议版本，由decoder在收到数据时设置，encoder据此选择编码格式
+     */
+    public static final AttributeKey<Short> PEER_PROTOCOL_VERSION = AttributeKey.valueOf("PEER_PROTOCOL_VERSION");
+
+    /**
+     * 对端是否能够解压body，由decoder根据收到的flag设置
+     */
+    public static final AttributeKey<Boolean> PEER_SUPPORT_COMPRESSION = AttributeKey.valueOf("PEER_SUPPORT_COMPRESSION");
+
     public static final int VERSION = 10;
 }
 
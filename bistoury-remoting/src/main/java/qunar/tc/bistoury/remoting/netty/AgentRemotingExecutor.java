@@ -21,21 +21,97 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import java.util.concurrent.Executors;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * agent执行task的线程池，按task类型分成几条互不影响的lane，文件传输等大流量task不会挡住交互命令
+ * <p>
+ * 每条lane是独立的固定大小线程池，lane内按提交顺序(FIFO)执行，不区分task优先级；
+ * 持续输出的job每次调度后会重新排到队尾，所以同一lane内的job是轮转的，一个job不会一直占住线程
+ *
  * @author zhenyu.nie created on 2018 2018/10/9 15:04
  */
 public class AgentRemotingExecutor {
 
-    private static final ListeningExecutorService executorService;
+    public enum Lane {
+        /**
+         * 需要立即响应的命令，如arthas、host、thread、反编译等，task完成后的回调也在这里执行
+         */
+        INTERACTIVE("bistoury.agent.thread.num", 16),
+
+        /**
+         * 大量io的传输，如文件下载、profiler文件
+         */
+        BULK("bistoury.agent.bulk.thread.num", 4),
+
+        /**
+         * 不要求及时响应的重任务，如heap histo、监控查询
+         */
+        BACKGROUND("bistoury.agent.background.thread.num", 2);
+
+        private final String threadNumProperty;
+
+        private final int defaultThreadNum;
+
+        Lane(String threadNumProperty, int defaultThreadNum) {
+            this.threadNumProperty = threadNumProperty;
+            this.defaultThreadNum = defaultThreadNum;
+        }
+    }
+
+    private static final Map<Lane, ThreadPoolExecutor> executors = new EnumMap<>(Lane.class);
+
+    private static final Map<Lane, ListeningExecutorService> listeningExecutors = new EnumMap<>(Lane.class);
 
     static {
-        int threadNum = Integer.parseInt(System.getProperty("bistoury.agent.thread.num", "16"));
-        executorService = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threadNum, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("log-agent-exec-%d").build()));
+        for (Lane lane : Lane.values()) {
+            int threadNum = Integer.parseInt(System.getProperty(lane.threadNumProperty, String.valueOf(lane.defaultThreadNum)));
+            String nameFormat = "log-agent-" + lane.name().toLowerCase() + "-exec-%d";
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threadNum, threadNum, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build());
+            executors.put(lane, executor);
+            listeningExecutors.put(lane, MoreExecutors.listeningDecorator(executor));
+        }
     }
 
     public static ListeningExecutorService getExecutor() {
-        return executorService;
+        return getExecutor(Lane.INTERACTIVE);
+    }
+
+    public static ListeningExecutorService getExecutor(Lane lane) {
+        return listeningExecutors.get(lane);
+    }
+
+    /**
+     * @return lane中排队等待执行的任务数
+     */
+    public static int getQueueSize(Lane lane) {
+        return executors.get(lane).getQueue().size();
+    }
+
+    /**
+     * @return lane中正在执行的任务数
+     */
+    public static int getActiveCount(Lane lane) {
+        return executors.get(lane).getActiveCount();
+    }
+
+    /**
+     * 每条lane的排队和执行情况，用于排查命令响应慢的问题
+     */
+    public static Map<String, String> getStats() {
+        Map<String, String> stats = new LinkedHashMap<>();
+        for (Lane lane : Lane.values()) {
+            String prefix = lane.name().toLowerCase();
+            stats.put(prefix + ".queueSize", String.valueOf(getQueueSize(lane)));
+            stats.put(prefix + ".activeCount", String.valueOf(getActiveCount(lane)));
+            stats.put(prefix + ".threadNum", String.valueOf(executors.get(lane).getMaximumPoolSize()));
+        }
+        return stats;
     }
 }
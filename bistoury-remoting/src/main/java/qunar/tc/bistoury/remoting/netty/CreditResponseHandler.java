@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package qunar.tc.bistoury.remoting.netty;
+
+import com.google.common.base.Charsets;
+import qunar.tc.bistoury.agent.common.ResponseHandler;
+import qunar.tc.bistoury.agent.common.job.ResponseJobStore;
+
+import java.util.Map;
+
+/**
+ * 统计job写出的数据量，从job的credit中扣除
+ */
+class CreditResponseHandler implements ResponseHandler {
+
+    private final String id;
+
+    private final ResponseJobStore jobStore;
+
+    private final ResponseHandler delegate;
+
+    CreditResponseHandler(String id, ResponseJobStore jobStore, ResponseHandler delegate) {
+        this.id = id;
+        this.jobStore = jobStore;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return delegate.isWritable();
+    }
+
+    @Override
+    public boolean isActive() {
+        return delegate.isActive();
+    }
+
+    @Override
+    public void handle(String line) {
+        handle(line.getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public void handle(int code, String line) {
+        handle(code, line.getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public void handle(int code, byte[] data) {
+        jobStore.consume(id, data.length);
+        delegate.handle(code, data);
+    }
+
+    @Override
+    public void handle(byte[] dataBytes) {
+        jobStore.consume(id, dataBytes.length);
+        delegate.handle(dataBytes);
+    }
+
+    @Override
+    public void handleError(int errorCode) {
+        delegate.handleError(errorCode);
+    }
+
+    @Override
+    public void handleError(String error) {
+        delegate.handleError(error);
+    }
+
+    @Override
+    public void handleError(Throwable throwable) {
+        delegate.handleError(throwable);
+    }
+
+    @Override
+    public void handleEOF() {
+        delegate.handleEOF();
+    }
+
+    @Override
+    public void handleEOF(int exitCode) {
+        delegate.handleEOF(exitCode);
+    }
+
+    @Override
+    public void handle(int code, byte[] data, Map<String, String> responseHeader) {
+        jobStore.consume(id, data.length);
+        delegate.handle(code, data, responseHeader);
+    }
+}
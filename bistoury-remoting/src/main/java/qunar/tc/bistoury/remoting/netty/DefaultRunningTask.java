@@ -12,9 +12,17 @@ public class DefaultRunningTask implements RunnableTask {
 
     private final Task task;
 
+    //小于等于0表示不按credit控制
+    private final long creditWindow;
+
     public DefaultRunningTask(ResponseJobStore jobStore, Task task) {
+        this(jobStore, task, -1);
+    }
+
+    public DefaultRunningTask(ResponseJobStore jobStore, Task task, long creditWindow) {
         this.jobStore = jobStore;
         this.task = task;
+        this.creditWindow = creditWindow;
     }
 
     @Override
@@ -49,7 +57,11 @@ public class DefaultRunningTask implements RunnableTask {
     }
 
     private void start() {
-        jobStore.submit(task.createJob());
+        if (creditWindow > 0) {
+            jobStore.submit(task.createJob(), creditWindow);
+        } else {
+            jobStore.submit(task.createJob());
+        }
     }
 
     private void stop() {
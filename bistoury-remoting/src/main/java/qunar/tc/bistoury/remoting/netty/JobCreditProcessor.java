@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package qunar.tc.bistoury.remoting.netty;
+
+import com.google.common.collect.ImmutableList;
+import qunar.tc.bistoury.agent.common.ResponseHandler;
+import qunar.tc.bistoury.agent.common.job.ResponseJobStore;
+import qunar.tc.bistoury.remoting.command.JobCreditCommand;
+import qunar.tc.bistoury.remoting.protocol.CommandCode;
+import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
+
+import java.util.List;
+
+public class JobCreditProcessor implements Processor<JobCreditCommand> {
+
+    private final ResponseJobStore jobStore;
+
+    public JobCreditProcessor(ResponseJobStore jobStore) {
+        this.jobStore = jobStore;
+    }
+
+    @Override
+    public List<Integer> types() {
+        return ImmutableList.of(CommandCode.REQ_TYPE_JOB_CREDIT.getCode());
+    }
+
+    @Override
+    public void process(RemotingHeader header, JobCreditCommand command, ResponseHandler handler) {
+        jobStore.grant(command.getId(), command.getCredit());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 Qunar, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package qunar.tc.bistoury.remoting.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 选择netty的传输实现，linux上native epoll可用时使用epoll，否则使用nio
+ * <p>
+ * event loop group和channel class必须来自同一个实现，所以都从这里拿
+ */
+public class NettyTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyTransport.class);
+
+    private final boolean epoll;
+
+    private final boolean edgeTriggered;
+
+    private NettyTransport(boolean epoll, boolean edgeTriggered) {
+        this.epoll = epoll;
+        this.edgeTriggered = edgeTriggered;
+    }
+
+    /**
+     * @param preferEpoll   是否优先使用epoll，epoll不可用时仍然使用nio
+     * @param edgeTriggered epoll使用边缘触发还是水平触发，nio下忽略
+     */
+    public static NettyTransport create(boolean preferEpoll, boolean edgeTriggered) {
+        boolean epoll = preferEpoll && Epoll.isAvailable();
+        if (preferEpoll && !epoll) {
+            logger.info("netty native epoll is unavailable, use nio, {}", String.valueOf(Epoll.unavailabilityCause()));
+        }
+        NettyTransport transport = new NettyTransport(epoll, edgeTriggered);
+        logger.info("use netty transport {}", transport);
+        return transport;
+    }
+
+    public EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        if (epoll) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Bootstrap configure(Bootstrap bootstrap) {
+        bootstrap.channel(socketChannelClass());
+        if (epoll) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+        return bootstrap;
+    }
+
+    public ServerBootstrap configure(ServerBootstrap bootstrap) {
+        bootstrap.channel(serverSocketChannelClass());
+        if (epoll) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode());
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+        return bootstrap;
+    }
+
+    private EpollMode epollMode() {
+        return edgeTriggered ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+    }
+
+    public boolean isEpoll() {
+        return epoll;
+    }
+
+    @Override
+    public String toString() {
+        return epoll ? "epoll(" + epollMode() + ")" : "nio";
+    }
+}
@@ -81,11 +81,17 @@ public class RequestHandler extends ChannelInboundHandlerAdapter {
 
         Processor processor = processorMap.get(code);
         if (processor == null) {
+            datagram.release();
             handler.handleError(new IllegalArgumentException("unknown code [" + code + "]"));
             return;
         }
 
-        String command = CommandSerializer.readCommand(datagram.getBody());
+        String command;
+        try {
+            command = CommandSerializer.readCommand(datagram.getBody());
+        } finally {
+            datagram.release();
+        }
         int index = command.indexOf(BistouryConstants.FILL_PID);
         if (index >= 0) {
             int pid = PidUtils.getPid();
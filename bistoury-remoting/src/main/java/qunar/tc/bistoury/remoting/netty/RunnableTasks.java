@@ -10,4 +10,8 @@ public class RunnableTasks {
     public static RunnableTask wrap(ResponseJobStore jobStore, Task task) {
         return new DefaultRunningTask(jobStore, task);
     }
+
+    public static RunnableTask wrap(ResponseJobStore jobStore, Task task, long creditWindow) {
+        return new DefaultRunningTask(jobStore, task, creditWindow);
+    }
 }
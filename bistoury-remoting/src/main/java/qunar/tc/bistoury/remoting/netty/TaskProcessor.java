@@ -18,6 +18,7 @@
 package qunar.tc.bistoury.remoting.netty;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.FutureCallback;
@@ -28,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import qunar.tc.bistoury.agent.common.ResponseHandler;
 import qunar.tc.bistoury.agent.common.job.ResponseJobStore;
+import qunar.tc.bistoury.common.BistouryConstants;
 import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
 
 import java.util.List;
@@ -74,7 +76,9 @@ public class TaskProcessor implements Processor<Object> {
             Preconditions.checkState(factory != null);
             logger.info("receive {} command, id [{}], command [{}]", factory.name(), id, command);
 
-            RunnableTask task = createTask(factory, header, command, handler);
+            long creditWindow = getCreditWindow(header);
+            ResponseHandler taskHandler = creditWindow > 0 ? new CreditResponseHandler(id, jobStore, handler) : handler;
+            RunnableTask task = createTask(factory, header, command, taskHandler, creditWindow);
             if (task == null) {
                 return;
             }
@@ -112,10 +116,23 @@ public class TaskProcessor implements Processor<Object> {
         }
     }
 
+    private long getCreditWindow(RemotingHeader header) {
+        String window = header.getProperty(BistouryConstants.JOB_CREDIT_WINDOW);
+        if (Strings.isNullOrEmpty(window)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(window);
+        } catch (NumberFormatException e) {
+            logger.warn("illegal job credit window [{}], id [{}]", window, header.getId());
+            return -1;
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    private RunnableTask createTask(TaskFactory factory, RemotingHeader header, Object command, ResponseHandler handler) {
+    private RunnableTask createTask(TaskFactory factory, RemotingHeader header, Object command, ResponseHandler handler, long creditWindow) {
         Task task = factory.create(header, command, handler);
-        RunnableTask runnableTask = RunnableTasks.wrap(jobStore, task);
+        RunnableTask runnableTask = RunnableTasks.wrap(jobStore, task, creditWindow);
         if (taskStore.register(runnableTask)) {
             return runnableTask;
         } else {
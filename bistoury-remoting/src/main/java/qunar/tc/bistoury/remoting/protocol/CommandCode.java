@@ -50,12 +50,14 @@ public enum CommandCode {
     REQ_TYPE_CPU_JSTACK_TIMES(306, 20),
     REQ_TYPE_CPU_JSTACK_THREADS(307, 21),
     REQ_TYPE_CPU_THREAD_NUM(308, 22),
+    REQ_TYPE_CPU_THREAD_SAMPLE(309, 23),
 
     REQ_TYPE_MONITOR(401, 40),
     REQ_TYPE_QMONITOR_QUERY(402, 41),
 
     REQ_TYPE_JOB_PAUSE(601, 601),
     REQ_TYPE_JOB_RESUME(602, 602),
+    REQ_TYPE_JOB_CREDIT(603, 603),
 
     REQ_TYPE_LIST_DOWNLOAD_FILE(701, 701),
     REQ_TYPE_DOWNLOAD_FILE(702, 702),
@@ -59,6 +59,9 @@ public class Datagram {
         holder.writeBody(out);
     }
 
+    /**
+     * body可能是入站buffer的retained slice，处理完之后需要释放，所有权转移给其它对象的除外
+     */
     public void release() {
         ReferenceCountUtil.safeRelease(body);
     }
@@ -52,6 +52,7 @@ public class DefaultCodeTypeMappingStore implements CodeTypeMappingStore {
         register(CpuTimeCommand.class, ImmutableSet.of(REQ_TYPE_CPU_JSTACK_TIMES.getCode()));
         register(stringClass, ImmutableSet.of(REQ_TYPE_CPU_JSTACK_THREADS.getCode()));
         register(ThreadNumCommand.class, ImmutableSet.of(REQ_TYPE_CPU_THREAD_NUM.getCode()));
+        register(ThreadCpuSampleCommand.class, ImmutableSet.of(REQ_TYPE_CPU_THREAD_SAMPLE.getCode()));
 
         //decompiler
         register(DecompilerCommand.class, ImmutableSet.of(REQ_TYPE_DECOMPILER.getCode()));
@@ -81,6 +82,8 @@ public class DefaultCodeTypeMappingStore implements CodeTypeMappingStore {
         register(stringClass, ImmutableSet.of(REQ_TYPE_JOB_PAUSE.getCode()));
         //job resume
         register(stringClass, ImmutableSet.of(REQ_TYPE_JOB_RESUME.getCode()));
+        //job credit
+        register(JobCreditCommand.class, ImmutableSet.of(REQ_TYPE_JOB_CREDIT.getCode()));
         //download file list
         register(stringClass, ImmutableSet.of(REQ_TYPE_LIST_DOWNLOAD_FILE.getCode()));
         //download file
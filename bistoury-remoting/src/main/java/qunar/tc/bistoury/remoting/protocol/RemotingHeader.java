@@ -45,9 +45,19 @@ public class RemotingHeader {
     public static final short LENGTH_FIELD = TOTAL_SIZE_LEN + HEADER_SIZE_LEN;
 
     //协议版本
-    public static final short PROTOCOL_VERSION = 1;
+    public static final short PROTOCOL_VERSION = 2;
+    //从该版本开始properties支持按长度前缀的key/value编码，之前的版本使用json
+    public static final short MIN_PROTOCOL_VERSION_SUPPORT_BINARY_PROPERTIES = 2;
+
+    //flag中由编解码器使用的位，不会暴露给上层
+    public static final int FLAG_BINARY_PROPERTIES = 1;
+    //发送方能够解压body，对端据此决定是否压缩
+    public static final int FLAG_SUPPORT_COMPRESSION = 1 << 1;
+    //body使用snappy压缩
+    public static final int FLAG_SNAPPY_BODY = 1 << 2;
+    public static final int CODER_FLAG_MASK = FLAG_BINARY_PROPERTIES | FLAG_SUPPORT_COMPRESSION | FLAG_SNAPPY_BODY;
     //agent版本
-    public static final short AGENT_VERSION = 12;
+    public static final short AGENT_VERSION = 14;
 
     public static final int DEFAULT_MAGIC_CODE = 0xdec1_0ade;
 
@@ -59,7 +69,7 @@ public class RemotingHeader {
     private String id;
     private int code;
     private int flag;
-    private Map<String, String> properties;
+    private ImmutableMap<String, String> properties;
 
     public int getMagicCode() {
         return magicCode;
@@ -110,7 +120,7 @@ public class RemotingHeader {
     }
 
     public long getMaxRunningMs() {
-        String time = properties.get(BistouryConstants.MAX_RUNNING_MS);
+        String time = getProperty(BistouryConstants.MAX_RUNNING_MS);
         if (Strings.isNullOrEmpty(time)) {
             return DEFAULT_MAX_RUNNING_MS;
         }
@@ -121,12 +131,23 @@ public class RemotingHeader {
         if (this.properties == null) {
             return Collections.EMPTY_MAP;
         } else {
-            return ImmutableMap.copyOf(properties);
+            return properties;
         }
     }
 
+    /**
+     * 直接从properties中取值，不做拷贝
+     */
+    public String getProperty(String key) {
+        if (this.properties == null) {
+            return null;
+        }
+        return properties.get(key);
+    }
+
     public void setProperties(Map<String, String> properties) {
-        this.properties = properties;
+        //设置时拷贝一次，之后每次get都不再拷贝
+        this.properties = properties == null ? null : ImmutableMap.copyOf(properties);
     }
 
     @Override
@@ -0,0 +1,96 @@
+package qunar.tc.bistoury.remoting.coder;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+import qunar.tc.bistoury.remoting.netty.AgentConstants;
+import qunar.tc.bistoury.remoting.protocol.Datagram;
+import qunar.tc.bistoury.remoting.protocol.RemotingBuilder;
+import qunar.tc.bistoury.remoting.protocol.RemotingHeader;
+import qunar.tc.bistoury.remoting.protocol.ResponseCode;
+import qunar.tc.bistoury.remoting.protocol.payloadHolderImpl.ResponsePayloadHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class AgentCoderTest {
+
+    private static final Map<String, String> PROPERTIES = ImmutableMap.of("profilerDir", "/tmp/profiler", "name", "中文");
+
+    @Test
+    public void testJsonProperties() {
+        Datagram result = roundTrip(null, false);
+        Assert.assertEquals(PROPERTIES, result.getHeader().getProperties());
+        Assert.assertEquals(0, result.getHeader().getFlag());
+        result.release();
+    }
+
+    @Test
+    public void testBinaryProperties() {
+        Datagram result = roundTrip(RemotingHeader.PROTOCOL_VERSION, false);
+        Assert.assertEquals(PROPERTIES, result.getHeader().getProperties());
+        Assert.assertEquals(0, result.getHeader().getFlag());
+        Assert.assertEquals("/tmp/profiler", result.getHeader().getProperty("profilerDir"));
+        result.release();
+    }
+
+    @Test
+    public void testRetainedSlice() {
+        Datagram result = roundTrip(RemotingHeader.PROTOCOL_VERSION, true);
+        ByteBuf body = result.getBody();
+        Assert.assertEquals("hello", body.toString(StandardCharsets.UTF_8));
+        Assert.assertEquals(1, body.refCnt());
+        result.release();
+        Assert.assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    public void testCompress() {
+        String content = Strings.repeat("\"java.lang.Thread.State: RUNNABLE\"\n", 1000);
+        for (boolean retainedSlice : new boolean[]{false, true}) {
+            long before = BodyCompressor.getEncodeCompressedBytes();
+            Datagram result = roundTrip(new AgentEncoder(1024), RemotingHeader.PROTOCOL_VERSION, true, retainedSlice, content);
+            Assert.assertTrue(BodyCompressor.getEncodeCompressedBytes() - before < content.length() / 2);
+            Assert.assertEquals(content, result.getBody().toString(StandardCharsets.UTF_8));
+            Assert.assertEquals(0, result.getHeader().getFlag());
+            result.release();
+        }
+    }
+
+    @Test
+    public void testNotCompressWithoutNegotiation() {
+        String content = Strings.repeat("a", 4096);
+        long before = BodyCompressor.getEncodeRawBytes();
+        Datagram result = roundTrip(new AgentEncoder(1024), RemotingHeader.PROTOCOL_VERSION, false, false, content);
+        Assert.assertEquals(before, BodyCompressor.getEncodeRawBytes());
+        Assert.assertEquals(content, result.getBody().toString(StandardCharsets.UTF_8));
+        result.release();
+    }
+
+    private Datagram roundTrip(Short peerVersion, boolean retainedSlice) {
+        return roundTrip(new AgentEncoder(), peerVersion, false, retainedSlice, "hello");
+    }
+
+    private Datagram roundTrip(AgentEncoder encoder, Short peerVersion, boolean peerSupportCompression, boolean retainedSlice, String content) {
+        EmbeddedChannel encodeChannel = new EmbeddedChannel(encoder);
+        if (peerVersion != null) {
+            encodeChannel.attr(AgentConstants.PEER_PROTOCOL_VERSION).set(peerVersion);
+        }
+        encodeChannel.attr(AgentConstants.PEER_SUPPORT_COMPRESSION).set(peerSupportCompression);
+        RemotingHeader header = RemotingBuilder.buildRemotingHeader(ResponseCode.RESP_TYPE_CONTENT.getCode(), "id");
+        header.setProperties(PROPERTIES);
+        Assert.assertTrue(encodeChannel.writeOutbound(RemotingBuilder.buildFullResponseDatagram(header, new ResponsePayloadHolder(content.getBytes(StandardCharsets.UTF_8)))));
+        ByteBuf encoded = encodeChannel.readOutbound();
+
+        EmbeddedChannel decodeChannel = new EmbeddedChannel(new AgentDecoder(retainedSlice));
+        Assert.assertTrue(decodeChannel.writeInbound(encoded));
+        Datagram datagram = decodeChannel.readInbound();
+        Assert.assertEquals("id", datagram.getHeader().getId());
+        Assert.assertEquals(RemotingHeader.PROTOCOL_VERSION, (short) decodeChannel.attr(AgentConstants.PEER_PROTOCOL_VERSION).get());
+        Assert.assertTrue(decodeChannel.attr(AgentConstants.PEER_SUPPORT_COMPRESSION).get());
+        return datagram;
+    }
+}
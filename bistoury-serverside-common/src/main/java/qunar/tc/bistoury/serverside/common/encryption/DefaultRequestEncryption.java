@@ -21,11 +21,15 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import qunar.tc.bistoury.common.JacksonSerializer;
 import qunar.tc.bistoury.remoting.protocol.RequestData;
 
+import javax.crypto.SecretKey;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * 解密时会缓存最近一次协商出的des key，proxy上每个ui连接使用一个实例
+ *
  * @author zhenyu.nie created on 2019 2019/5/16 15:53
  */
 public class DefaultRequestEncryption implements RequestEncryption {
@@ -41,6 +45,8 @@ public class DefaultRequestEncryption implements RequestEncryption {
 
     private final RSAEncryption rsa;
 
+    private volatile SessionKey sessionKey;
+
     public DefaultRequestEncryption(RSAEncryption rsa) {
         this.rsa = rsa;
     }
@@ -51,11 +57,29 @@ public class DefaultRequestEncryption implements RequestEncryption {
         String rsaData = (String) map.get(KEY_INDEX);
         String data = (String) map.get(DATA_INDEX);
 
-        String desKey = rsa.decrypt(rsaData);
-        String requestStr = EncryptionUtils.decryptDes(data, desKey);
+        String requestStr = EncryptionUtils.decryptDes(data, getDesKey(rsaData));
         return JacksonSerializer.deSerialize(requestStr, inputType);
     }
 
+    /**
+     * 页面在一个websocket上会一直使用同一个des key和同一份rsa密文，
+     * 密文相同时直接使用缓存的key，只有换了key才需要做rsa私钥解密
+     */
+    private SecretKey getDesKey(String rsaData) throws IOException {
+        SessionKey current = sessionKey;
+        if (current != null && current.rsaData.equals(rsaData)) {
+            return current.key;
+        }
+
+        try {
+            SecretKey key = EncryptionUtils.createDesKey(rsa.decrypt(rsaData));
+            sessionKey = new SessionKey(rsaData, key);
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new Encryption.DecryptException(e);
+        }
+    }
+
     @Override
     public String encrypt(RequestData<String> requestData, final String key) throws IOException {
         Map<String, String> map = new HashMap<>();
@@ -67,5 +91,16 @@ public class DefaultRequestEncryption implements RequestEncryption {
         return JacksonSerializer.serialize(map);
     }
 
+    private static class SessionKey {
+
+        private final String rsaData;
+
+        private final SecretKey key;
+
+        private SessionKey(String rsaData, SecretKey key) {
+            this.rsaData = rsaData;
+            this.key = key;
+        }
+    }
 
 }
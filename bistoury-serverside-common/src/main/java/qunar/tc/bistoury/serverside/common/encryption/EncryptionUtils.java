@@ -37,6 +37,16 @@ import java.security.spec.X509EncodedKeySpec;
 
 public class EncryptionUtils {
 
+    private static final String DES_TRANSFORMATION = "DES/ECB/PKCS5Padding";
+
+    private static final ThreadLocal<Cipher> DES_CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(DES_TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("create des cipher error", e);
+        }
+    });
+
     public static PublicKey loadRSAPublicKey(String path) throws IOException, InvalidKeySpecException {
         ClassPathResource pathResource = new ClassPathResource(path);
         byte[] bb = FileUtil.readBytes(pathResource.getInputStream());
@@ -87,11 +97,22 @@ public class EncryptionUtils {
         Files.write(Base64.encode(key.getEncoded()), new File(dstFile), Charsets.UTF_8);
     }
 
+    public static SecretKey createDesKey(String keyString) throws GeneralSecurityException {
+        DESKeySpec keySpec = new DESKeySpec(keyString.getBytes(Charsets.UTF_8));
+        return SecretKeyFactory.getInstance("DES").generateSecret(keySpec);
+    }
+
     public static String decryptDes(String data, String keyString) throws Encryption.DecryptException {
         try {
-            Cipher cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
-            DESKeySpec keySpec = new DESKeySpec(keyString.getBytes(Charsets.UTF_8));
-            SecretKey key = SecretKeyFactory.getInstance("DES").generateSecret(keySpec);
+            return decryptDes(data, createDesKey(keyString));
+        } catch (GeneralSecurityException e) {
+            throw new Encryption.DecryptException(e);
+        }
+    }
+
+    public static String decryptDes(String data, SecretKey key) throws Encryption.DecryptException {
+        try {
+            Cipher cipher = DES_CIPHER.get();
             cipher.init(Cipher.DECRYPT_MODE, key);
             byte[] bytes = Base64.decode(data);
             return new String(cipher.doFinal(bytes), Charsets.UTF_8);
@@ -102,10 +123,8 @@ public class EncryptionUtils {
 
     public static String encryptDes(String data, String keyString) throws Encryption.EncryptException {
         try {
-            Cipher cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
-            DESKeySpec keySpec = new DESKeySpec(keyString.getBytes(Charsets.UTF_8));
-            SecretKey key = SecretKeyFactory.getInstance("DES").generateSecret(keySpec);
-            cipher.init(Cipher.ENCRYPT_MODE, key);
+            Cipher cipher = DES_CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, createDesKey(keyString));
             return Base64.encode(cipher.doFinal(data.getBytes(Charsets.UTF_8)));
         } catch (Exception e) {
             throw new Encryption.EncryptException(e);
@@ -23,7 +23,9 @@ import com.ning.http.util.Base64;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -41,6 +43,10 @@ public class RSAEncryption implements Encryption {
     private PublicKey publicKey;
     private PrivateKey privateKey;
 
+    //rsa的Cipher创建和init都不便宜，每个线程复用一个，init过的Cipher在doFinal后会回到init时的状态
+    private final ThreadLocal<Cipher> encryptCipher = ThreadLocal.withInitial(() -> initCipher(Cipher.ENCRYPT_MODE, publicKey));
+    private final ThreadLocal<Cipher> decryptCipher = ThreadLocal.withInitial(() -> initCipher(Cipher.DECRYPT_MODE, privateKey));
+
     public RSAEncryption() throws IOException, InvalidKeyException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeySpecException {
         this(RSA_PUBLIC_KEY, RSA_PRIVATE_KEY);
     }
@@ -57,12 +63,20 @@ public class RSAEncryption implements Encryption {
 
     }
 
+    private static Cipher initCipher(int mode, Key key) {
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(mode, key);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("init rsa cipher error", e);
+        }
+    }
+
     @Override
     public String encrypt(String source) throws EncryptException {
-        Cipher cipher;
         try {
-            cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            Cipher cipher = encryptCipher.get();
             byte[] bytes = source.getBytes(Charsets.UTF_8);
             return Base64.encode(cipher.doFinal(bytes));
         } catch (Exception e) {
@@ -72,10 +86,8 @@ public class RSAEncryption implements Encryption {
 
     @Override
     public String decrypt(String source) throws DecryptException {
-        Cipher cipher;
         try {
-            cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            Cipher cipher = decryptCipher.get();
             return new String(cipher.doFinal(Base64.decode(source)), Charsets.UTF_8);
         } catch (Exception e) {
             throw new DecryptException(e);
@@ -15,7 +15,16 @@ $(document).ready(function () {
     var currentHost = {};
     var currentAppCode;
     var currentMonitor = {};
-    var EMPTY_TIMER_DATA = ["-", "-"];
+    var EMPTY_TIMER_DATA = ["-", "-", "-", "-", "-", "-", "-"];
+    //timer数据中各个耗时分位的名字和下标，MIN_1和P98之后的值是后来加的
+    var TIMER_PERCENTILES = [
+        {name: "P98(第98%位)", index: 1, selected: true},
+        {name: "P50(第50%位)", index: 2, selected: false},
+        {name: "P90(第90%位)", index: 3, selected: false},
+        {name: "P99(第99%位)", index: 4, selected: false},
+        {name: "P999(第99.9%位)", index: 5, selected: false},
+        {name: "MAX(最大值)", index: 6, selected: false}
+    ];
     var EMPTY_COUNT_DATA = ["-"];
     var _monitor = {
         interval: -1,
@@ -32,7 +41,8 @@ $(document).ready(function () {
     }
 
     function addMonitor() {
-        var command = "qmonitoradd " + currentMonitor.uuid + " " + currentMonitor.source + " " + currentMonitor.line;
+        var command = "qmonitoradd " + currentMonitor.uuid + " " + currentMonitor.source + " " + currentMonitor.line
+            + " -s " + currentMonitor.sampleRate;
         bistouryWS.sendCommand(currentHost, 40, command, stop, handleResult);
         // send(currentHost, 40, command);
     }
@@ -146,15 +156,18 @@ $(document).ready(function () {
                     data: _monitor.curve[quota].data.map(function (value) {
                         return formatFloat(value[0]);
                     })
-                }, {
-                    name: "P98(第98%位)",
-                    type: 'line',
-                    animation: false,
-                    yAxisIndex: 1,
-                    data: _monitor.curve[quota].data.map(function (value) {
-                        return formatFloat(value[1]);
-                    })
                 }]
+                TIMER_PERCENTILES.forEach(function (percentile) {
+                    series.push({
+                        name: percentile.name,
+                        type: 'line',
+                        animation: false,
+                        yAxisIndex: 1,
+                        data: _monitor.curve[quota].data.map(function (value) {
+                            return value.length > percentile.index ? formatFloat(value[percentile.index]) : "-";
+                        })
+                    })
+                })
             } else if (_monitor.curve[quota].type == quotaType.counter) {
                 var index = quota.indexOf("_counter");
                 var exceptionQuota = quota.substring(0, index) + "_exception";
@@ -235,15 +248,15 @@ $(document).ready(function () {
                         show: false
                     }
                 }];
+                var legendData = ["MIN_1(一分钟内QPS)"];
+                var legendSelected = {"MIN_1(一分钟内QPS)": true};
+                TIMER_PERCENTILES.forEach(function (percentile) {
+                    legendData.push(percentile.name);
+                    legendSelected[percentile.name] = percentile.selected;
+                })
                 legend = {
-                    data: [
-                        "MIN_1(一分钟内QPS)",
-                        "P98(第98%位)"
-                    ],
-                    selected: {
-                        "MIN_1(一分钟内QPS)": true,
-                        "P98(第98%位)": true
-                    },
+                    data: legendData,
+                    selected: legendSelected,
                     y: "bottom",
                     padding: 10,
                     itemGap: 15
@@ -878,9 +891,16 @@ $(document).ready(function () {
                 bistoury.error("请选择需要添加断点的代码行")
             }
             return;
+        }
+
+        var sampleRate = $("#sample-rate").val();
+        if (!/^[1-9]\d*$/.test(sampleRate)) {
+            bistoury.error("采样率必须是正整数");
+            return;
         } else {
             currentMonitor = {
                 line: line,
+                sampleRate: sampleRate,
                 app: currentHost.appCode,
                 host: currentHost.ip,
                 source: currentClass.replace(/\./g, "/") + ".java",
@@ -1191,9 +1211,9 @@ $(document).ready(function () {
     var datePickerOptions = {
         // startDate: moment().startOf('day'),
         // endDate: moment(),
-        minDate: moment().subtract('days', 3), //最小时间
+        minDate: moment().subtract('days', 90), //最小时间，和agent上按天预聚合的数据保留时间一致
         maxDate: moment(), //最大时间
-        dateLimit: {days: 30}, //起止时间的最大间隔
+        dateLimit: {days: 90}, //起止时间的最大间隔
         showDropdowns: true,
         showWeekNumbers: false, //是否显示第几周
         timePicker: true, //是否显示小时和分钟
@@ -1204,7 +1224,9 @@ $(document).ready(function () {
             '最近2小时': [moment().subtract('hours', 2), moment()],
             '今日': [moment().startOf('day'), moment()],
             '昨日': [moment().subtract('days', 1).startOf('day'), moment().subtract('days', 1).endOf('day')],
-            '最近3日': [moment().subtract('days', 3), moment()]
+            '最近3日': [moment().subtract('days', 3), moment()],
+            '最近7日': [moment().subtract('days', 7), moment()],
+            '最近30日': [moment().subtract('days', 30), moment()]
         },
         opens: 'right', //日期选择框的弹出位置
         buttonClasses: ['btn btn-default'],
@@ -726,7 +726,7 @@ $(document).ready(function () {
                         command: input,
                         token: getToken()
                     };
-                    var data = encrypt(JSON.stringify(content));
+                    var data = encrypt(JSON.stringify(content), ws);
 
                     ws.send(data);
                 }).fail(function () {
@@ -1188,10 +1188,17 @@ $(document).ready(function () {
             $(this).closest(".ui-dialog").css("z-index", 101);
         });
 
-        function encrypt(content) {
-            var k1 = makeid();
-            var dataEnc = encryptByDES(content, k1);
+        function encrypt(content, ws) {
+            //每个websocket只协商一次des key，proxy会缓存解出的key，后续请求不需要再做rsa解密
+            if (!ws.sessionKey) {
+                ws.sessionKey = createSessionKey();
+            }
+            var dataEnc = encryptByDES(content, ws.sessionKey.key);
+            return "{\"0\":\"" + ws.sessionKey.keyEnc + "\",\"1\":\"" + dataEnc + "\"}";
+        }
 
+        function createSessionKey() {
+            var k1 = makeid();
 
             var publicKey = '-----BEGIN PUBLIC KEY-----\n' +
                 'MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQCzYgJiPl4ltUdOvTIx8yu5iw0+\n' +
@@ -1202,8 +1209,7 @@ $(document).ready(function () {
             var crypt = new JSEncrypt();
             crypt.setPublicKey(publicKey);
             var k1Enc = crypt.encrypt(k1);
-
-            return "{\"0\":\"" + k1Enc + "\",\"1\":\"" + dataEnc + "\"}";
+            return {key: k1, keyEnc: k1Enc};
         }
     });
 
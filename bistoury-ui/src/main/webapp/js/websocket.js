@@ -32,7 +32,7 @@
                 command: bistouryWS.proxy[agentIp] ? newCommand : oldCommand,
                 token: bistouryWS.getToken()
             };
-            var data = bistouryWS.encrypt(JSON.stringify(content));
+            var data = bistouryWS.encrypt(JSON.stringify(content), ws);
             ws.send(data);
         }).fail(function () {
             callBack(stopFunc);
@@ -158,10 +158,17 @@
         return $.cookie('login_token').replace(/\s/g, '+');
     }
 
-    BistouryWebSocket.prototype.encrypt = function (content) {
-        var k1 = makeid();
-        var dataEnc = encryptByDES(content, k1);
+    BistouryWebSocket.prototype.encrypt = function (content, ws) {
+        //每个websocket只协商一次des key，proxy会缓存解出的key，后续请求不需要再做rsa解密
+        if (!ws.sessionKey) {
+            ws.sessionKey = createSessionKey();
+        }
+        var dataEnc = encryptByDES(content, ws.sessionKey.key);
+        return "{\"0\":\"" + ws.sessionKey.keyEnc + "\",\"1\":\"" + dataEnc + "\"}";
+    }
 
+    function createSessionKey() {
+        var k1 = makeid();
 
         var publicKey = '-----BEGIN PUBLIC KEY-----\n' +
             'MIGfMA0GCSqGSIb3DQEBAQUAA4GNADCBiQKBgQCzYgJiPl4ltUdOvTIx8yu5iw0+\n' +
@@ -172,8 +179,7 @@
         var crypt = new JSEncrypt();
         crypt.setPublicKey(publicKey);
         var k1Enc = crypt.encrypt(k1);
-
-        return "{\"0\":\"" + k1Enc + "\",\"1\":\"" + dataEnc + "\"}";
+        return {key: k1, keyEnc: k1Enc};
     }
 
     function makeid() {